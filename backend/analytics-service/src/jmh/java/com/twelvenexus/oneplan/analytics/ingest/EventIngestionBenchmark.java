@@ -0,0 +1,121 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * Sustained events/sec accepted by the ingestion buffer from eight concurrent request threads,
+ * with and without the write-ahead log. The sink only counts, so this measures the buffer and the
+ * log rather than Mongo; a full buffer is retried rather than counted, so the score is the rate the
+ * writer keeps up with. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class EventIngestionBenchmark {
+
+  private static final int BATCH = 100;
+
+  @Param({"false", "true"})
+  public boolean writeAheadLog;
+
+  private final LongAdder written = new LongAdder();
+  private EventIngestionBuffer buffer;
+  private Path walDirectory;
+  private List<AnalyticsEvent> batch;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    EventWriteAheadLog wal = null;
+    if (writeAheadLog) {
+      walDirectory = Files.createTempDirectory("event-wal-bench");
+      wal =
+          new EventWriteAheadLog(
+              walDirectory, 64L * 1024 * 1024, new ObjectMapper().findAndRegisterModules());
+    }
+    buffer =
+        new EventIngestionBuffer(
+            65536, 1000, Duration.ofMillis(200), events -> written.add(events.size()), wal);
+    buffer.start();
+
+    batch = new ArrayList<>(BATCH);
+    for (int i = 0; i < BATCH; i++) {
+      batch.add(event());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    buffer.close();
+    if (walDirectory != null) {
+      try (var files = Files.list(walDirectory)) {
+        for (Path file : files.toList()) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(walDirectory);
+    }
+  }
+
+  @Benchmark
+  public void single() {
+    submit(List.of(event()));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void batched() {
+    submit(batch);
+  }
+
+  private void submit(List<AnalyticsEvent> events) {
+    while (true) {
+      try {
+        buffer.submit(events);
+        return;
+      } catch (EventBufferFullException e) {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  private static AnalyticsEvent event() {
+    AnalyticsEvent event = new AnalyticsEvent();
+    event.setId(new ObjectId().toHexString());
+    event.setTenantId(UUID.randomUUID());
+    event.setEntityId(UUID.randomUUID());
+    event.setEntityType("task");
+    event.setEventType("task.completed");
+    event.setEventName("Task completed");
+    event.setProperties(Map.of("leadTime", 12.5, "cycleTime", 4.0, "priority", "high"));
+    event.setUserId(UUID.randomUUID());
+    event.setSessionId("session");
+    event.setTimestamp(LocalDateTime.now());
+    return event;
+  }
+}
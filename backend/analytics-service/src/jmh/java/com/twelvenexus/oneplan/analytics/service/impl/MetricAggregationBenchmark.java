@@ -0,0 +1,115 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Run time and allocation of one aggregation run versus rows in the period: the streaming
+ * aggregator fed in scan order, against materialising every row as a {@link Metric} and grouping
+ * in memory as the old {@code findAll()} path did. Database I/O is excluded. Run with {@code
+ * ./gradlew jmh}; the gc profiler reports {@code gc.alloc.rate.norm} per run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MetricAggregationBenchmark {
+
+  private static final int GROUPS = 1_000;
+
+  @Param({"100000", "1000000", "5000000"})
+  public int rows;
+
+  private String[] tenantIds;
+  private String[] entityIds;
+  private LocalDateTime start;
+  private LocalDateTime end;
+
+  @Setup
+  public void setUp() {
+    tenantIds = new String[GROUPS];
+    entityIds = new String[GROUPS];
+    String tenant = UUID.randomUUID().toString();
+    for (int g = 0; g < GROUPS; g++) {
+      // Ten tenants, each with its own entities
+      if (g % (GROUPS / 10) == 0) {
+        tenant = UUID.randomUUID().toString();
+      }
+      tenantIds[g] = tenant;
+      entityIds[g] = UUID.randomUUID().toString();
+    }
+    start = LocalDateTime.now().minusHours(1);
+    end = start.plusHours(1);
+  }
+
+  @Benchmark
+  public long streaming(Blackhole blackhole) {
+    StreamingMetricAggregator aggregator =
+        new StreamingMetricAggregator(AggregationPeriod.HOUR, start, end, 500, blackhole::consume);
+    int perGroup = rows / GROUPS;
+    for (int g = 0; g < GROUPS; g++) {
+      for (int i = 0; i < perGroup; i++) {
+        aggregator.accept(
+            tenantIds[g], entityIds[g], "project", MetricType.TASK_CYCLE_TIME.name(), value(i));
+      }
+    }
+    aggregator.finish();
+    return aggregator.groups();
+  }
+
+  @Benchmark
+  public int materialized(Blackhole blackhole) {
+    List<Metric> metrics = new ArrayList<>(rows);
+    int perGroup = rows / GROUPS;
+    for (int g = 0; g < GROUPS; g++) {
+      UUID tenantId = UUID.fromString(tenantIds[g]);
+      UUID entityId = UUID.fromString(entityIds[g]);
+      for (int i = 0; i < perGroup; i++) {
+        Metric metric = new Metric();
+        metric.setTenantId(tenantId);
+        metric.setEntityId(entityId);
+        metric.setEntityType("project");
+        metric.setType(MetricType.TASK_CYCLE_TIME);
+        metric.setValue(value(i));
+        metric.setTimestamp(start.plusSeconds(i % 3600));
+        metrics.add(metric);
+      }
+    }
+
+    Map<List<Object>, List<Metric>> grouped =
+        metrics.stream()
+            .collect(
+                Collectors.groupingBy(
+                    m ->
+                        List.of(
+                            m.getTenantId(), m.getEntityId(), m.getEntityType(), m.getType())));
+    for (List<Metric> group : grouped.values()) {
+      DoubleSummaryStatistics stats =
+          group.stream().mapToDouble(Metric::getValue).summaryStatistics();
+      blackhole.consume(stats);
+      blackhole.consume(group.stream().map(Metric::getValue).sorted().toList());
+    }
+    return grouped.size();
+  }
+
+  private static double value(int i) {
+    return (i * 7919 % 1000) / 10.0;
+  }
+}
@@ -0,0 +1,593 @@
+package com.twelvenexus.oneplan.analytics.cache;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Read-through cache for metric range queries, built from fixed time chunks so that sliding ranges
+ * reuse what earlier queries loaded.
+ *
+ * <p>A range is split into the chunks covering it: hours for raw metrics, the next coarser span
+ * for aggregates. Each chunk holds one series' rows and is looked up locally, then in Redis; the
+ * chunks still missing are loaded with one query per contiguous run, and the result is the chunks'
+ * rows filtered to the exact range. A chunk that ended more than the settle time ago is closed and
+ * kept in Redis for the closed TTL; the open chunk, and those just behind it where late events
+ * still land, only for the open TTL. Local copies never outlive the local TTL, which bounds how
+ * long another instance's eviction takes to reach this one.
+ *
+ * <p>Writers evict the chunks of the series they touched, for their tenant only, once their
+ * transaction commits. Change listeners are told about those series at the same point. A load that
+ * started before such an eviction may have read the rows from before the write, so every eviction
+ * first bumps a generation of its series, and a load only keeps its chunks if the generation it
+ * started with is still current once they are cached. This covers evictions made on this
+ * instance; another instance's load can still put a chunk back in Redis, but writes mostly land in
+ * open chunks, which live there only for the open TTL.
+ */
+@Slf4j
+public final class MetricQueryCache {
+
+  private static final String KEY_PREFIX = "analytics:metric-cache:";
+
+  private static final String RAW = "raw";
+
+  private static final int GENERATION_STRIPES = 4096;
+
+  /** Loads a series' rows timestamped in {@code [start, end]}. */
+  @FunctionalInterface
+  public interface RangeLoader<T> {
+    List<T> load(LocalDateTime start, LocalDateTime end);
+  }
+
+  /** Told, after commit, about each series a write touched. */
+  @FunctionalInterface
+  public interface ChangeListener {
+    void changed(UUID tenantId, UUID entityId, MetricType type);
+  }
+
+  private record Chunk(List<?> rows, Duration localTtl) {}
+
+  private record Series(UUID tenantId, UUID entityId, MetricType type) {}
+
+  /** The eviction generation of a series' stripe when a load began. */
+  private final class Generation {
+
+    private final int stripe;
+    private final long value;
+
+    Generation(int stripe, long value) {
+      this.stripe = stripe;
+      this.value = value;
+    }
+
+    boolean isCurrent() {
+      return generations.get(stripe) == value;
+    }
+  }
+
+  private final Cache<String, Chunk> local;
+  private final StringRedisTemplate redis;
+  private final ObjectMapper objectMapper;
+  private final JavaType metricList;
+  private final JavaType aggregateList;
+  private final Duration openTtl;
+  private final Duration closedTtl;
+  private final Duration localTtl;
+  private final Duration settleTime;
+  private final int maxChunks;
+  private final Clock clock;
+
+  // Eviction generations of the series hashing to each stripe; sharing one only costs a reload
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+  private final LongAdder localHits = new LongAdder();
+  private final LongAdder remoteHits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder bypassed = new LongAdder();
+
+  /**
+   * @param redis the shared second level, or {@code null} to cache locally only
+   * @param maxChunks ranges spanning more chunks are loaded directly, uncached
+   * @param localMaxRows rows kept in the local cache across all chunks
+   */
+  public MetricQueryCache(
+      StringRedisTemplate redis,
+      ObjectMapper objectMapper,
+      Duration openTtl,
+      Duration closedTtl,
+      Duration localTtl,
+      Duration settleTime,
+      int maxChunks,
+      long localMaxRows,
+      Clock clock) {
+    this.redis = redis;
+    this.objectMapper =
+        objectMapper.copy().addMixIn(AggregatedMetric.class, CachedAggregatedMetric.class);
+    this.metricList =
+        this.objectMapper.getTypeFactory().constructCollectionType(List.class, Metric.class);
+    this.aggregateList =
+        this.objectMapper
+            .getTypeFactory()
+            .constructCollectionType(List.class, AggregatedMetric.class);
+    this.openTtl = openTtl;
+    this.closedTtl = closedTtl;
+    this.localTtl = localTtl;
+    this.settleTime = settleTime;
+    this.maxChunks = maxChunks;
+    this.clock = clock;
+    this.local =
+        Caffeine.newBuilder()
+            .maximumWeight(localMaxRows)
+            .<String, Chunk>weigher((key, chunk) -> chunk.rows().size() + 1)
+            .expireAfter(new ChunkExpiry())
+            .build();
+  }
+
+  /** Raw metrics of one series timestamped in {@code [start, end]}. */
+  public List<Metric> getMetrics(
+      UUID tenantId,
+      UUID entityId,
+      MetricType type,
+      LocalDateTime start,
+      LocalDateTime end,
+      RangeLoader<Metric> loader) {
+    return get(
+        series(tenantId, RAW, entityId, type),
+        AggregationPeriod.HOUR,
+        start,
+        end,
+        Metric::getTimestamp,
+        metricList,
+        loader);
+  }
+
+  /** {@code period} aggregates of one series starting in {@code [start, end]}. */
+  public List<AggregatedMetric> getAggregatedMetrics(
+      UUID tenantId,
+      UUID entityId,
+      MetricType type,
+      AggregationPeriod period,
+      LocalDateTime start,
+      LocalDateTime end,
+      RangeLoader<AggregatedMetric> loader) {
+    return get(
+        series(tenantId, period.name(), entityId, type),
+        chunkPeriod(period),
+        start,
+        end,
+        AggregatedMetric::getPeriodStart,
+        aggregateList,
+        loader);
+  }
+
+  /** Evicts the chunks the metrics were written to. */
+  public void evictMetrics(Collection<Metric> metrics) {
+    Set<String> keys = new HashSet<>();
+    Set<Series> changed = new HashSet<>();
+    for (Metric metric : metrics) {
+      changed.add(new Series(metric.getTenantId(), metric.getEntityId(), metric.getType()));
+      keys.add(
+          key(
+              series(metric.getTenantId(), RAW, metric.getEntityId(), metric.getType()),
+              AggregationPeriod.HOUR.bucketStart(metric.getTimestamp())));
+    }
+    evict(keys, changed);
+  }
+
+  /** Evicts the chunks the aggregates were written to. */
+  public void evictAggregates(Collection<AggregatedMetric> aggregates) {
+    Set<String> keys = new HashSet<>();
+    Set<Series> changed = new HashSet<>();
+    for (AggregatedMetric aggregate : aggregates) {
+      AggregationPeriod period = aggregate.getPeriod();
+      changed.add(
+          new Series(aggregate.getTenantId(), aggregate.getEntityId(), aggregate.getType()));
+      keys.add(
+          key(
+              series(
+                  aggregate.getTenantId(),
+                  period.name(),
+                  aggregate.getEntityId(),
+                  aggregate.getType()),
+              chunkPeriod(period).bucketStart(aggregate.getPeriodStart())));
+    }
+    evict(keys, changed);
+  }
+
+  /** Evicts every raw-metric chunk starting before {@code cutoff}, once older metrics are gone. */
+  public void evictMetricsBefore(LocalDateTime cutoff) {
+    long cutoffSecond = cutoff.toEpochSecond(ZoneOffset.UTC);
+    for (int i = 0; i < GENERATION_STRIPES; i++) {
+      generations.incrementAndGet(i);
+    }
+    local.asMap().keySet().removeIf(key -> isRaw(key) && chunkSecond(key) < cutoffSecond);
+    if (redis == null) {
+      return;
+    }
+    List<String> expired = new ArrayList<>();
+    ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build();
+    try (Cursor<String> cursor = redis.scan(options)) {
+      while (cursor.hasNext()) {
+        String key = cursor.next();
+        if (isRaw(key) && chunkSecond(key) < cutoffSecond) {
+          expired.add(key);
+        }
+      }
+      if (!expired.isEmpty()) {
+        redis.delete(expired);
+      }
+    } catch (RuntimeException e) {
+      log.warn("Could not evict metric chunks before {} from Redis", cutoff, e);
+    }
+  }
+
+  public void addChangeListener(ChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  public long localHits() {
+    return localHits.sum();
+  }
+
+  public long remoteHits() {
+    return remoteHits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  public long bypassed() {
+    return bypassed.sum();
+  }
+
+  public long localSize() {
+    return local.estimatedSize();
+  }
+
+  private <T> List<T> get(
+      String series,
+      AggregationPeriod chunkPeriod,
+      LocalDateTime start,
+      LocalDateTime end,
+      Function<T, LocalDateTime> timeOf,
+      JavaType listType,
+      RangeLoader<T> loader) {
+    if (end.isBefore(start)) {
+      return List.of();
+    }
+    // Read before anything is looked up, so an eviction from here on voids what this load caches
+    Generation generation = generation(series);
+    List<LocalDateTime> starts = new ArrayList<>();
+    LocalDateTime last = chunkPeriod.bucketStart(end);
+    for (LocalDateTime chunk = chunkPeriod.bucketStart(start);
+        !chunk.isAfter(last);
+        chunk = chunkPeriod.nextBucket(chunk)) {
+      if (starts.size() == maxChunks) {
+        bypassed.increment();
+        return loader.load(start, end);
+      }
+      starts.add(chunk);
+    }
+
+    List<String> keys = new ArrayList<>(starts.size());
+    List<List<T>> chunks = new ArrayList<>(Collections.nCopies(starts.size(), null));
+    List<Integer> missing = new ArrayList<>();
+    for (int i = 0; i < starts.size(); i++) {
+      String key = key(series, starts.get(i));
+      keys.add(key);
+      Chunk cached = local.getIfPresent(key);
+      if (cached != null) {
+        localHits.increment();
+        chunks.set(i, rows(cached));
+      } else {
+        missing.add(i);
+      }
+    }
+    if (!missing.isEmpty() && redis != null) {
+      missing = readRemote(keys, starts, chunkPeriod, missing, chunks, listType, generation);
+    }
+    // One query per run of adjacent missing chunks
+    for (int from = 0; from < missing.size(); ) {
+      int to = from;
+      while (to + 1 < missing.size() && missing.get(to + 1) == missing.get(to) + 1) {
+        to++;
+      }
+      load(
+          keys,
+          starts,
+          chunkPeriod,
+          missing.subList(from, to + 1),
+          chunks,
+          timeOf,
+          loader,
+          generation);
+      from = to + 1;
+    }
+
+    List<T> result = new ArrayList<>();
+    for (List<T> rows : chunks) {
+      for (T row : rows) {
+        LocalDateTime time = timeOf.apply(row);
+        if (!time.isBefore(start) && !time.isAfter(end)) {
+          result.add(row);
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Fills the chunks found in Redis and returns the indexes still missing. */
+  private <T> List<Integer> readRemote(
+      List<String> keys,
+      List<LocalDateTime> starts,
+      AggregationPeriod chunkPeriod,
+      List<Integer> missing,
+      List<List<T>> chunks,
+      JavaType listType,
+      Generation generation) {
+    List<String> values;
+    try {
+      values = redis.opsForValue().multiGet(missing.stream().map(keys::get).toList());
+    } catch (RuntimeException e) {
+      log.debug("Metric cache unavailable in Redis", e);
+      return missing;
+    }
+    if (values == null) {
+      return missing;
+    }
+    List<Integer> stillMissing = new ArrayList<>();
+    for (int j = 0; j < missing.size(); j++) {
+      int i = missing.get(j);
+      List<T> rows = values.get(j) != null ? decode(values.get(j), listType) : null;
+      if (rows == null) {
+        stillMissing.add(i);
+        continue;
+      }
+      remoteHits.increment();
+      chunks.set(i, rows);
+      LocalDateTime chunkEnd = chunkPeriod.nextBucket(starts.get(i));
+      putLocal(keys.get(i), new Chunk(rows, min(localTtl, remoteTtl(chunkEnd))), generation);
+    }
+    return stillMissing;
+  }
+
+  /** Loads a run of adjacent chunks with one query and caches each. */
+  private <T> void load(
+      List<String> keys,
+      List<LocalDateTime> starts,
+      AggregationPeriod chunkPeriod,
+      List<Integer> run,
+      List<List<T>> chunks,
+      Function<T, LocalDateTime> timeOf,
+      RangeLoader<T> loader,
+      Generation generation) {
+    LocalDateTime runStart = starts.get(run.get(0));
+    LocalDateTime runEnd = chunkPeriod.nextBucket(starts.get(run.get(run.size() - 1)));
+    Map<LocalDateTime, Integer> indexes = new HashMap<>();
+    for (int i : run) {
+      chunks.set(i, new ArrayList<>());
+      indexes.put(starts.get(i), i);
+    }
+    for (T row : loader.load(runStart, runEnd)) {
+      // The end bound is inclusive; a row exactly on it belongs to the chunk after the run
+      Integer i = indexes.get(chunkPeriod.bucketStart(timeOf.apply(row)));
+      if (i != null) {
+        chunks.get(i).add(row);
+      }
+    }
+
+    for (int i : run) {
+      misses.increment();
+      List<T> rows = Collections.unmodifiableList(chunks.get(i));
+      chunks.set(i, rows);
+      Duration remoteTtl = remoteTtl(chunkPeriod.nextBucket(starts.get(i)));
+      // Encoding also initialises lazy collections before the rows leave the session
+      String json = encode(rows);
+      if (putLocal(keys.get(i), new Chunk(rows, min(localTtl, remoteTtl)), generation)
+          && redis != null
+          && json != null) {
+        putRemote(keys.get(i), json, remoteTtl, generation);
+      }
+    }
+  }
+
+  /** Caches a chunk locally unless its series was evicted since the load began. */
+  private boolean putLocal(String key, Chunk chunk, Generation generation) {
+    if (!generation.isCurrent()) {
+      return false;
+    }
+    local.put(key, chunk);
+    // An eviction between the check and the put may have invalidated before it
+    if (!generation.isCurrent()) {
+      local.asMap().remove(key, chunk);
+      return false;
+    }
+    return true;
+  }
+
+  private void putRemote(String key, String json, Duration ttl, Generation generation) {
+    try {
+      redis.opsForValue().set(key, json, ttl);
+      if (!generation.isCurrent()) {
+        redis.delete(key);
+      }
+    } catch (RuntimeException e) {
+      log.debug("Metric cache unavailable in Redis", e);
+    }
+  }
+
+  private void evict(Set<String> keys, Set<Series> changed) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              evictNow(keys, changed);
+            }
+          });
+    } else {
+      evictNow(keys, changed);
+    }
+  }
+
+  private void evictNow(Set<String> keys, Set<Series> changed) {
+    // Before the chunks go, so that a load still running cannot put them back
+    keys.stream()
+        .map(key -> stripe(key.substring(0, key.lastIndexOf(':') + 1)))
+        .distinct()
+        .forEach(generations::incrementAndGet);
+    local.invalidateAll(keys);
+    if (redis != null) {
+      try {
+        redis.delete(keys);
+      } catch (RuntimeException e) {
+        log.warn("Could not evict {} metric chunks from Redis", keys.size(), e);
+      }
+    }
+    // Only now, so that whatever listeners recompute no longer sees the evicted chunks
+    for (Series series : changed) {
+      for (ChangeListener listener : listeners) {
+        listener.changed(series.tenantId(), series.entityId(), series.type());
+      }
+    }
+  }
+
+  /** How long a chunk ending at {@code chunkEnd} may be kept in Redis. */
+  private Duration remoteTtl(LocalDateTime chunkEnd) {
+    LocalDateTime settled = chunkEnd.plus(settleTime);
+    return settled.isAfter(LocalDateTime.now(clock)) ? openTtl : closedTtl;
+  }
+
+  private String encode(List<?> rows) {
+    try {
+      return objectMapper.writeValueAsString(rows);
+    } catch (JsonProcessingException e) {
+      log.warn("Could not encode metric chunk", e);
+      return null;
+    }
+  }
+
+  private <T> List<T> decode(String json, JavaType listType) {
+    try {
+      List<T> rows = objectMapper.readValue(json, listType);
+      return Collections.unmodifiableList(rows);
+    } catch (JsonProcessingException e) {
+      log.debug("Ignoring unreadable metric chunk", e);
+      return null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> List<T> rows(Chunk chunk) {
+    return (List<T>) chunk.rows();
+  }
+
+  /** Chunks hold several buckets of the period, so a typical range spans only a few. */
+  private static AggregationPeriod chunkPeriod(AggregationPeriod period) {
+    return switch (period) {
+      case MINUTE -> AggregationPeriod.HOUR;
+      case HOUR -> AggregationPeriod.DAY;
+      case DAY -> AggregationPeriod.MONTH;
+      case WEEK, MONTH, QUARTER, YEAR -> AggregationPeriod.YEAR;
+    };
+  }
+
+  /** Keys start with the tenant, so no write ever evicts another tenant's chunks. */
+  private static String series(UUID tenantId, String kind, UUID entityId, MetricType type) {
+    return KEY_PREFIX + tenantId + ":" + kind + ":" + entityId + ":" + type + ":";
+  }
+
+  private Generation generation(String series) {
+    int stripe = stripe(series);
+    return new Generation(stripe, generations.get(stripe));
+  }
+
+  private static int stripe(String series) {
+    return Math.floorMod(series.hashCode(), GENERATION_STRIPES);
+  }
+
+  private static String key(String series, LocalDateTime chunkStart) {
+    return series + chunkStart.toEpochSecond(ZoneOffset.UTC);
+  }
+
+  private static boolean isRaw(String key) {
+    return key.contains(":" + RAW + ":");
+  }
+
+  private static long chunkSecond(String key) {
+    return Long.parseLong(key.substring(key.lastIndexOf(':') + 1));
+  }
+
+  private static Duration min(Duration a, Duration b) {
+    return a.compareTo(b) <= 0 ? a : b;
+  }
+
+  private static final class ChunkExpiry implements Expiry<String, Chunk> {
+
+    @Override
+    public long expireAfterCreate(String key, Chunk chunk, long currentTime) {
+      return chunk.localTtl().toNanos();
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String key, Chunk chunk, long currentTime, long currentDuration) {
+      return chunk.localTtl().toNanos();
+    }
+
+    @Override
+    public long expireAfterRead(String key, Chunk chunk, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+  /** Keeps the sketch, hidden from API responses, in cached aggregates. */
+  private abstract static class CachedAggregatedMetric {
+
+    @JsonIgnore(false)
+    private byte[] sketch;
+
+    @JsonIgnore(false)
+    abstract byte[] getSketch();
+
+    @JsonIgnore(false)
+    abstract void setSketch(byte[] sketch);
+  }
+}
@@ -0,0 +1,61 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
+import com.twelvenexus.oneplan.analytics.dashboard.DashboardSnapshots;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Clock;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class DashboardConfiguration {
+
+  @Value("${analytics.dashboards.max-age:PT1M}")
+  private Duration maxAge;
+
+  @Value("${analytics.dashboards.widget-timeout:PT30S}")
+  private Duration widgetTimeout;
+
+  @Value("${analytics.dashboards.parallelism:8}")
+  private int parallelism;
+
+  @Value("${analytics.dashboards.max-snapshots:10000}")
+  private long maxSnapshots;
+
+  @Value("${analytics.dashboards.snapshot-idle:PT30M}")
+  private Duration snapshotIdle;
+
+  @Bean(destroyMethod = "close")
+  public DashboardSnapshots dashboardSnapshots(MetricQueryCache metricQueryCache) {
+    DashboardSnapshots snapshots =
+        new DashboardSnapshots(
+            maxAge,
+            widgetTimeout,
+            parallelism,
+            maxSnapshots,
+            snapshotIdle,
+            Clock.systemDefaultZone());
+    metricQueryCache.addChangeListener(snapshots);
+    return snapshots;
+  }
+
+  @Bean
+  public MeterBinder dashboardSnapshotMetrics(DashboardSnapshots snapshots) {
+    return registry -> {
+      FunctionCounter.builder(
+              "analytics.dashboard.widgets.cached", snapshots, DashboardSnapshots::cached)
+          .description("Widgets served from a dashboard snapshot")
+          .register(registry);
+      FunctionCounter.builder(
+              "analytics.dashboard.widgets.refreshed", snapshots, DashboardSnapshots::refreshed)
+          .description("Widgets recomputed because their metrics changed or aged out")
+          .register(registry);
+      Gauge.builder("analytics.dashboard.snapshots", snapshots, DashboardSnapshots::size)
+          .register(registry);
+    };
+  }
+}
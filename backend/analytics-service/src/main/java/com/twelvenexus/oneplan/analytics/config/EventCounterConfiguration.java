@@ -0,0 +1,29 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.twelvenexus.oneplan.analytics.counter.EventCounters;
+import com.twelvenexus.oneplan.analytics.repository.EventCountRepository;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Slf4j
+@Configuration
+public class EventCounterConfiguration {
+
+  @Value("${analytics.counters.horizon:PT24H}")
+  private Duration horizon;
+
+  /** Counters seeded with the checkpointed counts still inside the horizon. */
+  @Bean
+  public EventCounters eventCounters(EventCountRepository repository) {
+    EventCounters counters = new EventCounters(horizon, Clock.systemDefaultZone());
+    LocalDateTime horizonStart = counters.horizonStart();
+    counters.restore(repository.findUpdatedSince(horizonStart, horizonStart));
+    log.info("Event counters complete from {}", counters.coveredFrom());
+    return counters;
+  }
+}
@@ -0,0 +1,108 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.twelvenexus.oneplan.analytics.ingest.EventIngestionBuffer;
+import com.twelvenexus.oneplan.analytics.ingest.EventWriteAheadLog;
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.util.unit.DataSize;
+
+@Slf4j
+@Configuration
+public class EventIngestionConfiguration {
+
+  private static final int DUPLICATE_KEY = 11000;
+
+  @Value("${analytics.ingestion.capacity:65536}")
+  private int capacity;
+
+  @Value("${analytics.ingestion.batch-size:1000}")
+  private int batchSize;
+
+  @Value("${analytics.ingestion.flush-interval:200ms}")
+  private Duration flushInterval;
+
+  @Value("${analytics.ingestion.wal.enabled:false}")
+  private boolean walEnabled;
+
+  @Value("${analytics.ingestion.wal.directory:${java.io.tmpdir}/oneplan-analytics-wal}")
+  private Path walDirectory;
+
+  @Value("${analytics.ingestion.wal.segment-size:64MB}")
+  private DataSize walSegmentSize;
+
+  @Bean(destroyMethod = "close")
+  public EventIngestionBuffer eventIngestionBuffer(
+      MongoTemplate mongoTemplate, ObjectMapper objectMapper) throws IOException {
+    EventWriteAheadLog writeAheadLog = null;
+    if (walEnabled) {
+      writeAheadLog =
+          new EventWriteAheadLog(walDirectory, walSegmentSize.toBytes(), objectMapper);
+      List<AnalyticsEvent> recovered = writeAheadLog.recover();
+      if (!recovered.isEmpty()) {
+        log.info("Replaying {} events from the write-ahead log", recovered.size());
+        for (int i = 0; i < recovered.size(); i += batchSize) {
+          int end = Math.min(i + batchSize, recovered.size());
+          insertAll(mongoTemplate, recovered.subList(i, end));
+        }
+      }
+      writeAheadLog.deleteRecovered();
+    }
+
+    EventIngestionBuffer buffer =
+        new EventIngestionBuffer(
+            capacity,
+            batchSize,
+            flushInterval,
+            events -> insertAll(mongoTemplate, events),
+            writeAheadLog);
+    buffer.start();
+    return buffer;
+  }
+
+  @Bean
+  public MeterBinder eventIngestionMetrics(EventIngestionBuffer buffer) {
+    return registry -> {
+      Gauge.builder("analytics.ingestion.buffered", buffer, EventIngestionBuffer::size)
+          .description("Events accepted but not yet written to Mongo")
+          .register(registry);
+      FunctionCounter.builder(
+              "analytics.ingestion.persisted", buffer, EventIngestionBuffer::persisted)
+          .register(registry);
+      FunctionCounter.builder(
+              "analytics.ingestion.rejected", buffer, EventIngestionBuffer::rejected)
+          .description("Events refused because the buffer was full")
+          .register(registry);
+    };
+  }
+
+  /**
+   * Unordered bulk insert. Events carry their ids from submission, so a batch replayed after a
+   * partial write only trips duplicate keys, which are ignored.
+   */
+  private static void insertAll(MongoTemplate mongoTemplate, List<AnalyticsEvent> events) {
+    try {
+      mongoTemplate.bulkOps(BulkMode.UNORDERED, AnalyticsEvent.class).insert(events).execute();
+    } catch (BulkOperationException e) {
+      for (BulkWriteError error : e.getErrors()) {
+        if (error.getCode() != DUPLICATE_KEY) {
+          throw e;
+        }
+      }
+    }
+  }
+}
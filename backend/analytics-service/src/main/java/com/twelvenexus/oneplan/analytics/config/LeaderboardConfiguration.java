@@ -0,0 +1,16 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.twelvenexus.oneplan.analytics.leaderboard.Leaderboards;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import java.time.Clock;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LeaderboardConfiguration {
+
+  @Bean
+  public Leaderboards leaderboards(MetricStore metricStore) {
+    return new Leaderboards(metricStore, Clock.systemDefaultZone());
+  }
+}
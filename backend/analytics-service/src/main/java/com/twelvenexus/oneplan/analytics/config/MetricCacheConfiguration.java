@@ -0,0 +1,76 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Clock;
+import java.time.Duration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+@Configuration
+public class MetricCacheConfiguration {
+
+  @Value("${analytics.cache.open-ttl:PT30S}")
+  private Duration openTtl;
+
+  @Value("${analytics.cache.closed-ttl:P7D}")
+  private Duration closedTtl;
+
+  @Value("${analytics.cache.local-ttl:PT1M}")
+  private Duration localTtl;
+
+  @Value("${analytics.cache.settle-time:PT2H}")
+  private Duration settleTime;
+
+  @Value("${analytics.cache.max-chunks:744}")
+  private int maxChunks;
+
+  @Value("${analytics.cache.local-max-rows:200000}")
+  private long localMaxRows;
+
+  @Value("${analytics.cache.redis.enabled:true}")
+  private boolean redisEnabled;
+
+  @Bean
+  public MetricQueryCache metricQueryCache(
+      ObjectProvider<StringRedisTemplate> redisTemplate, ObjectMapper objectMapper) {
+    return new MetricQueryCache(
+        redisEnabled ? redisTemplate.getIfAvailable() : null,
+        objectMapper,
+        openTtl,
+        closedTtl,
+        localTtl,
+        settleTime,
+        maxChunks,
+        localMaxRows,
+        Clock.systemDefaultZone());
+  }
+
+  @Bean
+  public MeterBinder metricQueryCacheMetrics(MetricQueryCache cache) {
+    return registry -> {
+      FunctionCounter.builder(
+              "analytics.metric.cache.local.hits", cache, MetricQueryCache::localHits)
+          .description("Metric chunks served from this instance")
+          .register(registry);
+      FunctionCounter.builder(
+              "analytics.metric.cache.remote.hits", cache, MetricQueryCache::remoteHits)
+          .description("Metric chunks served from Redis")
+          .register(registry);
+      FunctionCounter.builder("analytics.metric.cache.misses", cache, MetricQueryCache::misses)
+          .description("Metric chunks loaded from the store")
+          .register(registry);
+      FunctionCounter.builder("analytics.metric.cache.bypassed", cache, MetricQueryCache::bypassed)
+          .description("Queries spanning too many chunks to cache")
+          .register(registry);
+      Gauge.builder("analytics.metric.cache.local.size", cache, MetricQueryCache::localSize)
+          .register(registry);
+    };
+  }
+}
@@ -0,0 +1,28 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.twelvenexus.oneplan.analytics.store.columnar.ColumnarMetricStore;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Clock;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/** The columnar metric store; the JPA one is a component active unless this one is selected. */
+@Configuration
+@ConditionalOnProperty(name = "analytics.metrics.store", havingValue = "columnar")
+public class MetricStoreConfiguration {
+
+  @Value("${analytics.metrics.columnar.directory}")
+  private Path directory;
+
+  @Value("${analytics.metrics.columnar.segment-size:64MB}")
+  private DataSize segmentSize;
+
+  @Bean
+  public ColumnarMetricStore columnarMetricStore() throws IOException {
+    return new ColumnarMetricStore(directory, segmentSize.toBytes(), Clock.systemDefaultZone());
+  }
+}
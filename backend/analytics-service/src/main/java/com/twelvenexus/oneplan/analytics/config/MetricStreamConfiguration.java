@@ -0,0 +1,89 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.stream.MetricStreamHub;
+import com.twelvenexus.oneplan.analytics.stream.MetricUpdate;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Slf4j
+@Configuration
+public class MetricStreamConfiguration {
+
+  private static final TypeReference<List<MetricUpdate>> UPDATES = new TypeReference<>() {};
+
+  @Value("${analytics.streams.max-topics:50}")
+  private int maxTopics;
+
+  @Value("${analytics.streams.heartbeat-interval:PT15S}")
+  private Duration heartbeatInterval;
+
+  @Value("${analytics.streams.redis.enabled:true}")
+  private boolean redisEnabled;
+
+  @Bean(destroyMethod = "close")
+  public MetricStreamHub metricStreamHub(
+      ObjectProvider<StringRedisTemplate> redisTemplate, ObjectMapper objectMapper) {
+    StringRedisTemplate redis = redisEnabled ? redisTemplate.getIfAvailable() : null;
+    MetricStreamHub.Relay relay =
+        redis == null
+            ? null
+            : updates ->
+                redis.convertAndSend(
+                    MetricStreamHub.CHANNEL, objectMapper.writeValueAsString(updates));
+    return new MetricStreamHub(relay, maxTopics, heartbeatInterval);
+  }
+
+  /** Feeds updates relayed by any instance to this instance's subscribers. */
+  @Bean
+  @ConditionalOnProperty(
+      name = "analytics.streams.redis.enabled",
+      havingValue = "true",
+      matchIfMissing = true)
+  public RedisMessageListenerContainer metricStreamListener(
+      RedisConnectionFactory connectionFactory, MetricStreamHub hub, ObjectMapper objectMapper) {
+    RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    container.setConnectionFactory(connectionFactory);
+    container.addMessageListener(
+        (message, pattern) -> {
+          try {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            hub.deliver(objectMapper.readValue(body, UPDATES));
+          } catch (Exception e) {
+            log.warn("Ignoring unreadable metric stream message", e);
+          }
+        },
+        new ChannelTopic(MetricStreamHub.CHANNEL));
+    return container;
+  }
+
+  @Bean
+  public MeterBinder metricStreamMetrics(MetricStreamHub hub) {
+    return registry -> {
+      Gauge.builder("analytics.streams.subscribers", hub, MetricStreamHub::subscribers)
+          .description("Live metric stream clients on this instance")
+          .register(registry);
+      FunctionCounter.builder("analytics.streams.sent", hub, MetricStreamHub::sent)
+          .description("Updates sent to live metric stream clients")
+          .register(registry);
+      FunctionCounter.builder("analytics.streams.conflated", hub, MetricStreamHub::conflated)
+          .description("Updates superseded before a slow client could be sent them")
+          .register(registry);
+    };
+  }
+}
@@ -0,0 +1,53 @@
+package com.twelvenexus.oneplan.analytics.config;
+
+import com.twelvenexus.oneplan.analytics.report.ReportExecutor;
+import com.twelvenexus.oneplan.analytics.report.ReportSchedule;
+import com.twelvenexus.oneplan.analytics.report.ReportScheduler;
+import com.twelvenexus.oneplan.analytics.repository.ReportRunRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ReportExecutionConfiguration {
+
+  @Value("${analytics.processing.instance-id}")
+  private String instanceId;
+
+  @Value("${analytics.reports.workers:8}")
+  private int workers;
+
+  @Value("${analytics.reports.per-tenant:2}")
+  private int perTenant;
+
+  @Value("${analytics.reports.timeout:PT10M}")
+  private Duration timeout;
+
+  @Value("${analytics.reports.cancel-poll-interval:PT5S}")
+  private Duration cancelPollInterval;
+
+  @Value("${analytics.reports.schedule-jitter:PT10M}")
+  private Duration scheduleJitter;
+
+  @Bean(destroyMethod = "close")
+  public ReportExecutor reportExecutor(
+      ReportRunRepository runRepository, MeterRegistry meterRegistry) {
+    return new ReportExecutor(
+        runRepository, meterRegistry, instanceId, workers, perTenant, timeout, cancelPollInterval);
+  }
+
+  @Bean
+  public ReportSchedule reportSchedule() {
+    return new ReportSchedule(scheduleJitter);
+  }
+
+  @Bean(destroyMethod = "close")
+  public ReportScheduler reportScheduler() {
+    ReportScheduler scheduler = new ReportScheduler(Clock.systemDefaultZone());
+    scheduler.start();
+    return scheduler;
+  }
+}
@@ -1,7 +1,7 @@
 package com.twelvenexus.oneplan.analytics.config;
 
-import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
 import com.twelvenexus.oneplan.analytics.service.AnalyticsEventService;
+import com.twelvenexus.oneplan.analytics.service.MetricRollupService;
 import com.twelvenexus.oneplan.analytics.service.MetricService;
 import com.twelvenexus.oneplan.analytics.service.ReportService;
 import lombok.RequiredArgsConstructor;
@@ -19,6 +19,7 @@ public class SchedulingConfiguration {
 
   private final AnalyticsEventService eventService;
   private final MetricService metricService;
+  private final MetricRollupService rollupService;
   private final ReportService reportService;
 
   @Value("${analytics.retention.raw-data-days}")
@@ -33,33 +34,19 @@ public class SchedulingConfiguration {
     eventService.processEvents();
   }
 
-  @Scheduled(cron = "0 0 * * * ?") // Every hour
-  public void aggregateHourlyMetrics() {
-    log.info("Aggregating hourly metrics");
-    metricService.aggregateMetrics(AggregationPeriod.HOUR);
+  @Scheduled(fixedDelayString = "${analytics.counters.checkpoint-interval}")
+  public void checkpointEventCounts() {
+    eventService.checkpointEventCounts();
   }
 
-  @Scheduled(cron = "0 0 0 * * ?") // Daily at midnight
-  public void aggregateDailyMetrics() {
-    log.info("Aggregating daily metrics");
-    metricService.aggregateMetrics(AggregationPeriod.DAY);
+  @Scheduled(fixedDelayString = "${analytics.rollup.interval}")
+  public void rollUpMetrics() {
+    log.debug("Rolling up metrics");
+    rollupService.rollUp();
   }
 
-  @Scheduled(cron = "0 0 0 * * SUN") // Weekly on Sunday
-  public void aggregateWeeklyMetrics() {
-    log.info("Aggregating weekly metrics");
-    metricService.aggregateMetrics(AggregationPeriod.WEEK);
-  }
-
-  @Scheduled(cron = "0 0 0 1 * ?") // Monthly on the 1st
-  public void aggregateMonthlyMetrics() {
-    log.info("Aggregating monthly metrics");
-    metricService.aggregateMetrics(AggregationPeriod.MONTH);
-  }
-
-  @Scheduled(cron = "0 0 */4 * * ?") // Every 4 hours
+  @Scheduled(fixedDelayString = "${analytics.reports.poll-interval}")
   public void processScheduledReports() {
-    log.info("Processing scheduled reports");
     reportService.processScheduledReports();
   }
 
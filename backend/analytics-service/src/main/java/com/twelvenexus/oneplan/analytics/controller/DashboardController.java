@@ -11,9 +11,11 @@ import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 @RestController
 @RequestMapping("/api/v1/dashboards")
@@ -47,12 +49,32 @@ public class DashboardController {
     return ResponseEntity.ok(toDto(dashboard));
   }
 
+  /**
+   * Tagged with the dashboard's version, so clients and the gateway's response cache revalidate a
+   * copy they hold with one indexed read instead of loading the dashboard and its widgets.
+   */
   @GetMapping("/{dashboardId}")
   @Operation(summary = "Get a dashboard")
   public ResponseEntity<DashboardDto> getDashboard(
-      @PathVariable UUID dashboardId, @RequestHeader("X-Tenant-Id") UUID tenantId) {
+      @PathVariable UUID dashboardId,
+      @RequestHeader("X-Tenant-Id") UUID tenantId,
+      WebRequest request) {
+    String etag = "\"" + dashboardService.getDashboardVersion(dashboardId, tenantId) + "\"";
+    if (request.checkNotModified(etag)) {
+      return null; // 304 already set
+    }
     Dashboard dashboard = dashboardService.getDashboard(dashboardId, tenantId);
-    return ResponseEntity.ok(toDto(dashboard));
+    return ResponseEntity.ok()
+        .eTag(etag)
+        .cacheControl(CacheControl.noCache())
+        .body(toDto(dashboard));
+  }
+
+  @GetMapping("/{dashboardId}/data")
+  @Operation(summary = "Get the data of every widget of a dashboard")
+  public ResponseEntity<DashboardDataDto> renderDashboard(
+      @PathVariable UUID dashboardId, @RequestHeader("X-Tenant-Id") UUID tenantId) {
+    return ResponseEntity.ok(dashboardService.renderDashboard(dashboardId, tenantId));
   }
 
   @GetMapping
@@ -80,20 +102,33 @@ public class DashboardController {
     return new ResponseEntity<>(toWidgetDto(widget), HttpStatus.CREATED);
   }
 
+  @PutMapping("/{dashboardId}/widgets/layout")
+  @Operation(summary = "Move and resize widgets of a dashboard in one call")
+  public ResponseEntity<Void> updateLayout(
+      @PathVariable UUID dashboardId,
+      @RequestHeader("X-Tenant-Id") UUID tenantId,
+      @RequestBody List<@Valid WidgetLayoutDto> layouts) {
+    dashboardService.updateLayout(dashboardId, tenantId, layouts);
+    return ResponseEntity.noContent().build();
+  }
+
   @PutMapping("/widgets/{widgetId}")
   @Operation(summary = "Update a widget")
   public ResponseEntity<DashboardWidgetDto> updateWidget(
-      @PathVariable UUID widgetId, @Valid @RequestBody CreateWidgetDto dto) {
+      @PathVariable UUID widgetId,
+      @RequestHeader("X-Tenant-Id") UUID tenantId,
+      @Valid @RequestBody CreateWidgetDto dto) {
     DashboardWidget widget =
-        dashboardService.updateWidget(widgetId, dto.getTitle(), dto.getConfiguration());
+        dashboardService.updateWidget(widgetId, tenantId, dto.getTitle(), dto.getConfiguration());
 
     return ResponseEntity.ok(toWidgetDto(widget));
   }
 
   @DeleteMapping("/widgets/{widgetId}")
   @Operation(summary = "Remove a widget")
-  public ResponseEntity<Void> removeWidget(@PathVariable UUID widgetId) {
-    dashboardService.removeWidget(widgetId);
+  public ResponseEntity<Void> removeWidget(
+      @PathVariable UUID widgetId, @RequestHeader("X-Tenant-Id") UUID tenantId) {
+    dashboardService.removeWidget(widgetId, tenantId);
     return ResponseEntity.noContent().build();
   }
 
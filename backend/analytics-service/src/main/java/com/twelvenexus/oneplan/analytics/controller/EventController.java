@@ -1,17 +1,20 @@
 package com.twelvenexus.oneplan.analytics.controller;
 
 import com.twelvenexus.oneplan.analytics.dto.EventDto;
+import com.twelvenexus.oneplan.analytics.ingest.EventBufferFullException;
 import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
 import com.twelvenexus.oneplan.analytics.service.AnalyticsEventService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +25,8 @@ import org.springframework.web.bind.annotation.*;
 @Tag(name = "Events", description = "Analytics event tracking")
 public class EventController {
 
+  private static final int MAX_BATCH_SIZE = 1000;
+
   private final AnalyticsEventService eventService;
 
   @PostMapping
@@ -45,6 +50,25 @@ public class EventController {
     return new ResponseEntity<>(HttpStatus.CREATED);
   }
 
+  @PostMapping("/batch")
+  @Operation(summary = "Track a batch of events")
+  public ResponseEntity<Void> trackEvents(
+      @RequestHeader("X-Tenant-Id") UUID tenantId,
+      @RequestBody @Size(min = 1, max = MAX_BATCH_SIZE) List<@Valid EventDto> events,
+      HttpServletRequest request) {
+    eventService.trackEvents(
+        tenantId, events, request.getHeader("User-Agent"), request.getRemoteAddr());
+
+    return new ResponseEntity<>(HttpStatus.ACCEPTED);
+  }
+
+  @ExceptionHandler(EventBufferFullException.class)
+  public ResponseEntity<Void> handleBufferFull(EventBufferFullException e) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+        .header(HttpHeaders.RETRY_AFTER, "1")
+        .build();
+  }
+
   @GetMapping("/entity/{entityId}")
   @Operation(summary = "Get events for an entity")
   public ResponseEntity<List<AnalyticsEvent>> getEntityEvents(
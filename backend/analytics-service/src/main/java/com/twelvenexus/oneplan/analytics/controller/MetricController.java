@@ -1,23 +1,40 @@
 package com.twelvenexus.oneplan.analytics.controller;
 
+import com.twelvenexus.oneplan.analytics.dto.BackfillResultDto;
 import com.twelvenexus.oneplan.analytics.dto.MetricDto;
 import com.twelvenexus.oneplan.analytics.dto.MetricQueryDto;
 import com.twelvenexus.oneplan.analytics.dto.RecordMetricDto;
 import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
 import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
 import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.service.MetricRollupService;
 import com.twelvenexus.oneplan.analytics.service.MetricService;
+import com.twelvenexus.oneplan.analytics.stream.MetricStreamHub;
+import com.twelvenexus.oneplan.analytics.stream.MetricUpdate;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/v1/metrics")
@@ -25,7 +42,14 @@ import org.springframework.web.bind.annotation.*;
 @Tag(name = "Metrics", description = "Metric recording and retrieval")
 public class MetricController {
 
+  private static final int MAX_TOP_LIMIT = 1000;
+
   private final MetricService metricService;
+  private final MetricRollupService rollupService;
+  private final MetricStreamHub metricStreamHub;
+
+  @Value("${analytics.streams.timeout:PT30M}")
+  private Duration streamTimeout;
 
   @PostMapping
   @Operation(summary = "Record a metric")
@@ -74,6 +98,44 @@ public class MetricController {
     return ResponseEntity.ok(metrics);
   }
 
+  @GetMapping("/aggregated/percentiles")
+  @Operation(summary = "Get arbitrary percentiles merged from aggregated metrics")
+  public ResponseEntity<Map<String, Double>> getPercentiles(
+      @RequestHeader("X-Tenant-Id") UUID tenantId,
+      @Valid MetricQueryDto query,
+      @RequestParam AggregationPeriod period,
+      @RequestParam(defaultValue = "0.5,0.9,0.95,0.99")
+          List<@DecimalMin("0") @DecimalMax("1") Double> quantiles) {
+    Map<String, Double> percentiles =
+        metricService.getPercentiles(
+            tenantId,
+            query.getEntityId(),
+            query.getType(),
+            period,
+            query.getStartDate(),
+            query.getEndDate(),
+            quantiles);
+
+    return ResponseEntity.ok(percentiles);
+  }
+
+  @PostMapping("/aggregated/backfill")
+  @PreAuthorize("hasRole('ADMIN')")
+  @Operation(summary = "Start rebuilding aggregates of a period range for all tenants")
+  public ResponseEntity<BackfillResultDto> backfill(
+      @RequestParam AggregationPeriod period,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+    return ResponseEntity.accepted().body(rollupService.startBackfill(period, from, to));
+  }
+
+  @GetMapping("/aggregated/backfill/{backfillId}")
+  @PreAuthorize("hasRole('ADMIN')")
+  @Operation(summary = "Get the progress or outcome of a backfill")
+  public ResponseEntity<BackfillResultDto> getBackfill(@PathVariable UUID backfillId) {
+    return ResponseEntity.of(rollupService.findBackfill(backfillId));
+  }
+
   @GetMapping("/statistics")
   @Operation(summary = "Get metric statistics")
   public ResponseEntity<Map<String, Double>> getMetricStatistics(
@@ -93,15 +155,65 @@ public class MetricController {
   @Operation(summary = "Get top performers")
   public ResponseEntity<List<MetricDto>> getTopPerformers(
       @RequestHeader("X-Tenant-Id") UUID tenantId,
-      @RequestParam String type,
-      @RequestParam String since,
-      @RequestParam(defaultValue = "10") int limit) {
-    // Parse date and call service
-    List<Metric> metrics = metricService.getTopPerformers(tenantId, null, null, limit);
+      @RequestParam MetricType type,
+      @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+      @RequestParam(defaultValue = "10") @Min(1) @Max(MAX_TOP_LIMIT) int limit) {
+    List<Metric> metrics = metricService.getTopPerformers(tenantId, type, since, limit);
 
     return ResponseEntity.ok(metrics.stream().map(this::toDto).collect(Collectors.toList()));
   }
 
+  @GetMapping("/leaderboard")
+  @Operation(summary = "Get the highest metrics of the current hour, day, week or month")
+  public ResponseEntity<List<MetricDto>> getLeaderboard(
+      @RequestHeader("X-Tenant-Id") UUID tenantId,
+      @RequestParam MetricType type,
+      @RequestParam(defaultValue = "DAY") AggregationPeriod window,
+      @RequestParam(defaultValue = "10") @Min(1) @Max(MAX_TOP_LIMIT) int limit) {
+    List<Metric> metrics = metricService.getLeaderboard(tenantId, type, window, limit);
+
+    return ResponseEntity.ok(metrics.stream().map(this::toDto).collect(Collectors.toList()));
+  }
+
+  @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  @Operation(
+      summary = "Stream new metric values and completed aggregates",
+      description =
+          "Server-sent events for the given entityId:TYPE topics. A slow client receives the"
+              + " latest value of each topic rather than every update.")
+  public SseEmitter streamMetrics(
+      @RequestHeader("X-Tenant-Id") UUID tenantId, @RequestParam List<String> topics) {
+    SseEmitter emitter = new SseEmitter(streamTimeout.toMillis());
+    MetricStreamHub.Subscription subscription =
+        metricStreamHub.subscribe(
+            tenantId,
+            topics,
+            new MetricStreamHub.Sink() {
+              @Override
+              public void send(MetricUpdate update) throws IOException {
+                emitter.send(
+                    SseEmitter.event()
+                        .name(update.event())
+                        .data(update, MediaType.APPLICATION_JSON));
+              }
+
+              @Override
+              public void heartbeat() throws IOException {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+              }
+
+              @Override
+              public void close() {
+                emitter.complete();
+              }
+            });
+    // Clients reconnect after the timeout, as EventSource does by itself
+    emitter.onCompletion(subscription::close);
+    emitter.onTimeout(subscription::close);
+    emitter.onError(e -> subscription.close());
+    return emitter;
+  }
+
   private MetricDto toDto(Metric metric) {
     MetricDto dto = new MetricDto();
     dto.setId(metric.getId());
@@ -3,11 +3,13 @@ package com.twelvenexus.oneplan.analytics.controller;
 import com.twelvenexus.oneplan.analytics.dto.CreateReportDto;
 import com.twelvenexus.oneplan.analytics.dto.ReportDto;
 import com.twelvenexus.oneplan.analytics.dto.UpdateReportDto;
+import com.twelvenexus.oneplan.analytics.enums.ReportFormat;
 import com.twelvenexus.oneplan.analytics.model.Report;
 import com.twelvenexus.oneplan.analytics.service.ReportService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -17,6 +19,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/v1/reports")
@@ -56,6 +59,14 @@ public class ReportController {
     return ResponseEntity.ok(toDto(report));
   }
 
+  @PostMapping("/{reportId}/cancel")
+  @Operation(summary = "Cancel a queued or running report")
+  public ResponseEntity<Void> cancelReport(@PathVariable UUID reportId) {
+    return reportService.cancelReport(reportId)
+        ? ResponseEntity.accepted().build()
+        : ResponseEntity.status(HttpStatus.CONFLICT).build();
+  }
+
   @GetMapping
   @Operation(summary = "Get user reports")
   public ResponseEntity<List<ReportDto>> getUserReports(
@@ -74,15 +85,18 @@ public class ReportController {
 
   @GetMapping("/{reportId}/export")
   @Operation(summary = "Export a report")
-  public ResponseEntity<byte[]> exportReport(
+  public ResponseEntity<StreamingResponseBody> exportReport(
       @PathVariable UUID reportId, @RequestParam(defaultValue = "csv") String format) {
-    byte[] content = reportService.exportReport(reportId, format);
+    ReportFormat reportFormat = ReportFormat.from(format);
+    reportService.getReport(reportId); // Fails before the response is committed
 
     HttpHeaders headers = new HttpHeaders();
-    headers.setContentType(getMediaType(format));
-    headers.setContentDispositionFormData("attachment", "report." + format);
+    headers.setContentType(getMediaType(reportFormat));
+    headers.setContentDispositionFormData(
+        "attachment", "report." + reportFormat.name().toLowerCase());
 
-    return ResponseEntity.ok().headers(headers).body(content);
+    StreamingResponseBody body = out -> reportService.exportReport(reportId, reportFormat, out);
+    return ResponseEntity.ok().headers(headers).body(body);
   }
 
   @DeleteMapping("/{reportId}")
@@ -103,15 +117,16 @@ public class ReportController {
     dto.setLastRunAt(report.getLastRunAt());
     dto.setNextRunAt(report.getNextRunAt());
     dto.setLastRunResult(report.getLastRunResult());
+    dto.setLastRunStatus(report.getLastRunStatus());
+    dto.setLastRunDurationMs(report.getLastRunDurationMs());
     return dto;
   }
 
-  private MediaType getMediaType(String format) {
-    return switch (format.toLowerCase()) {
-      case "csv" -> MediaType.TEXT_PLAIN;
-      case "json" -> MediaType.APPLICATION_JSON;
-      case "pdf" -> MediaType.APPLICATION_PDF;
-      default -> MediaType.APPLICATION_OCTET_STREAM;
+  private MediaType getMediaType(ReportFormat format) {
+    return switch (format) {
+      case CSV -> new MediaType("text", "csv", StandardCharsets.UTF_8);
+      case JSON -> MediaType.APPLICATION_JSON;
+      case PDF -> MediaType.APPLICATION_PDF;
     };
   }
 }
@@ -0,0 +1,276 @@
+package com.twelvenexus.oneplan.analytics.counter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-minute event counts by tenant, entity type and event name, held in memory for a sliding
+ * horizon. Each counter is a ring of minute slots; {@link #increment} is lock-free and contended
+ * only on a {@link LongAdder}, and {@link #count} reads at most one slot per minute and event name.
+ *
+ * <p>Several instances share counts through a checkpoint store: {@link #takeDeltas} hands out what
+ * was counted here since the last checkpoint, to be added to the stored totals, and {@link
+ * #applyTotals} folds stored totals (which include every instance's deltas) back in. A slot's count
+ * is its last known total plus whatever was counted locally since, so reads never wait for a
+ * checkpoint. Checkpointing methods are called from one thread at a time.
+ */
+public final class EventCounters {
+
+  public record MinuteCount(
+      UUID tenantId, String entityType, String eventName, LocalDateTime minute, long count) {}
+
+  private record Scope(UUID tenantId, String entityType) {}
+
+  private final int horizonMinutes;
+  private final Clock clock;
+  private final Map<Scope, Map<String, MinuteRing>> scopes = new ConcurrentHashMap<>();
+  // Counts from this minute on are complete; earlier ones must come from the raw events
+  private volatile long coveredFrom;
+
+  public EventCounters(Duration horizon, Clock clock) {
+    this.horizonMinutes = Math.toIntExact(Math.max(1, horizon.toMinutes()));
+    this.clock = clock;
+    // The current minute may already hold events tracked before this instance started
+    this.coveredFrom = currentMinute() + 1;
+  }
+
+  public void increment(UUID tenantId, String entityType, String eventName, LocalDateTime at) {
+    long minute = minuteOf(at);
+    if (minute <= currentMinute() - horizonMinutes) {
+      return;
+    }
+    Slot slot =
+        scopes
+            .computeIfAbsent(new Scope(tenantId, entityType), k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(eventName, k -> new MinuteRing(horizonMinutes))
+            .slot(minute, true);
+    if (slot != null) {
+      slot.local.increment();
+    }
+  }
+
+  /**
+   * Counts per event name of the minutes starting at or after {@code from}, up to the one
+   * containing {@code to}. Only minutes from {@link #coveredFrom()} on are counted; see {@link
+   * #countedFrom}.
+   */
+  public Map<String, Long> count(
+      UUID tenantId, String entityType, LocalDateTime from, LocalDateTime to) {
+    long first = Math.max(minuteOf(from.plusMinutes(1).minusNanos(1)), coveredFromMinute());
+    long last = minuteOf(to);
+    Map<String, Long> counts = new HashMap<>();
+    Map<String, MinuteRing> rings = scopes.get(new Scope(tenantId, entityType));
+    if (rings == null || first > last) {
+      return counts;
+    }
+
+    for (Map.Entry<String, MinuteRing> entry : rings.entrySet()) {
+      long total = entry.getValue().sum(first, last);
+      if (total > 0) {
+        counts.put(entry.getKey(), total);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Where {@link #count} starts for a count since {@code since}: the first whole minute from
+   * {@code since} the counters are complete for. Events before it must come from the raw events.
+   */
+  public LocalDateTime countedFrom(LocalDateTime since) {
+    long firstWholeMinute = minuteOf(since.plusMinutes(1).minusNanos(1));
+    return startOf(Math.max(firstWholeMinute, coveredFromMinute()));
+  }
+
+  /** Start of the earliest minute the counters are complete for. */
+  public LocalDateTime coveredFrom() {
+    return LocalDateTime.ofEpochSecond(coveredFromMinute() * 60, 0, ZoneOffset.UTC);
+  }
+
+  public LocalDateTime horizonStart() {
+    return startOf(currentMinute() - horizonMinutes + 1);
+  }
+
+  /**
+   * Seeds the counters from stored totals at startup. Counting is taken to be complete from the
+   * earliest stored minute, or from the next minute when nothing is stored.
+   */
+  public synchronized void restore(List<MinuteCount> totals) {
+    applyTotals(totals);
+    long earliest = currentMinute() + 1;
+    for (MinuteCount total : totals) {
+      earliest = Math.min(earliest, minuteOf(total.minute()));
+    }
+    coveredFrom = earliest;
+  }
+
+  /**
+   * Returns what was counted here since the last call and treats it as checkpointed. Counters
+   * that have fallen out of the horizon are dropped.
+   */
+  public synchronized List<MinuteCount> takeDeltas() {
+    long oldest = currentMinute() - horizonMinutes + 1;
+    List<MinuteCount> deltas = new ArrayList<>();
+    for (Map.Entry<Scope, Map<String, MinuteRing>> scope : scopes.entrySet()) {
+      for (Map.Entry<String, MinuteRing> ring : scope.getValue().entrySet()) {
+        boolean live = false;
+        for (int i = 0; i < horizonMinutes; i++) {
+          Slot slot = ring.getValue().slots.get(i);
+          if (slot == null || slot.minute < oldest) {
+            continue;
+          }
+          live = true;
+          long local = slot.local.sum();
+          long delta = local - slot.flushed;
+          if (delta > 0) {
+            slot.flushed = local;
+            deltas.add(
+                new MinuteCount(
+                    scope.getKey().tenantId(),
+                    scope.getKey().entityType(),
+                    ring.getKey(),
+                    startOf(slot.minute),
+                    delta));
+          }
+        }
+        if (!live) {
+          scope.getValue().remove(ring.getKey(), ring.getValue());
+        }
+      }
+      if (scope.getValue().isEmpty()) {
+        scopes.remove(scope.getKey(), scope.getValue());
+      }
+    }
+    return deltas;
+  }
+
+  /** Puts back deltas from {@link #takeDeltas} that could not be checkpointed. */
+  public synchronized void returnDeltas(List<MinuteCount> deltas) {
+    for (MinuteCount delta : deltas) {
+      Slot slot = slot(delta, false);
+      if (slot != null) {
+        slot.flushed -= delta.count();
+      }
+    }
+  }
+
+  /** Replaces the known totals of the given minutes with checkpointed ones. */
+  public synchronized void applyTotals(List<MinuteCount> totals) {
+    for (MinuteCount total : totals) {
+      Slot slot = slot(total, true);
+      if (slot != null) {
+        slot.base = total.count() - slot.flushed;
+      }
+    }
+  }
+
+  private Slot slot(MinuteCount count, boolean create) {
+    long minute = minuteOf(count.minute());
+    if (minute <= currentMinute() - horizonMinutes) {
+      return null;
+    }
+    Scope scope = new Scope(count.tenantId(), count.entityType());
+    Map<String, MinuteRing> rings =
+        create ? scopes.computeIfAbsent(scope, k -> new ConcurrentHashMap<>()) : scopes.get(scope);
+    if (rings == null) {
+      return null;
+    }
+    MinuteRing ring =
+        create
+            ? rings.computeIfAbsent(count.eventName(), k -> new MinuteRing(horizonMinutes))
+            : rings.get(count.eventName());
+    return ring != null ? ring.slot(minute, create) : null;
+  }
+
+  private long coveredFromMinute() {
+    return Math.max(coveredFrom, currentMinute() - horizonMinutes + 1);
+  }
+
+  private long currentMinute() {
+    return minuteOf(LocalDateTime.now(clock));
+  }
+
+  private static long minuteOf(LocalDateTime dateTime) {
+    return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+  }
+
+  private static LocalDateTime startOf(long minute) {
+    return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+  }
+
+  private static final class MinuteRing {
+
+    private final AtomicReferenceArray<Slot> slots;
+
+    MinuteRing(int minutes) {
+      this.slots = new AtomicReferenceArray<>(minutes);
+    }
+
+    /** The slot of {@code minute}, replacing the one a full turn older if {@code create}. */
+    Slot slot(long minute, boolean create) {
+      int index = (int) Math.floorMod(minute, (long) slots.length());
+      while (true) {
+        Slot slot = slots.get(index);
+        if (slot != null && slot.minute == minute) {
+          return slot;
+        }
+        if (!create || (slot != null && slot.minute > minute)) {
+          return null;
+        }
+        Slot fresh = new Slot(minute);
+        if (slots.compareAndSet(index, slot, fresh)) {
+          return fresh;
+        }
+      }
+    }
+
+    long sum(long first, long last) {
+      long total = 0;
+      if (last - first + 1 < slots.length()) {
+        for (long minute = first; minute <= last; minute++) {
+          Slot slot = slot(minute, false);
+          if (slot != null) {
+            total += slot.count();
+          }
+        }
+      } else {
+        for (int i = 0; i < slots.length(); i++) {
+          Slot slot = slots.get(i);
+          if (slot != null && slot.minute >= first && slot.minute <= last) {
+            total += slot.count();
+          }
+        }
+      }
+      return total;
+    }
+  }
+
+  private static final class Slot {
+
+    final long minute;
+    final LongAdder local = new LongAdder();
+    // Checkpoint thread writes: local count already handed out as deltas
+    volatile long flushed;
+    // Last known total less flushed: a read is base + local, and handing out or returning a
+    // delta moves the total and flushed together, leaving it unchanged
+    volatile long base;
+
+    Slot(long minute) {
+      this.minute = minute;
+    }
+
+    long count() {
+      return base + local.sum();
+    }
+  }
+}
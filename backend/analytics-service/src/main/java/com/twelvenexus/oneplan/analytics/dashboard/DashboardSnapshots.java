@@ -0,0 +1,250 @@
+package com.twelvenexus.oneplan.analytics.dashboard;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
+import com.twelvenexus.oneplan.analytics.dto.DashboardDataDto;
+import com.twelvenexus.oneplan.analytics.dto.WidgetDataDto;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Dashboard;
+import com.twelvenexus.oneplan.analytics.model.DashboardWidget;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Materialized dashboards: per dashboard, its widget layout and the last computed data of each
+ * widget query, so that viewing a dashboard whose data has not changed reads nothing but its
+ * version.
+ *
+ * <p>The layout is kept for one version of the dashboard, its {@code updatedAt}, and reloaded when
+ * that moves; results are keyed by query and survive the reload when the query is unchanged. A
+ * result is refreshed when a write to its series commits, which the metric cache reports, or once
+ * it is older than the max age, which bounds how long writes made on other instances and the
+ * trailing ranges moving on go unseen. Stale widgets are recomputed in parallel, and viewers
+ * arriving meanwhile wait for the same computation instead of starting their own.
+ */
+@Slf4j
+public final class DashboardSnapshots implements MetricQueryCache.ChangeListener, AutoCloseable {
+
+  /** Computes a widget query's data. */
+  @FunctionalInterface
+  public interface WidgetLoader {
+    Object load(WidgetQuery query) throws Exception;
+  }
+
+  private record Series(UUID tenantId, UUID entityId, MetricType type) {}
+
+  private record Widget(DashboardWidget widget, WidgetQuery query, String error) {}
+
+  private record Snapshot(
+      LocalDateTime version, String name, List<Widget> widgets, Map<WidgetQuery, Result> results) {}
+
+  private record Result(
+      long sequence, long startedNanos, CompletableFuture<Object> data, LocalDateTime startedAt) {}
+
+  private final Cache<UUID, Snapshot> snapshots;
+  // Sequence number of each series' last change; older than the max age is irrelevant
+  private final Cache<Series, Long> changes;
+  private final AtomicLong sequence = new AtomicLong();
+  private final ExecutorService threads =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dashboard-", 0).factory());
+  private final Semaphore permits;
+  private final long maxAgeNanos;
+  private final Duration timeout;
+  private final Clock clock;
+
+  private final LongAdder cached = new LongAdder();
+  private final LongAdder refreshed = new LongAdder();
+
+  /**
+   * @param parallelism widget queries computed at once, across all dashboards
+   * @param timeout longest a render waits for its widgets; later ones are reported as pending
+   */
+  public DashboardSnapshots(
+      Duration maxAge,
+      Duration timeout,
+      int parallelism,
+      long maxSnapshots,
+      Duration snapshotIdle,
+      Clock clock) {
+    this.maxAgeNanos = maxAge.toNanos();
+    this.timeout = timeout;
+    this.permits = new Semaphore(parallelism);
+    this.clock = clock;
+    this.snapshots =
+        Caffeine.newBuilder().maximumSize(maxSnapshots).expireAfterAccess(snapshotIdle).build();
+    this.changes = Caffeine.newBuilder().expireAfterWrite(maxAge).build();
+  }
+
+  /**
+   * Renders the dashboard at {@code version}, loading its layout with {@code layout} only when the
+   * snapshot holds another version.
+   */
+  public DashboardDataDto render(
+      UUID dashboardId, LocalDateTime version, Supplier<Dashboard> layout, WidgetLoader loader) {
+    Snapshot snapshot = snapshots.getIfPresent(dashboardId);
+    if (snapshot == null || !snapshot.version().equals(version)) {
+      snapshot = build(layout.get(), version, snapshot);
+      snapshots.put(dashboardId, snapshot);
+    }
+
+    // Start every stale widget before waiting on any
+    List<Result> results = new ArrayList<>(snapshot.widgets().size());
+    for (Widget widget : snapshot.widgets()) {
+      results.add(widget.query() != null ? result(snapshot, widget.query(), loader) : null);
+    }
+
+    long deadline = System.nanoTime() + timeout.toNanos();
+    List<WidgetDataDto> widgets = new ArrayList<>(results.size());
+    for (int i = 0; i < results.size(); i++) {
+      WidgetDataDto dto = toDto(snapshot.widgets().get(i));
+      Result result = results.get(i);
+      if (result != null) {
+        try {
+          dto.setData(result.data().get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+          dto.setComputedAt(result.startedAt());
+        } catch (TimeoutException e) {
+          dto.setError("Pending");
+        } catch (ExecutionException e) {
+          dto.setError(e.getCause().getMessage());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          dto.setError("Interrupted");
+        }
+      }
+      widgets.add(dto);
+    }
+
+    DashboardDataDto dashboard = new DashboardDataDto();
+    dashboard.setId(dashboardId);
+    dashboard.setName(snapshot.name());
+    dashboard.setWidgets(widgets);
+    return dashboard;
+  }
+
+  /** Drops the dashboard's snapshot, e.g. once it is deleted. */
+  public void invalidate(UUID dashboardId) {
+    snapshots.invalidate(dashboardId);
+  }
+
+  @Override
+  public void changed(UUID tenantId, UUID entityId, MetricType type) {
+    changes.put(new Series(tenantId, entityId, type), sequence.incrementAndGet());
+  }
+
+  public long cached() {
+    return cached.sum();
+  }
+
+  public long refreshed() {
+    return refreshed.sum();
+  }
+
+  public long size() {
+    return snapshots.estimatedSize();
+  }
+
+  @Override
+  public void close() {
+    threads.shutdownNow();
+  }
+
+  private Snapshot build(Dashboard dashboard, LocalDateTime version, Snapshot previous) {
+    List<Widget> widgets = new ArrayList<>();
+    Map<WidgetQuery, Result> results = new ConcurrentHashMap<>();
+    for (DashboardWidget widget : dashboard.getWidgets()) {
+      try {
+        WidgetQuery query = WidgetQuery.from(dashboard.getTenantId(), widget.getConfiguration());
+        widgets.add(new Widget(widget, query, null));
+        Result kept = query != null && previous != null ? previous.results().get(query) : null;
+        if (kept != null) {
+          results.put(query, kept);
+        }
+      } catch (IllegalArgumentException e) {
+        widgets.add(new Widget(widget, null, e.getMessage()));
+      }
+    }
+    return new Snapshot(version, dashboard.getName(), List.copyOf(widgets), results);
+  }
+
+  private Result result(Snapshot snapshot, WidgetQuery query, WidgetLoader loader) {
+    return snapshot
+        .results()
+        .compute(
+            query,
+            (key, current) -> {
+              if (isFresh(current, key)) {
+                cached.increment();
+                return current;
+              }
+              refreshed.increment();
+              return refresh(key, loader);
+            });
+  }
+
+  private boolean isFresh(Result result, WidgetQuery query) {
+    if (result == null || result.data().isCompletedExceptionally()) {
+      return false;
+    }
+    if (System.nanoTime() - result.startedNanos() > maxAgeNanos) {
+      return false;
+    }
+    Series series = new Series(query.tenantId(), query.entityId(), query.type());
+    Long changed = changes.getIfPresent(series);
+    return changed == null || changed <= result.sequence();
+  }
+
+  private Result refresh(WidgetQuery query, WidgetLoader loader) {
+    // Taken before loading, so a change committed during the load marks the result stale
+    long startedAt = sequence.get();
+    CompletableFuture<Object> data =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                permits.acquire();
+                try {
+                  return loader.load(query);
+                } finally {
+                  permits.release();
+                }
+              } catch (Exception e) {
+                log.warn("Could not compute widget query {}: {}", query, e.getMessage());
+                throw new CompletionException(e);
+              }
+            },
+            threads);
+    return new Result(startedAt, System.nanoTime(), data, LocalDateTime.now(clock));
+  }
+
+  private static WidgetDataDto toDto(Widget widget) {
+    DashboardWidget source = widget.widget();
+    WidgetDataDto dto = new WidgetDataDto();
+    dto.setId(source.getId());
+    dto.setTitle(source.getTitle());
+    dto.setType(source.getType());
+    dto.setPosition(source.getPosition());
+    dto.setWidth(source.getWidth());
+    dto.setHeight(source.getHeight());
+    dto.setConfiguration(source.getConfiguration());
+    dto.setError(widget.error());
+    return dto;
+  }
+}
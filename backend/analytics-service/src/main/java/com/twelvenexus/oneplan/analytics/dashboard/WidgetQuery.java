@@ -0,0 +1,51 @@
+package com.twelvenexus.oneplan.analytics.dashboard;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The metric query a widget's configuration describes: {@code metricType} and {@code entityId},
+ * over the trailing {@code range} (ISO-8601, default seven days). With a {@code period} the widget
+ * shows that period's aggregates, otherwise summary statistics. Other keys only affect display,
+ * so widgets that differ in them share one query.
+ */
+public record WidgetQuery(
+    UUID tenantId, UUID entityId, MetricType type, AggregationPeriod period, Duration range) {
+
+  public static final String METRIC_TYPE = "metricType";
+  public static final String ENTITY_ID = "entityId";
+  public static final String PERIOD = "period";
+  public static final String RANGE = "range";
+
+  private static final Duration DEFAULT_RANGE = Duration.ofDays(7);
+
+  /**
+   * The query of a widget with this configuration, or {@code null} when it shows no metric. Throws
+   * {@link IllegalArgumentException} when a value is invalid.
+   */
+  public static WidgetQuery from(UUID tenantId, Map<String, String> configuration) {
+    if (configuration == null || !configuration.containsKey(METRIC_TYPE)) {
+      return null;
+    }
+    String entityId = configuration.get(ENTITY_ID);
+    if (entityId == null) {
+      throw new IllegalArgumentException("Widget " + METRIC_TYPE + " requires " + ENTITY_ID);
+    }
+    String period = configuration.get(PERIOD);
+    String range = configuration.get(RANGE);
+    try {
+      return new WidgetQuery(
+          tenantId,
+          UUID.fromString(entityId),
+          MetricType.valueOf(configuration.get(METRIC_TYPE)),
+          period != null ? AggregationPeriod.valueOf(period) : null,
+          range != null ? Duration.parse(range) : DEFAULT_RANGE);
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid widget configuration: " + e.getMessage(), e);
+    }
+  }
+}
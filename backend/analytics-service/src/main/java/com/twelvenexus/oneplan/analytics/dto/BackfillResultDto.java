@@ -0,0 +1,22 @@
+package com.twelvenexus.oneplan.analytics.dto;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.BackfillStatus;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import lombok.Data;
+
+@Data
+public class BackfillResultDto {
+  private UUID id;
+  private AggregationPeriod period;
+  private LocalDateTime from;
+  private LocalDateTime to;
+  private BackfillStatus status;
+  private long bucketsRebuilt;
+  private long aggregatesWritten;
+  private long durationMs;
+  private String error;
+  private LocalDateTime startedAt;
+  private LocalDateTime finishedAt;
+}
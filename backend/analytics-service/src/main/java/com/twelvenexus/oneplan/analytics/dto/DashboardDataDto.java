@@ -0,0 +1,12 @@
+package com.twelvenexus.oneplan.analytics.dto;
+
+import java.util.List;
+import java.util.UUID;
+import lombok.Data;
+
+@Data
+public class DashboardDataDto {
+  private UUID id;
+  private String name;
+  private List<WidgetDataDto> widgets;
+}
@@ -1,5 +1,6 @@
 package com.twelvenexus.oneplan.analytics.dto;
 
+import com.twelvenexus.oneplan.analytics.enums.ReportRunStatus;
 import com.twelvenexus.oneplan.analytics.enums.ReportType;
 import java.time.LocalDateTime;
 import java.util.Map;
@@ -17,4 +18,6 @@ public class ReportDto {
   private LocalDateTime lastRunAt;
   private LocalDateTime nextRunAt;
   private String lastRunResult;
+  private ReportRunStatus lastRunStatus;
+  private Long lastRunDurationMs;
 }
@@ -0,0 +1,20 @@
+package com.twelvenexus.oneplan.analytics.dto;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import lombok.Data;
+
+@Data
+public class WidgetDataDto {
+  private UUID id;
+  private String title;
+  private String type;
+  private Integer position;
+  private Integer width;
+  private Integer height;
+  private Map<String, String> configuration;
+  private Object data;
+  private LocalDateTime computedAt;
+  private String error;
+}
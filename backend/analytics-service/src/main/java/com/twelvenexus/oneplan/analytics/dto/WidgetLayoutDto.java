@@ -0,0 +1,21 @@
+package com.twelvenexus.oneplan.analytics.dto;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import java.util.UUID;
+import lombok.Data;
+
+/** Where a widget goes; a {@code null} field keeps its current value. */
+@Data
+public class WidgetLayoutDto {
+  @NotNull private UUID id;
+
+  @Min(0)
+  private Integer position;
+
+  @Min(1)
+  private Integer width;
+
+  @Min(1)
+  private Integer height;
+}
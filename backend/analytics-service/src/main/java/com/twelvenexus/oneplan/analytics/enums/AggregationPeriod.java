@@ -1,11 +1,68 @@
 package com.twelvenexus.oneplan.analytics.enums;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
 public enum AggregationPeriod {
-  MINUTE,
-  HOUR,
-  DAY,
-  WEEK,
-  MONTH,
-  QUARTER,
-  YEAR
+  MINUTE(null),
+  HOUR(null),
+  DAY(HOUR),
+  WEEK(DAY),
+  MONTH(DAY),
+  QUARTER(MONTH),
+  YEAR(MONTH);
+
+  private final AggregationPeriod source;
+
+  AggregationPeriod(AggregationPeriod source) {
+    this.source = source;
+  }
+
+  /**
+   * The next-finer period whose aggregates this one is rolled up from, or {@code null} when it is
+   * aggregated from raw metrics. Every bucket of this period is an exact union of source buckets.
+   */
+  public AggregationPeriod source() {
+    return source;
+  }
+
+  /** Start of the bucket containing {@code dateTime}. */
+  public LocalDateTime bucketStart(LocalDateTime dateTime) {
+    return switch (this) {
+      case MINUTE -> dateTime.truncatedTo(ChronoUnit.MINUTES);
+      case HOUR -> dateTime.truncatedTo(ChronoUnit.HOURS);
+      case DAY -> dateTime.truncatedTo(ChronoUnit.DAYS);
+      case WEEK -> dateTime
+          .truncatedTo(ChronoUnit.DAYS)
+          .minusDays(dateTime.getDayOfWeek().getValue() - 1);
+      case MONTH -> dateTime.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+      case QUARTER -> dateTime
+          .withMonth(((dateTime.getMonthValue() - 1) / 3) * 3 + 1)
+          .withDayOfMonth(1)
+          .truncatedTo(ChronoUnit.DAYS);
+      case YEAR -> dateTime.withDayOfYear(1).truncatedTo(ChronoUnit.DAYS);
+    };
+  }
+
+  /** Start of the bucket after the one starting at {@code bucketStart}. */
+  public LocalDateTime nextBucket(LocalDateTime bucketStart) {
+    return plus(bucketStart, 1);
+  }
+
+  /** Start of the bucket before the one starting at {@code bucketStart}. */
+  public LocalDateTime previousBucket(LocalDateTime bucketStart) {
+    return plus(bucketStart, -1);
+  }
+
+  private LocalDateTime plus(LocalDateTime dateTime, int buckets) {
+    return switch (this) {
+      case MINUTE -> dateTime.plusMinutes(buckets);
+      case HOUR -> dateTime.plusHours(buckets);
+      case DAY -> dateTime.plusDays(buckets);
+      case WEEK -> dateTime.plusWeeks(buckets);
+      case MONTH -> dateTime.plusMonths(buckets);
+      case QUARTER -> dateTime.plusMonths(3L * buckets);
+      case YEAR -> dateTime.plusYears(buckets);
+    };
+  }
 }
@@ -0,0 +1,7 @@
+package com.twelvenexus.oneplan.analytics.enums;
+
+public enum BackfillStatus {
+  RUNNING,
+  SUCCEEDED,
+  FAILED
+}
@@ -0,0 +1,17 @@
+package com.twelvenexus.oneplan.analytics.enums;
+
+public enum ReportFormat {
+  CSV,
+  JSON,
+  PDF;
+
+  /** The format named, in any case; rejects unknown names. */
+  public static ReportFormat from(String name) {
+    for (ReportFormat format : values()) {
+      if (format.name().equalsIgnoreCase(name)) {
+        return format;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported format: " + name);
+  }
+}
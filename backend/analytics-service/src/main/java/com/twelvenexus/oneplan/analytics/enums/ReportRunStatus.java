@@ -0,0 +1,11 @@
+package com.twelvenexus.oneplan.analytics.enums;
+
+public enum ReportRunStatus {
+  RUNNING,
+  SUCCEEDED,
+  FAILED,
+  TIMED_OUT,
+  CANCELLED,
+  // Not started because another run holds the report, or it was no longer due
+  SKIPPED
+}
@@ -0,0 +1,9 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+/** Thrown when the ingestion buffer has no room for the submitted events. */
+public class EventBufferFullException extends RuntimeException {
+
+  public EventBufferFullException(int requested, int capacity) {
+    super("Event buffer full: cannot accept " + requested + " events (capacity " + capacity + ")");
+  }
+}
@@ -0,0 +1,201 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-instance buffer between event tracking and Mongo. Request threads {@link #submit} into a
+ * bounded lock-free queue and return immediately; one writer thread drains it and hands the sink
+ * batches of up to {@code batchSize} events, or whatever has arrived once the oldest buffered event
+ * has waited {@code flushInterval}. A full buffer rejects the whole submission with {@link
+ * EventBufferFullException} so callers can push back on clients.
+ *
+ * <p>With a write-ahead log, submitted events are spilled to disk before they are queued and the
+ * log is trimmed as batches are persisted. A failing sink is retried with backoff, keeping events
+ * buffered (and the queue filling up) until it recovers.
+ */
+@Slf4j
+public class EventIngestionBuffer implements AutoCloseable {
+
+  private static final long MAX_RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+  private static final int SHUTDOWN_ATTEMPTS = 3;
+
+  private final MpscArrayQueue<AnalyticsEvent> queue;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final Consumer<List<AnalyticsEvent>> sink;
+  private final EventWriteAheadLog writeAheadLog;
+  private final Thread writer;
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong persisted = new AtomicLong();
+  private volatile boolean running = true;
+  // Writer thread only: every event with a lower sequence has reached the sink
+  private long persistedBefore;
+
+  public EventIngestionBuffer(
+      int capacity,
+      int batchSize,
+      Duration flushInterval,
+      Consumer<List<AnalyticsEvent>> sink,
+      EventWriteAheadLog writeAheadLog) {
+    this.queue = new MpscArrayQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.flushIntervalNanos = flushInterval.toNanos();
+    this.sink = sink;
+    this.writeAheadLog = writeAheadLog;
+    this.writer = Thread.ofPlatform().name("event-ingestion-writer").daemon().unstarted(this::run);
+  }
+
+  public EventIngestionBuffer(
+      int capacity, int batchSize, Duration flushInterval, Consumer<List<AnalyticsEvent>> sink) {
+    this(capacity, batchSize, flushInterval, sink, null);
+  }
+
+  public void start() {
+    writer.start();
+  }
+
+  /** Buffers the events, all or none. */
+  public void submit(List<AnalyticsEvent> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    if (!running) {
+      throw new IllegalStateException("Event ingestion is shutting down");
+    }
+    long first = queue.claim(events.size());
+    if (first < 0) {
+      rejected.addAndGet(events.size());
+      throw new EventBufferFullException(events.size(), queue.capacity());
+    }
+
+    if (writeAheadLog != null) {
+      try {
+        writeAheadLog.append(first, events);
+      } catch (IOException e) {
+        // The slots are claimed and must be published; keep the events, just not durably
+        log.error("Could not spill {} events to the write-ahead log", events.size(), e);
+      }
+    }
+    for (int i = 0; i < events.size(); i++) {
+      queue.publish(first + i, events.get(i));
+    }
+
+    long backlog = first + events.size() - queue.consumed();
+    if (backlog >= batchSize && backlog - events.size() < batchSize) {
+      // This submission completed a batch
+      LockSupport.unpark(writer);
+    }
+  }
+
+  public int size() {
+    return queue.size();
+  }
+
+  public int capacity() {
+    return queue.capacity();
+  }
+
+  public long rejected() {
+    return rejected.get();
+  }
+
+  public long persisted() {
+    return persisted.get();
+  }
+
+  /** Stops accepting events and flushes what is buffered, waiting up to {@code timeout}. */
+  public void close(Duration timeout) throws InterruptedException {
+    running = false;
+    LockSupport.unpark(writer);
+    writer.join(timeout);
+    if (writer.isAlive()) {
+      log.warn("Event writer did not finish within {}; {} events left buffered", timeout, size());
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    close(Duration.ofSeconds(30));
+  }
+
+  private void run() {
+    List<AnalyticsEvent> batch = new ArrayList<>(batchSize);
+    long batchStarted = 0;
+    while (running || queue.size() > 0) {
+      boolean wasEmpty = batch.isEmpty();
+      queue.drain(batch::add, batchSize - batch.size());
+      if (batch.isEmpty()) {
+        LockSupport.parkNanos(this, flushIntervalNanos);
+        continue;
+      }
+      if (wasEmpty) {
+        batchStarted = System.nanoTime();
+      }
+
+      long waited = System.nanoTime() - batchStarted;
+      if (batch.size() >= batchSize || waited >= flushIntervalNanos || !running) {
+        if (!flush(batch)) {
+          // Shutting down with the sink failing; leave the rest to the write-ahead log, if any
+          break;
+        }
+        batch.clear();
+      } else {
+        LockSupport.parkNanos(this, flushIntervalNanos - waited);
+      }
+    }
+    if (writeAheadLog != null) {
+      try {
+        writeAheadLog.close(persistedBefore);
+      } catch (IOException e) {
+        log.warn("Could not close the write-ahead log", e);
+      }
+    }
+  }
+
+  /** Writes the batch, retrying until it succeeds; gives up only at shutdown. */
+  private boolean flush(List<AnalyticsEvent> batch) {
+    long backoff = TimeUnit.MILLISECONDS.toNanos(100);
+    int attempts = 0;
+    while (true) {
+      try {
+        sink.accept(batch);
+        persisted.addAndGet(batch.size());
+        break;
+      } catch (RuntimeException e) {
+        attempts++;
+        if (!running && attempts >= SHUTDOWN_ATTEMPTS) {
+          log.error(
+              "Dropping {} events at shutdown after {} failed writes{}",
+              batch.size(),
+              attempts,
+              writeAheadLog != null ? "; they remain in the write-ahead log" : "",
+              e);
+          return false;
+        }
+        log.warn("Writing {} events failed; retrying", batch.size(), e);
+        LockSupport.parkNanos(this, backoff);
+        backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_NANOS);
+      }
+    }
+
+    // Everything drained so far was in this batch
+    persistedBefore = queue.consumed();
+    if (writeAheadLog != null) {
+      try {
+        writeAheadLog.release(persistedBefore);
+      } catch (IOException e) {
+        log.warn("Could not trim the write-ahead log", e);
+      }
+    }
+    return true;
+  }
+}
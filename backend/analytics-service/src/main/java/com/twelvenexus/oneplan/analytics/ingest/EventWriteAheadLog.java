@@ -0,0 +1,200 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only spill files for buffered events, so events acknowledged to clients but not yet in
+ * Mongo survive a restart. Producers append before their events become visible to the writer; the
+ * writer releases segments once every event in them has been persisted. Records are
+ * length-prefixed JSON; a torn record at the end of a segment is ignored on recovery.
+ *
+ * <p>Appends are not fsynced, so a process crash loses nothing but a host crash may lose what the
+ * OS had not yet flushed.
+ */
+@Slf4j
+public final class EventWriteAheadLog {
+
+  private static final String SUFFIX = ".wal";
+
+  private final Path directory;
+  private final long segmentBytes;
+  private final ObjectMapper objectMapper;
+  private final List<Segment> sealed = new ArrayList<>();
+  private volatile Segment current;
+  private long nextSegmentId;
+
+  public EventWriteAheadLog(Path directory, long segmentBytes, ObjectMapper objectMapper)
+      throws IOException {
+    this.directory = Files.createDirectories(directory);
+    this.segmentBytes = segmentBytes;
+    this.objectMapper = objectMapper;
+    this.nextSegmentId = System.currentTimeMillis();
+  }
+
+  /**
+   * Reads the events left by a previous run. Call before the first append; the files stay in
+   * place until {@link #deleteRecovered} so a failed replay is retried on the next start.
+   */
+  public List<AnalyticsEvent> recover() throws IOException {
+    List<AnalyticsEvent> events = new ArrayList<>();
+    for (Path file : segmentFiles()) {
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+        readRecords(in, events);
+      }
+    }
+    return events;
+  }
+
+  public void deleteRecovered() throws IOException {
+    for (Path file : segmentFiles()) {
+      Files.delete(file);
+    }
+  }
+
+  /** Appends the events that were claimed starting at {@code firstSequence}. */
+  void append(long firstSequence, List<AnalyticsEvent> events) throws IOException {
+    ByteBuffer payload = encode(events);
+    long lastSequence = firstSequence + events.size() - 1;
+    while (true) {
+      Segment segment = current();
+      synchronized (segment) {
+        if (segment.channel.isOpen()) {
+          segment.maxSequence.accumulateAndGet(lastSequence, Math::max);
+          while (payload.hasRemaining()) {
+            segment.channel.write(payload);
+          }
+          return;
+        }
+      }
+      // Sealed while we were waiting; retry on the new segment
+    }
+  }
+
+  /**
+   * Deletes segments whose events all have sequences below {@code persistedBefore}, first sealing
+   * the current segment if it has grown past the segment size. Writer thread only.
+   */
+  void release(long persistedBefore) throws IOException {
+    Segment segment = current;
+    if (segment != null && segment.channel.size() >= segmentBytes) {
+      current = openSegment();
+      seal(segment);
+    }
+    deleteReleased(persistedBefore);
+  }
+
+  /**
+   * Seals the current segment and deletes every segment whose events have all been persisted;
+   * whatever remains is replayed on the next start.
+   */
+  void close(long persistedBefore) throws IOException {
+    Segment segment = current;
+    if (segment != null) {
+      current = null;
+      seal(segment);
+    }
+    deleteReleased(persistedBefore);
+  }
+
+  private void seal(Segment segment) throws IOException {
+    synchronized (segment) {
+      segment.channel.close();
+    }
+    sealed.add(segment);
+  }
+
+  private void deleteReleased(long persistedBefore) throws IOException {
+
+    for (Iterator<Segment> it = sealed.iterator(); it.hasNext(); ) {
+      Segment candidate = it.next();
+      if (candidate.maxSequence.get() < persistedBefore) {
+        Files.deleteIfExists(candidate.file);
+        it.remove();
+      }
+    }
+  }
+
+  private Segment current() throws IOException {
+    Segment segment = current;
+    if (segment == null) {
+      synchronized (this) {
+        if (current == null) {
+          current = openSegment();
+        }
+        segment = current;
+      }
+    }
+    return segment;
+  }
+
+  private synchronized Segment openSegment() throws IOException {
+    Path file = directory.resolve("events-" + nextSegmentId++ + SUFFIX);
+    FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.APPEND);
+    return new Segment(file, channel);
+  }
+
+  private ByteBuffer encode(List<AnalyticsEvent> events) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(events.size() * 256);
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (AnalyticsEvent event : events) {
+      byte[] json = objectMapper.writeValueAsBytes(event);
+      out.writeInt(json.length);
+      out.write(json);
+    }
+    return ByteBuffer.wrap(bytes.toByteArray());
+  }
+
+  private void readRecords(DataInputStream in, List<AnalyticsEvent> events) throws IOException {
+    while (true) {
+      int length;
+      try {
+        length = in.readInt();
+      } catch (EOFException e) {
+        return;
+      }
+      byte[] json = in.readNBytes(length);
+      if (json.length < length) {
+        log.warn("Ignoring torn record at the end of a spill segment");
+        return;
+      }
+      events.add(objectMapper.readValue(json, AnalyticsEvent.class));
+    }
+  }
+
+  private List<Path> segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+    }
+  }
+
+  private static final class Segment {
+    private final Path file;
+    private final FileChannel channel;
+    private final AtomicLong maxSequence = new AtomicLong(-1);
+
+    private Segment(Path file, FileChannel channel) {
+      this.file = file;
+      this.channel = channel;
+    }
+  }
+}
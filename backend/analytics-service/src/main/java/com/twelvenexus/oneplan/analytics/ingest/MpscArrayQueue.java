@@ -0,0 +1,86 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded, lock-free multi-producer single-consumer ring buffer. Producers reserve a run of slots
+ * with one CAS ({@link #claim}) and fill them ({@link #publish}); the single consumer takes
+ * elements strictly in sequence order. The sequence returned by {@code claim} identifies an
+ * element for its whole life, which lets callers log it before it becomes visible.
+ */
+final class MpscArrayQueue<E> {
+
+  private final AtomicReferenceArray<E> buffer;
+  private final int capacity;
+  private final int mask;
+  private final AtomicLong producerIndex = new AtomicLong();
+  // Written only by the consumer; volatile so producers see freed slots
+  private volatile long consumerIndex;
+
+  MpscArrayQueue(int requestedCapacity) {
+    if (requestedCapacity < 2 || requestedCapacity > 1 << 30) {
+      throw new IllegalArgumentException("Capacity must be in [2, 2^30]");
+    }
+    this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+    this.mask = capacity - 1;
+    this.buffer = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * Reserves {@code count} consecutive slots and returns the sequence of the first, or {@code -1}
+   * if there is not enough free space. Every claimed slot must be published.
+   */
+  long claim(int count) {
+    while (true) {
+      long index = producerIndex.get();
+      if (index + count - consumerIndex > capacity) {
+        return -1;
+      }
+      if (producerIndex.compareAndSet(index, index + count)) {
+        return index;
+      }
+    }
+  }
+
+  void publish(long sequence, E element) {
+    buffer.setRelease((int) (sequence & mask), element);
+  }
+
+  /**
+   * Hands up to {@code limit} published elements to {@code consumer} in sequence order and frees
+   * their slots. Consumer thread only.
+   */
+  int drain(Consumer<? super E> consumer, int limit) {
+    long index = consumerIndex;
+    int drained = 0;
+    while (drained < limit) {
+      int offset = (int) (index & mask);
+      E element = buffer.getAcquire(offset);
+      if (element == null) {
+        // Empty, or the next slot is claimed but not yet published
+        break;
+      }
+      buffer.setPlain(offset, null);
+      consumer.accept(element);
+      index++;
+      drained++;
+    }
+    consumerIndex = index;
+    return drained;
+  }
+
+  /** Sequence of the next element the consumer will take; all earlier ones have been drained. */
+  long consumed() {
+    return consumerIndex;
+  }
+
+  int size() {
+    return (int) (producerIndex.get() - consumerIndex);
+  }
+
+  int capacity() {
+    return capacity;
+  }
+}
@@ -0,0 +1,158 @@
+package com.twelvenexus.oneplan.analytics.leaderboard;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Highest-valued metrics per tenant, type and window (the current bucket of an {@link
+ * AggregationPeriod}), kept in {@link TopK} heaps.
+ *
+ * <p>A board is created by its first read and seeded from the metric store; from then on metrics
+ * recorded by this instance are offered to it once the transaction storing them commits. Because
+ * entries only ever join a window, merging the store's top again every refresh interval keeps the
+ * board exact while picking up metrics recorded by other instances. Boards of past windows are
+ * dropped once the window after them has ended too.
+ */
+@RequiredArgsConstructor
+public class Leaderboards {
+
+  private static final Comparator<Metric> BY_VALUE = Comparator.comparingDouble(Metric::getValue);
+
+  private record Key(
+      UUID tenantId, MetricType type, AggregationPeriod window, LocalDateTime bucketStart) {}
+
+  private static final class Board {
+
+    final TopK<Metric, UUID> top;
+    final AtomicBoolean refreshing = new AtomicBoolean();
+    volatile boolean seeded;
+    volatile long refreshedAt;
+
+    Board(int capacity) {
+      this.top = new TopK<>(capacity, BY_VALUE, Metric::getId);
+    }
+  }
+
+  private final MetricStore metricStore;
+  private final Clock clock;
+  private final Map<Key, Board> boards = new ConcurrentHashMap<>();
+
+  @Value("${analytics.leaderboards.windows:HOUR,DAY,WEEK,MONTH}")
+  private List<AggregationPeriod> windows;
+
+  @Value("${analytics.leaderboards.capacity:100}")
+  private int capacity;
+
+  @Value("${analytics.leaderboards.refresh-interval:PT1M}")
+  private Duration refreshInterval;
+
+  private volatile LocalDateTime swept = LocalDateTime.MIN;
+
+  /** Whether {@link #top} can answer for this window and limit. */
+  public boolean covers(AggregationPeriod window, int limit) {
+    return windows.contains(window) && limit <= capacity;
+  }
+
+  /**
+   * Offers newly stored metrics to the boards of their windows. Inside a transaction this waits for
+   * the commit, so a board never ranks metrics that were rolled back.
+   */
+  public void record(List<Metric> metrics) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              recordNow(metrics);
+            }
+          });
+    } else {
+      recordNow(metrics);
+    }
+  }
+
+  private void recordNow(List<Metric> metrics) {
+    if (boards.isEmpty()) {
+      return;
+    }
+    for (Metric metric : metrics) {
+      for (AggregationPeriod window : windows) {
+        Board board =
+            boards.get(
+                new Key(
+                    metric.getTenantId(),
+                    metric.getType(),
+                    window,
+                    window.bucketStart(metric.getTimestamp())));
+        if (board != null) {
+          board.top.offer(metric);
+        }
+      }
+    }
+  }
+
+  /** Up to {@code limit} highest-valued metrics of the current {@code window}, highest first. */
+  public List<Metric> top(UUID tenantId, MetricType type, AggregationPeriod window, int limit) {
+    LocalDateTime now = LocalDateTime.now(clock);
+    LocalDateTime bucketStart = window.bucketStart(now);
+    Board board =
+        boards.computeIfAbsent(
+            new Key(tenantId, type, window, bucketStart), k -> new Board(capacity));
+
+    if (!board.seeded) {
+      synchronized (board) {
+        if (!board.seeded) {
+          merge(board, tenantId, type, bucketStart);
+          board.seeded = true;
+        }
+      }
+    } else if (System.nanoTime() - board.refreshedAt > refreshInterval.toNanos()
+        && board.refreshing.compareAndSet(false, true)) {
+      try {
+        merge(board, tenantId, type, bucketStart);
+      } finally {
+        board.refreshing.set(false);
+      }
+    }
+
+    sweep(now);
+    return board.top.top(limit);
+  }
+
+  private void merge(Board board, UUID tenantId, MetricType type, LocalDateTime bucketStart) {
+    // The store's "after since" is exclusive; the window includes its start
+    for (Metric metric :
+        metricStore.findTop(tenantId, type, bucketStart.minusNanos(1), board.top.capacity())) {
+      board.top.offer(metric);
+    }
+    board.refreshedAt = System.nanoTime();
+  }
+
+  private void sweep(LocalDateTime now) {
+    if (now.isBefore(swept.plusMinutes(1))) {
+      return;
+    }
+    swept = now;
+    boards
+        .keySet()
+        .removeIf(
+            key ->
+                key.bucketStart()
+                    .isBefore(key.window().previousBucket(key.window().bucketStart(now))));
+  }
+}
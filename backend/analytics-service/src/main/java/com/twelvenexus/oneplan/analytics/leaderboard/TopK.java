@@ -0,0 +1,73 @@
+package com.twelvenexus.oneplan.analytics.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The {@code capacity} greatest elements offered so far, each distinct key at most once. A bounded
+ * min-heap: once full, an element not above the current minimum is rejected in O(1), otherwise it
+ * replaces the minimum in O(log K). Reads return a sorted snapshot, rebuilt only after the contents
+ * have changed, so they cost O(K) at most.
+ */
+public final class TopK<T, K> {
+
+  private final int capacity;
+  private final Comparator<T> order;
+  private final Function<T, K> key;
+  private final PriorityQueue<T> heap;
+  private final Set<K> keys = new HashSet<>();
+  // Greatest first; null when the heap has changed since it was taken
+  private volatile List<T> snapshot = List.of();
+
+  public TopK(int capacity, Comparator<T> order, Function<T, K> key) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.order = order;
+    this.key = key;
+    this.heap = new PriorityQueue<>(capacity + 1, order);
+  }
+
+  /** Returns whether the element was kept. */
+  public synchronized boolean offer(T element) {
+    if (heap.size() == capacity && order.compare(element, heap.peek()) <= 0) {
+      return false;
+    }
+    if (!keys.add(key.apply(element))) {
+      return false;
+    }
+    heap.add(element);
+    if (heap.size() > capacity) {
+      keys.remove(key.apply(heap.poll()));
+    }
+    snapshot = null;
+    return true;
+  }
+
+  /** Up to {@code limit} elements, greatest first. */
+  public List<T> top(int limit) {
+    List<T> sorted = snapshot;
+    if (sorted == null) {
+      synchronized (this) {
+        sorted = snapshot;
+        if (sorted == null) {
+          List<T> elements = new ArrayList<>(heap);
+          elements.sort(order.reversed());
+          sorted = List.copyOf(elements);
+          snapshot = sorted;
+        }
+      }
+    }
+    return sorted.subList(0, Math.min(limit, sorted.size()));
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+}
@@ -1,6 +1,7 @@
 package com.twelvenexus.oneplan.analytics.model;
 
 import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.twelvenexus.oneplan.analytics.enums.MetricType;
 import jakarta.persistence.CollectionTable;
 import jakarta.persistence.Column;
@@ -85,6 +86,11 @@ public class AggregatedMetric {
   @Column(name = "value")
   private Map<Integer, Double> percentiles; // e.g., 50th, 90th, 95th, 99th
 
+  // Serialized QuantileSketch of the period's values; merged to roll up or answer any percentile
+  @JsonIgnore
+  @Column(columnDefinition = "MEDIUMBLOB")
+  private byte[] sketch;
+
   @Column(nullable = false, updatable = false)
   private LocalDateTime createdAt = LocalDateTime.now();
 }
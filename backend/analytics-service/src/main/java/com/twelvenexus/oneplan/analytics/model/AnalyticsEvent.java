@@ -8,6 +8,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -15,13 +16,21 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @Document(collection = "analytics_events")
 @NoArgsConstructor
 @AllArgsConstructor
-@CompoundIndex(name = "tenant_entity_time", def = "{'tenantId': 1, 'entityId': 1, 'timestamp': -1}")
+@CompoundIndexes({
+  @CompoundIndex(
+      name = "tenant_entity_time",
+      def = "{'tenantId': 1, 'entityId': 1, 'timestamp': -1}"),
+  @CompoundIndex(name = "processing_cursor", def = "{'processed': 1, 'shard': 1, '_id': 1}")
+})
 public class AnalyticsEvent {
 
   @Id private String id;
 
   @Indexed private UUID tenantId;
 
+  // Processing partition derived from tenantId; absent on events stored before sharding
+  private Integer shard;
+
   @Indexed private UUID entityId;
 
   @Indexed private String entityType;
@@ -52,8 +52,12 @@ public class Dashboard {
   @Column(nullable = false)
   private LocalDateTime updatedAt = LocalDateTime.now();
 
+  // Also the version of its materialized snapshot, so it must move on every update even though
+  // the column keeps whole seconds
   @PreUpdate
   private void preUpdate() {
-    updatedAt = LocalDateTime.now();
+    LocalDateTime now = LocalDateTime.now();
+    LocalDateTime next = updatedAt.withNano(0).plusSeconds(1);
+    updatedAt = now.isBefore(next) ? next : now;
   }
 }
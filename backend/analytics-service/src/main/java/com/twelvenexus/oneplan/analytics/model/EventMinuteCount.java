@@ -0,0 +1,34 @@
+package com.twelvenexus.oneplan.analytics.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/** Checkpointed number of events of one name tracked in one minute, across instances. */
+@Data
+@Document(collection = "event_minute_counts")
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventMinuteCount {
+
+  @Id private String id;
+
+  private UUID tenantId;
+
+  private String entityType;
+
+  private String eventName;
+
+  private LocalDateTime minute;
+
+  private long count;
+
+  // Outlives any counter horizon; raw events answer for older ranges
+  @Indexed(expireAfter = "7d")
+  private LocalDateTime updatedAt;
+}
@@ -0,0 +1,27 @@
+package com.twelvenexus.oneplan.analytics.model;
+
+import java.time.LocalDateTime;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/** Lease and checkpoint of one event processing shard. */
+@Data
+@Document(collection = "event_processor_shards")
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventProcessorShard {
+
+  @Id private Integer id;
+
+  private String owner;
+
+  private LocalDateTime leaseExpiresAt;
+
+  // Id of the last event processed in this shard; the next page starts after it
+  private String lastEventId;
+
+  private LocalDateTime updatedAt;
+}
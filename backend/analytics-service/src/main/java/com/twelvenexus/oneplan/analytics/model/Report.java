@@ -1,5 +1,6 @@
 package com.twelvenexus.oneplan.analytics.model;
 
+import com.twelvenexus.oneplan.analytics.enums.ReportRunStatus;
 import com.twelvenexus.oneplan.analytics.enums.ReportType;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
@@ -49,13 +50,23 @@ public class Report {
   @Column(nullable = false)
   private boolean active = true;
 
+  // Last-run columns are written by the report executor only, so saving an edit never
+  // overwrites the outcome of a run that finished meanwhile
+  @Column(insertable = false, updatable = false)
   private LocalDateTime lastRunAt;
 
   private LocalDateTime nextRunAt;
 
-  @Column(columnDefinition = "TEXT")
+  @Column(columnDefinition = "TEXT", insertable = false, updatable = false)
   private String lastRunResult;
 
+  @Enumerated(EnumType.STRING)
+  @Column(insertable = false, updatable = false)
+  private ReportRunStatus lastRunStatus;
+
+  @Column(insertable = false, updatable = false)
+  private Long lastRunDurationMs;
+
   @Column(nullable = false, updatable = false)
   private LocalDateTime createdAt = LocalDateTime.now();
 
@@ -0,0 +1,85 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * RFC 4180 CSV: a {@code field,value} section for the fields, then each table after a blank line,
+ * its name and a header row. Output goes out in buffer-sized chunks.
+ */
+public final class CsvReportWriter implements ReportWriter {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Writer writer;
+  private boolean fieldsStarted;
+
+  public CsvReportWriter(OutputStream out) {
+    this.writer =
+        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+  }
+
+  @Override
+  public void field(String name, Object value) throws IOException {
+    if (!fieldsStarted) {
+      line("field", "value");
+      fieldsStarted = true;
+    }
+    if (value instanceof Map<?, ?> group) {
+      for (Map.Entry<?, ?> entry : group.entrySet()) {
+        line(name + "." + entry.getKey(), entry.getValue());
+      }
+    } else {
+      line(name, value);
+    }
+  }
+
+  @Override
+  public void startTable(String name, String... columns) throws IOException {
+    writer.write("\r\n");
+    line(name);
+    line((Object[]) columns);
+  }
+
+  @Override
+  public void row(Object... values) throws IOException {
+    line(values);
+  }
+
+  @Override
+  public void endTable() {}
+
+  @Override
+  public void close() throws IOException {
+    writer.flush();
+  }
+
+  private void line(Object... cells) throws IOException {
+    for (int i = 0; i < cells.length; i++) {
+      if (i > 0) {
+        writer.write(',');
+      }
+      writer.write(escape(cells[i]));
+    }
+    writer.write("\r\n");
+  }
+
+  private static String escape(Object value) {
+    if (value == null) {
+      return "";
+    }
+    String text = value.toString();
+    if (text.indexOf(',') < 0
+        && text.indexOf('"') < 0
+        && text.indexOf('\n') < 0
+        && text.indexOf('\r') < 0) {
+      return text;
+    }
+    return '"' + text.replace("\"", "\"\"") + '"';
+  }
+}
@@ -0,0 +1,52 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** A JSON object of the fields, with each table as an array of row objects keyed by column. */
+public final class JsonReportWriter implements ReportWriter {
+
+  private final JsonGenerator generator;
+  private String[] columns;
+
+  public JsonReportWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+    this.generator = objectMapper.createGenerator(out);
+    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    generator.writeStartObject();
+  }
+
+  @Override
+  public void field(String name, Object value) throws IOException {
+    generator.writeFieldName(name);
+    generator.writeObject(value);
+  }
+
+  @Override
+  public void startTable(String name, String... columns) throws IOException {
+    this.columns = columns;
+    generator.writeArrayFieldStart(name);
+  }
+
+  @Override
+  public void row(Object... values) throws IOException {
+    generator.writeStartObject();
+    for (int i = 0; i < columns.length; i++) {
+      generator.writeFieldName(columns[i]);
+      generator.writeObject(values[i]);
+    }
+    generator.writeEndObject();
+  }
+
+  @Override
+  public void endTable() throws IOException {
+    generator.writeEndArray();
+  }
+
+  @Override
+  public void close() throws IOException {
+    generator.writeEndObject();
+    generator.close();
+  }
+}
@@ -0,0 +1,218 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A plain-text PDF in a monospaced font, written page by page: each page's content goes out as
+ * soon as the page is full, and only object offsets are kept until the cross-reference table at
+ * the end.
+ */
+public final class PdfReportWriter implements ReportWriter {
+
+  private static final int PAGE_WIDTH = 595; // A4 in points
+  private static final int PAGE_HEIGHT = 842;
+  private static final int MARGIN = 40;
+  private static final int FONT_SIZE = 9;
+  private static final int LEADING = 11;
+  static final int LINES_PER_PAGE = (PAGE_HEIGHT - 2 * MARGIN) / LEADING;
+  private static final int LINE_WIDTH = 95; // Courier is 0.6 em wide
+  private static final int COLUMN_WIDTH = 20;
+
+  // Written last, once the page list is known
+  private static final int CATALOG = 1;
+  private static final int PAGES = 2;
+  private static final int FONT = 3;
+
+  private final Output out;
+  private final List<Long> offsets = new ArrayList<>();
+  private final List<Integer> pages = new ArrayList<>();
+  private final StringBuilder page = new StringBuilder();
+  private int pageLines;
+
+  public PdfReportWriter(OutputStream target) throws IOException {
+    this.out = new Output(target);
+    out.write("%PDF-1.4\n");
+    offsets.add(0L); // Object 0 is the free-list head
+    offsets.add(-1L);
+    offsets.add(-1L);
+    startObject(FONT);
+    out.write(
+        "<< /Type /Font /Subtype /Type1 /BaseFont /Courier /Encoding /WinAnsiEncoding >>\n"
+            + "endobj\n");
+  }
+
+  @Override
+  public void field(String name, Object value) throws IOException {
+    if (value instanceof Map<?, ?> group) {
+      for (Map.Entry<?, ?> entry : group.entrySet()) {
+        line(name + "." + entry.getKey() + ": " + entry.getValue());
+      }
+    } else {
+      line(name + ": " + value);
+    }
+  }
+
+  @Override
+  public void startTable(String name, String... columns) throws IOException {
+    line("");
+    line(name);
+    line(cells(columns));
+  }
+
+  @Override
+  public void row(Object... values) throws IOException {
+    line(cells(values));
+  }
+
+  @Override
+  public void endTable() {}
+
+  @Override
+  public void close() throws IOException {
+    if (pageLines > 0 || pages.isEmpty()) {
+      flushPage();
+    }
+
+    offsets.set(PAGES, out.position());
+    out.write(PAGES + " 0 obj\n<< /Type /Pages /Count " + pages.size() + " /Kids [");
+    for (int pageObject : pages) {
+      out.write(" " + pageObject + " 0 R");
+    }
+    out.write(" ] >>\nendobj\n");
+    offsets.set(CATALOG, out.position());
+    out.write(CATALOG + " 0 obj\n<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+
+    long xref = out.position();
+    out.write("xref\n0 " + offsets.size() + "\n0000000000 65535 f \n");
+    for (int i = 1; i < offsets.size(); i++) {
+      out.write(String.format("%010d 00000 n \n", offsets.get(i)));
+    }
+    out.write(
+        "trailer\n<< /Size "
+            + offsets.size()
+            + " /Root "
+            + CATALOG
+            + " 0 R >>\nstartxref\n"
+            + xref
+            + "\n%%EOF\n");
+    out.flush();
+  }
+
+  private void line(String text) throws IOException {
+    if (pageLines == LINES_PER_PAGE) {
+      flushPage();
+    }
+    String clipped = text.length() > LINE_WIDTH ? text.substring(0, LINE_WIDTH) : text;
+    page.append('(').append(escape(clipped)).append(") Tj T*\n");
+    pageLines++;
+  }
+
+  private void flushPage() throws IOException {
+    String content =
+        "BT /F1 "
+            + FONT_SIZE
+            + " Tf "
+            + LEADING
+            + " TL "
+            + MARGIN
+            + " "
+            + (PAGE_HEIGHT - MARGIN - FONT_SIZE)
+            + " Td\n"
+            + page
+            + "ET\n";
+    byte[] bytes = content.getBytes(StandardCharsets.ISO_8859_1);
+    int contentObject = startObject(offsets.size());
+    out.write("<< /Length " + bytes.length + " >>\nstream\n");
+    out.write(bytes);
+    out.write("\nendstream\nendobj\n");
+
+    int pageObject = startObject(offsets.size());
+    out.write(
+        "<< /Type /Page /Parent "
+            + PAGES
+            + " 0 R /MediaBox [0 0 "
+            + PAGE_WIDTH
+            + " "
+            + PAGE_HEIGHT
+            + "] /Resources << /Font << /F1 "
+            + FONT
+            + " 0 R >> >> /Contents "
+            + contentObject
+            + " 0 R >>\nendobj\n");
+    pages.add(pageObject);
+    page.setLength(0);
+    pageLines = 0;
+  }
+
+  private int startObject(int number) throws IOException {
+    if (number == offsets.size()) {
+      offsets.add(out.position());
+    } else {
+      offsets.set(number, out.position());
+    }
+    out.write(number + " 0 obj\n");
+    return number;
+  }
+
+  private static String cells(Object[] values) {
+    StringBuilder line = new StringBuilder();
+    for (Object value : values) {
+      String text = String.valueOf(value);
+      if (text.length() >= COLUMN_WIDTH) {
+        text = text.substring(0, COLUMN_WIDTH - 1);
+      }
+      line.append(text).append(" ".repeat(COLUMN_WIDTH - text.length()));
+    }
+    return line.toString().stripTrailing();
+  }
+
+  /** Escapes PDF string delimiters; characters outside Latin-1 become {@code ?}. */
+  private static String escape(String text) {
+    StringBuilder escaped = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '(' || c == ')' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < ' ' || c > 0xFF) {
+        escaped.append('?');
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  /** Buffered output that knows how many bytes it has written, for the object offsets. */
+  private static final class Output {
+
+    private final OutputStream out;
+    private long position;
+
+    Output(OutputStream target) {
+      this.out = new BufferedOutputStream(target);
+    }
+
+    void write(String text) throws IOException {
+      write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    void write(byte[] bytes) throws IOException {
+      out.write(bytes);
+      position += bytes.length;
+    }
+
+    long position() {
+      return position;
+    }
+
+    void flush() throws IOException {
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,399 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import com.twelvenexus.oneplan.analytics.enums.ReportRunStatus;
+import com.twelvenexus.oneplan.analytics.enums.ReportType;
+import com.twelvenexus.oneplan.analytics.model.Report;
+import com.twelvenexus.oneplan.analytics.repository.ReportRunRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Generates reports on virtual threads, at most {@code workers} at a time and at most {@code
+ * perTenant} of one tenant. Queued tenants are served in turn, so one tenant's backlog cannot
+ * starve the others.
+ *
+ * <p>A run first claims its report in the database, so a report already running on any instance is
+ * not started again; the claim lapses a minute after the timeout if its owner dies. A run past the
+ * timeout, or cancelled, is interrupted and recorded straight away; whatever it still produces is
+ * discarded. It keeps its slot until its thread returns, though, as a task that ignores interrupts,
+ * such as one blocked in JDBC, is still at work. Cancellations sent to another instance are picked
+ * up by polling.
+ */
+@Slf4j
+public final class ReportExecutor implements AutoCloseable {
+
+  private static final Duration LEASE_GRACE = Duration.ofMinutes(1);
+
+  // A stopped run still holding its slot for longer than this is logged
+  private static final Duration STOP_GRACE = Duration.ofSeconds(1);
+
+  /** Produces the report's result. */
+  @FunctionalInterface
+  public interface ReportTask {
+    String generate() throws Exception;
+  }
+
+  private final ReportRunRepository runRepository;
+  private final MeterRegistry meterRegistry;
+  private final String owner;
+  private final int workers;
+  private final int perTenant;
+  private final Duration timeout;
+  private final ExecutorService threads;
+  private final ScheduledExecutorService timer;
+
+  // Queued or running, by report
+  private final Map<UUID, Execution> executions = new ConcurrentHashMap<>();
+
+  // Guarded by this; iteration order is the order tenants are served in
+  private final Map<UUID, Deque<Execution>> queues = new LinkedHashMap<>();
+  private final Map<UUID, Integer> runningByTenant = new HashMap<>();
+  private int queued;
+  private int running;
+  private boolean closed;
+
+  public ReportExecutor(
+      ReportRunRepository runRepository,
+      MeterRegistry meterRegistry,
+      String owner,
+      int workers,
+      int perTenant,
+      Duration timeout,
+      Duration cancelPollInterval) {
+    this.runRepository = runRepository;
+    this.meterRegistry = meterRegistry;
+    this.owner = owner;
+    this.workers = workers;
+    this.perTenant = perTenant;
+    this.timeout = timeout;
+    this.threads =
+        Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("report-", 0).factory());
+    this.timer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "report-timer");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long pollMillis = cancelPollInterval.toMillis();
+    timer.scheduleWithFixedDelay(
+        this::pollCancellations, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+
+    Gauge.builder("analytics.reports.running", this, ReportExecutor::running)
+        .description("Reports being generated on this instance")
+        .register(meterRegistry);
+    Gauge.builder("analytics.reports.queued", this, ReportExecutor::queued)
+        .description("Reports waiting for a worker on this instance")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Queues a run of the report unless one is already queued or running here, in which case that
+   * run's outcome is returned. With {@code dueBy} set the run is skipped if the report is no longer
+   * due by then, i.e. another instance ran it meanwhile; {@code nextRunAt}, if set, becomes its
+   * next scheduled run once claimed.
+   */
+  public CompletableFuture<ReportRunStatus> submit(
+      Report report, LocalDateTime dueBy, LocalDateTime nextRunAt, ReportTask task) {
+    Execution execution;
+    synchronized (this) {
+      Execution existing = executions.get(report.getId());
+      if (existing != null) {
+        return existing.completion;
+      }
+      execution = new Execution(report.getId(), report, true, dueBy, nextRunAt, task);
+      enqueue(execution);
+    }
+    dispatch();
+    return execution.completion;
+  }
+
+  /**
+   * Queues a one-off generation of the report, such as an export, under the same worker, tenant
+   * and timeout limits as runs. It neither claims the report nor records an outcome, so it may
+   * overlap a run or another export of the same report.
+   */
+  public CompletableFuture<ReportRunStatus> submitExport(Report report, ReportTask task) {
+    Execution execution = new Execution(UUID.randomUUID(), report, false, null, null, task);
+    synchronized (this) {
+      enqueue(execution);
+    }
+    dispatch();
+    return execution.completion;
+  }
+
+  /**
+   * Cancels the report's run, here or on whichever instance holds it; false when it is neither
+   * queued nor running.
+   */
+  public boolean cancel(UUID reportId) {
+    Execution execution = executions.get(reportId);
+    if (execution != null) {
+      stop(execution, ReportRunStatus.CANCELLED);
+      return true;
+    }
+    return runRepository.requestCancel(reportId, LocalDateTime.now());
+  }
+
+  public synchronized int running() {
+    return running;
+  }
+
+  public synchronized int queued() {
+    return queued;
+  }
+
+  /** Cancels what is queued or running, releasing the claims, and stops the threads. */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    for (Execution execution : List.copyOf(executions.values())) {
+      stop(execution, ReportRunStatus.CANCELLED);
+    }
+    timer.shutdownNow();
+    threads.shutdownNow();
+  }
+
+  private void enqueue(Execution execution) {
+    executions.put(execution.id, execution);
+    queues.computeIfAbsent(execution.tenantId, tenant -> new ArrayDeque<>()).add(execution);
+    queued++;
+  }
+
+  /** Starts queued runs while there are free workers, taking tenants in turn. */
+  private synchronized void dispatch() {
+    while (!closed && running < workers && queued > 0) {
+      Iterator<Map.Entry<UUID, Deque<Execution>>> tenants = queues.entrySet().iterator();
+      Map.Entry<UUID, Deque<Execution>> next = null;
+      while (tenants.hasNext() && next == null) {
+        Map.Entry<UUID, Deque<Execution>> tenant = tenants.next();
+        if (runningByTenant.getOrDefault(tenant.getKey(), 0) < perTenant) {
+          next = tenant;
+        }
+      }
+      if (next == null) {
+        return; // Every queued tenant is at its limit
+      }
+
+      UUID tenantId = next.getKey();
+      Deque<Execution> queue = next.getValue();
+      Execution execution = queue.poll();
+      // Served tenants go to the back of the line
+      queues.remove(tenantId);
+      if (!queue.isEmpty()) {
+        queues.put(tenantId, queue);
+      }
+      queued--;
+      running++;
+      runningByTenant.merge(tenantId, 1, Integer::sum);
+      execution.started = true;
+      // Not a Future: cancelling one before it starts would skip run(), and with it the release
+      threads.execute(() -> run(execution));
+    }
+  }
+
+  private void run(Execution execution) {
+    execution.thread = Thread.currentThread();
+    try {
+      if (execution.exclusive && !claim(execution)) {
+        finish(execution, ReportRunStatus.SKIPPED, null);
+        return;
+      }
+      execution.startNanos = System.nanoTime();
+      execution.claimed = execution.exclusive;
+      ReportRunStatus stoppedAs = execution.outcome.get();
+      if (stoppedAs != null) {
+        if (execution.claimed) {
+          // Stopped while claiming, before the claim could be released
+          Thread.interrupted();
+          record(execution, stoppedAs, null, 0);
+        }
+        return;
+      }
+      execution.deadline =
+          timer.schedule(
+              () -> stop(execution, ReportRunStatus.TIMED_OUT),
+              timeout.toMillis(),
+              TimeUnit.MILLISECONDS);
+
+      String result = execution.task.generate();
+      finish(execution, ReportRunStatus.SUCCEEDED, result);
+    } catch (Exception e) {
+      if (execution.outcome.get() == null) {
+        log.error("Error running report {}: {}", execution.reportId, e.getMessage());
+      }
+      finish(execution, ReportRunStatus.FAILED, "Error: " + e.getMessage());
+    } finally {
+      release(execution);
+    }
+  }
+
+  private boolean claim(Execution execution) {
+    LocalDateTime now = LocalDateTime.now();
+    return runRepository.claim(
+        execution.reportId,
+        owner,
+        now,
+        now.plus(timeout).plus(LEASE_GRACE),
+        execution.dueBy,
+        execution.nextRunAt);
+  }
+
+  private void stop(Execution execution, ReportRunStatus status) {
+    if (finish(execution, status, null)) {
+      log.info("Report {} {}", execution.reportId, status);
+      execution.stoppedNanos = System.nanoTime();
+      Thread thread = execution.thread;
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  /** Frees the run's slot once its thread is done with it. */
+  private void release(Execution execution) {
+    long stoppedNanos = execution.stoppedNanos;
+    if (stoppedNanos != 0) {
+      Duration held = Duration.ofNanos(System.nanoTime() - stoppedNanos);
+      if (held.compareTo(STOP_GRACE) > 0) {
+        log.warn("Report {} held its worker for {} after being stopped", execution.reportId, held);
+      }
+    }
+    synchronized (this) {
+      running--;
+      runningByTenant.computeIfPresent(
+          execution.tenantId, (tenant, count) -> count > 1 ? count - 1 : null);
+    }
+    dispatch();
+  }
+
+  /**
+   * Settles the run's outcome unless it already has one; returns whether this call did. A queued
+   * run gives up its place here, a started one its slot only in {@link #release}.
+   */
+  private boolean finish(Execution execution, ReportRunStatus status, String result) {
+    if (!execution.outcome.compareAndSet(null, status)) {
+      return false;
+    }
+    ScheduledFuture<?> deadline = execution.deadline;
+    if (deadline != null) {
+      deadline.cancel(false);
+    }
+    long nanos = execution.startNanos != 0 ? System.nanoTime() - execution.startNanos : 0;
+    if (execution.claimed) {
+      record(execution, status, result, nanos);
+    }
+    if (status != ReportRunStatus.SKIPPED) {
+      Timer.builder("analytics.reports.runs")
+          .description("Report generation time by outcome")
+          .tag("type", execution.type.name())
+          .tag("kind", execution.exclusive ? "run" : "export")
+          .tag("status", status.name())
+          .register(meterRegistry)
+          .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    synchronized (this) {
+      executions.remove(execution.id);
+      if (!execution.started) {
+        Deque<Execution> queue = queues.get(execution.tenantId);
+        queue.remove(execution);
+        if (queue.isEmpty()) {
+          queues.remove(execution.tenantId);
+        }
+        queued--;
+      }
+    }
+    execution.completion.complete(status);
+    return true;
+  }
+
+  private void record(Execution execution, ReportRunStatus status, String result, long nanos) {
+    try {
+      runRepository.finish(
+          execution.reportId,
+          owner,
+          status,
+          LocalDateTime.now(),
+          TimeUnit.NANOSECONDS.toMillis(nanos),
+          result);
+    } catch (RuntimeException e) {
+      log.error("Could not record the {} run of report {}", status, execution.reportId, e);
+    }
+  }
+
+  private void pollCancellations() {
+    if (running() == 0) {
+      return;
+    }
+    try {
+      for (UUID reportId : runRepository.findCancelRequested(owner)) {
+        Execution execution = executions.get(reportId);
+        if (execution != null) {
+          stop(execution, ReportRunStatus.CANCELLED);
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("Could not check for cancelled reports", e);
+    }
+  }
+
+  private static final class Execution {
+    final UUID id; // The report for runs; exports have their own
+    final UUID tenantId;
+    final UUID reportId;
+    final ReportType type;
+    final boolean exclusive; // Claims the report and records its outcome
+    final LocalDateTime dueBy;
+    final LocalDateTime nextRunAt;
+    final ReportTask task;
+    final CompletableFuture<ReportRunStatus> completion = new CompletableFuture<>();
+    final AtomicReference<ReportRunStatus> outcome = new AtomicReference<>();
+
+    boolean started; // Guarded by the executor
+    volatile Thread thread;
+    volatile ScheduledFuture<?> deadline;
+    volatile long startNanos;
+    volatile long stoppedNanos;
+    volatile boolean claimed;
+
+    Execution(
+        UUID id,
+        Report report,
+        boolean exclusive,
+        LocalDateTime dueBy,
+        LocalDateTime nextRunAt,
+        ReportTask task) {
+      this.id = id;
+      this.tenantId = report.getTenantId();
+      this.reportId = report.getId();
+      this.type = report.getType();
+      this.exclusive = exclusive;
+      this.dueBy = dueBy;
+      this.nextRunAt = nextRunAt;
+      this.task = task;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import org.springframework.scheduling.support.CronExpression;
+
+/**
+ * Next run times of scheduled reports. Schedules are cron expressions, with or without the leading
+ * seconds field. Each report's schedule is shifted by a fixed jitter derived from its id, so the
+ * many reports that share a popular expression, such as midnight, are spread over the jitter
+ * window instead of all starting at once.
+ */
+public final class ReportSchedule {
+
+  private final long maxJitterSeconds;
+
+  public ReportSchedule(Duration maxJitter) {
+    this.maxJitterSeconds = Math.max(1, maxJitter.toSeconds());
+  }
+
+  /** Parses the expression; throws {@link IllegalArgumentException} when it is invalid. */
+  public static CronExpression parse(String schedule) {
+    String expression = schedule.trim();
+    // Five fields is classic cron, which starts at minutes
+    if (expression.split("\\s+").length == 5) {
+      expression = "0 " + expression;
+    }
+    try {
+      return CronExpression.parse(expression);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid schedule: " + schedule, e);
+    }
+  }
+
+  /** The report's first run strictly after {@code after}. */
+  public LocalDateTime nextRun(UUID reportId, String schedule, LocalDateTime after) {
+    Duration jitter = jitter(reportId);
+    LocalDateTime next = parse(schedule).next(after.minus(jitter));
+    if (next == null) {
+      throw new IllegalArgumentException("Schedule never fires: " + schedule);
+    }
+    return next.plus(jitter);
+  }
+
+  /** The report's offset from its schedule, uniform over the window and stable across runs. */
+  public Duration jitter(UUID reportId) {
+    long hash = reportId.getMostSignificantBits() ^ reportId.getLeastSignificantBits();
+    hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL; // Murmur3 finaliser
+    hash ^= hash >>> 33;
+    return Duration.ofSeconds(Math.floorMod(hash, maxJitterSeconds));
+  }
+}
@@ -0,0 +1,120 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fires report tasks at their due times: a priority queue ordered by due time and one timer thread
+ * that sleeps until the earliest entry. Reports are queued by the scheduled-report poll shortly
+ * before they are due. Queuing a report again with another time replaces its entry, so an edited
+ * schedule takes effect.
+ */
+@Slf4j
+public final class ReportScheduler implements AutoCloseable {
+
+  private record Entry(UUID reportId, LocalDateTime dueAt, Runnable task) {}
+
+  private final Clock clock;
+  private final PriorityQueue<Entry> queue =
+      new PriorityQueue<>(Comparator.comparing(Entry::dueAt));
+  // The live entry of each report; queue entries not in here were replaced and are skipped
+  private final Map<UUID, Entry> entries = new HashMap<>();
+  private ScheduledExecutorService timer;
+  private ScheduledFuture<?> wakeUp;
+
+  public ReportScheduler(Clock clock) {
+    this.clock = clock;
+  }
+
+  /** Starts the timer thread; until then due tasks only run through {@link #runDue()}. */
+  public synchronized void start() {
+    timer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "report-scheduler");
+              thread.setDaemon(true);
+              return thread;
+            });
+    rearm();
+  }
+
+  /** Runs {@code task} at {@code dueAt}, or right away if that has passed. */
+  public synchronized void schedule(UUID reportId, LocalDateTime dueAt, Runnable task) {
+    Entry current = entries.get(reportId);
+    if (current != null && current.dueAt().equals(dueAt)) {
+      return;
+    }
+    Entry entry = new Entry(reportId, dueAt, task);
+    entries.put(reportId, entry);
+    queue.add(entry);
+    if (queue.peek() == entry) {
+      rearm();
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** Runs the tasks due by now, earliest first, and returns how many ran. */
+  public int runDue() {
+    List<Entry> due = new ArrayList<>();
+    synchronized (this) {
+      LocalDateTime now = LocalDateTime.now(clock);
+      while (!queue.isEmpty() && !queue.peek().dueAt().isAfter(now)) {
+        Entry entry = queue.poll();
+        if (entries.get(entry.reportId()) == entry) {
+          entries.remove(entry.reportId());
+          due.add(entry);
+        }
+      }
+      rearm();
+    }
+    for (Entry entry : due) {
+      try {
+        entry.task().run();
+      } catch (RuntimeException e) {
+        log.error("Could not start scheduled report {}", entry.reportId(), e);
+      }
+    }
+    return due.size();
+  }
+
+  @Override
+  public synchronized void close() {
+    if (timer != null) {
+      timer.shutdownNow();
+    }
+  }
+
+  /** Sets the timer for the earliest live entry. */
+  private void rearm() {
+    if (timer == null) {
+      return;
+    }
+    while (!queue.isEmpty() && entries.get(queue.peek().reportId()) != queue.peek()) {
+      queue.poll();
+    }
+    if (wakeUp != null) {
+      wakeUp.cancel(false);
+      wakeUp = null;
+    }
+    if (!queue.isEmpty()) {
+      long delay = Duration.between(LocalDateTime.now(clock), queue.peek().dueAt()).toMillis();
+      wakeUp = timer.schedule(this::runDue, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+  }
+}
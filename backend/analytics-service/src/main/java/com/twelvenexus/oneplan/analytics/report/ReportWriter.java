@@ -0,0 +1,34 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.enums.ReportFormat;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a report as it is generated: summary fields, then tables of rows. Nothing is held beyond
+ * the current row and an output buffer, so memory does not grow with the report. Closing completes
+ * the document and flushes it, but leaves the target stream open.
+ */
+public interface ReportWriter extends Closeable {
+
+  /** A summary value; a map is written as a group of named values. */
+  void field(String name, Object value) throws IOException;
+
+  void startTable(String name, String... columns) throws IOException;
+
+  /** One row of the current table, one value per column. */
+  void row(Object... values) throws IOException;
+
+  void endTable() throws IOException;
+
+  static ReportWriter create(ReportFormat format, OutputStream out, ObjectMapper objectMapper)
+      throws IOException {
+    return switch (format) {
+      case CSV -> new CsvReportWriter(out);
+      case JSON -> new JsonReportWriter(objectMapper, out);
+      case PDF -> new PdfReportWriter(out);
+    };
+  }
+}
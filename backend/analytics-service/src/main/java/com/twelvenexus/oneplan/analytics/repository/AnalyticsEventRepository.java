@@ -4,6 +4,8 @@ import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -14,11 +16,15 @@ public interface AnalyticsEventRepository extends MongoRepository<AnalyticsEvent
   List<AnalyticsEvent> findByTenantIdAndEntityIdAndTimestampBetween(
       UUID tenantId, UUID entityId, LocalDateTime start, LocalDateTime end);
 
-  List<AnalyticsEvent> findByProcessedFalseAndTimestampBefore(LocalDateTime cutoff);
+  record EventNameCount(@Id String eventName, long count) {}
 
-  @Query("{ 'tenantId': ?0, 'eventType': ?1, 'timestamp': { $gte: ?2, $lte: ?3 } }")
-  List<AnalyticsEvent> findByEventTypeAndDateRange(
-      UUID tenantId, String eventType, LocalDateTime start, LocalDateTime end);
+  @Aggregation(
+      pipeline = {
+        "{ $match: { 'tenantId': ?0, 'entityType': ?1, 'timestamp': { $gte: ?2, $lt: ?3 } } }",
+        "{ $group: { _id: '$eventName', count: { $sum: 1 } } }"
+      })
+  List<EventNameCount> countByEventName(
+      UUID tenantId, String entityType, LocalDateTime start, LocalDateTime end);
 
   @Query("{ 'tenantId': ?0, 'userId': ?1, 'timestamp': { $gte: ?2 } }")
   List<AnalyticsEvent> findUserEvents(UUID tenantId, UUID userId, LocalDateTime since);
@@ -0,0 +1,87 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import com.twelvenexus.oneplan.analytics.dto.BackfillResultDto;
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.BackfillStatus;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/** Backfills started through the API and their outcomes. */
+@Repository
+public class BackfillRepository {
+
+  private static final int MAX_ERROR_LENGTH = 1000;
+
+  private static final String CREATE_SQL =
+      "INSERT INTO aggregation_backfills "
+          + "(id, period, range_start, range_end, status, owner, started_at) "
+          + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String FINISH_SQL =
+      "UPDATE aggregation_backfills SET status = ?, buckets_rebuilt = ?, aggregates_written = ?, "
+          + "duration_ms = ?, error = ?, finished_at = ? WHERE id = ?";
+
+  private static final String FIND_SQL =
+      "SELECT id, period, range_start, range_end, status, buckets_rebuilt, aggregates_written, "
+          + "duration_ms, error, started_at, finished_at FROM aggregation_backfills WHERE id = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public BackfillRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  public void create(BackfillResultDto backfill, String owner) {
+    jdbcTemplate.update(
+        CREATE_SQL,
+        backfill.getId().toString(),
+        backfill.getPeriod().name(),
+        Timestamp.valueOf(backfill.getFrom()),
+        Timestamp.valueOf(backfill.getTo()),
+        backfill.getStatus().name(),
+        owner,
+        Timestamp.valueOf(backfill.getStartedAt()));
+  }
+
+  public void finish(BackfillResultDto backfill) {
+    String error = backfill.getError();
+    jdbcTemplate.update(
+        FINISH_SQL,
+        backfill.getStatus().name(),
+        backfill.getBucketsRebuilt(),
+        backfill.getAggregatesWritten(),
+        backfill.getDurationMs(),
+        error != null && error.length() > MAX_ERROR_LENGTH
+            ? error.substring(0, MAX_ERROR_LENGTH)
+            : error,
+        Timestamp.valueOf(backfill.getFinishedAt()),
+        backfill.getId().toString());
+  }
+
+  public Optional<BackfillResultDto> findById(UUID id) {
+    return jdbcTemplate.query(FIND_SQL, BackfillRepository::toDto, id.toString()).stream()
+        .findFirst();
+  }
+
+  private static BackfillResultDto toDto(ResultSet rs, int rowNum) throws SQLException {
+    BackfillResultDto backfill = new BackfillResultDto();
+    backfill.setId(UUID.fromString(rs.getString("id")));
+    backfill.setPeriod(AggregationPeriod.valueOf(rs.getString("period")));
+    backfill.setFrom(rs.getTimestamp("range_start").toLocalDateTime());
+    backfill.setTo(rs.getTimestamp("range_end").toLocalDateTime());
+    backfill.setStatus(BackfillStatus.valueOf(rs.getString("status")));
+    backfill.setBucketsRebuilt(rs.getLong("buckets_rebuilt"));
+    backfill.setAggregatesWritten(rs.getLong("aggregates_written"));
+    backfill.setDurationMs(rs.getLong("duration_ms"));
+    backfill.setError(rs.getString("error"));
+    backfill.setStartedAt(rs.getTimestamp("started_at").toLocalDateTime());
+    Timestamp finishedAt = rs.getTimestamp("finished_at");
+    backfill.setFinishedAt(finishedAt != null ? finishedAt.toLocalDateTime() : null);
+    return backfill;
+  }
+}
@@ -0,0 +1,91 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import com.twelvenexus.oneplan.analytics.dto.WidgetLayoutDto;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/** Layout edits of dashboard widgets as single statements, without loading the widgets. */
+@Repository
+public class DashboardLayoutRepository {
+
+  // Same rule as Dashboard.preUpdate: the version moves by at least a second
+  private static final String TOUCH_SQL =
+      "UPDATE dashboards SET updated_at = GREATEST(?, updated_at + INTERVAL '1' SECOND) "
+          + "WHERE id = ? AND tenant_id = ?";
+
+  private static final String CLOSE_GAP_SQL =
+      "UPDATE dashboard_widgets SET position = position - 1, updated_at = ? "
+          + "WHERE dashboard_id = ? AND position > ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public DashboardLayoutRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /** Moves the dashboard's version; false when the tenant has no such dashboard. */
+  public boolean touch(UUID dashboardId, UUID tenantId, LocalDateTime now) {
+    return jdbcTemplate.update(
+            TOUCH_SQL, Timestamp.valueOf(now), dashboardId.toString(), tenantId.toString())
+        == 1;
+  }
+
+  /**
+   * Applies the layouts to the dashboard's widgets in one statement and returns how many widgets
+   * it matched; widgets of other dashboards are left alone.
+   */
+  public int updateLayout(UUID dashboardId, List<WidgetLayoutDto> layouts, LocalDateTime now) {
+    List<Object> args = new ArrayList<>();
+    StringBuilder sql = new StringBuilder("UPDATE dashboard_widgets SET ");
+    setColumn(sql, args, "position", layouts, WidgetLayoutDto::getPosition);
+    setColumn(sql, args, "width", layouts, WidgetLayoutDto::getWidth);
+    setColumn(sql, args, "height", layouts, WidgetLayoutDto::getHeight);
+    sql.append("updated_at = ? WHERE dashboard_id = ? AND id IN (")
+        .append(String.join(", ", Collections.nCopies(layouts.size(), "?")))
+        .append(')');
+    args.add(Timestamp.valueOf(now));
+    args.add(dashboardId.toString());
+    for (WidgetLayoutDto layout : layouts) {
+      args.add(layout.getId().toString());
+    }
+    return jdbcTemplate.update(sql.toString(), args.toArray());
+  }
+
+  /** Shifts the widgets after a removed one up by one position. */
+  public void closeGap(UUID dashboardId, int removedPosition, LocalDateTime now) {
+    jdbcTemplate.update(
+        CLOSE_GAP_SQL, Timestamp.valueOf(now), dashboardId.toString(), removedPosition);
+  }
+
+  /** Appends {@code column = CASE id WHEN ? THEN ? ... ELSE column END, } for the set values. */
+  private static void setColumn(
+      StringBuilder sql,
+      List<Object> args,
+      String column,
+      List<WidgetLayoutDto> layouts,
+      Function<WidgetLayoutDto, Integer> value) {
+    StringBuilder cases = new StringBuilder();
+    List<Object> values = new ArrayList<>();
+    for (WidgetLayoutDto layout : layouts) {
+      Integer set = value.apply(layout);
+      if (set != null) {
+        cases.append(" WHEN ? THEN ?");
+        values.add(layout.getId().toString());
+        values.add(set);
+      }
+    }
+    if (values.isEmpty()) {
+      return;
+    }
+    sql.append(column).append(" = CASE id").append(cases);
+    sql.append(" ELSE ").append(column).append(" END, ");
+    args.addAll(values);
+  }
+}
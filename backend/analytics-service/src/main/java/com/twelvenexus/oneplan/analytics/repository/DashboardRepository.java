@@ -1,9 +1,11 @@
 package com.twelvenexus.oneplan.analytics.repository;
 
 import com.twelvenexus.oneplan.analytics.model.Dashboard;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -22,6 +24,14 @@ public interface DashboardRepository extends JpaRepository<Dashboard, UUID> {
           + "WHERE d.id = :dashboardId AND d.tenantId = :tenantId")
   Optional<Dashboard> findByIdWithWidgets(UUID dashboardId, UUID tenantId);
 
+  @EntityGraph(attributePaths = {"widgets", "widgets.configuration"})
+  Optional<Dashboard> findWithWidgetsByIdAndTenantId(UUID id, UUID tenantId);
+
+  @Query(
+      "SELECT d.updatedAt FROM Dashboard d "
+          + "WHERE d.id = :dashboardId AND d.tenantId = :tenantId")
+  Optional<LocalDateTime> findVersion(UUID dashboardId, UUID tenantId);
+
   @Query(
       "SELECT d FROM Dashboard d WHERE d.tenantId = :tenantId "
           + "AND (d.ownerId = :userId OR d.isPublic = true)")
@@ -0,0 +1,17 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import com.twelvenexus.oneplan.analytics.model.DashboardWidget;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DashboardWidgetRepository extends JpaRepository<DashboardWidget, UUID> {
+
+  @Query(
+      "SELECT w FROM DashboardWidget w JOIN FETCH w.dashboard d "
+          + "WHERE w.id = :widgetId AND d.tenantId = :tenantId")
+  Optional<DashboardWidget> findByIdAndTenantId(UUID widgetId, UUID tenantId);
+}
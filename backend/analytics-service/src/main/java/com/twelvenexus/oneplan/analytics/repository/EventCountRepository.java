@@ -0,0 +1,71 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.twelvenexus.oneplan.analytics.counter.EventCounters.MinuteCount;
+import com.twelvenexus.oneplan.analytics.model.EventMinuteCount;
+import java.time.LocalDateTime;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+/** Checkpoint store of the real-time event counters. */
+@Repository
+@RequiredArgsConstructor
+public class EventCountRepository {
+
+  private final MongoTemplate mongoTemplate;
+
+  /** Adds the deltas to the stored minute totals. */
+  public void increment(List<MinuteCount> deltas, LocalDateTime updatedAt) {
+    if (deltas.isEmpty()) {
+      return;
+    }
+    BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, EventMinuteCount.class);
+    for (MinuteCount delta : deltas) {
+      bulk.upsert(
+          query(where("_id").is(idOf(delta))),
+          new Update()
+              .inc("count", delta.count())
+              .set("updatedAt", updatedAt)
+              .setOnInsert("tenantId", delta.tenantId())
+              .setOnInsert("entityType", delta.entityType())
+              .setOnInsert("eventName", delta.eventName())
+              .setOnInsert("minute", delta.minute()));
+    }
+    bulk.execute();
+  }
+
+  /** Totals of the minutes from {@code minuteFrom} on that changed since {@code updatedFrom}. */
+  public List<MinuteCount> findUpdatedSince(LocalDateTime updatedFrom, LocalDateTime minuteFrom) {
+    return mongoTemplate
+        .find(
+            query(where("updatedAt").gte(updatedFrom).and("minute").gte(minuteFrom)),
+            EventMinuteCount.class)
+        .stream()
+        .map(
+            c ->
+                new MinuteCount(
+                    c.getTenantId(),
+                    c.getEntityType(),
+                    c.getEventName(),
+                    c.getMinute(),
+                    c.getCount()))
+        .toList();
+  }
+
+  private static String idOf(MinuteCount count) {
+    return count.tenantId()
+        + "|"
+        + count.entityType()
+        + "|"
+        + count.eventName()
+        + "|"
+        + count.minute();
+  }
+}
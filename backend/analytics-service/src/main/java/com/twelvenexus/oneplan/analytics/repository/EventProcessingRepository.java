@@ -0,0 +1,109 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import com.twelvenexus.oneplan.analytics.model.EventProcessorShard;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+/** Event pages, shard leases and checkpoints for the event processor. */
+@Repository
+@RequiredArgsConstructor
+public class EventProcessingRepository {
+
+  private final MongoTemplate mongoTemplate;
+
+  /**
+   * Unprocessed events of {@code shard} older than {@code cutoff}, in id order, starting after
+   * {@code afterId} ({@code null} for the beginning). Shard 0 also owns events stored before
+   * sharding.
+   */
+  public List<AnalyticsEvent> findPage(
+      int shard, String afterId, LocalDateTime cutoff, int pageSize) {
+    Criteria criteria = where("processed").is(false).and("timestamp").lt(cutoff);
+    if (afterId != null) {
+      criteria = criteria.and("_id").gt(afterId);
+    }
+    if (shard == 0) {
+      criteria = criteria.orOperator(where("shard").is(0), where("shard").exists(false));
+    } else {
+      criteria = criteria.and("shard").is(shard);
+    }
+    Query page = query(criteria).with(Sort.by("_id")).limit(pageSize);
+    return mongoTemplate.find(page, AnalyticsEvent.class);
+  }
+
+  public void markProcessed(List<String> eventIds, LocalDateTime processedAt) {
+    mongoTemplate.updateMulti(
+        query(where("_id").in(eventIds)),
+        new Update().set("processed", true).set("processedAt", processedAt),
+        AnalyticsEvent.class);
+  }
+
+  /**
+   * Takes or renews the lease on {@code shard} unless another owner holds an unexpired one, and
+   * returns the shard state.
+   */
+  public Optional<EventProcessorShard> tryAcquire(int shard, String owner, Duration ttl) {
+    LocalDateTime now = LocalDateTime.now();
+    Query available =
+        query(
+            where("_id")
+                .is(shard)
+                .orOperator(
+                    where("owner").is(owner),
+                    where("owner").is(null),
+                    where("leaseExpiresAt").lt(now)));
+    Update lease =
+        new Update()
+            .set("owner", owner)
+            .set("leaseExpiresAt", now.plus(ttl))
+            .set("updatedAt", now);
+    try {
+      return Optional.ofNullable(
+          mongoTemplate.findAndModify(
+              available,
+              lease,
+              FindAndModifyOptions.options().upsert(true).returnNew(true),
+              EventProcessorShard.class));
+    } catch (DuplicateKeyException e) {
+      // Another owner holds it, so the upsert tried to insert a second document
+      return Optional.empty();
+    }
+  }
+
+  /** Records progress and renews the lease; {@code false} if the lease has been lost. */
+  public boolean saveCheckpoint(int shard, String owner, String lastEventId, Duration ttl) {
+    LocalDateTime now = LocalDateTime.now();
+    return mongoTemplate
+            .updateFirst(
+                query(where("_id").is(shard).and("owner").is(owner)),
+                new Update()
+                    .set("lastEventId", lastEventId)
+                    .set("leaseExpiresAt", now.plus(ttl))
+                    .set("updatedAt", now),
+                EventProcessorShard.class)
+            .getMatchedCount()
+        == 1;
+  }
+
+  public void release(int shard, String owner) {
+    mongoTemplate.updateFirst(
+        query(where("_id").is(shard).and("owner").is(owner)),
+        new Update().set("owner", null).set("updatedAt", LocalDateTime.now()),
+        EventProcessorShard.class);
+  }
+}
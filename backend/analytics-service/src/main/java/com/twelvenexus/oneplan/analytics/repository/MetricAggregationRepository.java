@@ -0,0 +1,319 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Plain JDBC access for metric aggregation: forward-only scans of one period's raw values or finer
+ * aggregates, and batched upserts of the results; also the aggregate scans reports are written
+ * from. Bypasses JPA so no entities or lazy collections are materialised.
+ */
+@Repository
+public class MetricAggregationRepository {
+
+  private static final String SCAN_SQL =
+      "SELECT tenant_id, entity_id, entity_type, type, value FROM metrics "
+          + "WHERE timestamp >= ? AND timestamp < ? ";
+
+  private static final String SCAN_AGGREGATES_SQL =
+      "SELECT tenant_id, entity_id, entity_type, type, min_value, max_value, sum_value, count, "
+          + "sketch FROM aggregated_metrics "
+          + "WHERE period = ? AND period_start >= ? AND period_start < ? ";
+
+  private static final String TENANT_FILTER = "AND tenant_id = ? ";
+
+  private static final String GROUP_ORDER = "ORDER BY tenant_id, entity_id, entity_type, type";
+
+  private static final String SERIES_FILTER =
+      "FROM aggregated_metrics WHERE tenant_id = ? AND entity_id = ? AND period = ? "
+          + "AND period_start >= ? AND period_start <= ? AND type IN ";
+
+  private static final String SCAN_SERIES_SQL =
+      "SELECT period_start, type, avg_value, sum_value " + SERIES_FILTER;
+
+  private static final String SUMMARIZE_SERIES_SQL =
+      "SELECT type, AVG(avg_value), SUM(sum_value) " + SERIES_FILTER;
+
+  private static final String METRIC_TENANTS_SQL =
+      "SELECT DISTINCT tenant_id FROM metrics WHERE timestamp >= ? AND timestamp < ?";
+
+  private static final String AGGREGATE_TENANTS_SQL =
+      "SELECT DISTINCT tenant_id FROM aggregated_metrics "
+          + "WHERE period = ? AND period_start >= ? AND period_start < ?";
+
+  private static final String LATE_HOURS_SQL =
+      "SELECT DISTINCT CAST(DATE_FORMAT(timestamp, '%Y-%m-%d %H:00:00') AS DATETIME) "
+          + "FROM metrics WHERE created_at >= ? AND created_at < ? AND timestamp < ?";
+
+  private static final String UPSERT_SQL =
+      "INSERT INTO aggregated_metrics (id, tenant_id, entity_id, entity_type, type, period, "
+          + "period_start, period_end, min_value, max_value, avg_value, sum_value, count, "
+          + "sketch, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+          + "ON DUPLICATE KEY UPDATE period_end = VALUES(period_end), "
+          + "min_value = VALUES(min_value), max_value = VALUES(max_value), "
+          + "avg_value = VALUES(avg_value), sum_value = VALUES(sum_value), "
+          + "count = VALUES(count), sketch = VALUES(sketch)";
+
+  private static final String UPSERT_PERCENTILE_SQL =
+      "INSERT INTO aggregated_metric_percentiles (aggregated_metric_id, percentile, value) "
+          + "SELECT id, ?, ? FROM aggregated_metrics WHERE tenant_id = ? AND entity_id = ? "
+          + "AND entity_type = ? AND type = ? AND period = ? AND period_start = ? "
+          + "ON DUPLICATE KEY UPDATE value = VALUES(value)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public MetricAggregationRepository(
+      DataSource dataSource, @Value("${analytics.aggregation.fetch-size:1000}") int fetchSize) {
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.jdbcTemplate.setFetchSize(fetchSize);
+  }
+
+  @FunctionalInterface
+  public interface MetricValueConsumer {
+    void accept(String tenantId, String entityId, String entityType, String type, double value);
+  }
+
+  @FunctionalInterface
+  public interface AggregateConsumer {
+    void accept(
+        String tenantId,
+        String entityId,
+        String entityType,
+        String type,
+        double min,
+        double max,
+        double sum,
+        long count,
+        byte[] sketch);
+  }
+
+  /**
+   * Streams every metric value in {@code [start, end)} to the consumer, ordered by {@code
+   * (tenantId, entityId, entityType, type)}. A {@code null} tenant scans all tenants.
+   */
+  public void scan(
+      LocalDateTime start, LocalDateTime end, UUID tenantId, MetricValueConsumer consumer) {
+    jdbcTemplate.query(
+        SCAN_SQL + (tenantId != null ? TENANT_FILTER : "") + GROUP_ORDER,
+        // A block, so it is a row callback rather than a result set extractor
+        rs -> {
+          consumer.accept(
+              rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getDouble(5));
+        },
+        params(tenantId, Timestamp.valueOf(start), Timestamp.valueOf(end)));
+  }
+
+  /**
+   * Streams the {@code period} aggregates starting in {@code [start, end)} to the consumer,
+   * ordered by {@code (tenantId, entityId, entityType, type)}. A {@code null} tenant scans all
+   * tenants.
+   */
+  public void scanAggregates(
+      AggregationPeriod period,
+      LocalDateTime start,
+      LocalDateTime end,
+      UUID tenantId,
+      AggregateConsumer consumer) {
+    jdbcTemplate.query(
+        SCAN_AGGREGATES_SQL + (tenantId != null ? TENANT_FILTER : "") + GROUP_ORDER,
+        rs -> {
+          consumer.accept(
+              rs.getString(1),
+              rs.getString(2),
+              rs.getString(3),
+              rs.getString(4),
+              rs.getDouble(5),
+              rs.getDouble(6),
+              rs.getDouble(7),
+              rs.getLong(8),
+              rs.getBytes(9));
+        },
+        params(tenantId, period.name(), Timestamp.valueOf(start), Timestamp.valueOf(end)));
+  }
+
+  @FunctionalInterface
+  public interface SeriesPointConsumer {
+    void accept(LocalDateTime periodStart, MetricType type, double avg, double sum);
+  }
+
+  /** Average of one series' per-period averages, and the sum of its values. */
+  public record SeriesSummary(double average, double sum) {}
+
+  /**
+   * Streams one entity's {@code period} aggregates of the given types starting in {@code [start,
+   * end]} to the consumer, ordered by period start and then type, so the points of one period
+   * arrive together.
+   */
+  public void scanSeries(
+      UUID tenantId,
+      UUID entityId,
+      AggregationPeriod period,
+      LocalDateTime start,
+      LocalDateTime end,
+      List<MetricType> types,
+      SeriesPointConsumer consumer) {
+    jdbcTemplate.query(
+        SCAN_SERIES_SQL + in(types) + " ORDER BY period_start, type",
+        rs -> {
+          consumer.accept(
+              rs.getTimestamp(1).toLocalDateTime(),
+              MetricType.valueOf(rs.getString(2)),
+              rs.getDouble(3),
+              rs.getDouble(4));
+        },
+        seriesParams(tenantId, entityId, period, start, end, types));
+  }
+
+  /**
+   * Summaries of the series {@link #scanSeries} would stream, by type; types without aggregates
+   * are left out.
+   */
+  public Map<MetricType, SeriesSummary> summarizeSeries(
+      UUID tenantId,
+      UUID entityId,
+      AggregationPeriod period,
+      LocalDateTime start,
+      LocalDateTime end,
+      List<MetricType> types) {
+    Map<MetricType, SeriesSummary> summaries = new EnumMap<>(MetricType.class);
+    jdbcTemplate.query(
+        SUMMARIZE_SERIES_SQL + in(types) + " GROUP BY type",
+        // A block, so it is a row callback rather than a result set extractor
+        rs -> {
+          summaries.put(
+              MetricType.valueOf(rs.getString(1)),
+              new SeriesSummary(rs.getDouble(2), rs.getDouble(3)));
+        },
+        seriesParams(tenantId, entityId, period, start, end, types));
+    return summaries;
+  }
+
+  /** Tenants with raw metrics in {@code [start, end)}. */
+  public List<UUID> findMetricTenants(LocalDateTime start, LocalDateTime end) {
+    return jdbcTemplate.query(
+        METRIC_TENANTS_SQL,
+        (rs, rowNum) -> UUID.fromString(rs.getString(1)),
+        Timestamp.valueOf(start),
+        Timestamp.valueOf(end));
+  }
+
+  /** Tenants with {@code period} aggregates starting in {@code [start, end)}. */
+  public List<UUID> findAggregateTenants(
+      AggregationPeriod period, LocalDateTime start, LocalDateTime end) {
+    return jdbcTemplate.query(
+        AGGREGATE_TENANTS_SQL,
+        (rs, rowNum) -> UUID.fromString(rs.getString(1)),
+        period.name(),
+        Timestamp.valueOf(start),
+        Timestamp.valueOf(end));
+  }
+
+  /**
+   * Starts of the hours holding metrics that were inserted in {@code [createdFrom, createdTo)} but
+   * are timestamped before {@code before}, i.e. that arrived after their hour was aggregated.
+   */
+  public List<LocalDateTime> findLateHours(
+      LocalDateTime createdFrom, LocalDateTime createdTo, LocalDateTime before) {
+    return jdbcTemplate.query(
+        LATE_HOURS_SQL,
+        (rs, rowNum) -> rs.getTimestamp(1).toLocalDateTime(),
+        Timestamp.valueOf(createdFrom),
+        Timestamp.valueOf(createdTo),
+        Timestamp.valueOf(before));
+  }
+
+  /** Inserts or replaces the aggregates (and their percentiles) keyed by group and period. */
+  public void upsert(List<AggregatedMetric> aggregates) {
+    List<Object[]> rows = new ArrayList<>(aggregates.size());
+    List<Object[]> percentileRows = new ArrayList<>(aggregates.size() * 4);
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+    for (AggregatedMetric a : aggregates) {
+      Timestamp periodStart = Timestamp.valueOf(a.getPeriodStart());
+      rows.add(
+          new Object[] {
+            UUID.randomUUID().toString(),
+            a.getTenantId().toString(),
+            a.getEntityId().toString(),
+            a.getEntityType(),
+            a.getType().name(),
+            a.getPeriod().name(),
+            periodStart,
+            Timestamp.valueOf(a.getPeriodEnd()),
+            a.getMinValue(),
+            a.getMaxValue(),
+            a.getAvgValue(),
+            a.getSumValue(),
+            a.getCount(),
+            a.getSketch(),
+            now
+          });
+      if (a.getPercentiles() != null) {
+        for (Map.Entry<Integer, Double> p : a.getPercentiles().entrySet()) {
+          percentileRows.add(
+              new Object[] {
+                p.getKey(),
+                p.getValue(),
+                a.getTenantId().toString(),
+                a.getEntityId().toString(),
+                a.getEntityType(),
+                a.getType().name(),
+                a.getPeriod().name(),
+                periodStart
+              });
+        }
+      }
+    }
+
+    jdbcTemplate.batchUpdate(UPSERT_SQL, rows);
+    if (!percentileRows.isEmpty()) {
+      jdbcTemplate.batchUpdate(UPSERT_PERCENTILE_SQL, percentileRows);
+    }
+  }
+
+  private static String in(List<?> values) {
+    return "(" + String.join(", ", Collections.nCopies(values.size(), "?")) + ")";
+  }
+
+  private static Object[] seriesParams(
+      UUID tenantId,
+      UUID entityId,
+      AggregationPeriod period,
+      LocalDateTime start,
+      LocalDateTime end,
+      List<MetricType> types) {
+    List<Object> params = new ArrayList<>(5 + types.size());
+    params.add(tenantId.toString());
+    params.add(entityId.toString());
+    params.add(period.name());
+    params.add(Timestamp.valueOf(start));
+    params.add(Timestamp.valueOf(end));
+    for (MetricType type : types) {
+      params.add(type.name());
+    }
+    return params.toArray();
+  }
+
+  private static Object[] params(UUID tenantId, Object... params) {
+    if (tenantId == null) {
+      return params;
+    }
+    Object[] withTenant = Arrays.copyOf(params, params.length + 1);
+    withTenant[params.length] = tenantId.toString();
+    return withTenant;
+  }
+}
@@ -8,6 +8,7 @@ import java.util.UUID;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -48,6 +49,7 @@ public interface MetricRepository extends JpaRepository<Metric, UUID> {
       @Param("entityType") String entityType,
       @Param("since") LocalDateTime since);
 
+  @Modifying
   @Query("DELETE FROM Metric m WHERE m.timestamp < :cutoffDate")
   void deleteOldMetrics(@Param("cutoffDate") LocalDateTime cutoffDate);
 }
@@ -0,0 +1,62 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Batched JDBC inserts of metrics and their dimensions. Rows whose id already exists are skipped,
+ * so writers that derive ids deterministically can safely repeat a batch.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MetricWriteRepository {
+
+  private static final String INSERT_METRIC_SQL =
+      "INSERT IGNORE INTO metrics (id, tenant_id, entity_id, entity_type, type, value, "
+          + "timestamp, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+  private static final String INSERT_DIMENSION_SQL =
+      "INSERT IGNORE INTO metric_dimensions (metric_id, dimension, value) VALUES (?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  @Transactional
+  public void insertAll(List<Metric> metrics) {
+    if (metrics.isEmpty()) {
+      return;
+    }
+    List<Object[]> rows = new ArrayList<>(metrics.size());
+    List<Object[]> dimensionRows = new ArrayList<>();
+    for (Metric m : metrics) {
+      String id = m.getId().toString();
+      rows.add(
+          new Object[] {
+            id,
+            m.getTenantId().toString(),
+            m.getEntityId().toString(),
+            m.getEntityType(),
+            m.getType().name(),
+            m.getValue(),
+            Timestamp.valueOf(m.getTimestamp()),
+            Timestamp.valueOf(m.getCreatedAt())
+          });
+      if (m.getDimensions() != null) {
+        for (Map.Entry<String, String> d : m.getDimensions().entrySet()) {
+          dimensionRows.add(new Object[] {id, d.getKey(), d.getValue()});
+        }
+      }
+    }
+
+    jdbcTemplate.batchUpdate(INSERT_METRIC_SQL, rows);
+    if (!dimensionRows.isEmpty()) {
+      jdbcTemplate.batchUpdate(INSERT_DIMENSION_SQL, dimensionRows);
+    }
+  }
+}
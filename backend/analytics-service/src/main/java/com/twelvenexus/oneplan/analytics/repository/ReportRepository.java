@@ -4,7 +4,9 @@ import com.twelvenexus.oneplan.analytics.enums.ReportType;
 import com.twelvenexus.oneplan.analytics.model.Report;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -12,6 +14,10 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface ReportRepository extends JpaRepository<Report, UUID> {
 
+  /** The report with its parameters, for use outside a transaction. */
+  @EntityGraph(attributePaths = "parameters")
+  Optional<Report> findWithParametersById(UUID id);
+
   List<Report> findByTenantIdAndActiveTrue(UUID tenantId);
 
   List<Report> findByTenantIdAndType(UUID tenantId, ReportType type);
@@ -0,0 +1,106 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import com.twelvenexus.oneplan.analytics.enums.ReportRunStatus;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/** Run claims and outcomes of reports, kept on the {@code reports} rows. */
+@Repository
+public class ReportRunRepository {
+
+  private static final String CLAIM_SQL =
+      "UPDATE reports SET run_owner = ?, run_lease_until = ?, run_cancel_requested = FALSE, "
+          + "last_run_status = 'RUNNING', next_run_at = COALESCE(?, next_run_at) "
+          + "WHERE id = ? AND (run_lease_until IS NULL OR run_lease_until < ?) ";
+
+  private static final String DUE_FILTER = "AND next_run_at <= ?";
+
+  private static final String FINISH_SQL =
+      "UPDATE reports SET last_run_status = ?, last_run_at = ?, last_run_duration_ms = ?, "
+          + "last_run_result = COALESCE(?, last_run_result), run_owner = NULL, "
+          + "run_lease_until = NULL, run_cancel_requested = FALSE "
+          + "WHERE id = ? AND run_owner = ?";
+
+  private static final String REQUEST_CANCEL_SQL =
+      "UPDATE reports SET run_cancel_requested = TRUE WHERE id = ? AND run_lease_until >= ?";
+
+  private static final String FIND_CANCEL_REQUESTED_SQL =
+      "SELECT id FROM reports WHERE run_owner = ? AND run_cancel_requested = TRUE";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public ReportRunRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Claims the report for {@code owner} until {@code leaseUntil}, unless an unexpired claim holds
+   * it or, with {@code dueBy} set, it is no longer due by then. Moves the next scheduled run to
+   * {@code nextRunAt} when set.
+   */
+  public boolean claim(
+      UUID reportId,
+      String owner,
+      LocalDateTime now,
+      LocalDateTime leaseUntil,
+      LocalDateTime dueBy,
+      LocalDateTime nextRunAt) {
+    Timestamp next = nextRunAt != null ? Timestamp.valueOf(nextRunAt) : null;
+    if (dueBy == null) {
+      return jdbcTemplate.update(
+              CLAIM_SQL,
+              owner,
+              Timestamp.valueOf(leaseUntil),
+              next,
+              reportId.toString(),
+              Timestamp.valueOf(now))
+          == 1;
+    }
+    return jdbcTemplate.update(
+            CLAIM_SQL + DUE_FILTER,
+            owner,
+            Timestamp.valueOf(leaseUntil),
+            next,
+            reportId.toString(),
+            Timestamp.valueOf(now),
+            Timestamp.valueOf(dueBy))
+        == 1;
+  }
+
+  /**
+   * Records the outcome of {@code owner}'s run and releases its claim. A {@code null} result keeps
+   * the previous one. Does nothing once the claim is gone, so recording twice is harmless.
+   */
+  public void finish(
+      UUID reportId,
+      String owner,
+      ReportRunStatus status,
+      LocalDateTime finishedAt,
+      long durationMs,
+      String result) {
+    jdbcTemplate.update(
+        FINISH_SQL,
+        status.name(),
+        Timestamp.valueOf(finishedAt),
+        durationMs,
+        result,
+        reportId.toString(),
+        owner);
+  }
+
+  /** Flags a run held by any instance for cancellation; false when none is running. */
+  public boolean requestCancel(UUID reportId, LocalDateTime now) {
+    return jdbcTemplate.update(REQUEST_CANCEL_SQL, reportId.toString(), Timestamp.valueOf(now))
+        == 1;
+  }
+
+  /** Reports claimed by {@code owner} whose cancellation was requested. */
+  public List<UUID> findCancelRequested(String owner) {
+    return jdbcTemplate.query(
+        FIND_CANCEL_REQUESTED_SQL, (rs, rowNum) -> UUID.fromString(rs.getString(1)), owner);
+  }
+}
@@ -0,0 +1,158 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/** Watermarks, dirty buckets and the lease of the rollup pipeline. */
+@Repository
+public class RollupStateRepository {
+
+  private static final String FIND_WATERMARK_SQL =
+      "SELECT aggregated_until FROM aggregation_watermarks WHERE period = ?";
+
+  private static final String SAVE_WATERMARK_SQL =
+      "INSERT INTO aggregation_watermarks (period, aggregated_until, updated_at) "
+          + "VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE "
+          + "aggregated_until = GREATEST(aggregated_until, VALUES(aggregated_until)), "
+          + "updated_at = VALUES(updated_at)";
+
+  private static final String FIND_LATE_CHECKED_SQL =
+      "SELECT late_checked_until FROM aggregation_watermarks WHERE period = ?";
+
+  private static final String SAVE_LATE_CHECKED_SQL =
+      "UPDATE aggregation_watermarks SET late_checked_until = ?, updated_at = ? WHERE period = ?";
+
+  private static final String MARK_DIRTY_SQL =
+      "INSERT INTO aggregation_dirty_buckets (period, period_start, marked_at) "
+          + "VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE marked_at = VALUES(marked_at)";
+
+  private static final String FIND_DIRTY_SQL =
+      "SELECT period_start FROM aggregation_dirty_buckets WHERE period = ? "
+          + "ORDER BY period_start LIMIT ?";
+
+  private static final String CLEAR_DIRTY_SQL =
+      "DELETE FROM aggregation_dirty_buckets "
+          + "WHERE period = ? AND period_start = ? AND marked_at < ?";
+
+  private static final String CREATE_LEASE_SQL =
+      "INSERT IGNORE INTO aggregation_leases (name, updated_at) VALUES (?, ?)";
+
+  private static final String ACQUIRE_LEASE_SQL =
+      "UPDATE aggregation_leases SET owner = ?, lease_until = ?, updated_at = ? "
+          + "WHERE name = ? AND (owner = ? OR owner IS NULL OR lease_until < ?)";
+
+  private static final String RELEASE_LEASE_SQL =
+      "UPDATE aggregation_leases SET owner = NULL, lease_until = NULL, updated_at = ? "
+          + "WHERE name = ? AND owner = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public RollupStateRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /** End of the last aggregated bucket of {@code period}, if the pipeline has started it. */
+  public Optional<LocalDateTime> findWatermark(AggregationPeriod period) {
+    return jdbcTemplate
+        .query(
+            FIND_WATERMARK_SQL,
+            (rs, rowNum) -> rs.getTimestamp(1).toLocalDateTime(),
+            period.name())
+        .stream()
+        .findFirst();
+  }
+
+  /** Advances the watermark; it never moves backwards. */
+  public void saveWatermark(AggregationPeriod period, LocalDateTime aggregatedUntil) {
+    jdbcTemplate.update(
+        SAVE_WATERMARK_SQL,
+        period.name(),
+        Timestamp.valueOf(aggregatedUntil),
+        Timestamp.valueOf(LocalDateTime.now()));
+  }
+
+  public Optional<LocalDateTime> findLateCheckedUntil(AggregationPeriod period) {
+    return jdbcTemplate
+        .query(
+            FIND_LATE_CHECKED_SQL,
+            (rs, rowNum) -> {
+              Timestamp value = rs.getTimestamp(1);
+              return value != null ? value.toLocalDateTime() : null;
+            },
+            period.name())
+        .stream()
+        .filter(value -> value != null)
+        .findFirst();
+  }
+
+  public void saveLateCheckedUntil(AggregationPeriod period, LocalDateTime checkedUntil) {
+    jdbcTemplate.update(
+        SAVE_LATE_CHECKED_SQL,
+        Timestamp.valueOf(checkedUntil),
+        Timestamp.valueOf(LocalDateTime.now()),
+        period.name());
+  }
+
+  public void markDirty(AggregationPeriod period, Collection<LocalDateTime> periodStarts) {
+    if (periodStarts.isEmpty()) {
+      return;
+    }
+    Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+    jdbcTemplate.batchUpdate(
+        MARK_DIRTY_SQL,
+        periodStarts.stream()
+            .map(start -> new Object[] {period.name(), Timestamp.valueOf(start), now})
+            .toList());
+  }
+
+  /** The oldest dirty buckets of {@code period}, at most {@code limit}. */
+  public List<LocalDateTime> findDirty(AggregationPeriod period, int limit) {
+    return jdbcTemplate.query(
+        FIND_DIRTY_SQL,
+        (rs, rowNum) -> rs.getTimestamp(1).toLocalDateTime(),
+        period.name(),
+        limit);
+  }
+
+  /**
+   * Clears a dirty bucket unless it was marked again since {@code aggregationStarted}, in which
+   * case it stays queued for the next run.
+   */
+  public void clearDirty(
+      AggregationPeriod period, LocalDateTime periodStart, LocalDateTime aggregationStarted) {
+    jdbcTemplate.update(
+        CLEAR_DIRTY_SQL,
+        period.name(),
+        Timestamp.valueOf(periodStart),
+        Timestamp.valueOf(aggregationStarted));
+  }
+
+  /**
+   * Takes or renews the lease {@code name} for {@code owner} until {@code now + ttl}, unless
+   * another owner holds an unexpired one; {@code false} if it is held elsewhere.
+   */
+  public boolean tryAcquireLease(String name, String owner, Duration ttl) {
+    LocalDateTime now = LocalDateTime.now();
+    jdbcTemplate.update(CREATE_LEASE_SQL, name, Timestamp.valueOf(now));
+    return jdbcTemplate.update(
+            ACQUIRE_LEASE_SQL,
+            owner,
+            Timestamp.valueOf(now.plus(ttl)),
+            Timestamp.valueOf(now),
+            name,
+            owner,
+            Timestamp.valueOf(now))
+        == 1;
+  }
+
+  public void releaseLease(String name, String owner) {
+    jdbcTemplate.update(RELEASE_LEASE_SQL, Timestamp.valueOf(LocalDateTime.now()), name, owner);
+  }
+}
@@ -1,5 +1,6 @@
 package com.twelvenexus.oneplan.analytics.service;
 
+import com.twelvenexus.oneplan.analytics.dto.EventDto;
 import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -20,13 +21,27 @@ public interface AnalyticsEventService {
       String userAgent,
       String ipAddress);
 
+  /**
+   * Buffers a batch of events, all or none. Per-event user agent and IP address fall back to the
+   * given defaults.
+   */
+  void trackEvents(
+      UUID tenantId, List<EventDto> events, String defaultUserAgent, String defaultIpAddress);
+
   List<AnalyticsEvent> getEvents(
       UUID tenantId, UUID entityId, LocalDateTime start, LocalDateTime end);
 
   List<AnalyticsEvent> getUserEvents(UUID tenantId, UUID userId, LocalDateTime since);
 
+  /**
+   * Event counts by name for an entity type since {@code since}, to the minute. Served from the
+   * in-memory counters, with the raw events counting only the part before their horizon.
+   */
   Map<String, Long> getEventCounts(UUID tenantId, String entityType, LocalDateTime since);
 
+  /** Writes the counters' new counts to Mongo and picks up those of other instances. */
+  void checkpointEventCounts();
+
   void processEvents();
 
   void cleanupOldEvents(int daysToKeep);
@@ -1,7 +1,10 @@
 package com.twelvenexus.oneplan.analytics.service;
 
+import com.twelvenexus.oneplan.analytics.dto.DashboardDataDto;
+import com.twelvenexus.oneplan.analytics.dto.WidgetLayoutDto;
 import com.twelvenexus.oneplan.analytics.model.Dashboard;
 import com.twelvenexus.oneplan.analytics.model.DashboardWidget;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -15,8 +18,17 @@ public interface DashboardService {
 
   Dashboard getDashboard(UUID dashboardId, UUID tenantId);
 
+  /** The dashboard's version, which moves with every change to it or its widgets. */
+  LocalDateTime getDashboardVersion(UUID dashboardId, UUID tenantId);
+
   List<Dashboard> getUserDashboards(UUID tenantId, UUID userId);
 
+  /**
+   * Computes the data of every widget of the dashboard, reusing the materialized results of those
+   * whose metrics have not changed.
+   */
+  DashboardDataDto renderDashboard(UUID dashboardId, UUID tenantId);
+
   DashboardWidget addWidget(
       UUID dashboardId,
       String title,
@@ -26,9 +38,13 @@ public interface DashboardService {
       Integer width,
       Integer height);
 
-  DashboardWidget updateWidget(UUID widgetId, String title, Map<String, String> configuration);
+  DashboardWidget updateWidget(
+      UUID widgetId, UUID tenantId, String title, Map<String, String> configuration);
+
+  void removeWidget(UUID widgetId, UUID tenantId);
 
-  void removeWidget(UUID widgetId);
+  /** Moves and resizes many widgets of the dashboard at once, e.g. after a drag and drop. */
+  void updateLayout(UUID dashboardId, UUID tenantId, List<WidgetLayoutDto> layouts);
 
   void deleteDashboard(UUID dashboardId);
 
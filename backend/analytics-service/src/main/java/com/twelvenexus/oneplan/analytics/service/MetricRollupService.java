@@ -0,0 +1,25 @@
+package com.twelvenexus.oneplan.analytics.service;
+
+import com.twelvenexus.oneplan.analytics.dto.BackfillResultDto;
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface MetricRollupService {
+
+  /**
+   * Runs one pass of the pipeline, finest period first: re-aggregates buckets that received late
+   * data, then aggregates every bucket that has become complete since the last pass.
+   */
+  void rollUp();
+
+  /**
+   * Starts rebuilding {@code period} and every finer period it is rolled up from over the buckets
+   * covering {@code [from, to)}, one tenant per worker. Returns the running backfill at once; its
+   * outcome is available from {@link #findBackfill(UUID)} when it has finished.
+   */
+  BackfillResultDto startBackfill(AggregationPeriod period, LocalDateTime from, LocalDateTime to);
+
+  Optional<BackfillResultDto> findBackfill(UUID backfillId);
+}
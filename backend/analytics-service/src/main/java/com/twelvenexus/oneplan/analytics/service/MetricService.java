@@ -33,9 +33,24 @@ public interface MetricService {
   Map<String, Double> getMetricStatistics(
       UUID tenantId, UUID entityId, MetricType type, LocalDateTime start, LocalDateTime end);
 
+  /**
+   * Merges the sketches of the {@code period} aggregates in range and returns the requested
+   * quantiles (0 to 1), keyed like {@code p99.9}, plus the total count.
+   */
+  Map<String, Double> getPercentiles(
+      UUID tenantId,
+      UUID entityId,
+      MetricType type,
+      AggregationPeriod period,
+      LocalDateTime start,
+      LocalDateTime end,
+      List<Double> quantiles);
+
   List<Metric> getTopPerformers(UUID tenantId, MetricType type, LocalDateTime since, int limit);
 
-  void aggregateMetrics(AggregationPeriod period);
+  /** Highest-valued metrics of the current {@code window} bucket, highest first. */
+  List<Metric> getLeaderboard(
+      UUID tenantId, MetricType type, AggregationPeriod window, int limit);
 
   void cleanupOldMetrics(int daysToKeep);
 }
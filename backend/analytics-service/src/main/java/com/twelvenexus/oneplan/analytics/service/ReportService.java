@@ -1,7 +1,10 @@
 package com.twelvenexus.oneplan.analytics.service;
 
+import com.twelvenexus.oneplan.analytics.enums.ReportFormat;
 import com.twelvenexus.oneplan.analytics.enums.ReportType;
 import com.twelvenexus.oneplan.analytics.model.Report;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -18,8 +21,14 @@ public interface ReportService {
 
   Report updateReport(UUID reportId, String name, Map<String, String> parameters, String schedule);
 
+  Report getReport(UUID reportId);
+
+  /** Runs the report now, or waits for the run already in progress on this instance. */
   Report runReport(UUID reportId);
 
+  /** Cancels the report's queued or running run; false when there is none. */
+  boolean cancelReport(UUID reportId);
+
   List<Report> getUserReports(UUID tenantId, UUID userId);
 
   List<Report> getScheduledReports(UUID tenantId);
@@ -28,5 +37,6 @@ public interface ReportService {
 
   void deleteReport(UUID reportId);
 
-  byte[] exportReport(UUID reportId, String format);
+  /** Writes the report, freshly generated, to {@code out} as it is produced. */
+  void exportReport(UUID reportId, ReportFormat format, OutputStream out) throws IOException;
 }
@@ -1,16 +1,23 @@
 package com.twelvenexus.oneplan.analytics.service.impl;
 
-import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.counter.EventCounters;
+import com.twelvenexus.oneplan.analytics.counter.EventCounters.MinuteCount;
+import com.twelvenexus.oneplan.analytics.dto.EventDto;
+import com.twelvenexus.oneplan.analytics.ingest.EventIngestionBuffer;
 import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
 import com.twelvenexus.oneplan.analytics.repository.AnalyticsEventRepository;
+import com.twelvenexus.oneplan.analytics.repository.AnalyticsEventRepository.EventNameCount;
+import com.twelvenexus.oneplan.analytics.repository.EventCountRepository;
 import com.twelvenexus.oneplan.analytics.service.AnalyticsEventService;
-import com.twelvenexus.oneplan.analytics.service.MetricService;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
@@ -19,10 +26,17 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class AnalyticsEventServiceImpl implements AnalyticsEventService {
 
+  private static final Duration COUNT_REFRESH_OVERLAP = Duration.ofMinutes(1);
+
   private final AnalyticsEventRepository eventRepository;
-  private final MetricService metricService;
+  private final ShardedEventProcessor eventProcessor;
+  private final EventCounters eventCounters;
+  private final EventCountRepository eventCountRepository;
+  private final EventIngestionBuffer ingestionBuffer;
+  private volatile LocalDateTime countsRefreshedAt = LocalDateTime.now();
 
   @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public void trackEvent(
       UUID tenantId,
       UUID entityId,
@@ -34,22 +48,50 @@ public class AnalyticsEventServiceImpl implements AnalyticsEventService {
       String sessionId,
       String userAgent,
       String ipAddress) {
-    AnalyticsEvent event = new AnalyticsEvent();
-    event.setTenantId(tenantId);
-    event.setEntityId(entityId);
-    event.setEntityType(entityType);
-    event.setEventType(eventType);
-    event.setEventName(eventName);
-    event.setProperties(properties);
-    event.setUserId(userId);
-    event.setSessionId(sessionId);
-    event.setUserAgent(userAgent);
-    event.setIpAddress(ipAddress);
-    event.setTimestamp(LocalDateTime.now());
-    event.setProcessed(false);
+    AnalyticsEvent event =
+        newEvent(
+            tenantId,
+            entityId,
+            entityType,
+            eventType,
+            eventName,
+            properties,
+            userId,
+            sessionId,
+            userAgent,
+            ipAddress);
 
     log.debug("Tracking event: {} for entity {}", eventName, entityId);
-    eventRepository.save(event);
+    ingestionBuffer.submit(List.of(event));
+    eventCounters.increment(tenantId, entityType, eventName, event.getTimestamp());
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void trackEvents(
+      UUID tenantId, List<EventDto> events, String defaultUserAgent, String defaultIpAddress) {
+    List<AnalyticsEvent> batch = new ArrayList<>(events.size());
+    for (EventDto dto : events) {
+      batch.add(
+          newEvent(
+              tenantId,
+              dto.getEntityId(),
+              dto.getEntityType(),
+              dto.getEventType(),
+              dto.getEventName(),
+              dto.getProperties(),
+              dto.getUserId(),
+              dto.getSessionId(),
+              dto.getUserAgent() != null ? dto.getUserAgent() : defaultUserAgent,
+              dto.getIpAddress() != null ? dto.getIpAddress() : defaultIpAddress));
+    }
+
+    log.debug("Tracking {} events", batch.size());
+    ingestionBuffer.submit(batch);
+    for (AnalyticsEvent event : batch) {
+      eventCounters.increment(
+          tenantId, event.getEntityType(), event.getEventName(), event.getTimestamp());
+    }
   }
 
   @Override
@@ -67,158 +109,89 @@ public class AnalyticsEventServiceImpl implements AnalyticsEventService {
   }
 
   @Override
-  @Transactional(readOnly = true)
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public Map<String, Long> getEventCounts(UUID tenantId, String entityType, LocalDateTime since) {
-    List<AnalyticsEvent> events =
-        eventRepository.findByEventTypeAndDateRange(
-            tenantId, entityType, since, LocalDateTime.now());
-
-    return events.stream()
-        .collect(Collectors.groupingBy(AnalyticsEvent::getEventName, Collectors.counting()));
-  }
-
-  @Override
-  public void processEvents() {
-    LocalDateTime cutoff = LocalDateTime.now().minusMinutes(5);
-    List<AnalyticsEvent> unprocessedEvents =
-        eventRepository.findByProcessedFalseAndTimestampBefore(cutoff);
-
-    log.info("Processing {} unprocessed events", unprocessedEvents.size());
-
-    Map<String, List<AnalyticsEvent>> groupedByType =
-        unprocessedEvents.stream().collect(Collectors.groupingBy(AnalyticsEvent::getEventType));
-
-    for (Map.Entry<String, List<AnalyticsEvent>> entry : groupedByType.entrySet()) {
-      String eventType = entry.getKey();
-      List<AnalyticsEvent> events = entry.getValue();
-
-      try {
-        processEventType(eventType, events);
-
-        // Mark events as processed
-        events.forEach(
-            event -> {
-              event.setProcessed(true);
-              event.setProcessedAt(LocalDateTime.now());
-            });
-        eventRepository.saveAll(events);
-      } catch (Exception e) {
-        log.error("Error processing events of type {}: {}", eventType, e.getMessage());
+    LocalDateTime now = LocalDateTime.now();
+    // Whole minutes come from the counters; the partial first minute and anything before the
+    // counters were complete are counted from the raw events
+    LocalDateTime countedFrom = eventCounters.countedFrom(since);
+    Map<String, Long> counts = eventCounters.count(tenantId, entityType, countedFrom, now);
+    if (since.isBefore(countedFrom)) {
+      for (EventNameCount count :
+          eventRepository.countByEventName(tenantId, entityType, since, countedFrom)) {
+        counts.merge(count.eventName(), count.count(), Long::sum);
       }
     }
+    return counts;
   }
 
   @Override
-  public void cleanupOldEvents(int daysToKeep) {
-    LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
-    log.info("Cleaning up events older than {}", cutoffDate);
-    eventRepository.deleteByTimestampBefore(cutoffDate);
-  }
-
-  private void processEventType(String eventType, List<AnalyticsEvent> events) {
-    switch (eventType) {
-      case "project.created" -> processProjectCreatedEvents(events);
-      case "task.completed" -> processTaskCompletedEvents(events);
-      case "user.login" -> processUserLoginEvents(events);
-      case "requirement.analyzed" -> processRequirementAnalyzedEvents(events);
-      default -> log.warn("Unknown event type: {}", eventType);
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void checkpointEventCounts() {
+    LocalDateTime started = LocalDateTime.now();
+    List<MinuteCount> deltas = eventCounters.takeDeltas();
+    try {
+      eventCountRepository.increment(deltas, started);
+    } catch (RuntimeException e) {
+      eventCounters.returnDeltas(deltas);
+      throw e;
     }
+    // Overlap the previous refresh so totals written while it ran are not missed
+    eventCounters.applyTotals(
+        eventCountRepository.findUpdatedSince(
+            countsRefreshedAt.minus(COUNT_REFRESH_OVERLAP), eventCounters.horizonStart()));
+    countsRefreshedAt = started;
   }
 
-  private void processProjectCreatedEvents(List<AnalyticsEvent> events) {
-    for (AnalyticsEvent event : events) {
-      metricService.recordMetric(
-          event.getTenantId(),
-          event.getEntityId(),
-          "project",
-          MetricType.PROJECT_CREATED,
-          1.0,
-          Map.of("userId", event.getUserId().toString()));
+  @PreDestroy
+  void flushEventCounts() {
+    try {
+      checkpointEventCounts();
+    } catch (RuntimeException e) {
+      log.warn("Could not checkpoint event counts on shutdown: {}", e.getMessage());
     }
   }
 
-  private void processTaskCompletedEvents(List<AnalyticsEvent> events) {
-    for (AnalyticsEvent event : events) {
-      Map<String, Object> props = event.getProperties();
-      Double leadTime = (Double) props.get("leadTime");
-      Double cycleTime = (Double) props.get("cycleTime");
-
-      if (leadTime != null) {
-        metricService.recordMetric(
-            event.getTenantId(),
-            event.getEntityId(),
-            "task",
-            MetricType.TASK_LEAD_TIME,
-            leadTime,
-            Map.of("priority", (String) props.getOrDefault("priority", "medium")));
-      }
-
-      if (cycleTime != null) {
-        metricService.recordMetric(
-            event.getTenantId(),
-            event.getEntityId(),
-            "task",
-            MetricType.TASK_CYCLE_TIME,
-            cycleTime,
-            Map.of("priority", (String) props.getOrDefault("priority", "medium")));
-      }
-
-      metricService.recordMetric(
-          event.getTenantId(),
-          event.getEntityId(),
-          "task",
-          MetricType.TASK_COMPLETED,
-          1.0,
-          Map.of("userId", event.getUserId().toString()));
-    }
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void processEvents() {
+    eventProcessor.processAll();
   }
 
-  private void processUserLoginEvents(List<AnalyticsEvent> events) {
-    Map<UUID, List<AnalyticsEvent>> byUser =
-        events.stream().collect(Collectors.groupingBy(AnalyticsEvent::getUserId));
-
-    for (Map.Entry<UUID, List<AnalyticsEvent>> entry : byUser.entrySet()) {
-      UUID userId = entry.getKey();
-      List<AnalyticsEvent> userEvents = entry.getValue();
-
-      if (!userEvents.isEmpty()) {
-        AnalyticsEvent lastEvent = userEvents.get(userEvents.size() - 1);
-        metricService.recordMetric(
-            lastEvent.getTenantId(),
-            userId,
-            "user",
-            MetricType.USER_ACTIVE,
-            1.0,
-            Map.of("loginCount", String.valueOf(userEvents.size())));
-      }
-    }
+  @Override
+  public void cleanupOldEvents(int daysToKeep) {
+    LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
+    log.info("Cleaning up events older than {}", cutoffDate);
+    eventRepository.deleteByTimestampBefore(cutoffDate);
   }
 
-  private void processRequirementAnalyzedEvents(List<AnalyticsEvent> events) {
-    for (AnalyticsEvent event : events) {
-      Map<String, Object> props = event.getProperties();
-      Double accuracy = (Double) props.get("accuracy");
-      Double processingTime = (Double) props.get("processingTime");
-
-      if (accuracy != null) {
-        metricService.recordMetric(
-            event.getTenantId(),
-            event.getEntityId(),
-            "requirement",
-            MetricType.AI_REQUIREMENT_ANALYSIS_ACCURACY,
-            accuracy,
-            Map.of("type", (String) props.getOrDefault("requirementType", "general")));
-      }
-
-      if (processingTime != null) {
-        metricService.recordMetric(
-            event.getTenantId(),
-            event.getEntityId(),
-            "ai",
-            MetricType.AI_PROCESSING_TIME,
-            processingTime,
-            Map.of("operation", "requirement_analysis"));
-      }
-    }
+  private AnalyticsEvent newEvent(
+      UUID tenantId,
+      UUID entityId,
+      String entityType,
+      String eventType,
+      String eventName,
+      Map<String, Object> properties,
+      UUID userId,
+      String sessionId,
+      String userAgent,
+      String ipAddress) {
+    AnalyticsEvent event = new AnalyticsEvent();
+    // Assigned up front so a batch written twice (after a retry or replay) is deduplicated
+    event.setId(new ObjectId().toHexString());
+    event.setTenantId(tenantId);
+    event.setShard(ShardedEventProcessor.shardOf(tenantId));
+    event.setEntityId(entityId);
+    event.setEntityType(entityType);
+    event.setEventType(eventType);
+    event.setEventName(eventName);
+    event.setProperties(properties);
+    event.setUserId(userId);
+    event.setSessionId(sessionId);
+    event.setUserAgent(userAgent);
+    event.setIpAddress(ipAddress);
+    event.setTimestamp(LocalDateTime.now());
+    event.setProcessed(false);
+    return event;
   }
 }
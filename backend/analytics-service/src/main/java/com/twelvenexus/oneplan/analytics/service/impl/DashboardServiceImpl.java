@@ -1,13 +1,22 @@
 package com.twelvenexus.oneplan.analytics.service.impl;
 
+import com.twelvenexus.oneplan.analytics.dashboard.DashboardSnapshots;
+import com.twelvenexus.oneplan.analytics.dashboard.WidgetQuery;
+import com.twelvenexus.oneplan.analytics.dto.DashboardDataDto;
+import com.twelvenexus.oneplan.analytics.dto.WidgetLayoutDto;
 import com.twelvenexus.oneplan.analytics.model.Dashboard;
 import com.twelvenexus.oneplan.analytics.model.DashboardWidget;
+import com.twelvenexus.oneplan.analytics.repository.DashboardLayoutRepository;
 import com.twelvenexus.oneplan.analytics.repository.DashboardRepository;
+import com.twelvenexus.oneplan.analytics.repository.DashboardWidgetRepository;
 import com.twelvenexus.oneplan.analytics.service.DashboardService;
+import com.twelvenexus.oneplan.analytics.service.MetricService;
+import java.time.LocalDateTime;
 import java.util.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
@@ -17,6 +26,10 @@ import org.springframework.transaction.annotation.Transactional;
 public class DashboardServiceImpl implements DashboardService {
 
   private final DashboardRepository dashboardRepository;
+  private final DashboardWidgetRepository widgetRepository;
+  private final DashboardLayoutRepository layoutRepository;
+  private final DashboardSnapshots dashboardSnapshots;
+  private final MetricService metricService;
 
   @Override
   public Dashboard createDashboard(
@@ -57,12 +70,38 @@ public class DashboardServiceImpl implements DashboardService {
         .orElseThrow(() -> new IllegalArgumentException("Dashboard not found"));
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public LocalDateTime getDashboardVersion(UUID dashboardId, UUID tenantId) {
+    return dashboardRepository
+        .findVersion(dashboardId, tenantId)
+        .orElseThrow(() -> new IllegalArgumentException("Dashboard not found"));
+  }
+
   @Override
   @Transactional(readOnly = true)
   public List<Dashboard> getUserDashboards(UUID tenantId, UUID userId) {
     return dashboardRepository.findAccessibleDashboards(tenantId, userId);
   }
 
+  /** Outside a transaction: a dashboard whose snapshot is current costs one indexed read. */
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public DashboardDataDto renderDashboard(UUID dashboardId, UUID tenantId) {
+    LocalDateTime version =
+        dashboardRepository
+            .findVersion(dashboardId, tenantId)
+            .orElseThrow(() -> new IllegalArgumentException("Dashboard not found"));
+    return dashboardSnapshots.render(
+        dashboardId,
+        version,
+        () ->
+            dashboardRepository
+                .findWithWidgetsByIdAndTenantId(dashboardId, tenantId)
+                .orElseThrow(() -> new IllegalArgumentException("Dashboard not found")),
+        this::loadWidget);
+  }
+
   @Override
   public DashboardWidget addWidget(
       UUID dashboardId,
@@ -76,6 +115,7 @@ public class DashboardServiceImpl implements DashboardService {
         dashboardRepository
             .findById(dashboardId)
             .orElseThrow(() -> new IllegalArgumentException("Dashboard not found"));
+    WidgetQuery.from(dashboard.getTenantId(), configuration);
 
     DashboardWidget widget = new DashboardWidget();
     widget.setDashboard(dashboard);
@@ -87,6 +127,7 @@ public class DashboardServiceImpl implements DashboardService {
     widget.setHeight(height != null ? height : 4);
 
     dashboard.getWidgets().add(widget);
+    dashboard.setUpdatedAt(LocalDateTime.now()); // Widgets are part of the dashboard's version
     dashboardRepository.save(dashboard);
 
     log.info("Added widget '{}' to dashboard {}", title, dashboardId);
@@ -95,43 +136,57 @@ public class DashboardServiceImpl implements DashboardService {
 
   @Override
   public DashboardWidget updateWidget(
-      UUID widgetId, String title, Map<String, String> configuration) {
-    Dashboard dashboard =
-        dashboardRepository.findAll().stream()
-            .filter(d -> d.getWidgets().stream().anyMatch(w -> w.getId().equals(widgetId)))
-            .findFirst()
-            .orElseThrow(() -> new IllegalArgumentException("Widget not found"));
-
+      UUID widgetId, UUID tenantId, String title, Map<String, String> configuration) {
     DashboardWidget widget =
-        dashboard.getWidgets().stream()
-            .filter(w -> w.getId().equals(widgetId))
-            .findFirst()
+        widgetRepository
+            .findByIdAndTenantId(widgetId, tenantId)
             .orElseThrow(() -> new IllegalArgumentException("Widget not found"));
 
+    WidgetQuery.from(tenantId, configuration);
     widget.setTitle(title);
     widget.setConfiguration(configuration);
 
-    dashboardRepository.save(dashboard);
-    return widget;
+    widget.getDashboard().setUpdatedAt(LocalDateTime.now());
+    return widgetRepository.save(widget);
   }
 
   @Override
-  public void removeWidget(UUID widgetId) {
-    Dashboard dashboard =
-        dashboardRepository.findAll().stream()
-            .filter(d -> d.getWidgets().stream().anyMatch(w -> w.getId().equals(widgetId)))
-            .findFirst()
+  public void removeWidget(UUID widgetId, UUID tenantId) {
+    DashboardWidget widget =
+        widgetRepository
+            .findByIdAndTenantId(widgetId, tenantId)
             .orElseThrow(() -> new IllegalArgumentException("Widget not found"));
+    Dashboard dashboard = widget.getDashboard();
 
-    dashboard.getWidgets().removeIf(w -> w.getId().equals(widgetId));
-
+    widgetRepository.delete(widget);
     // Reorder remaining widgets
-    for (int i = 0; i < dashboard.getWidgets().size(); i++) {
-      dashboard.getWidgets().get(i).setPosition(i);
+    layoutRepository.closeGap(dashboard.getId(), widget.getPosition(), LocalDateTime.now());
+
+    dashboard.setUpdatedAt(LocalDateTime.now());
+    log.info("Removed widget {} from dashboard {}", widgetId, dashboard.getId());
+  }
+
+  @Override
+  public void updateLayout(UUID dashboardId, UUID tenantId, List<WidgetLayoutDto> layouts) {
+    if (layouts.isEmpty()) {
+      return;
+    }
+    Set<UUID> widgetIds = new HashSet<>();
+    for (WidgetLayoutDto layout : layouts) {
+      if (!widgetIds.add(layout.getId())) {
+        throw new IllegalArgumentException("Widget listed twice: " + layout.getId());
+      }
     }
 
-    dashboardRepository.save(dashboard);
-    log.info("Removed widget {} from dashboard", widgetId);
+    LocalDateTime now = LocalDateTime.now();
+    if (!layoutRepository.touch(dashboardId, tenantId, now)) {
+      throw new IllegalArgumentException("Dashboard not found");
+    }
+    // Rolls back the whole edit when any widget is not on this dashboard
+    if (layoutRepository.updateLayout(dashboardId, layouts, now) != layouts.size()) {
+      throw new IllegalArgumentException("Widget not found");
+    }
+    log.info("Updated the layout of {} widgets on dashboard {}", layouts.size(), dashboardId);
   }
 
   @Override
@@ -146,9 +201,21 @@ public class DashboardServiceImpl implements DashboardService {
     }
 
     dashboardRepository.deleteById(dashboardId);
+    dashboardSnapshots.invalidate(dashboardId);
     log.info("Deleted dashboard {}", dashboardId);
   }
 
+  private Object loadWidget(WidgetQuery query) {
+    LocalDateTime end = LocalDateTime.now();
+    LocalDateTime start = end.minus(query.range());
+    if (query.period() != null) {
+      return metricService.getAggregatedMetrics(
+          query.tenantId(), query.entityId(), query.type(), query.period(), start, end);
+    }
+    return metricService.getMetricStatistics(
+        query.tenantId(), query.entityId(), query.type(), start, end);
+  }
+
   @Override
   public Dashboard duplicateDashboard(UUID dashboardId, String newName, UUID ownerId) {
     Dashboard original = getDashboard(dashboardId, null);
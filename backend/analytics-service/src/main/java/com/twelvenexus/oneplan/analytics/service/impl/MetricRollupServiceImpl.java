@@ -0,0 +1,373 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
+import com.twelvenexus.oneplan.analytics.dto.BackfillResultDto;
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.BackfillStatus;
+import com.twelvenexus.oneplan.analytics.repository.BackfillRepository;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository;
+import com.twelvenexus.oneplan.analytics.repository.RollupStateRepository;
+import com.twelvenexus.oneplan.analytics.service.MetricRollupService;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import com.twelvenexus.oneplan.analytics.stream.MetricStreamHub;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Rolls raw metrics up into HOUR aggregates and each coarser period up from the next-finer one
+ * (see {@link AggregationPeriod#source()}).
+ *
+ * <p>Each period has a watermark: every bucket ending at or before it has been aggregated. HOUR
+ * buckets are aggregated once they are older than the allowed lateness, and a coarser bucket once
+ * its source period's watermark has passed its end. Metrics inserted into an hour that is already
+ * behind the watermark are found by insert time and mark that hour dirty; re-aggregating a dirty
+ * bucket marks the enclosing buckets of the periods built from it dirty in turn, so late data only
+ * re-rolls the buckets it affects. All writes are upserts, so re-running any step is harmless.
+ *
+ * <p>A pass runs on one instance at a time, under a lease that a dead instance loses after the
+ * lease TTL. Backfills run in the background, one at a time per instance, and record their outcome
+ * in {@link BackfillRepository}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetricRollupServiceImpl implements MetricRollupService {
+
+  static final String ROLLUP_LEASE = "rollup";
+
+  static final List<AggregationPeriod> PIPELINE =
+      List.of(
+          AggregationPeriod.HOUR,
+          AggregationPeriod.DAY,
+          AggregationPeriod.WEEK,
+          AggregationPeriod.MONTH,
+          AggregationPeriod.QUARTER,
+          AggregationPeriod.YEAR);
+
+  private final MetricAggregationRepository aggregationRepository;
+  private final RollupStateRepository stateRepository;
+  private final MetricStore metricStore;
+  private final MetricQueryCache metricQueryCache;
+  private final MetricStreamHub metricStreamHub;
+  private final BackfillRepository backfillRepository;
+  private final ExecutorService backfills =
+      Executors.newSingleThreadExecutor(Thread.ofPlatform().name("rollup-backfill").factory());
+
+  @Value("${analytics.processing.instance-id}")
+  private String instanceId;
+
+  @Value("${analytics.aggregation.batch-size:500}")
+  private int batchSize;
+
+  @Value("${analytics.rollup.allowed-lateness:PT5M}")
+  private Duration allowedLateness;
+
+  @Value("${analytics.rollup.max-buckets-per-run:168}")
+  private int maxBucketsPerRun;
+
+  @Value("${analytics.rollup.backfill-parallelism:4}")
+  private int backfillParallelism;
+
+  @Value("${analytics.rollup.lease-ttl:PT10M}")
+  private Duration leaseTtl;
+
+  @Override
+  public void rollUp() {
+    if (!stateRepository.tryAcquireLease(ROLLUP_LEASE, instanceId, leaseTtl)) {
+      log.debug("Rollup is running on another instance");
+      return;
+    }
+    try {
+      LocalDateTime rawHorizon = LocalDateTime.now().minus(allowedLateness);
+      markLateHours(rawHorizon);
+      for (AggregationPeriod period : PIPELINE) {
+        // Renewed per period; once it is lost another instance may already be rolling up
+        if (!stateRepository.tryAcquireLease(ROLLUP_LEASE, instanceId, leaseTtl)) {
+          log.warn("Lost the rollup lease, stopping before {}", period);
+          return;
+        }
+        reaggregateDirty(period);
+        advance(period, rawHorizon);
+      }
+    } finally {
+      stateRepository.releaseLease(ROLLUP_LEASE, instanceId);
+    }
+  }
+
+  @Override
+  public BackfillResultDto startBackfill(
+      AggregationPeriod period, LocalDateTime from, LocalDateTime to) {
+    if (!from.isBefore(to)) {
+      throw new IllegalArgumentException("Backfill range must end after it starts");
+    }
+    LocalDateTime start = period.bucketStart(from);
+    LocalDateTime end = period.bucketStart(to);
+    if (end.isBefore(to)) {
+      end = period.nextBucket(end);
+    }
+
+    BackfillResultDto backfill =
+        newBackfill(UUID.randomUUID(), period, start, end, LocalDateTime.now());
+    backfill.setStatus(BackfillStatus.RUNNING);
+    backfillRepository.create(backfill, instanceId);
+    backfills.execute(() -> runBackfill(backfill));
+    return backfill;
+  }
+
+  @Override
+  public Optional<BackfillResultDto> findBackfill(UUID backfillId) {
+    return backfillRepository.findById(backfillId);
+  }
+
+  @PreDestroy
+  void stopBackfills() {
+    backfills.shutdownNow();
+  }
+
+  /** Runs a started backfill and records its outcome; {@code started} is left untouched. */
+  private void runBackfill(BackfillResultDto started) {
+    BackfillResultDto outcome =
+        newBackfill(
+            started.getId(),
+            started.getPeriod(),
+            started.getFrom(),
+            started.getTo(),
+            started.getStartedAt());
+    long startedNanos = System.nanoTime();
+    try {
+      rebuild(outcome);
+      outcome.setStatus(BackfillStatus.SUCCEEDED);
+    } catch (RuntimeException e) {
+      log.error("Backfill {} failed", outcome.getId(), e);
+      outcome.setStatus(BackfillStatus.FAILED);
+      outcome.setError(e.getMessage() != null ? e.getMessage() : e.getClass().getName());
+    }
+    outcome.setDurationMs((System.nanoTime() - startedNanos) / 1_000_000);
+    outcome.setFinishedAt(LocalDateTime.now());
+    try {
+      backfillRepository.finish(outcome);
+    } catch (RuntimeException e) {
+      log.error("Could not record the outcome of backfill {}", outcome.getId(), e);
+    }
+  }
+
+  /** Rebuilds the backfill's range, counting buckets and aggregates on {@code backfill}. */
+  private void rebuild(BackfillResultDto backfill) {
+    AggregationPeriod period = backfill.getPeriod();
+    LocalDateTime start = backfill.getFrom();
+    LocalDateTime end = backfill.getTo();
+
+    // Finest first, so each level is rebuilt from freshly rebuilt inputs
+    List<AggregationPeriod> levels = new ArrayList<>();
+    for (AggregationPeriod level = period; level != null; level = level.source()) {
+      levels.add(0, level);
+    }
+
+    log.info("Backfilling {} from {} to {} via {}", period, start, end, levels);
+    try (ExecutorService executor =
+        Executors.newFixedThreadPool(
+            backfillParallelism, Thread.ofPlatform().name("rollup-backfill-", 0).factory())) {
+      for (AggregationPeriod level : levels) {
+        List<LocalDateTime> starts = bucketStarts(level, start, end);
+        List<UUID> tenants =
+            level.source() == null
+                ? metricStore.findTenants(start, end)
+                : aggregationRepository.findAggregateTenants(level.source(), start, end);
+
+        List<Future<Long>> results = new ArrayList<>(tenants.size());
+        for (UUID tenantId : tenants) {
+          results.add(
+              executor.submit(
+                  () -> {
+                    long groups = 0;
+                    for (LocalDateTime bucket : starts) {
+                      groups += aggregate(level, bucket, tenantId);
+                    }
+                    return groups;
+                  }));
+        }
+        for (Future<Long> result : results) {
+          backfill.setAggregatesWritten(backfill.getAggregatesWritten() + await(result));
+        }
+        backfill.setBucketsRebuilt(backfill.getBucketsRebuilt() + starts.size());
+        log.info("Backfilled {} {} buckets for {} tenants", starts.size(), level, tenants.size());
+        markDependentsDirty(level, starts, levels);
+      }
+    }
+  }
+
+  /** Marks the hours that received metrics after the HOUR watermark had passed them. */
+  private void markLateHours(LocalDateTime rawHorizon) {
+    Optional<LocalDateTime> hourWatermark = stateRepository.findWatermark(AggregationPeriod.HOUR);
+    if (hourWatermark.isEmpty()) {
+      return;
+    }
+    LocalDateTime checkedFrom =
+        stateRepository
+            .findLateCheckedUntil(AggregationPeriod.HOUR)
+            .orElse(hourWatermark.get().minus(allowedLateness));
+    if (!checkedFrom.isBefore(rawHorizon)) {
+      return;
+    }
+
+    List<LocalDateTime> lateHours =
+        metricStore.findLateHours(checkedFrom, rawHorizon, hourWatermark.get());
+    if (!lateHours.isEmpty()) {
+      log.info("Late metrics arrived for {} aggregated hours", lateHours.size());
+      stateRepository.markDirty(AggregationPeriod.HOUR, lateHours);
+    }
+    stateRepository.saveLateCheckedUntil(AggregationPeriod.HOUR, rawHorizon);
+  }
+
+  private void reaggregateDirty(AggregationPeriod period) {
+    LocalDateTime started = LocalDateTime.now();
+    List<LocalDateTime> dirty = stateRepository.findDirty(period, maxBucketsPerRun);
+    for (LocalDateTime bucket : dirty) {
+      aggregate(period, bucket, null);
+      stateRepository.clearDirty(period, bucket, started);
+    }
+    if (!dirty.isEmpty()) {
+      log.info("Re-aggregated {} dirty {} buckets", dirty.size(), period);
+      markDependentsDirty(period, dirty, List.of());
+    }
+  }
+
+  /** Aggregates the buckets of {@code period} that have become complete, oldest first. */
+  private void advance(AggregationPeriod period, LocalDateTime rawHorizon) {
+    LocalDateTime horizon =
+        period.source() == null
+            ? rawHorizon
+            : stateRepository.findWatermark(period.source()).orElse(null);
+    if (horizon == null) {
+      return;
+    }
+
+    LocalDateTime next =
+        stateRepository
+            .findWatermark(period)
+            .orElseGet(() -> period.previousBucket(period.bucketStart(horizon)));
+    for (int i = 0; i < maxBucketsPerRun; i++) {
+      LocalDateTime end = period.nextBucket(next);
+      if (end.isAfter(horizon)) {
+        return;
+      }
+      aggregate(period, next, null);
+      stateRepository.saveWatermark(period, end);
+      next = end;
+    }
+    log.info("{} rollup is behind; continuing from {} on the next run", period, next);
+  }
+
+  /**
+   * Marks dirty the already aggregated buckets of every period rolled up from {@code period} that
+   * enclose {@code starts}, except the periods in {@code rebuilt}.
+   */
+  private void markDependentsDirty(
+      AggregationPeriod period,
+      Collection<LocalDateTime> starts,
+      Collection<AggregationPeriod> rebuilt) {
+    for (AggregationPeriod dependent : PIPELINE) {
+      if (dependent.source() != period || rebuilt.contains(dependent)) {
+        continue;
+      }
+      Optional<LocalDateTime> watermark = stateRepository.findWatermark(dependent);
+      if (watermark.isEmpty()) {
+        continue;
+      }
+      TreeSet<LocalDateTime> affected = new TreeSet<>();
+      for (LocalDateTime start : starts) {
+        LocalDateTime bucket = dependent.bucketStart(start);
+        // Buckets past the watermark will be aggregated normally
+        if (!dependent.nextBucket(bucket).isAfter(watermark.get())) {
+          affected.add(bucket);
+        }
+      }
+      stateRepository.markDirty(dependent, affected);
+    }
+  }
+
+  /** Aggregates one bucket, for one tenant or all of them; returns the aggregates written. */
+  private long aggregate(AggregationPeriod period, LocalDateTime periodStart, UUID tenantId) {
+    LocalDateTime periodEnd = period.nextBucket(periodStart);
+    StreamingMetricAggregator aggregator =
+        new StreamingMetricAggregator(
+            period,
+            periodStart,
+            periodEnd,
+            batchSize,
+            aggregates -> {
+              aggregationRepository.upsert(aggregates);
+              metricQueryCache.evictAggregates(aggregates);
+              // A backfill rebuilds history, which live streams have no use for
+              if (tenantId == null) {
+                metricStreamHub.publishAggregates(aggregates);
+              }
+            });
+    AggregationPeriod source = period.source();
+    if (source == null) {
+      metricStore.scanPeriod(periodStart, periodEnd, tenantId, aggregator::accept);
+    } else {
+      aggregationRepository.scanAggregates(
+          source, periodStart, periodEnd, tenantId, aggregator::acceptAggregate);
+    }
+    aggregator.finish();
+
+    log.debug(
+        "Aggregated {} rows into {} {} aggregates for {}",
+        aggregator.rows(),
+        aggregator.groups(),
+        period,
+        periodStart);
+    return aggregator.groups();
+  }
+
+  private static BackfillResultDto newBackfill(
+      UUID id,
+      AggregationPeriod period,
+      LocalDateTime from,
+      LocalDateTime to,
+      LocalDateTime startedAt) {
+    BackfillResultDto backfill = new BackfillResultDto();
+    backfill.setId(id);
+    backfill.setPeriod(period);
+    backfill.setFrom(from);
+    backfill.setTo(to);
+    backfill.setStartedAt(startedAt);
+    return backfill;
+  }
+
+  private static List<LocalDateTime> bucketStarts(
+      AggregationPeriod period, LocalDateTime start, LocalDateTime end) {
+    List<LocalDateTime> starts = new ArrayList<>();
+    for (LocalDateTime bucket = start; bucket.isBefore(end); bucket = period.nextBucket(bucket)) {
+      starts.add(bucket);
+    }
+    return starts;
+  }
+
+  private static long await(Future<Long> result) {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Backfill interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Backfill failed", e.getCause());
+    }
+  }
+}
@@ -1,20 +1,21 @@
 package com.twelvenexus.oneplan.analytics.service.impl;
 
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
 import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
 import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.leaderboard.Leaderboards;
 import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
 import com.twelvenexus.oneplan.analytics.model.Metric;
 import com.twelvenexus.oneplan.analytics.repository.AggregatedMetricRepository;
-import com.twelvenexus.oneplan.analytics.repository.MetricRepository;
 import com.twelvenexus.oneplan.analytics.service.MetricService;
+import com.twelvenexus.oneplan.analytics.sketch.QuantileSketch;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import com.twelvenexus.oneplan.analytics.stream.MetricStreamHub;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,8 +25,11 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class MetricServiceImpl implements MetricService {
 
-  private final MetricRepository metricRepository;
+  private final MetricStore metricStore;
+  private final Leaderboards leaderboards;
   private final AggregatedMetricRepository aggregatedMetricRepository;
+  private final MetricQueryCache metricQueryCache;
+  private final MetricStreamHub metricStreamHub;
 
   @Override
   public Metric recordMetric(
@@ -42,28 +46,32 @@ public class MetricServiceImpl implements MetricService {
     metric.setType(type);
     metric.setValue(value);
     metric.setDimensions(dimensions);
+    metric.setId(UUID.randomUUID());
     metric.setTimestamp(LocalDateTime.now());
 
     log.debug("Recording metric: {} for entity {} with value {}", type, entityId, value);
-    return metricRepository.save(metric);
+    metricStore.append(List.of(metric));
+    leaderboards.record(List.of(metric));
+    metricQueryCache.evictMetrics(List.of(metric));
+    metricStreamHub.publishMetrics(List.of(metric));
+    return metric;
   }
 
   @Override
   @Transactional(readOnly = true)
-  @Cacheable(
-      value = "metrics",
-      key = "#tenantId + '_' + #entityId + '_' + #type + '_' + #start + '_' + #end")
   public List<Metric> getMetrics(
       UUID tenantId, UUID entityId, MetricType type, LocalDateTime start, LocalDateTime end) {
-    return metricRepository.findByTenantIdAndEntityIdAndTypeAndTimestampBetween(
-        tenantId, entityId, type, start, end);
+    return metricQueryCache.getMetrics(
+        tenantId,
+        entityId,
+        type,
+        start,
+        end,
+        (from, to) -> metricStore.find(tenantId, entityId, type, from, to));
   }
 
   @Override
   @Transactional(readOnly = true)
-  @Cacheable(
-      value = "aggregatedMetrics",
-      key = "#tenantId + '_' + #entityId + '_' + #type + '_' + #period + '_' + #start + '_' + #end")
   public List<AggregatedMetric> getAggregatedMetrics(
       UUID tenantId,
       UUID entityId,
@@ -71,40 +79,87 @@ public class MetricServiceImpl implements MetricService {
       AggregationPeriod period,
       LocalDateTime start,
       LocalDateTime end) {
-    return aggregatedMetricRepository
-        .findByTenantIdAndEntityIdAndTypeAndPeriodAndPeriodStartBetween(
-            tenantId, entityId, type, period, start, end);
+    return metricQueryCache.getAggregatedMetrics(
+        tenantId,
+        entityId,
+        type,
+        period,
+        start,
+        end,
+        (from, to) ->
+            aggregatedMetricRepository
+                .findByTenantIdAndEntityIdAndTypeAndPeriodAndPeriodStartBetween(
+                    tenantId, entityId, type, period, from, to));
   }
 
   @Override
   @Transactional(readOnly = true)
   public Map<String, Double> getMetricStatistics(
       UUID tenantId, UUID entityId, MetricType type, LocalDateTime start, LocalDateTime end) {
-    List<Metric> metrics = getMetrics(tenantId, entityId, type, start, end);
-
-    if (metrics.isEmpty()) {
+    DoubleSummaryStatistics stats = new DoubleSummaryStatistics();
+    QuantileSketch sketch = new QuantileSketch();
+    metricStore.scanValues(
+        tenantId,
+        entityId,
+        type,
+        start,
+        end,
+        value -> {
+          stats.accept(value);
+          sketch.add(value);
+        });
+
+    if (stats.getCount() == 0) {
       return Collections.emptyMap();
     }
 
-    DoubleSummaryStatistics stats =
-        metrics.stream().mapToDouble(Metric::getValue).summaryStatistics();
-
     Map<String, Double> result = new HashMap<>();
     result.put("min", stats.getMin());
     result.put("max", stats.getMax());
     result.put("avg", stats.getAverage());
     result.put("sum", stats.getSum());
     result.put("count", (double) stats.getCount());
+    result.put("p50", sketch.quantile(0.50));
+    result.put("p90", sketch.quantile(0.90));
+    result.put("p95", sketch.quantile(0.95));
+    result.put("p99", sketch.quantile(0.99));
 
-    // Calculate percentiles
-    List<Double> sortedValues =
-        metrics.stream().map(Metric::getValue).sorted().collect(Collectors.toList());
+    return result;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Map<String, Double> getPercentiles(
+      UUID tenantId,
+      UUID entityId,
+      MetricType type,
+      AggregationPeriod period,
+      LocalDateTime start,
+      LocalDateTime end,
+      List<Double> quantiles) {
+    List<AggregatedMetric> aggregates =
+        getAggregatedMetrics(tenantId, entityId, type, period, start, end);
+    if (aggregates.isEmpty()) {
+      return Collections.emptyMap();
+    }
 
-    result.put("p50", calculatePercentile(sortedValues, 50));
-    result.put("p90", calculatePercentile(sortedValues, 90));
-    result.put("p95", calculatePercentile(sortedValues, 95));
-    result.put("p99", calculatePercentile(sortedValues, 99));
+    QuantileSketch merged = new QuantileSketch();
+    for (AggregatedMetric aggregate : aggregates) {
+      merged.merge(
+          StreamingMetricAggregator.sketchOf(
+              aggregate.getMinValue(),
+              aggregate.getMaxValue(),
+              aggregate.getSumValue(),
+              aggregate.getCount(),
+              aggregate.getSketch()));
+    }
 
+    Map<String, Double> result = new LinkedHashMap<>();
+    for (double quantile : quantiles) {
+      String label = BigDecimal.valueOf(quantile * 100).stripTrailingZeros().toPlainString();
+      result.put("p" + label, merged.quantile(quantile));
+    }
+    result.put("count", (double) merged.count());
     return result;
   }
 
@@ -112,124 +167,25 @@ public class MetricServiceImpl implements MetricService {
   @Transactional(readOnly = true)
   public List<Metric> getTopPerformers(
       UUID tenantId, MetricType type, LocalDateTime since, int limit) {
-    return metricRepository
-        .findTopPerformers(tenantId, type, since, PageRequest.of(0, limit))
-        .getContent();
+    return metricStore.findTop(tenantId, type, since, limit);
   }
 
   @Override
-  public void aggregateMetrics(AggregationPeriod period) {
-    LocalDateTime now = LocalDateTime.now();
-    LocalDateTime periodStart = truncateToPeriod(now.minus(1, getChronoUnit(period)), period);
-    LocalDateTime periodEnd = periodStart.plus(1, getChronoUnit(period));
-
-    log.info("Aggregating metrics for period {} from {} to {}", period, periodStart, periodEnd);
-
-    // Get all unique tenant/entity combinations for the period
-    List<Metric> metrics = metricRepository.findAll(); // This should be optimized
-
-    Map<AggregationKey, List<Metric>> groupedMetrics =
-        metrics.stream()
-            .filter(
-                m ->
-                    !m.getTimestamp().isBefore(periodStart) && m.getTimestamp().isBefore(periodEnd))
-            .collect(
-                Collectors.groupingBy(
-                    m ->
-                        new AggregationKey(
-                            m.getTenantId(), m.getEntityId(), m.getEntityType(), m.getType())));
-
-    for (Map.Entry<AggregationKey, List<Metric>> entry : groupedMetrics.entrySet()) {
-      AggregationKey key = entry.getKey();
-      List<Metric> metricList = entry.getValue();
-
-      if (!metricList.isEmpty()) {
-        AggregatedMetric aggregated =
-            createAggregatedMetric(key, metricList, period, periodStart, periodEnd);
-        aggregatedMetricRepository.save(aggregated);
-      }
+  @Transactional(readOnly = true)
+  public List<Metric> getLeaderboard(
+      UUID tenantId, MetricType type, AggregationPeriod window, int limit) {
+    if (leaderboards.covers(window, limit)) {
+      return leaderboards.top(tenantId, type, window, limit);
     }
+    LocalDateTime windowStart = window.bucketStart(LocalDateTime.now());
+    return metricStore.findTop(tenantId, type, windowStart.minusNanos(1), limit);
   }
 
   @Override
   public void cleanupOldMetrics(int daysToKeep) {
     LocalDateTime cutoffDate = LocalDateTime.now().minusDays(daysToKeep);
     log.info("Cleaning up metrics older than {}", cutoffDate);
-    metricRepository.deleteOldMetrics(cutoffDate);
-  }
-
-  private double calculatePercentile(List<Double> sortedValues, int percentile) {
-    if (sortedValues.isEmpty()) return 0.0;
-
-    int index = (int) Math.ceil(percentile / 100.0 * sortedValues.size()) - 1;
-    return sortedValues.get(Math.max(0, Math.min(index, sortedValues.size() - 1)));
-  }
-
-  private LocalDateTime truncateToPeriod(LocalDateTime dateTime, AggregationPeriod period) {
-    return switch (period) {
-      case MINUTE -> dateTime.truncatedTo(ChronoUnit.MINUTES);
-      case HOUR -> dateTime.truncatedTo(ChronoUnit.HOURS);
-      case DAY -> dateTime.truncatedTo(ChronoUnit.DAYS);
-      case WEEK -> dateTime
-          .truncatedTo(ChronoUnit.DAYS)
-          .minusDays(dateTime.getDayOfWeek().getValue() - 1);
-      case MONTH -> dateTime.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
-      case QUARTER -> dateTime
-          .withMonth(((dateTime.getMonthValue() - 1) / 3) * 3 + 1)
-          .withDayOfMonth(1)
-          .truncatedTo(ChronoUnit.DAYS);
-      case YEAR -> dateTime.withDayOfYear(1).truncatedTo(ChronoUnit.DAYS);
-    };
-  }
-
-  private ChronoUnit getChronoUnit(AggregationPeriod period) {
-    return switch (period) {
-      case MINUTE -> ChronoUnit.MINUTES;
-      case HOUR -> ChronoUnit.HOURS;
-      case DAY -> ChronoUnit.DAYS;
-      case WEEK -> ChronoUnit.WEEKS;
-      case MONTH -> ChronoUnit.MONTHS;
-      case QUARTER -> ChronoUnit.MONTHS; // Handle quarters as 3 months
-      case YEAR -> ChronoUnit.YEARS;
-    };
+    metricStore.deleteBefore(cutoffDate);
+    metricQueryCache.evictMetricsBefore(cutoffDate);
   }
-
-  private AggregatedMetric createAggregatedMetric(
-      AggregationKey key,
-      List<Metric> metrics,
-      AggregationPeriod period,
-      LocalDateTime periodStart,
-      LocalDateTime periodEnd) {
-    DoubleSummaryStatistics stats =
-        metrics.stream().mapToDouble(Metric::getValue).summaryStatistics();
-
-    AggregatedMetric aggregated = new AggregatedMetric();
-    aggregated.setTenantId(key.tenantId());
-    aggregated.setEntityId(key.entityId());
-    aggregated.setEntityType(key.entityType());
-    aggregated.setType(key.type());
-    aggregated.setPeriod(period);
-    aggregated.setPeriodStart(periodStart);
-    aggregated.setPeriodEnd(periodEnd);
-    aggregated.setMinValue(stats.getMin());
-    aggregated.setMaxValue(stats.getMax());
-    aggregated.setAvgValue(stats.getAverage());
-    aggregated.setSumValue(stats.getSum());
-    aggregated.setCount(stats.getCount());
-
-    // Calculate percentiles
-    List<Double> sortedValues =
-        metrics.stream().map(Metric::getValue).sorted().collect(Collectors.toList());
-
-    Map<Integer, Double> percentiles = new HashMap<>();
-    percentiles.put(50, calculatePercentile(sortedValues, 50));
-    percentiles.put(90, calculatePercentile(sortedValues, 90));
-    percentiles.put(95, calculatePercentile(sortedValues, 95));
-    percentiles.put(99, calculatePercentile(sortedValues, 99));
-    aggregated.setPercentiles(percentiles);
-
-    return aggregated;
-  }
-
-  private record AggregationKey(UUID tenantId, UUID entityId, String entityType, MetricType type) {}
 }
@@ -1,20 +1,35 @@
 package com.twelvenexus.oneplan.analytics.service.impl;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
 import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.enums.ReportFormat;
+import com.twelvenexus.oneplan.analytics.enums.ReportRunStatus;
 import com.twelvenexus.oneplan.analytics.enums.ReportType;
-import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
-import com.twelvenexus.oneplan.analytics.model.Metric;
 import com.twelvenexus.oneplan.analytics.model.Report;
+import com.twelvenexus.oneplan.analytics.report.JsonReportWriter;
+import com.twelvenexus.oneplan.analytics.report.ReportExecutor;
+import com.twelvenexus.oneplan.analytics.report.ReportSchedule;
+import com.twelvenexus.oneplan.analytics.report.ReportScheduler;
+import com.twelvenexus.oneplan.analytics.report.ReportWriter;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository.SeriesSummary;
 import com.twelvenexus.oneplan.analytics.repository.ReportRepository;
 import com.twelvenexus.oneplan.analytics.service.MetricService;
 import com.twelvenexus.oneplan.analytics.service.ReportService;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Slf4j
@@ -23,8 +38,19 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class ReportServiceImpl implements ReportService {
 
+  private static final List<MetricType> TEAM_SERIES =
+      List.of(MetricType.TEAM_VELOCITY, MetricType.TEAM_EFFICIENCY);
+
   private final ReportRepository reportRepository;
   private final MetricService metricService;
+  private final MetricAggregationRepository metricAggregationRepository;
+  private final ReportExecutor reportExecutor;
+  private final ReportSchedule reportSchedule;
+  private final ReportScheduler reportScheduler;
+  private final ObjectMapper objectMapper;
+
+  @Value("${analytics.reports.poll-interval:60000}")
+  private long pollInterval;
 
   @Override
   public Report createReport(
@@ -42,13 +68,17 @@ public class ReportServiceImpl implements ReportService {
     report.setCreatedBy(createdBy);
     report.setSchedule(schedule);
     report.setActive(true);
-
     if (schedule != null) {
-      report.setNextRunAt(calculateNextRunTime(schedule));
+      ReportSchedule.parse(schedule);
     }
 
     log.info("Creating report: {} of type {}", name, type);
-    return reportRepository.save(report);
+    Report saved = reportRepository.save(report);
+    // The jitter depends on the id, so the first run is known once saved
+    if (schedule != null) {
+      saved.setNextRunAt(reportSchedule.nextRun(saved.getId(), schedule, LocalDateTime.now()));
+    }
+    return saved;
   }
 
   @Override
@@ -62,15 +92,16 @@ public class ReportServiceImpl implements ReportService {
     report.setName(name);
     report.setParameters(parameters);
     report.setSchedule(schedule);
-
-    if (schedule != null) {
-      report.setNextRunAt(calculateNextRunTime(schedule));
-    }
+    report.setNextRunAt(
+        schedule != null
+            ? reportSchedule.nextRun(reportId, schedule, LocalDateTime.now())
+            : null);
 
     return reportRepository.save(report);
   }
 
   @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public Report runReport(UUID reportId) {
     Report report =
         reportRepository
@@ -78,23 +109,16 @@ public class ReportServiceImpl implements ReportService {
             .orElseThrow(() -> new IllegalArgumentException("Report not found"));
 
     log.info("Running report: {}", report.getName());
+    // A manual run leaves the schedule alone
+    reportExecutor.submit(report, null, null, () -> generateReport(reportId)).join();
 
-    try {
-      String result = generateReport(report);
-      report.setLastRunResult(result);
-      report.setLastRunAt(LocalDateTime.now());
-
-      if (report.getSchedule() != null) {
-        report.setNextRunAt(calculateNextRunTime(report.getSchedule()));
-      }
-
-      return reportRepository.save(report);
-    } catch (Exception e) {
-      log.error("Error running report {}: {}", report.getName(), e.getMessage());
-      report.setLastRunResult("Error: " + e.getMessage());
-      report.setLastRunAt(LocalDateTime.now());
-      return reportRepository.save(report);
-    }
+    return getReport(reportId);
+  }
+
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public boolean cancelReport(UUID reportId) {
+    return reportExecutor.cancel(reportId);
   }
 
   @Override
@@ -109,230 +133,246 @@ public class ReportServiceImpl implements ReportService {
     return reportRepository.findByTenantIdAndActiveTrue(tenantId);
   }
 
+  /**
+   * Hands the reports due before the next poll to the scheduler, which submits each at its run
+   * time. Every instance does this; the claim taken before a run lets only one of them run it.
+   */
   @Override
+  @Transactional(readOnly = true)
   public void processScheduledReports() {
-    LocalDateTime now = LocalDateTime.now();
-    List<Report> scheduledReports = reportRepository.findScheduledReportsToRun(now);
+    LocalDateTime horizon = LocalDateTime.now().plus(Duration.ofMillis(pollInterval));
+    List<Report> scheduledReports = reportRepository.findScheduledReportsToRun(horizon);
 
-    log.info("Processing {} scheduled reports", scheduledReports.size());
+    log.debug("Scheduling {} reports due by {}", scheduledReports.size(), horizon);
 
     for (Report report : scheduledReports) {
-      try {
-        runReport(report.getId());
-      } catch (Exception e) {
-        log.error("Failed to run scheduled report {}: {}", report.getName(), e.getMessage());
-      }
+      LocalDateTime dueAt = report.getNextRunAt();
+      reportScheduler.schedule(report.getId(), dueAt, () -> submitScheduled(report, dueAt));
     }
   }
 
+  /** Runs the report if it is still due at {@code dueAt}, and moves it to its next run. */
+  private void submitScheduled(Report report, LocalDateTime dueAt) {
+    LocalDateTime now = LocalDateTime.now();
+    // After downtime, resume from now rather than replaying every missed run
+    LocalDateTime nextRunAt =
+        reportSchedule.nextRun(
+            report.getId(), report.getSchedule(), dueAt.isAfter(now) ? dueAt : now);
+    UUID reportId = report.getId();
+    reportExecutor.submit(report, dueAt, nextRunAt, () -> generateReport(reportId));
+  }
+
   @Override
   public void deleteReport(UUID reportId) {
     reportRepository.deleteById(reportId);
   }
 
   @Override
-  public byte[] exportReport(UUID reportId, String format) {
-    Report report =
-        reportRepository
-            .findById(reportId)
-            .orElseThrow(() -> new IllegalArgumentException("Report not found"));
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public Report getReport(UUID reportId) {
+    return reportRepository
+        .findWithParametersById(reportId)
+        .orElseThrow(() -> new IllegalArgumentException("Report not found"));
+  }
 
-    String content = report.getLastRunResult();
-    if (content == null) {
-      content = generateReport(report);
+  /**
+   * Generates the report straight into {@code out} on a report executor thread, under the same
+   * worker, tenant and timeout limits as runs, while this thread waits. Runs outside a transaction
+   * so no connection is held while the client reads.
+   */
+  @Override
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public void exportReport(UUID reportId, ReportFormat format, OutputStream out)
+      throws IOException {
+    Report report = getReport(reportId);
+    ReportRunStatus status =
+        reportExecutor
+            .submitExport(
+                report,
+                () -> {
+                  try (ReportWriter writer = ReportWriter.create(format, out, objectMapper)) {
+                    writeReport(report, writer);
+                  }
+                  return null;
+                })
+            .join();
+    if (status != ReportRunStatus.SUCCEEDED) {
+      throw new IOException("Export of report " + reportId + " ended " + status);
     }
+  }
 
-    return switch (format.toLowerCase()) {
-      case "csv" -> convertToCSV(content);
-      case "json" -> content.getBytes();
-      case "pdf" -> convertToPDF(content);
-      default -> throw new IllegalArgumentException("Unsupported format: " + format);
-    };
+  /** Loads and generates the report; runs on report executor threads, outside a transaction. */
+  private String generateReport(UUID reportId) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ReportWriter writer = new JsonReportWriter(objectMapper, out)) {
+      writeReport(getReport(reportId), writer);
+    }
+    return out.toString(StandardCharsets.UTF_8);
   }
 
-  private String generateReport(Report report) {
-    return switch (report.getType()) {
-      case PROJECT_SUMMARY -> generateProjectSummaryReport(report);
-      case TEAM_PERFORMANCE -> generateTeamPerformanceReport(report);
-      case USER_ACTIVITY -> generateUserActivityReport(report);
-      case TASK_ANALYTICS -> generateTaskAnalyticsReport(report);
-      case TIMELINE_ACCURACY -> generateTimelineAccuracyReport(report);
-      case RESOURCE_UTILIZATION -> generateResourceUtilizationReport(report);
-      case SYSTEM_HEALTH -> generateSystemHealthReport(report);
-      case BUSINESS_METRICS -> generateBusinessMetricsReport(report);
-      case CUSTOM -> generateCustomReport(report);
-    };
+  private void writeReport(Report report, ReportWriter writer) throws IOException {
+    switch (report.getType()) {
+      case PROJECT_SUMMARY -> writeProjectSummaryReport(report, writer);
+      case TEAM_PERFORMANCE -> writeTeamPerformanceReport(report, writer);
+      case USER_ACTIVITY -> writeUserActivityReport(report, writer);
+      case TASK_ANALYTICS -> writeTaskAnalyticsReport(report, writer);
+      case TIMELINE_ACCURACY -> writeTimelineAccuracyReport(report, writer);
+      case RESOURCE_UTILIZATION -> writeResourceUtilizationReport(report, writer);
+      case SYSTEM_HEALTH -> writeSystemHealthReport(report, writer);
+      case BUSINESS_METRICS -> writeBusinessMetricsReport(report, writer);
+      case CUSTOM -> writeCustomReport(report, writer);
+    }
   }
 
-  private String generateProjectSummaryReport(Report report) {
+  private void writeProjectSummaryReport(Report report, ReportWriter writer) throws IOException {
     Map<String, String> params = report.getParameters();
     UUID projectId = UUID.fromString(params.get("projectId"));
     LocalDateTime startDate = LocalDateTime.parse(params.get("startDate"));
     LocalDateTime endDate = LocalDateTime.parse(params.get("endDate"));
-
-    Map<String, Object> reportData = new HashMap<>();
-
-    // Get project metrics
-    List<Metric> projectMetrics =
-        metricService.getMetrics(
-            report.getTenantId(), projectId, MetricType.PROJECT_HEALTH_SCORE, startDate, endDate);
-
-    // Get aggregated task metrics
-    List<AggregatedMetric> taskMetrics =
-        metricService.getAggregatedMetrics(
-            report.getTenantId(),
-            projectId,
-            MetricType.TASK_COMPLETED,
-            AggregationPeriod.DAY,
-            startDate,
-            endDate);
-
-    // Build report data
-    reportData.put("projectId", projectId);
-    reportData.put("period", Map.of("start", startDate, "end", endDate));
-    reportData.put("healthScore", calculateAverageMetricValue(projectMetrics));
-    reportData.put(
-        "tasksCompleted", taskMetrics.stream().mapToDouble(AggregatedMetric::getSumValue).sum());
-    reportData.put(
-        "dailyTaskCompletion",
-        taskMetrics.stream()
-            .map(
-                m ->
-                    Map.of(
-                        "date", m.getPeriodStart(),
-                        "count", m.getSumValue()))
-            .collect(Collectors.toList()));
-
-    return convertToJson(reportData);
+    List<MetricType> completed = List.of(MetricType.TASK_COMPLETED);
+
+    double healthScore =
+        metricService
+            .getMetricStatistics(
+                report.getTenantId(),
+                projectId,
+                MetricType.PROJECT_HEALTH_SCORE,
+                startDate,
+                endDate)
+            .getOrDefault("avg", 0.0);
+    SeriesSummary tasks =
+        metricAggregationRepository
+            .summarizeSeries(
+                report.getTenantId(),
+                projectId,
+                AggregationPeriod.DAY,
+                startDate,
+                endDate,
+                completed)
+            .get(MetricType.TASK_COMPLETED);
+
+    writer.field("projectId", projectId);
+    writer.field("period", period(startDate, endDate));
+    writer.field("healthScore", healthScore);
+    writer.field("tasksCompleted", tasks != null ? tasks.sum() : 0.0);
+    writer.startTable("dailyTaskCompletion", "date", "count");
+    writeRows(
+        () ->
+            metricAggregationRepository.scanSeries(
+                report.getTenantId(),
+                projectId,
+                AggregationPeriod.DAY,
+                startDate,
+                endDate,
+                completed,
+                (day, type, avg, sum) -> row(writer, day, sum)));
+    writer.endTable();
   }
 
-  private String generateTeamPerformanceReport(Report report) {
+  private void writeTeamPerformanceReport(Report report, ReportWriter writer) throws IOException {
     Map<String, String> params = report.getParameters();
     UUID teamId = UUID.fromString(params.get("teamId"));
     LocalDateTime startDate = LocalDateTime.parse(params.get("startDate"));
     LocalDateTime endDate = LocalDateTime.parse(params.get("endDate"));
 
-    Map<String, Object> reportData = new HashMap<>();
-
-    // Get team velocity
-    List<AggregatedMetric> velocityMetrics =
-        metricService.getAggregatedMetrics(
-            report.getTenantId(),
-            teamId,
-            MetricType.TEAM_VELOCITY,
-            AggregationPeriod.WEEK,
-            startDate,
-            endDate);
-
-    // Get team efficiency
-    List<AggregatedMetric> efficiencyMetrics =
-        metricService.getAggregatedMetrics(
-            report.getTenantId(),
-            teamId,
-            MetricType.TEAM_EFFICIENCY,
-            AggregationPeriod.WEEK,
-            startDate,
-            endDate);
-
-    reportData.put("teamId", teamId);
-    reportData.put("period", Map.of("start", startDate, "end", endDate));
-    reportData.put("averageVelocity", calculateAverageAggregatedValue(velocityMetrics));
-    reportData.put("averageEfficiency", calculateAverageAggregatedValue(efficiencyMetrics));
-    reportData.put("weeklyMetrics", buildWeeklyMetrics(velocityMetrics, efficiencyMetrics));
-
-    return convertToJson(reportData);
-  }
-
-  private LocalDateTime calculateNextRunTime(String cronExpression) {
-    // TODO: Simplified - in a real implementation, use a proper cron library
-    // For now, just schedule for next day at midnight
-    return LocalDateTime.now().plusDays(1).withHour(0).withMinute(0).withSecond(0);
-  }
+    Map<MetricType, SeriesSummary> summaries =
+        metricAggregationRepository.summarizeSeries(
+            report.getTenantId(), teamId, AggregationPeriod.WEEK, startDate, endDate, TEAM_SERIES);
 
-  private double calculateAverageMetricValue(List<Metric> metrics) {
-    return metrics.stream().mapToDouble(Metric::getValue).average().orElse(0.0);
+    writer.field("teamId", teamId);
+    writer.field("period", period(startDate, endDate));
+    writer.field("averageVelocity", average(summaries.get(MetricType.TEAM_VELOCITY)));
+    writer.field("averageEfficiency", average(summaries.get(MetricType.TEAM_EFFICIENCY)));
+    writeWeeklyMetrics(writer, report.getTenantId(), teamId, startDate, endDate);
   }
 
-  private double calculateAverageAggregatedValue(List<AggregatedMetric> metrics) {
-    return metrics.stream().mapToDouble(AggregatedMetric::getAvgValue).average().orElse(0.0);
+  private static double average(SeriesSummary summary) {
+    return summary != null ? summary.average() : 0.0;
   }
 
-  private List<Map<String, Object>> buildWeeklyMetrics(
-      List<AggregatedMetric> velocity, List<AggregatedMetric> efficiency) {
-    Map<LocalDateTime, Map<String, Object>> weeklyData = new HashMap<>();
-
-    velocity.forEach(
-        m -> {
-          weeklyData
-              .computeIfAbsent(m.getPeriodStart(), k -> new HashMap<>())
-              .put("velocity", m.getAvgValue());
-        });
-
-    efficiency.forEach(
-        m -> {
-          weeklyData
-              .computeIfAbsent(m.getPeriodStart(), k -> new HashMap<>())
-              .put("efficiency", m.getAvgValue());
-        });
-
-    return weeklyData.entrySet().stream()
-        .sorted(Map.Entry.comparingByKey())
-        .map(
-            entry -> {
-              Map<String, Object> week = new HashMap<>(entry.getValue());
-              week.put("weekStart", entry.getKey());
-              return week;
-            })
-        .collect(Collectors.toList());
+  private static Map<String, Object> period(LocalDateTime start, LocalDateTime end) {
+    Map<String, Object> period = new LinkedHashMap<>();
+    period.put("start", start);
+    period.put("end", end);
+    return period;
   }
 
-  private String convertToJson(Object data) {
-    // TODO: In real implementation, use Jackson or Gson
-    return data.toString();
+  /** One row per week, in week order, with the velocity and efficiency of that week if any. */
+  private void writeWeeklyMetrics(
+      ReportWriter writer,
+      UUID tenantId,
+      UUID teamId,
+      LocalDateTime startDate,
+      LocalDateTime endDate)
+      throws IOException {
+    writer.startTable("weeklyMetrics", "weekStart", "velocity", "efficiency");
+    // A week's points arrive together, so its row is complete once the next week's begin
+    Object[] week = new Object[3];
+    writeRows(
+        () ->
+            metricAggregationRepository.scanSeries(
+                tenantId,
+                teamId,
+                AggregationPeriod.WEEK,
+                startDate,
+                endDate,
+                TEAM_SERIES,
+                (weekStart, type, avg, sum) -> {
+                  if (week[0] != null && !week[0].equals(weekStart)) {
+                    row(writer, week);
+                    Arrays.fill(week, null);
+                  }
+                  week[0] = weekStart;
+                  week[type == MetricType.TEAM_VELOCITY ? 1 : 2] = avg;
+                }));
+    if (week[0] != null) {
+      row(writer, week);
+    }
+    writer.endTable();
   }
 
-  private byte[] convertToCSV(String jsonContent) {
-    // TODO: Implement JSON to CSV conversion
-    return jsonContent.getBytes();
+  /** Runs a scan that writes rows from its callback, letting the writer's failures through. */
+  private static void writeRows(Runnable scan) throws IOException {
+    try {
+      scan.run();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
   }
 
-  private byte[] convertToPDF(String content) {
-    // TODO: Implement PDF generation (e.g., using iText or Apache PDFBox)
-    return content.getBytes();
+  private static void row(ReportWriter writer, Object... values) {
+    try {
+      writer.row(values);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
-  private String generateUserActivityReport(Report report) {
+  private void writeUserActivityReport(Report report, ReportWriter writer) {
     // TODO: Implementation for user activity report
-    return "{}";
   }
 
-  private String generateTaskAnalyticsReport(Report report) {
+  private void writeTaskAnalyticsReport(Report report, ReportWriter writer) {
     // TODO: Implementation for task analytics report
-    return "{}";
   }
 
-  private String generateTimelineAccuracyReport(Report report) {
+  private void writeTimelineAccuracyReport(Report report, ReportWriter writer) {
     // TODO: Implementation for timeline accuracy report
-    return "{}";
   }
 
-  private String generateResourceUtilizationReport(Report report) {
+  private void writeResourceUtilizationReport(Report report, ReportWriter writer) {
     // TODO: Implementation for resource utilization report
-    return "{}";
   }
 
-  private String generateSystemHealthReport(Report report) {
+  private void writeSystemHealthReport(Report report, ReportWriter writer) {
     // TODO: Implementation for system health report
-    return "{}";
   }
 
-  private String generateBusinessMetricsReport(Report report) {
+  private void writeBusinessMetricsReport(Report report, ReportWriter writer) {
     // TODO: Implementation for business metrics report
-    return "{}";
   }
 
-  private String generateCustomReport(Report report) {
+  private void writeCustomReport(Report report, ReportWriter writer) {
     // TODO: Implementation for custom reports
-    return "{}";
   }
 }
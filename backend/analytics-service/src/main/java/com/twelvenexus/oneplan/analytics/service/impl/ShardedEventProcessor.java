@@ -0,0 +1,311 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.leaderboard.Leaderboards;
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import com.twelvenexus.oneplan.analytics.model.EventProcessorShard;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.repository.EventProcessingRepository;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import com.twelvenexus.oneplan.analytics.stream.MetricStreamHub;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns tracked events into metrics, one page at a time.
+ *
+ * <p>Events are spread over {@link #SHARDS} fixed shards by tenant. A run leases every shard it
+ * can (a lease expires, so shards of a dead instance are picked up by the next run elsewhere) and
+ * walks each one in {@code _id} order from its checkpoint, which is saved after every page. Metric
+ * ids are derived from the event id and metric type and the metric store skips ids it already
+ * holds, so a page that is replayed after a crash between the metric append and the checkpoint
+ * does not double-count. Because ids are time-ordered but assigned at the client, a run resumes a
+ * little before its checkpoint (the late window) to pick up events that were written out of order,
+ * and the first run after startup walks each shard from the beginning to catch write-ahead-log
+ * replays.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ShardedEventProcessor {
+
+  static final int SHARDS = 64;
+
+  private final EventProcessingRepository processingRepository;
+  private final MetricStore metricStore;
+  private final Leaderboards leaderboards;
+  private final MetricQueryCache metricQueryCache;
+  private final MetricStreamHub metricStreamHub;
+
+  @Value("${analytics.processing.instance-id}")
+  private String instanceId;
+
+  @Value("${analytics.processing.page-size:500}")
+  private int pageSize;
+
+  @Value("${analytics.processing.workers:4}")
+  private int workers;
+
+  @Value("${analytics.processing.delay:PT5M}")
+  private Duration delay;
+
+  @Value("${analytics.processing.late-window:PT1H}")
+  private Duration lateWindow;
+
+  @Value("${analytics.processing.lease-ttl:PT5M}")
+  private Duration leaseTtl;
+
+  private volatile boolean swept;
+
+  public static int shardOf(UUID tenantId) {
+    return Math.floorMod(tenantId.hashCode(), SHARDS);
+  }
+
+  /** Processes every shard this instance can lease; returns the number of events processed. */
+  public long processAll() {
+    LocalDateTime cutoff = LocalDateTime.now().minus(delay);
+    boolean fullSweep = !swept;
+    long processed = 0;
+    int failed = 0;
+
+    try (ExecutorService executor =
+        Executors.newFixedThreadPool(
+            workers, Thread.ofPlatform().name("event-processor-", 0).factory())) {
+      List<Future<Long>> results = new ArrayList<>(SHARDS);
+      for (int shard = 0; shard < SHARDS; shard++) {
+        int s = shard;
+        results.add(executor.submit(() -> processShard(s, cutoff, fullSweep)));
+      }
+      for (int shard = 0; shard < SHARDS; shard++) {
+        try {
+          processed += results.get(shard).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Event processing interrupted", e);
+        } catch (ExecutionException e) {
+          failed++;
+          log.error("Error processing event shard {}", shard, e.getCause());
+        }
+      }
+    }
+
+    if (failed == 0) {
+      swept = true;
+    }
+    log.info("Processed {} events ({} shards failed)", processed, failed);
+    return processed;
+  }
+
+  private long processShard(int shard, LocalDateTime cutoff, boolean fullSweep) {
+    Optional<EventProcessorShard> lease =
+        processingRepository.tryAcquire(shard, instanceId, leaseTtl);
+    if (lease.isEmpty()) {
+      return 0;
+    }
+
+    try {
+      String checkpoint = lease.get().getLastEventId();
+      String cursor = fullSweep ? null : resumeFrom(checkpoint);
+      long processed = 0;
+      while (true) {
+        List<AnalyticsEvent> page = processingRepository.findPage(shard, cursor, cutoff, pageSize);
+        if (page.isEmpty()) {
+          break;
+        }
+
+        List<Metric> metrics = toMetrics(page);
+        metricStore.append(metrics);
+        leaderboards.record(metrics);
+        metricQueryCache.evictMetrics(metrics);
+        metricStreamHub.publishMetrics(metrics);
+        List<String> ids = page.stream().map(AnalyticsEvent::getId).toList();
+        processingRepository.markProcessed(ids, LocalDateTime.now());
+        processed += page.size();
+
+        cursor = ids.get(ids.size() - 1);
+        // Never move the checkpoint back while re-walking the late window or a sweep
+        if (checkpoint == null || cursor.compareTo(checkpoint) > 0) {
+          checkpoint = cursor;
+        }
+        if (!processingRepository.saveCheckpoint(shard, instanceId, checkpoint, leaseTtl)) {
+          log.warn("Lost lease on event shard {}, stopping", shard);
+          break;
+        }
+        if (page.size() < pageSize) {
+          break;
+        }
+      }
+      return processed;
+    } finally {
+      processingRepository.release(shard, instanceId);
+    }
+  }
+
+  /** The checkpoint, moved back by the late window; ObjectId hex strings sort by time. */
+  private String resumeFrom(String checkpoint) {
+    if (checkpoint == null) {
+      return null;
+    }
+    long seconds =
+        LocalDateTime.now().minus(lateWindow).atZone(ZoneId.systemDefault()).toEpochSecond();
+    String lateBound = String.format("%08x%016x", seconds, 0L);
+    return lateBound.compareTo(checkpoint) < 0 ? lateBound : checkpoint;
+  }
+
+  private List<Metric> toMetrics(List<AnalyticsEvent> page) {
+    Map<String, List<AnalyticsEvent>> byType = new LinkedHashMap<>();
+    for (AnalyticsEvent event : page) {
+      byType.computeIfAbsent(event.getEventType(), k -> new ArrayList<>()).add(event);
+    }
+
+    List<Metric> metrics = new ArrayList<>();
+    for (Map.Entry<String, List<AnalyticsEvent>> entry : byType.entrySet()) {
+      switch (entry.getKey()) {
+        case "project.created" -> eachEvent(entry.getValue(), metrics, this::projectCreated);
+        case "task.completed" -> eachEvent(entry.getValue(), metrics, this::taskCompleted);
+        case "user.login" -> eachEvent(entry.getValue(), metrics, this::userLogin);
+        case "requirement.analyzed" ->
+            eachEvent(entry.getValue(), metrics, this::requirementAnalyzed);
+        default -> log.warn("Unknown event type: {}", entry.getKey());
+      }
+    }
+    return metrics;
+  }
+
+  @FunctionalInterface
+  private interface EventMapper {
+    void map(AnalyticsEvent event, List<Metric> metrics);
+  }
+
+  private void eachEvent(List<AnalyticsEvent> events, List<Metric> metrics, EventMapper mapper) {
+    for (AnalyticsEvent event : events) {
+      List<Metric> eventMetrics = new ArrayList<>(3);
+      try {
+        mapper.map(event, eventMetrics);
+        metrics.addAll(eventMetrics);
+      } catch (RuntimeException e) {
+        // A malformed event must not hold back the rest of its shard
+        log.error("Skipping malformed event {}: {}", event.getId(), e.getMessage());
+      }
+    }
+  }
+
+  private void projectCreated(AnalyticsEvent event, List<Metric> metrics) {
+    metrics.add(
+        metric(
+            event,
+            event.getEntityId(),
+            "project",
+            MetricType.PROJECT_CREATED,
+            1.0,
+            Map.of("userId", event.getUserId().toString())));
+  }
+
+  private void taskCompleted(AnalyticsEvent event, List<Metric> metrics) {
+    Map<String, Object> props = event.getProperties();
+    Double leadTime = number(props.get("leadTime"));
+    Double cycleTime = number(props.get("cycleTime"));
+    Map<String, String> priority =
+        Map.of("priority", (String) props.getOrDefault("priority", "medium"));
+
+    if (leadTime != null) {
+      metrics.add(
+          metric(
+              event, event.getEntityId(), "task", MetricType.TASK_LEAD_TIME, leadTime, priority));
+    }
+    if (cycleTime != null) {
+      metrics.add(
+          metric(
+              event, event.getEntityId(), "task", MetricType.TASK_CYCLE_TIME, cycleTime, priority));
+    }
+    metrics.add(
+        metric(
+            event,
+            event.getEntityId(),
+            "task",
+            MetricType.TASK_COMPLETED,
+            1.0,
+            Map.of("userId", event.getUserId().toString())));
+  }
+
+  /**
+   * One metric per login, so its id depends on the event alone: which logins share a page changes
+   * when a page is replayed.
+   */
+  private void userLogin(AnalyticsEvent event, List<Metric> metrics) {
+    if (event.getUserId() == null) {
+      throw new IllegalArgumentException("Login event without user");
+    }
+    metrics.add(metric(event, event.getUserId(), "user", MetricType.USER_ACTIVE, 1.0, Map.of()));
+  }
+
+  private void requirementAnalyzed(AnalyticsEvent event, List<Metric> metrics) {
+    Map<String, Object> props = event.getProperties();
+    Double accuracy = number(props.get("accuracy"));
+    Double processingTime = number(props.get("processingTime"));
+
+    if (accuracy != null) {
+      metrics.add(
+          metric(
+              event,
+              event.getEntityId(),
+              "requirement",
+              MetricType.AI_REQUIREMENT_ANALYSIS_ACCURACY,
+              accuracy,
+              Map.of("type", (String) props.getOrDefault("requirementType", "general"))));
+    }
+    if (processingTime != null) {
+      metrics.add(
+          metric(
+              event,
+              event.getEntityId(),
+              "ai",
+              MetricType.AI_PROCESSING_TIME,
+              processingTime,
+              Map.of("operation", "requirement_analysis")));
+    }
+  }
+
+  private static Double number(Object value) {
+    return value instanceof Number n ? n.doubleValue() : null;
+  }
+
+  private static Metric metric(
+      AnalyticsEvent source,
+      UUID entityId,
+      String entityType,
+      MetricType type,
+      double value,
+      Map<String, String> dimensions) {
+    Metric metric = new Metric();
+    // Same event, same metric id: replaying a page inserts nothing new
+    metric.setId(
+        UUID.nameUUIDFromBytes((source.getId() + ":" + type).getBytes(StandardCharsets.UTF_8)));
+    metric.setTenantId(source.getTenantId());
+    metric.setEntityId(entityId);
+    metric.setEntityType(entityType);
+    metric.setType(type);
+    metric.setValue(value);
+    metric.setDimensions(dimensions);
+    // Event time, so a replayed page yields the same metric and late events land in their hour
+    metric.setTimestamp(source.getTimestamp());
+    return metric;
+  }
+}
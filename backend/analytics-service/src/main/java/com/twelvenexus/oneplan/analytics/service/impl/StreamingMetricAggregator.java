@@ -0,0 +1,190 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
+import com.twelvenexus.oneplan.analytics.sketch.QuantileSketch;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates metric values, or finer aggregates being rolled up, that arrive ordered by {@code
+ * (tenantId, entityId, entityType, type)}. Each group is summarised by exact min/max/sum/count and
+ * a {@link QuantileSketch}; each finished group becomes an {@link AggregatedMetric} and is handed
+ * to the sink in batches, so memory is bounded by the batch size rather than by the number of rows
+ * in the period.
+ */
+public class StreamingMetricAggregator {
+
+  static final int[] PERCENTILES = {50, 90, 95, 99};
+
+  private final AggregationPeriod period;
+  private final LocalDateTime periodStart;
+  private final LocalDateTime periodEnd;
+  private final int batchSize;
+  private final Consumer<List<AggregatedMetric>> sink;
+
+  private List<AggregatedMetric> batch;
+  private String tenantId;
+  private String entityId;
+  private String entityType;
+  private String type;
+  private QuantileSketch sketch = new QuantileSketch();
+  private double min;
+  private double max;
+  private double sum;
+  private long count;
+  private long rows;
+  private long groups;
+
+  public StreamingMetricAggregator(
+      AggregationPeriod period,
+      LocalDateTime periodStart,
+      LocalDateTime periodEnd,
+      int batchSize,
+      Consumer<List<AggregatedMetric>> sink) {
+    this.period = period;
+    this.periodStart = periodStart;
+    this.periodEnd = periodEnd;
+    this.batchSize = batchSize;
+    this.sink = sink;
+    this.batch = new ArrayList<>(batchSize);
+  }
+
+  /** Adds one raw metric value. */
+  public void accept(
+      String tenantId, String entityId, String entityType, String type, double value) {
+    startGroupIfChanged(tenantId, entityId, entityType, type);
+    sketch.add(value);
+    include(value, value, value, 1);
+    rows++;
+  }
+
+  /**
+   * Merges a finer-grained aggregate. When it predates sketches ({@code sketch == null}) its min,
+   * max and average stand in for its values, so percentiles of such rows are approximate.
+   */
+  public void acceptAggregate(
+      String tenantId,
+      String entityId,
+      String entityType,
+      String type,
+      double min,
+      double max,
+      double sum,
+      long count,
+      byte[] sketch) {
+    startGroupIfChanged(tenantId, entityId, entityType, type);
+    this.sketch.merge(sketchOf(min, max, sum, count, sketch));
+    include(min, max, sum, count);
+    rows++;
+  }
+
+  /** Emits the last group and any partially filled batch. */
+  public void finish() {
+    completeGroup();
+    if (!batch.isEmpty()) {
+      sink.accept(batch);
+      batch = new ArrayList<>(batchSize);
+    }
+  }
+
+  public long rows() {
+    return rows;
+  }
+
+  public long groups() {
+    return groups;
+  }
+
+  /**
+   * Deserializes a stored sketch, or approximates one from the summary columns of an aggregate
+   * that predates sketches.
+   */
+  static QuantileSketch sketchOf(double min, double max, double sum, long count, byte[] sketch) {
+    if (sketch != null) {
+      return QuantileSketch.fromBytes(sketch);
+    }
+    QuantileSketch approximate = new QuantileSketch();
+    approximate.add(min);
+    if (count > 1) {
+      approximate.add(max);
+    }
+    if (count > 2) {
+      approximate.add(sum / count, count - 2);
+    }
+    return approximate;
+  }
+
+  private void startGroupIfChanged(
+      String tenantId, String entityId, String entityType, String type) {
+    if (Objects.equals(this.tenantId, tenantId)
+        && Objects.equals(this.entityId, entityId)
+        && Objects.equals(this.entityType, entityType)
+        && Objects.equals(this.type, type)) {
+      return;
+    }
+    completeGroup();
+    this.tenantId = tenantId;
+    this.entityId = entityId;
+    this.entityType = entityType;
+    this.type = type;
+  }
+
+  private void include(double min, double max, double sum, long count) {
+    if (this.count == 0) {
+      this.min = min;
+      this.max = max;
+    } else {
+      this.min = Math.min(this.min, min);
+      this.max = Math.max(this.max, max);
+    }
+    this.sum += sum;
+    this.count += count;
+  }
+
+  private void completeGroup() {
+    if (count == 0) {
+      return;
+    }
+    batch.add(toAggregate());
+    groups++;
+    sketch = new QuantileSketch();
+    sum = 0;
+    count = 0;
+    if (batch.size() == batchSize) {
+      sink.accept(batch);
+      batch = new ArrayList<>(batchSize);
+    }
+  }
+
+  private AggregatedMetric toAggregate() {
+    AggregatedMetric aggregated = new AggregatedMetric();
+    aggregated.setTenantId(UUID.fromString(tenantId));
+    aggregated.setEntityId(UUID.fromString(entityId));
+    aggregated.setEntityType(entityType);
+    aggregated.setType(MetricType.valueOf(type));
+    aggregated.setPeriod(period);
+    aggregated.setPeriodStart(periodStart);
+    aggregated.setPeriodEnd(periodEnd);
+    aggregated.setMinValue(min);
+    aggregated.setMaxValue(max);
+    aggregated.setAvgValue(sum / count);
+    aggregated.setSumValue(sum);
+    aggregated.setCount(count);
+
+    Map<Integer, Double> percentiles = new HashMap<>();
+    for (int percentile : PERCENTILES) {
+      percentiles.put(percentile, sketch.quantile(percentile / 100.0));
+    }
+    aggregated.setPercentiles(percentiles);
+    aggregated.setSketch(sketch.toBytes());
+    return aggregated;
+  }
+}
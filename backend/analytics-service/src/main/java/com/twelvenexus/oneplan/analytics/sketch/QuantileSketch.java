@@ -0,0 +1,325 @@
+package com.twelvenexus.oneplan.analytics.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Mergeable quantile sketch with relative-error guarantees (the DDSketch algorithm). Values are
+ * counted in logarithmically sized buckets, so any quantile is answered within {@code
+ * relativeAccuracy} of the true value, the size is independent of the number of values, and two
+ * sketches merge exactly by adding bucket counts. That lets coarser aggregation periods be built
+ * from finer ones without re-reading raw metrics.
+ *
+ * <p>At most {@value #MAX_BINS} buckets are kept per sign; beyond that the buckets closest to zero
+ * are collapsed, which only degrades accuracy for the smallest values. Not thread-safe.
+ */
+public final class QuantileSketch {
+
+  public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+  static final int MAX_BINS = 2048;
+
+  private static final byte FORMAT_VERSION = 1;
+
+  private final double relativeAccuracy;
+  private final double gamma;
+  private final double logGamma;
+  private final double minIndexableValue;
+  private final Bins positive = new Bins();
+  private final Bins negative = new Bins();
+  private long zeroCount;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  public QuantileSketch() {
+    this(DEFAULT_RELATIVE_ACCURACY);
+  }
+
+  public QuantileSketch(double relativeAccuracy) {
+    if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+      throw new IllegalArgumentException("Relative accuracy must be in (0, 1)");
+    }
+    this.relativeAccuracy = relativeAccuracy;
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = Math.log(gamma);
+    this.minIndexableValue = Double.MIN_NORMAL * gamma;
+  }
+
+  public void add(double value) {
+    add(value, 1);
+  }
+
+  /** Adds {@code value} with the given multiplicity. */
+  public void add(double value, long count) {
+    if (count <= 0 || Double.isNaN(value)) {
+      return;
+    }
+    if (value > minIndexableValue) {
+      positive.add(index(value), count);
+    } else if (value < -minIndexableValue) {
+      negative.add(index(-value), count);
+    } else {
+      zeroCount += count;
+    }
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /** Adds all values of {@code other} to this sketch. */
+  public void merge(QuantileSketch other) {
+    if (other.relativeAccuracy != relativeAccuracy) {
+      throw new IllegalArgumentException("Cannot merge sketches with different accuracy");
+    }
+    positive.merge(other.positive);
+    negative.merge(other.negative);
+    zeroCount += other.zeroCount;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public long count() {
+    return zeroCount + positive.total + negative.total;
+  }
+
+  public boolean isEmpty() {
+    return count() == 0;
+  }
+
+  /**
+   * Returns the value at quantile {@code q} (0 to 1), or {@code NaN} if the sketch is empty.
+   */
+  public double quantile(double q) {
+    if (q < 0 || q > 1) {
+      throw new IllegalArgumentException("Quantile must be in [0, 1]");
+    }
+    long count = count();
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (q == 0) {
+      return min;
+    }
+    if (q == 1) {
+      return max;
+    }
+
+    long rank = (long) (q * (count - 1));
+    double value;
+    if (rank < negative.total) {
+      // Most negative values sit in the highest negative buckets
+      value = -negative.valueAtReverseRank(rank);
+    } else if (rank < negative.total + zeroCount) {
+      value = 0;
+    } else {
+      value = positive.valueAtRank(rank - negative.total - zeroCount);
+    }
+    return Math.max(min, Math.min(max, value));
+  }
+
+  public byte[] toBytes() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64 + positive.span() + negative.span());
+    out.write(FORMAT_VERSION);
+    writeLong(out, Double.doubleToLongBits(relativeAccuracy));
+    writeLong(out, Double.doubleToLongBits(min));
+    writeLong(out, Double.doubleToLongBits(max));
+    writeVarLong(out, zeroCount);
+    positive.write(out);
+    negative.write(out);
+    return out.toByteArray();
+  }
+
+  /**
+   * Reads a sketch written by {@link #toBytes}.
+   *
+   * @throws IllegalArgumentException if the bytes are truncated or not a sketch
+   */
+  public static QuantileSketch fromBytes(byte[] bytes) {
+    ByteBuffer in = ByteBuffer.wrap(bytes);
+    try {
+      byte version = in.get();
+      if (version != FORMAT_VERSION) {
+        throw new IllegalArgumentException("Unsupported sketch format " + version);
+      }
+      QuantileSketch sketch = new QuantileSketch(Double.longBitsToDouble(in.getLong()));
+      sketch.min = Double.longBitsToDouble(in.getLong());
+      sketch.max = Double.longBitsToDouble(in.getLong());
+      sketch.zeroCount = readVarLong(in);
+      sketch.positive.read(in);
+      sketch.negative.read(in);
+      return sketch;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated sketch of " + bytes.length + " bytes", e);
+    }
+  }
+
+  private int index(double value) {
+    return (int) Math.ceil(Math.log(value) / logGamma);
+  }
+
+  /** Representative value of a bucket, within {@code relativeAccuracy} of all its values. */
+  private double value(int index) {
+    return 2 * Math.pow(gamma, index) / (gamma + 1);
+  }
+
+  private static void writeLong(ByteArrayOutputStream out, long value) {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      out.write((int) (value >>> shift));
+    }
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = in.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  /** Dense bucket counts for one sign, collapsing the lowest buckets past {@link #MAX_BINS}. */
+  private final class Bins {
+    private long[] counts = new long[0];
+    // counts[i] holds bucket offset + i
+    private int offset;
+    private int minIndex = Integer.MAX_VALUE;
+    private int maxIndex = Integer.MIN_VALUE;
+    private long total;
+
+    void add(int index, long count) {
+      if (total > 0) {
+        int lowest = Math.max(index, maxIndex) - MAX_BINS + 1;
+        if (index < lowest) {
+          index = lowest;
+        } else if (minIndex < lowest) {
+          place(lowest, removeBelow(lowest));
+        }
+      }
+      place(index, count);
+    }
+
+    void merge(Bins other) {
+      for (int index = other.minIndex; index <= other.maxIndex && other.total > 0; index++) {
+        long count = other.counts[index - other.offset];
+        if (count > 0) {
+          add(index, count);
+        }
+      }
+    }
+
+    double valueAtRank(long rank) {
+      long seen = 0;
+      for (int index = minIndex; index <= maxIndex; index++) {
+        seen += counts[index - offset];
+        if (seen > rank) {
+          return value(index);
+        }
+      }
+      return value(maxIndex);
+    }
+
+    double valueAtReverseRank(long rank) {
+      long seen = 0;
+      for (int index = maxIndex; index >= minIndex; index--) {
+        seen += counts[index - offset];
+        if (seen > rank) {
+          return value(index);
+        }
+      }
+      return value(minIndex);
+    }
+
+    int span() {
+      return total == 0 ? 0 : maxIndex - minIndex + 1;
+    }
+
+    void write(ByteArrayOutputStream out) {
+      int span = span();
+      writeVarLong(out, span);
+      if (span == 0) {
+        return;
+      }
+      // Zig-zag so negative bucket indexes stay short
+      writeVarLong(out, (minIndex << 1) ^ (minIndex >> 31));
+      for (int index = minIndex; index <= maxIndex; index++) {
+        writeVarLong(out, counts[index - offset]);
+      }
+    }
+
+    void read(ByteBuffer in) {
+      int span = (int) readVarLong(in);
+      if (span == 0) {
+        return;
+      }
+      int zigZag = (int) readVarLong(in);
+      int first = (zigZag >>> 1) ^ -(zigZag & 1);
+      for (int i = 0; i < span; i++) {
+        long count = readVarLong(in);
+        if (count > 0) {
+          add(first + i, count);
+        }
+      }
+    }
+
+    private void place(int index, long count) {
+      if (count == 0) {
+        return;
+      }
+      ensureCapacity(index);
+      counts[index - offset] += count;
+      minIndex = Math.min(minIndex, index);
+      maxIndex = Math.max(maxIndex, index);
+      total += count;
+    }
+
+    private long removeBelow(int bound) {
+      long removed = 0;
+      for (int index = minIndex; index < bound && index <= maxIndex; index++) {
+        removed += counts[index - offset];
+        counts[index - offset] = 0;
+      }
+      total -= removed;
+      if (total == 0) {
+        minIndex = Integer.MAX_VALUE;
+        maxIndex = Integer.MIN_VALUE;
+      } else {
+        minIndex = bound;
+      }
+      return removed;
+    }
+
+    private void ensureCapacity(int index) {
+      if (counts.length > 0 && index >= offset && index < offset + counts.length) {
+        return;
+      }
+      int usedLow = total > 0 ? Math.min(index, minIndex) : index;
+      int usedHigh = total > 0 ? Math.max(index, maxIndex) : index;
+      int span = usedHigh - usedLow + 1;
+      int length = Math.max(Math.min(Math.max(span + span / 2, 32), MAX_BINS + 32), span);
+      int newOffset = usedLow - (length - span) / 2;
+
+      long[] resized = new long[length];
+      if (total > 0) {
+        System.arraycopy(
+            counts, minIndex - offset, resized, minIndex - newOffset, maxIndex - minIndex + 1);
+      }
+      counts = resized;
+      offset = newOffset;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "QuantileSketch[count=" + count() + ", relativeAccuracy=" + relativeAccuracy + "]";
+  }
+}
@@ -0,0 +1,86 @@
+package com.twelvenexus.oneplan.analytics.store;
+
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository.MetricValueConsumer;
+import com.twelvenexus.oneplan.analytics.repository.MetricRepository;
+import com.twelvenexus.oneplan.analytics.repository.MetricWriteRepository;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.DoubleConsumer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/** Raw metrics in the relational {@code metrics}, {@code metric_dimensions} and tags tables. */
+@Component
+@ConditionalOnProperty(name = "analytics.metrics.store", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JpaMetricStore implements MetricStore {
+
+  private final MetricRepository metricRepository;
+  private final MetricWriteRepository metricWriteRepository;
+  private final MetricAggregationRepository aggregationRepository;
+
+  @Override
+  public void append(List<Metric> metrics) {
+    metricWriteRepository.insertAll(metrics);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<Metric> find(
+      UUID tenantId, UUID entityId, MetricType type, LocalDateTime start, LocalDateTime end) {
+    return metricRepository.findByTenantIdAndEntityIdAndTypeAndTimestampBetween(
+        tenantId, entityId, type, start, end);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public void scanValues(
+      UUID tenantId,
+      UUID entityId,
+      MetricType type,
+      LocalDateTime start,
+      LocalDateTime end,
+      DoubleConsumer consumer) {
+    for (Metric metric : find(tenantId, entityId, type, start, end)) {
+      consumer.accept(metric.getValue());
+    }
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<Metric> findTop(UUID tenantId, MetricType type, LocalDateTime since, int limit) {
+    return metricRepository
+        .findTopPerformers(tenantId, type, since, PageRequest.of(0, limit))
+        .getContent();
+  }
+
+  @Override
+  public void scanPeriod(
+      LocalDateTime start, LocalDateTime end, UUID tenantId, MetricValueConsumer consumer) {
+    aggregationRepository.scan(start, end, tenantId, consumer);
+  }
+
+  @Override
+  public List<UUID> findTenants(LocalDateTime start, LocalDateTime end) {
+    return aggregationRepository.findMetricTenants(start, end);
+  }
+
+  @Override
+  public List<LocalDateTime> findLateHours(
+      LocalDateTime createdFrom, LocalDateTime createdTo, LocalDateTime before) {
+    return aggregationRepository.findLateHours(createdFrom, createdTo, before);
+  }
+
+  @Override
+  @Transactional
+  public void deleteBefore(LocalDateTime cutoff) {
+    metricRepository.deleteOldMetrics(cutoff);
+  }
+}
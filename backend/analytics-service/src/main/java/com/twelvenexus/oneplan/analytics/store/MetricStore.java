@@ -0,0 +1,58 @@
+package com.twelvenexus.oneplan.analytics.store;
+
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository.MetricValueConsumer;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Storage of raw metrics. Selected with {@code analytics.metrics.store}: {@code jpa} keeps them in
+ * the relational {@code metrics} tables, {@code columnar} in compressed per-tenant, per-day segment
+ * files.
+ */
+public interface MetricStore {
+
+  /**
+   * Stores the metrics, which must have ids. A metric whose id is already stored is skipped, so a
+   * batch can be repeated.
+   */
+  void append(List<Metric> metrics);
+
+  /** Metrics of one entity and type timestamped in {@code [start, end]}. */
+  List<Metric> find(
+      UUID tenantId, UUID entityId, MetricType type, LocalDateTime start, LocalDateTime end);
+
+  /** Values of one entity and type timestamped in {@code [start, end]}, in no particular order. */
+  void scanValues(
+      UUID tenantId,
+      UUID entityId,
+      MetricType type,
+      LocalDateTime start,
+      LocalDateTime end,
+      DoubleConsumer consumer);
+
+  /** The {@code limit} highest-valued metrics of a type timestamped after {@code since}. */
+  List<Metric> findTop(UUID tenantId, MetricType type, LocalDateTime since, int limit);
+
+  /**
+   * Streams every value timestamped in {@code [start, end)} ordered by {@code (tenantId, entityId,
+   * entityType, type)}, for aggregation. A {@code null} tenant scans all tenants.
+   */
+  void scanPeriod(
+      LocalDateTime start, LocalDateTime end, UUID tenantId, MetricValueConsumer consumer);
+
+  /** Tenants that may have metrics in {@code [start, end)}. */
+  List<UUID> findTenants(LocalDateTime start, LocalDateTime end);
+
+  /**
+   * Starts of the hours holding metrics that were stored in {@code [createdFrom, createdTo)} but
+   * are timestamped before {@code before}.
+   */
+  List<LocalDateTime> findLateHours(
+      LocalDateTime createdFrom, LocalDateTime createdTo, LocalDateTime before);
+
+  void deleteBefore(LocalDateTime cutoff);
+}
@@ -0,0 +1,31 @@
+package com.twelvenexus.oneplan.analytics.store.columnar;
+
+import java.nio.ByteBuffer;
+
+/** Reads bits written by {@link BitWriter} from a region of a buffer, without copying it. */
+final class BitReader {
+
+  private final ByteBuffer buffer;
+  private final int offset;
+  private long bits;
+
+  BitReader(ByteBuffer buffer, int offset) {
+    this.buffer = buffer;
+    this.offset = offset;
+  }
+
+  long read(int count) {
+    long value = 0;
+    for (int i = 0; i < count; i++) {
+      value = (value << 1) | (readBit() ? 1 : 0);
+    }
+    return value;
+  }
+
+  boolean readBit() {
+    byte b = buffer.get(offset + (int) (bits >>> 3));
+    boolean bit = (b & (0x80 >>> (bits & 7))) != 0;
+    bits++;
+    return bit;
+  }
+}
@@ -0,0 +1,32 @@
+package com.twelvenexus.oneplan.analytics.store.columnar;
+
+import java.util.Arrays;
+
+/** Growable big-endian bit buffer. */
+final class BitWriter {
+
+  private byte[] bytes = new byte[64];
+  private long bits;
+
+  /** Writes the low {@code count} bits of {@code value}, most significant first. */
+  void write(long value, int count) {
+    for (int i = count - 1; i >= 0; i--) {
+      writeBit(((value >>> i) & 1) != 0);
+    }
+  }
+
+  void writeBit(boolean bit) {
+    int index = (int) (bits >>> 3);
+    if (index == bytes.length) {
+      bytes = Arrays.copyOf(bytes, bytes.length * 2);
+    }
+    if (bit) {
+      bytes[index] |= (byte) (0x80 >>> (bits & 7));
+    }
+    bits++;
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(bytes, (int) ((bits + 7) >>> 3));
+  }
+}
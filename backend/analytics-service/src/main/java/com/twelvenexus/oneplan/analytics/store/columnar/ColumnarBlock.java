@@ -0,0 +1,446 @@
+package com.twelvenexus.oneplan.analytics.store.columnar;
+
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * One append to a partition: metrics of one tenant and day, stored column by column per series.
+ *
+ * <pre>
+ * block   := magic:int length:int crc32:int payload[length]
+ * payload := createdAt:long dictionarySize:varint string* seriesCount:varint series*
+ * series  := entityId:ref entityType:ref type:ref rows:varint ids:(msb:long lsb:long)*
+ *            timestampBytes:varint timestamps valueBytes:varint values
+ *            dimensionBytes:varint (count:varint (key:ref value:ref+1)*)*
+ * </pre>
+ *
+ * Series are stored in key order and strings are dictionary-encoded per block. Timestamps (epoch
+ * milliseconds of the local date-time read as UTC) are stored as delta-of-deltas in variable-width
+ * bit buckets, and values as the XOR with their predecessor trimmed to its meaningful bits, as in
+ * Facebook's Gorilla. Steady series compress to a few bits per row.
+ */
+final class ColumnarBlock {
+
+  static final int MAGIC = 0x4F504D42;
+  static final int HEADER_BYTES = 12;
+
+  record SeriesKey(String entityId, String entityType, String type)
+      implements Comparable<SeriesKey> {
+
+    private static final Comparator<SeriesKey> ORDER =
+        Comparator.comparing(SeriesKey::entityId)
+            .thenComparing(SeriesKey::entityType)
+            .thenComparing(SeriesKey::type);
+
+    @Override
+    public int compareTo(SeriesKey other) {
+      return ORDER.compare(this, other);
+    }
+  }
+
+  private ColumnarBlock() {}
+
+  static long toMillis(LocalDateTime dateTime) {
+    return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  static LocalDateTime fromMillis(long millis) {
+    return LocalDateTime.ofEpochSecond(
+        Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+  }
+
+  static byte[] encode(List<Metric> metrics, long createdAt) {
+    Map<SeriesKey, List<Metric>> bySeries = new TreeMap<>();
+    for (Metric metric : metrics) {
+      bySeries
+          .computeIfAbsent(
+              new SeriesKey(
+                  metric.getEntityId().toString(), metric.getEntityType(), metric.getType().name()),
+              k -> new ArrayList<>())
+          .add(metric);
+    }
+
+    try {
+      Map<String, Integer> dictionary = new LinkedHashMap<>();
+      ByteArrayOutputStream seriesBytes = new ByteArrayOutputStream();
+      DataOutputStream series = new DataOutputStream(seriesBytes);
+      writeVarint(series, bySeries.size());
+      for (Map.Entry<SeriesKey, List<Metric>> entry : bySeries.entrySet()) {
+        List<Metric> rows = new ArrayList<>(entry.getValue());
+        rows.sort(Comparator.comparing(Metric::getTimestamp));
+        writeVarint(series, ref(dictionary, entry.getKey().entityId()));
+        writeVarint(series, ref(dictionary, entry.getKey().entityType()));
+        writeVarint(series, ref(dictionary, entry.getKey().type()));
+        writeVarint(series, rows.size());
+
+        long[] timestamps = new long[rows.size()];
+        double[] values = new double[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+          Metric metric = rows.get(i);
+          series.writeLong(metric.getId().getMostSignificantBits());
+          series.writeLong(metric.getId().getLeastSignificantBits());
+          timestamps[i] = toMillis(metric.getTimestamp());
+          values[i] = metric.getValue();
+        }
+        writeBytes(series, encodeTimestamps(timestamps));
+        writeBytes(series, encodeValues(values));
+        writeBytes(series, encodeDimensions(rows, dictionary));
+      }
+
+      ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(seriesBytes.size() + 256);
+      DataOutputStream payload = new DataOutputStream(payloadBytes);
+      payload.writeLong(createdAt);
+      writeVarint(payload, dictionary.size());
+      for (String value : dictionary.keySet()) {
+        writeBytes(payload, value.getBytes(StandardCharsets.UTF_8));
+      }
+      seriesBytes.writeTo(payload);
+
+      byte[] body = payloadBytes.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(body);
+      return ByteBuffer.allocate(HEADER_BYTES + body.length)
+          .putInt(MAGIC)
+          .putInt(body.length)
+          .putInt((int) crc.getValue())
+          .put(body)
+          .array();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * End of the complete block starting at {@code position}, or -1 if there is none there: the end
+   * of the data, a block still being written, or one torn by a crash (its checksum fails).
+   */
+  static int end(ByteBuffer buffer, int position) {
+    if (buffer.limit() - position < HEADER_BYTES || buffer.getInt(position) != MAGIC) {
+      return -1;
+    }
+    int length = buffer.getInt(position + 4);
+    if (length < 0 || buffer.limit() - position - HEADER_BYTES < length) {
+      return -1;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(buffer.slice(position + HEADER_BYTES, length));
+    if ((int) crc.getValue() != buffer.getInt(position + 8)) {
+      return -1;
+    }
+    return position + HEADER_BYTES + length;
+  }
+
+  /** Read side of a complete block. Series columns are only decoded when asked for. */
+  static final class View {
+
+    private final long createdAt;
+    private final List<Series> series;
+
+    View(ByteBuffer buffer, int position) {
+      Cursor cursor = new Cursor(buffer, position + HEADER_BYTES);
+      createdAt = cursor.readLong();
+      String[] dictionary = new String[cursor.readVarint()];
+      for (int i = 0; i < dictionary.length; i++) {
+        dictionary[i] = cursor.readString();
+      }
+      int count = cursor.readVarint();
+      series = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        series.add(new Series(buffer, dictionary, cursor));
+      }
+    }
+
+    long createdAt() {
+      return createdAt;
+    }
+
+    List<Series> series() {
+      return series;
+    }
+  }
+
+  static final class Series {
+
+    private final ByteBuffer buffer;
+    private final String[] dictionary;
+    private final SeriesKey key;
+    private final int rows;
+    private final int idsOffset;
+    private final int timestampsOffset;
+    private final int valuesOffset;
+    private final int dimensionsOffset;
+
+    private Series(ByteBuffer buffer, String[] dictionary, Cursor cursor) {
+      this.buffer = buffer;
+      this.dictionary = dictionary;
+      this.key =
+          new SeriesKey(
+              dictionary[cursor.readVarint()],
+              dictionary[cursor.readVarint()],
+              dictionary[cursor.readVarint()]);
+      this.rows = cursor.readVarint();
+      this.idsOffset = cursor.position;
+      cursor.position += rows * 16;
+      this.timestampsOffset = cursor.skipBytes();
+      this.valuesOffset = cursor.skipBytes();
+      this.dimensionsOffset = cursor.skipBytes();
+    }
+
+    SeriesKey key() {
+      return key;
+    }
+
+    int rows() {
+      return rows;
+    }
+
+    UUID id(int row) {
+      int offset = idsOffset + row * 16;
+      return new UUID(buffer.getLong(offset), buffer.getLong(offset + 8));
+    }
+
+    long[] timestamps() {
+      long[] timestamps = new long[rows];
+      if (rows == 0) {
+        return timestamps;
+      }
+      BitReader reader = new BitReader(buffer, timestampsOffset);
+      timestamps[0] = reader.read(64);
+      long delta = 0;
+      for (int i = 1; i < rows; i++) {
+        delta += unzigzag(readDeltaOfDelta(reader));
+        timestamps[i] = timestamps[i - 1] + delta;
+      }
+      return timestamps;
+    }
+
+    double[] values() {
+      double[] values = new double[rows];
+      if (rows == 0) {
+        return values;
+      }
+      BitReader reader = new BitReader(buffer, valuesOffset);
+      long previous = reader.read(64);
+      values[0] = Double.longBitsToDouble(previous);
+      int leading = 0;
+      int trailing = 0;
+      for (int i = 1; i < rows; i++) {
+        if (reader.readBit()) {
+          if (reader.readBit()) {
+            leading = (int) reader.read(5);
+            int significant = (int) reader.read(6);
+            trailing = 64 - leading - (significant == 0 ? 64 : significant);
+          }
+          previous ^= reader.read(64 - leading - trailing) << trailing;
+        }
+        values[i] = Double.longBitsToDouble(previous);
+      }
+      return values;
+    }
+
+    List<Map<String, String>> dimensions() {
+      Cursor cursor = new Cursor(buffer, dimensionsOffset);
+      List<Map<String, String>> dimensions = new ArrayList<>(rows);
+      for (int i = 0; i < rows; i++) {
+        int count = cursor.readVarint();
+        Map<String, String> row = new HashMap<>(count * 2);
+        for (int j = 0; j < count; j++) {
+          String key = dictionary[cursor.readVarint()];
+          int value = cursor.readVarint();
+          row.put(key, value == 0 ? null : dictionary[value - 1]);
+        }
+        dimensions.add(row);
+      }
+      return dimensions;
+    }
+  }
+
+  private static byte[] encodeTimestamps(long[] timestamps) {
+    BitWriter writer = new BitWriter();
+    if (timestamps.length == 0) {
+      return writer.toByteArray();
+    }
+    writer.write(timestamps[0], 64);
+    long previousDelta = 0;
+    for (int i = 1; i < timestamps.length; i++) {
+      long delta = timestamps[i] - timestamps[i - 1];
+      long encoded = zigzag(delta - previousDelta);
+      previousDelta = delta;
+      if (encoded == 0) {
+        writer.write(0b0, 1);
+      } else if (encoded >>> 7 == 0) {
+        writer.write(0b10, 2);
+        writer.write(encoded, 7);
+      } else if (encoded >>> 9 == 0) {
+        writer.write(0b110, 3);
+        writer.write(encoded, 9);
+      } else if (encoded >>> 12 == 0) {
+        writer.write(0b1110, 4);
+        writer.write(encoded, 12);
+      } else {
+        writer.write(0b1111, 4);
+        writer.write(encoded, 64);
+      }
+    }
+    return writer.toByteArray();
+  }
+
+  private static long readDeltaOfDelta(BitReader reader) {
+    if (!reader.readBit()) {
+      return 0;
+    }
+    if (!reader.readBit()) {
+      return reader.read(7);
+    }
+    if (!reader.readBit()) {
+      return reader.read(9);
+    }
+    if (!reader.readBit()) {
+      return reader.read(12);
+    }
+    return reader.read(64);
+  }
+
+  private static byte[] encodeValues(double[] values) {
+    BitWriter writer = new BitWriter();
+    if (values.length == 0) {
+      return writer.toByteArray();
+    }
+    long previous = Double.doubleToRawLongBits(values[0]);
+    writer.write(previous, 64);
+    int previousLeading = -1;
+    int previousTrailing = 0;
+    for (int i = 1; i < values.length; i++) {
+      long bits = Double.doubleToRawLongBits(values[i]);
+      long xor = bits ^ previous;
+      previous = bits;
+      if (xor == 0) {
+        writer.writeBit(false);
+        continue;
+      }
+      writer.writeBit(true);
+      int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+      int trailing = Long.numberOfTrailingZeros(xor);
+      if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+        // Fits the previous window: store only the bits inside it
+        writer.writeBit(false);
+        writer.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+      } else {
+        int significant = 64 - leading - trailing;
+        writer.writeBit(true);
+        writer.write(leading, 5);
+        writer.write(significant == 64 ? 0 : significant, 6);
+        writer.write(xor >>> trailing, significant);
+        previousLeading = leading;
+        previousTrailing = trailing;
+      }
+    }
+    return writer.toByteArray();
+  }
+
+  private static byte[] encodeDimensions(List<Metric> rows, Map<String, Integer> dictionary)
+      throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (Metric metric : rows) {
+      Map<String, String> dimensions = metric.getDimensions();
+      if (dimensions == null) {
+        writeVarint(out, 0);
+        continue;
+      }
+      writeVarint(out, dimensions.size());
+      for (Map.Entry<String, String> dimension : dimensions.entrySet()) {
+        String value = dimension.getValue();
+        writeVarint(out, ref(dictionary, dimension.getKey()));
+        writeVarint(out, value == null ? 0 : ref(dictionary, value) + 1);
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static int ref(Map<String, Integer> dictionary, String value) {
+    return dictionary.computeIfAbsent(value, k -> dictionary.size());
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    writeVarint(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeVarint(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  /** Sequential reads at absolute positions of a shared buffer. */
+  private static final class Cursor {
+
+    private final ByteBuffer buffer;
+    private int position;
+
+    Cursor(ByteBuffer buffer, int position) {
+      this.buffer = buffer;
+      this.position = position;
+    }
+
+    long readLong() {
+      long value = buffer.getLong(position);
+      position += 8;
+      return value;
+    }
+
+    int readVarint() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = buffer.get(position++);
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+
+    String readString() {
+      int length = readVarint();
+      byte[] bytes = new byte[length];
+      buffer.get(position, bytes);
+      position += length;
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Skips a length-prefixed field and returns where its bytes start. */
+    int skipBytes() {
+      int length = readVarint();
+      int start = position;
+      position += length;
+      return start;
+    }
+  }
+}
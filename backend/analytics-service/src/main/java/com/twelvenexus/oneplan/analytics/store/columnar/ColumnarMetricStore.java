@@ -0,0 +1,619 @@
+package com.twelvenexus.oneplan.analytics.store.columnar;
+
+import static com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.fromMillis;
+import static com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.toMillis;
+
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository.MetricValueConsumer;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.Series;
+import com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.SeriesKey;
+import com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.View;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Raw metrics in append-only columnar segment files, one directory per tenant and day:
+ * {@code <root>/<tenantId>/<yyyy-MM-dd>/seg-<n>.col}. Each {@link #append} writes one {@link
+ * ColumnarBlock} per partition it touches; a segment is closed once it reaches the segment size.
+ * Reads memory-map the segments and decode only the columns of the series they need, so no
+ * entities are materialised unless the caller asks for whole metrics.
+ *
+ * <p>A partition's metric ids are loaded when it is first appended to, so repeated batches are
+ * skipped like rows with a duplicate key. A journal per day of writing records which hours each
+ * block touched, to find metrics that arrived late. Retention drops whole days. Tags are not
+ * stored.
+ */
+@Slf4j
+public final class ColumnarMetricStore implements MetricStore {
+
+  private static final String SEGMENT_PREFIX = "seg-";
+  private static final String SEGMENT_SUFFIX = ".col";
+  private static final String JOURNAL_DIRECTORY = "_journal";
+  private static final int MAX_OPEN_PARTITIONS = 256;
+
+  private record Partition(UUID tenantId, LocalDate day) {}
+
+  @FunctionalInterface
+  private interface SeriesVisitor {
+    void visit(View block, Series series);
+  }
+
+  private final Path root;
+  private final long segmentSize;
+  private final Clock clock;
+
+  // Guarded by this; least recently appended partitions are closed first
+  private final Map<Partition, PartitionWriter> writers =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Partition, PartitionWriter> eldest) {
+          return size() > MAX_OPEN_PARTITIONS;
+        }
+      };
+
+  public ColumnarMetricStore(Path root, long segmentSize, Clock clock) throws IOException {
+    this.root = root;
+    this.segmentSize = segmentSize;
+    this.clock = clock;
+    Files.createDirectories(root.resolve(JOURNAL_DIRECTORY));
+  }
+
+  @Override
+  public synchronized void append(List<Metric> metrics) {
+    if (metrics.isEmpty()) {
+      return;
+    }
+    long createdAt = toMillis(LocalDateTime.now(clock));
+    Map<Partition, List<Metric>> byPartition = new LinkedHashMap<>();
+    for (Metric metric : metrics) {
+      byPartition
+          .computeIfAbsent(
+              new Partition(metric.getTenantId(), metric.getTimestamp().toLocalDate()),
+              k -> new ArrayList<>())
+          .add(metric);
+    }
+
+    try {
+      for (Map.Entry<Partition, List<Metric>> entry : byPartition.entrySet()) {
+        PartitionWriter writer = writer(entry.getKey());
+        List<Metric> fresh = new ArrayList<>(entry.getValue().size());
+        Set<UUID> batchIds = new HashSet<>();
+        for (Metric metric : entry.getValue()) {
+          if (!writer.ids.contains(metric.getId()) && batchIds.add(metric.getId())) {
+            fresh.add(metric);
+          }
+        }
+        if (fresh.isEmpty()) {
+          continue;
+        }
+        // Journal first: a journalled block that never landed only costs a re-aggregation
+        journal(createdAt, entry.getKey().tenantId(), fresh);
+        writer.write(ColumnarBlock.encode(fresh, createdAt));
+        writer.ids.addAll(batchIds);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not append metrics", e);
+    }
+  }
+
+  @Override
+  public List<Metric> find(
+      UUID tenantId, UUID entityId, MetricType type, LocalDateTime start, LocalDateTime end) {
+    SeriesFilter filter = new SeriesFilter(entityId.toString(), type.name());
+    long from = toMillis(start);
+    long to = toMillis(end);
+    List<Metric> metrics = new ArrayList<>();
+    forEachSeries(
+        tenantId,
+        start.toLocalDate(),
+        end.toLocalDate(),
+        (block, series) -> {
+          if (!filter.matches(series)) {
+            return;
+          }
+          long[] timestamps = series.timestamps();
+          double[] values = null;
+          List<Map<String, String>> dimensions = null;
+          for (int i = 0; i < timestamps.length; i++) {
+            if (timestamps[i] < from || timestamps[i] > to) {
+              continue;
+            }
+            if (values == null) {
+              values = series.values();
+              dimensions = series.dimensions();
+            }
+            metrics.add(
+                metric(
+                    tenantId,
+                    block,
+                    series,
+                    i,
+                    timestamps[i],
+                    values[i],
+                    dimensions.get(i)));
+          }
+        });
+    metrics.sort(Comparator.comparing(Metric::getTimestamp));
+    return metrics;
+  }
+
+  @Override
+  public void scanValues(
+      UUID tenantId,
+      UUID entityId,
+      MetricType type,
+      LocalDateTime start,
+      LocalDateTime end,
+      DoubleConsumer consumer) {
+    SeriesFilter filter = new SeriesFilter(entityId.toString(), type.name());
+    long from = toMillis(start);
+    long to = toMillis(end);
+    forEachSeries(
+        tenantId,
+        start.toLocalDate(),
+        end.toLocalDate(),
+        (block, series) -> {
+          if (!filter.matches(series)) {
+            return;
+          }
+          long[] timestamps = series.timestamps();
+          double[] values = series.values();
+          for (int i = 0; i < timestamps.length; i++) {
+            if (timestamps[i] >= from && timestamps[i] <= to) {
+              consumer.accept(values[i]);
+            }
+          }
+        });
+  }
+
+  @Override
+  public List<Metric> findTop(UUID tenantId, MetricType type, LocalDateTime since, int limit) {
+    String typeName = type.name();
+    long after = toMillis(since);
+    PriorityQueue<Metric> top =
+        new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Metric::getValue));
+    forEachSeries(
+        tenantId,
+        since.toLocalDate(),
+        LocalDate.MAX,
+        (block, series) -> {
+          if (!series.key().type().equals(typeName)) {
+            return;
+          }
+          long[] timestamps = series.timestamps();
+          double[] values = series.values();
+          List<Map<String, String>> dimensions = null;
+          for (int i = 0; i < timestamps.length; i++) {
+            if (timestamps[i] <= after
+                || (top.size() == limit && values[i] <= top.peek().getValue())) {
+              continue;
+            }
+            if (dimensions == null) {
+              dimensions = series.dimensions();
+            }
+            top.add(
+                metric(tenantId, block, series, i, timestamps[i], values[i], dimensions.get(i)));
+            if (top.size() > limit) {
+              top.poll();
+            }
+          }
+        });
+    List<Metric> result = new ArrayList<>(top);
+    result.sort(Comparator.comparingDouble(Metric::getValue).reversed());
+    return result;
+  }
+
+  @Override
+  public void scanPeriod(
+      LocalDateTime start, LocalDateTime end, UUID tenantId, MetricValueConsumer consumer) {
+    List<UUID> tenants = tenantId != null ? List.of(tenantId) : findTenants(start, end);
+    long from = toMillis(start);
+    long to = toMillis(end);
+    for (UUID tenant : tenants.stream().sorted(Comparator.comparing(UUID::toString)).toList()) {
+      // Every block holds its series in key order, so merging the blocks hands out each series in
+      // turn. Only the block headers are held; a series is decoded when its turn comes.
+      PriorityQueue<SeriesCursor> cursors = new PriorityQueue<>();
+      for (Path day : days(root.resolve(tenant.toString()), start.toLocalDate(), lastDay(end))) {
+        for (Path segment : segments(day)) {
+          forEachBlock(
+              segment,
+              block -> {
+                if (!block.series().isEmpty()) {
+                  cursors.add(new SeriesCursor(block.series()));
+                }
+              });
+        }
+      }
+
+      String tenantKey = tenant.toString();
+      while (!cursors.isEmpty()) {
+        SeriesCursor cursor = cursors.poll();
+        Series series = cursor.current();
+        SeriesKey key = series.key();
+        long[] timestamps = series.timestamps();
+        double[] values = null;
+        for (int i = 0; i < timestamps.length; i++) {
+          if (timestamps[i] < from || timestamps[i] >= to) {
+            continue;
+          }
+          if (values == null) {
+            values = series.values();
+          }
+          consumer.accept(tenantKey, key.entityId(), key.entityType(), key.type(), values[i]);
+        }
+        if (cursor.advance()) {
+          cursors.add(cursor);
+        }
+      }
+    }
+  }
+
+  @Override
+  public List<UUID> findTenants(LocalDateTime start, LocalDateTime end) {
+    LocalDate first = start.toLocalDate();
+    LocalDate last = lastDay(end);
+    List<UUID> tenants = new ArrayList<>();
+    for (Path tenantDirectory : list(root)) {
+      UUID tenantId = parseTenant(tenantDirectory);
+      if (tenantId != null && !days(tenantDirectory, first, last).isEmpty()) {
+        tenants.add(tenantId);
+      }
+    }
+    return tenants;
+  }
+
+  @Override
+  public List<LocalDateTime> findLateHours(
+      LocalDateTime createdFrom, LocalDateTime createdTo, LocalDateTime before) {
+    long from = toMillis(createdFrom);
+    long to = toMillis(createdTo);
+    long beforeMillis = toMillis(before);
+    TreeSet<LocalDateTime> hours = new TreeSet<>();
+    for (LocalDate day = createdFrom.toLocalDate();
+        !day.isAfter(createdTo.toLocalDate());
+        day = day.plusDays(1)) {
+      Path journal = journalPath(day);
+      if (!Files.exists(journal)) {
+        continue;
+      }
+      try (InputStream file = Files.newInputStream(journal);
+          DataInputStream in = new DataInputStream(file)) {
+        while (true) {
+          long createdAt = in.readLong();
+          in.readLong(); // tenant
+          in.readLong();
+          int count = in.readInt();
+          for (int i = 0; i < count; i++) {
+            long hour = in.readLong();
+            if (createdAt >= from && createdAt < to && hour < beforeMillis) {
+              hours.add(fromMillis(hour));
+            }
+          }
+        }
+      } catch (EOFException e) {
+        // End of the journal, possibly a record torn by a crash
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not read metric journal " + journal, e);
+      }
+    }
+    return new ArrayList<>(hours);
+  }
+
+  @Override
+  public synchronized void deleteBefore(LocalDateTime cutoff) {
+    LocalDate cutoffDay = cutoff.toLocalDate();
+    for (Path tenantDirectory : list(root)) {
+      UUID tenantId = parseTenant(tenantDirectory);
+      if (tenantId == null) {
+        continue;
+      }
+      for (Path dayDirectory : days(tenantDirectory, LocalDate.MIN, cutoffDay.minusDays(1))) {
+        LocalDate day = LocalDate.parse(dayDirectory.getFileName().toString());
+        writers.remove(new Partition(tenantId, day));
+        deleteRecursively(dayDirectory);
+      }
+    }
+    for (Path journal : list(root.resolve(JOURNAL_DIRECTORY))) {
+      String name = journal.getFileName().toString();
+      if (name.compareTo(cutoffDay + ".log") < 0) {
+        deleteRecursively(journal);
+      }
+    }
+    log.info("Deleted columnar metric partitions before {}", cutoffDay);
+  }
+
+  private PartitionWriter writer(Partition partition) throws IOException {
+    PartitionWriter writer = writers.get(partition);
+    if (writer == null) {
+      writer = new PartitionWriter(partitionDirectory(partition));
+      writers.put(partition, writer);
+    }
+    return writer;
+  }
+
+  private void journal(long createdAt, UUID tenantId, List<Metric> metrics) throws IOException {
+    TreeSet<Long> hours = new TreeSet<>();
+    for (Metric metric : metrics) {
+      hours.add(toMillis(metric.getTimestamp().truncatedTo(ChronoUnit.HOURS)));
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(28 + hours.size() * 8);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(createdAt);
+    out.writeLong(tenantId.getMostSignificantBits());
+    out.writeLong(tenantId.getLeastSignificantBits());
+    out.writeInt(hours.size());
+    for (long hour : hours) {
+      out.writeLong(hour);
+    }
+    appendFully(journalPath(fromMillis(createdAt).toLocalDate()), bytes.toByteArray());
+  }
+
+  private void forEachSeries(
+      UUID tenantId, LocalDate first, LocalDate last, SeriesVisitor visitor) {
+    for (Path day : days(root.resolve(tenantId.toString()), first, last)) {
+      for (Path segment : segments(day)) {
+        forEachBlock(segment, block -> block.series().forEach(s -> visitor.visit(block, s)));
+      }
+    }
+  }
+
+  private static void forEachBlock(Path segment, Consumer<View> visitor) {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size == 0) {
+        return;
+      }
+      // The mapping outlives the channel
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    } catch (NoSuchFileException e) {
+      return;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read metric segment " + segment, e);
+    }
+
+    // A block still being written, or torn by a crash, ends the segment for readers
+    for (int position = 0, end; (end = ColumnarBlock.end(buffer, position)) >= 0; ) {
+      visitor.accept(new View(buffer, position));
+      position = end;
+    }
+  }
+
+  private static Metric metric(
+      UUID tenantId,
+      View block,
+      Series series,
+      int row,
+      long timestamp,
+      double value,
+      Map<String, String> dimensions) {
+    Metric metric = new Metric();
+    metric.setId(series.id(row));
+    metric.setTenantId(tenantId);
+    metric.setEntityId(UUID.fromString(series.key().entityId()));
+    metric.setEntityType(series.key().entityType());
+    metric.setType(MetricType.valueOf(series.key().type()));
+    metric.setValue(value);
+    metric.setDimensions(dimensions);
+    metric.setTimestamp(fromMillis(timestamp));
+    metric.setCreatedAt(fromMillis(block.createdAt()));
+    return metric;
+  }
+
+  private Path partitionDirectory(Partition partition) {
+    return root.resolve(partition.tenantId().toString()).resolve(partition.day().toString());
+  }
+
+  private Path journalPath(LocalDate day) {
+    return root.resolve(JOURNAL_DIRECTORY).resolve(day + ".log");
+  }
+
+  /** Day directories of a tenant between {@code first} and {@code last}, oldest first. */
+  private static List<Path> days(Path tenantDirectory, LocalDate first, LocalDate last) {
+    List<Path> days = new ArrayList<>();
+    for (Path day : list(tenantDirectory)) {
+      try {
+        LocalDate date = LocalDate.parse(day.getFileName().toString());
+        if (!date.isBefore(first) && !date.isAfter(last)) {
+          days.add(day);
+        }
+      } catch (DateTimeParseException e) {
+        // Not a partition
+      }
+    }
+    days.sort(Comparator.naturalOrder());
+    return days;
+  }
+
+  private static List<Path> segments(Path day) {
+    return list(day).stream()
+        .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+        .sorted(Comparator.comparingInt(ColumnarMetricStore::segmentIndex))
+        .toList();
+  }
+
+  private static int segmentIndex(Path segment) {
+    String name = segment.getFileName().toString();
+    return Integer.parseInt(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static Path segmentPath(Path day, int index) {
+    return day.resolve(String.format("%s%05d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+  }
+
+  private static LocalDate lastDay(LocalDateTime exclusiveEnd) {
+    return exclusiveEnd.minusNanos(1).toLocalDate();
+  }
+
+  private static UUID parseTenant(Path directory) {
+    try {
+      return UUID.fromString(directory.getFileName().toString());
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static List<Path> list(Path directory) {
+    if (!Files.isDirectory(directory)) {
+      return List.of();
+    }
+    try (Stream<Path> entries = Files.list(directory)) {
+      return entries.toList();
+    } catch (NoSuchFileException e) {
+      return List.of();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not list " + directory, e);
+    }
+  }
+
+  private static void deleteRecursively(Path path) {
+    try (Stream<Path> entries = Files.walk(path)) {
+      for (Path entry : entries.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(entry);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not delete " + path, e);
+    }
+  }
+
+  private static void appendFully(Path file, byte[] bytes) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    }
+  }
+
+  /** The series of one block, walked in key order. */
+  private static final class SeriesCursor implements Comparable<SeriesCursor> {
+
+    private final List<Series> series;
+    private int index;
+
+    SeriesCursor(List<Series> series) {
+      this.series = series;
+    }
+
+    Series current() {
+      return series.get(index);
+    }
+
+    boolean advance() {
+      return ++index < series.size();
+    }
+
+    @Override
+    public int compareTo(SeriesCursor other) {
+      return current().key().compareTo(other.current().key());
+    }
+  }
+
+  private record SeriesFilter(String entityId, String type) {
+    boolean matches(Series series) {
+      return series.key().entityId().equals(entityId) && series.key().type().equals(type);
+    }
+  }
+
+  /** Appends to the newest segment of one partition. */
+  private final class PartitionWriter {
+
+    private final Path directory;
+    private final Set<UUID> ids = new HashSet<>();
+    private int segment;
+    private long size;
+
+    PartitionWriter(Path directory) throws IOException {
+      this.directory = directory;
+      Files.createDirectories(directory);
+      List<Path> segments = segments(directory);
+      for (Path existing : segments) {
+        forEachBlock(
+            existing,
+            block -> {
+              for (Series series : block.series()) {
+                for (int i = 0; i < series.rows(); i++) {
+                  ids.add(series.id(i));
+                }
+              }
+            });
+      }
+      if (!segments.isEmpty()) {
+        Path last = segments.get(segments.size() - 1);
+        segment = segmentIndex(last);
+        size = Files.size(last);
+        if (validLength(last) < size) {
+          // Left torn by a crash. Readers stop at the torn block, so carry on in a new segment
+          // rather than truncating a file that may be mapped.
+          log.warn("Metric segment {} ends in a torn block", last);
+          segment++;
+          size = 0;
+        }
+      }
+    }
+
+    void write(byte[] block) throws IOException {
+      if (size > 0 && size + block.length > segmentSize) {
+        segment++;
+        size = 0;
+      }
+      appendFully(segmentPath(directory, segment), block);
+      size += block.length;
+    }
+  }
+
+  private static long validLength(Path segment) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size == 0) {
+        return 0;
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      int valid = 0;
+      for (int end; (end = ColumnarBlock.end(buffer, valid)) >= 0; ) {
+        valid = end;
+      }
+      return valid;
+    }
+  }
+}
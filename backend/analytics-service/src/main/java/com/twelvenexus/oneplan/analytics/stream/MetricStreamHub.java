@@ -0,0 +1,299 @@
+package com.twelvenexus.oneplan.analytics.stream;
+
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Publish/subscribe hub for live metric streams. Subscribers follow {@code (tenant, entity,
+ * metric type)} topics and receive each recorded metric and completed aggregation bucket of them.
+ *
+ * <p>Every subscriber has its own buffer holding at most one pending update per topic and period,
+ * and its own sender: while a slow client is still being written to, newer updates replace the
+ * pending ones instead of queueing behind them, so it gets the latest values and never a backlog,
+ * and it holds up nobody else.
+ *
+ * <p>Updates are published once their transaction commits. With a relay they go through it, e.g.
+ * Redis pub/sub, and reach the subscribers of every instance, this one included, via {@link
+ * #deliver}; without one, or when the relay fails, only this instance's subscribers get them.
+ */
+@Slf4j
+public final class MetricStreamHub implements AutoCloseable {
+
+  public static final String CHANNEL = "analytics:metric-stream";
+
+  /** Sends updates to a subscribed client. */
+  public interface Sink {
+    void send(MetricUpdate update) throws Exception;
+
+    /** Keeps the connection open through idle proxies, and notices clients that left. */
+    void heartbeat() throws Exception;
+
+    void close();
+  }
+
+  /** Carries published updates to the hubs of all instances. */
+  @FunctionalInterface
+  public interface Relay {
+    void publish(List<MetricUpdate> updates) throws Exception;
+  }
+
+  /** A subscription; closing it unsubscribes. */
+  public interface Subscription extends AutoCloseable {
+    @Override
+    void close();
+  }
+
+  private record Topic(UUID tenantId, UUID entityId, MetricType type) {}
+
+  private final Relay relay;
+  private final int maxTopics;
+  private final Map<Topic, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+  private final Set<Subscriber> all = ConcurrentHashMap.newKeySet();
+  private final ExecutorService senders =
+      Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("metric-stream-", 0).factory());
+  private final ScheduledExecutorService timer;
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder conflated = new LongAdder();
+
+  /**
+   * @param relay spreads updates to other instances, or {@code null} to deliver locally only
+   * @param maxTopics most topics one subscriber may follow, which also bounds its buffer
+   */
+  public MetricStreamHub(Relay relay, int maxTopics, Duration heartbeatInterval) {
+    this.relay = relay;
+    this.maxTopics = maxTopics;
+    this.timer =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "metric-stream-heartbeat");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long heartbeatMillis = heartbeatInterval.toMillis();
+    timer.scheduleWithFixedDelay(
+        this::heartbeat, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /** Subscribes the sink to the tenant's {@code entityId:TYPE} topics. */
+  public Subscription subscribe(UUID tenantId, Collection<String> topics, Sink sink) {
+    if (topics.isEmpty() || topics.size() > maxTopics) {
+      throw new IllegalArgumentException("Subscribe to between 1 and " + maxTopics + " topics");
+    }
+    List<Topic> parsed = new ArrayList<>(topics.size());
+    for (String topic : topics) {
+      int separator = topic.indexOf(':');
+      try {
+        parsed.add(
+            new Topic(
+                tenantId,
+                UUID.fromString(topic.substring(0, Math.max(separator, 0))),
+                MetricType.valueOf(topic.substring(separator + 1))));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid topic, expected entityId:TYPE: " + topic, e);
+      }
+    }
+
+    Subscriber subscriber = new Subscriber(parsed, sink);
+    all.add(subscriber);
+    for (Topic topic : parsed) {
+      subscribers.computeIfAbsent(topic, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+    }
+    return subscriber::close;
+  }
+
+  public void publishMetrics(Collection<Metric> metrics) {
+    publish(metrics.stream().map(MetricUpdate::of).toList());
+  }
+
+  public void publishAggregates(Collection<AggregatedMetric> aggregates) {
+    publish(aggregates.stream().map(MetricUpdate::of).toList());
+  }
+
+  /** Hands updates to this instance's subscribers. */
+  public void deliver(List<MetricUpdate> updates) {
+    for (MetricUpdate update : updates) {
+      Set<Subscriber> following =
+          subscribers.get(new Topic(update.tenantId(), update.entityId(), update.type()));
+      if (following != null) {
+        for (Subscriber subscriber : following) {
+          subscriber.offer(update);
+        }
+      }
+    }
+  }
+
+  public int subscribers() {
+    return all.size();
+  }
+
+  public long sent() {
+    return sent.sum();
+  }
+
+  public long conflated() {
+    return conflated.sum();
+  }
+
+  @Override
+  public void close() {
+    timer.shutdownNow();
+    for (Subscriber subscriber : List.copyOf(all)) {
+      subscriber.close();
+    }
+    senders.shutdownNow();
+  }
+
+  private void publish(List<MetricUpdate> updates) {
+    if (updates.isEmpty() || (relay == null && subscribers.isEmpty())) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              publishNow(updates);
+            }
+          });
+    } else {
+      publishNow(updates);
+    }
+  }
+
+  private void publishNow(List<MetricUpdate> updates) {
+    if (relay != null) {
+      try {
+        relay.publish(updates);
+        return;
+      } catch (Exception e) {
+        log.warn("Could not relay {} metric updates; delivering locally", updates.size(), e);
+      }
+    }
+    deliver(updates);
+  }
+
+  private void heartbeat() {
+    for (Subscriber subscriber : all) {
+      subscriber.heartbeat();
+    }
+  }
+
+  private final class Subscriber {
+
+    private final List<Topic> topics;
+    private final Sink sink;
+    // Guarded by this; one pending update per topic and period, in arrival order
+    private final Map<String, MetricUpdate> pending = new LinkedHashMap<>();
+    private boolean sending;
+    private boolean closed;
+
+    Subscriber(List<Topic> topics, Sink sink) {
+      this.topics = topics;
+      this.sink = sink;
+    }
+
+    void offer(MetricUpdate update) {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        String key = update.entityId() + ":" + update.type() + ":" + update.period();
+        MetricUpdate replaced = pending.get(key);
+        if (replaced != null) {
+          conflated.increment();
+          if (replaced.timestamp().isAfter(update.timestamp())) {
+            return; // Keep the newer value, e.g. over a late bucket being re-aggregated
+          }
+        }
+        pending.put(key, update);
+        if (sending) {
+          return;
+        }
+        sending = true;
+      }
+      senders.execute(this::send);
+    }
+
+    private void send() {
+      while (true) {
+        List<MetricUpdate> batch;
+        synchronized (this) {
+          if (closed || pending.isEmpty()) {
+            sending = false;
+            return;
+          }
+          batch = new ArrayList<>(pending.values());
+          pending.clear();
+        }
+        try {
+          for (MetricUpdate update : batch) {
+            sink.send(update);
+            sent.increment();
+          }
+        } catch (Exception e) {
+          log.debug("Metric stream client gone: {}", e.getMessage());
+          close();
+          return;
+        }
+      }
+    }
+
+    void heartbeat() {
+      synchronized (this) {
+        if (closed || sending) {
+          return; // Busy sending is alive enough
+        }
+        sending = true;
+      }
+      senders.execute(
+          () -> {
+            try {
+              sink.heartbeat();
+            } catch (Exception e) {
+              close();
+              return;
+            }
+            send(); // Also clears the sending flag
+          });
+    }
+
+    void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        pending.clear();
+      }
+      all.remove(this);
+      for (Topic topic : topics) {
+        subscribers.computeIfPresent(
+            topic,
+            (key, following) -> {
+              following.remove(this);
+              return following.isEmpty() ? null : following;
+            });
+      }
+      sink.close();
+    }
+  }
+}
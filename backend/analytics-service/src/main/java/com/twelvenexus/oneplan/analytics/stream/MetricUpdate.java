@@ -0,0 +1,60 @@
+package com.twelvenexus.oneplan.analytics.stream;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A value pushed to live metric streams: a recorded metric ({@code period} unset) or a completed
+ * aggregation bucket starting at {@code timestamp}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record MetricUpdate(
+    UUID tenantId,
+    UUID entityId,
+    MetricType type,
+    AggregationPeriod period,
+    LocalDateTime timestamp,
+    Double value,
+    Long count,
+    Double min,
+    Double max,
+    Double sum) {
+
+  public static MetricUpdate of(Metric metric) {
+    return new MetricUpdate(
+        metric.getTenantId(),
+        metric.getEntityId(),
+        metric.getType(),
+        null,
+        metric.getTimestamp(),
+        metric.getValue(),
+        null,
+        null,
+        null,
+        null);
+  }
+
+  public static MetricUpdate of(AggregatedMetric aggregate) {
+    return new MetricUpdate(
+        aggregate.getTenantId(),
+        aggregate.getEntityId(),
+        aggregate.getType(),
+        aggregate.getPeriod(),
+        aggregate.getPeriodStart(),
+        aggregate.getAvgValue(),
+        aggregate.getCount(),
+        aggregate.getMinValue(),
+        aggregate.getMaxValue(),
+        aggregate.getSumValue());
+  }
+
+  /** The SSE event name. */
+  public String event() {
+    return period == null ? "metric" : "aggregate";
+  }
+}
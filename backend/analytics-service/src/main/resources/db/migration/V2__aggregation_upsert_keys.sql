@@ -0,0 +1,18 @@
+-- Keep only the newest row per aggregation key so the key can become unique
+DELETE older FROM aggregated_metrics older
+JOIN aggregated_metrics newer
+  ON older.tenant_id = newer.tenant_id
+ AND older.entity_id = newer.entity_id
+ AND older.entity_type = newer.entity_type
+ AND older.type = newer.type
+ AND older.period = newer.period
+ AND older.period_start = newer.period_start
+ AND (older.created_at < newer.created_at
+      OR (older.created_at = newer.created_at AND older.id < newer.id));
+
+ALTER TABLE aggregated_metrics
+    ADD CONSTRAINT uk_aggregated_metric_key
+        UNIQUE (tenant_id, entity_id, entity_type, type, period, period_start);
+
+-- Range scans for aggregation and retention cleanup
+CREATE INDEX idx_metric_timestamp ON metrics (timestamp);
@@ -0,0 +1,2 @@
+-- Mergeable quantile sketch per aggregate; NULL for rows written before sketches existed
+ALTER TABLE aggregated_metrics ADD COLUMN sketch MEDIUMBLOB NULL;
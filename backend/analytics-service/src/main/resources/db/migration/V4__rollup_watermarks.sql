@@ -0,0 +1,19 @@
+-- Per-period progress of the rollup pipeline: every bucket ending at or before
+-- aggregated_until has been aggregated. late_checked_until tracks how far metrics
+-- have been checked (by insert time) for rows landing in already aggregated hours.
+CREATE TABLE aggregation_watermarks (
+    period VARCHAR(20) PRIMARY KEY,
+    aggregated_until DATETIME NOT NULL,
+    late_checked_until DATETIME NULL,
+    updated_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Already aggregated buckets whose inputs changed and must be re-aggregated
+CREATE TABLE aggregation_dirty_buckets (
+    period VARCHAR(20) NOT NULL,
+    period_start DATETIME NOT NULL,
+    marked_at DATETIME NOT NULL,
+    PRIMARY KEY (period, period_start)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+CREATE INDEX idx_metric_created_at ON metrics (created_at);
@@ -0,0 +1,2 @@
+-- Top performer queries filter by tenant and type and read in value order
+CREATE INDEX idx_metric_top ON metrics (tenant_id, type, value);
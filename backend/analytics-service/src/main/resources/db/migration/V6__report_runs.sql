@@ -0,0 +1,9 @@
+-- Outcome of the last run, and the claim that keeps a report from running on two
+-- instances at once. A claim whose run_lease_until has passed belongs to a dead
+-- instance and may be taken over.
+ALTER TABLE reports
+    ADD COLUMN last_run_status VARCHAR(20) NULL,
+    ADD COLUMN last_run_duration_ms BIGINT NULL,
+    ADD COLUMN run_owner VARCHAR(255) NULL,
+    ADD COLUMN run_lease_until DATETIME NULL,
+    ADD COLUMN run_cancel_requested BOOLEAN NOT NULL DEFAULT FALSE;
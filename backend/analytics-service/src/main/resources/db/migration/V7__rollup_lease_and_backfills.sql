@@ -0,0 +1,25 @@
+-- Named leases that keep a job, such as the rollup pipeline, running on one
+-- instance at a time. A lease whose lease_until has passed belongs to a dead
+-- instance and may be taken over.
+CREATE TABLE aggregation_leases (
+    name VARCHAR(50) PRIMARY KEY,
+    owner VARCHAR(255) NULL,
+    lease_until DATETIME NULL,
+    updated_at DATETIME NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
+
+-- Backfills started through the API, so their progress can be read from any instance
+CREATE TABLE aggregation_backfills (
+    id VARCHAR(36) PRIMARY KEY,
+    period VARCHAR(20) NOT NULL,
+    range_start DATETIME NOT NULL,
+    range_end DATETIME NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    owner VARCHAR(255) NOT NULL,
+    buckets_rebuilt BIGINT NOT NULL DEFAULT 0,
+    aggregates_written BIGINT NOT NULL DEFAULT 0,
+    duration_ms BIGINT NULL,
+    error VARCHAR(1000) NULL,
+    started_at DATETIME NOT NULL,
+    finished_at DATETIME NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
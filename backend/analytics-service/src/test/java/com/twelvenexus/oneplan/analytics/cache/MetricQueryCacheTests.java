@@ -0,0 +1,153 @@
+package com.twelvenexus.oneplan.analytics.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class MetricQueryCacheTests {
+
+  private static final UUID TENANT = UUID.randomUUID();
+  private static final UUID ENTITY = UUID.randomUUID();
+  private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 12, 15, 20);
+
+  private final Random random = new Random(42);
+  private final List<Metric> stored = new ArrayList<>();
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private final MetricQueryCache cache =
+      new MetricQueryCache(
+          null,
+          new ObjectMapper().findAndRegisterModules(),
+          Duration.ofSeconds(30),
+          Duration.ofDays(7),
+          Duration.ofMinutes(1),
+          Duration.ofHours(2),
+          744,
+          100_000,
+          Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+
+  @Test
+  void composedRangesMatchTheStore() {
+    for (int i = 0; i < 2000; i++) {
+      store(NOW.minusSeconds(random.nextInt(3 * 24 * 3600)));
+    }
+    store(NOW.minusHours(5).withMinute(0).withSecond(0)); // On a chunk boundary
+
+    for (int i = 0; i < 200; i++) {
+      LocalDateTime start = NOW.minusSeconds(random.nextInt(4 * 24 * 3600));
+      LocalDateTime end = start.plusSeconds(random.nextInt(24 * 3600));
+      assertThat(ids(query(start, end))).isEqualTo(ids(find(start, end)));
+    }
+  }
+
+  @Test
+  void slidingWindowOnlyLoadsNewChunks() {
+    for (int i = 0; i < 500; i++) {
+      store(NOW.minusSeconds(random.nextInt(24 * 3600)));
+    }
+
+    query(NOW.minusHours(24), NOW);
+    assertThat(loads).hasValue(1);
+    loads.set(0);
+
+    List<Metric> slid = query(NOW.minusHours(23).plusMinutes(7), NOW.plusMinutes(7));
+    assertThat(loads).hasValue(0);
+    assertThat(ids(slid)).isEqualTo(ids(find(NOW.minusHours(23).plusMinutes(7), NOW)));
+  }
+
+  @Test
+  void writesEvictTheirChunks() {
+    store(NOW.minusHours(3));
+    assertThat(query(NOW.minusHours(6), NOW)).hasSize(1);
+
+    Metric late = store(NOW.minusHours(4));
+    Metric otherTenant = metric(UUID.randomUUID(), NOW.minusHours(4));
+    cache.evictMetrics(List.of(otherTenant));
+    assertThat(query(NOW.minusHours(6), NOW)).hasSize(1);
+
+    cache.evictMetrics(List.of(late));
+    assertThat(ids(query(NOW.minusHours(6), NOW))).isEqualTo(ids(find(NOW.minusHours(6), NOW)));
+  }
+
+  @Test
+  void chunksLoadedBeforeAnEvictionAreNotCached() {
+    store(NOW.minusHours(3));
+    Metric written = metric(TENANT, NOW.minusHours(3));
+
+    // A write commits and evicts while the load still holds the rows from before it
+    List<Metric> loaded =
+        cache.getMetrics(
+            TENANT,
+            ENTITY,
+            MetricType.TASK_LEAD_TIME,
+            NOW.minusHours(6),
+            NOW,
+            (from, to) -> {
+              loads.incrementAndGet();
+              List<Metric> before = find(from, to);
+              stored.add(written);
+              cache.evictMetrics(List.of(written));
+              return before;
+            });
+    assertThat(loaded).hasSize(1);
+
+    assertThat(ids(query(NOW.minusHours(6), NOW))).isEqualTo(ids(find(NOW.minusHours(6), NOW)));
+    assertThat(loads).hasValue(2);
+    // Loads after the eviction are cached again
+    assertThat(query(NOW.minusHours(6), NOW)).hasSize(2);
+    assertThat(loads).hasValue(2);
+  }
+
+  private List<Metric> query(LocalDateTime start, LocalDateTime end) {
+    return cache.getMetrics(
+        TENANT,
+        ENTITY,
+        MetricType.TASK_LEAD_TIME,
+        start,
+        end,
+        (from, to) -> {
+          loads.incrementAndGet();
+          return find(from, to);
+        });
+  }
+
+  private List<Metric> find(LocalDateTime start, LocalDateTime end) {
+    return stored.stream()
+        .filter(m -> !m.getTimestamp().isBefore(start) && !m.getTimestamp().isAfter(end))
+        .toList();
+  }
+
+  private Metric store(LocalDateTime timestamp) {
+    Metric metric = metric(TENANT, timestamp);
+    stored.add(metric);
+    return metric;
+  }
+
+  private Metric metric(UUID tenantId, LocalDateTime timestamp) {
+    Metric metric = new Metric();
+    metric.setId(UUID.randomUUID());
+    metric.setTenantId(tenantId);
+    metric.setEntityId(ENTITY);
+    metric.setEntityType("project");
+    metric.setType(MetricType.TASK_LEAD_TIME);
+    metric.setValue(random.nextDouble());
+    metric.setTimestamp(timestamp);
+    return metric;
+  }
+
+  private static List<UUID> ids(List<Metric> metrics) {
+    return metrics.stream().map(Metric::getId).sorted().toList();
+  }
+}
@@ -0,0 +1,199 @@
+package com.twelvenexus.oneplan.analytics.counter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.twelvenexus.oneplan.analytics.counter.EventCounters.MinuteCount;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class EventCountersTests {
+
+  private static final UUID TENANT = UUID.randomUUID();
+  private static final String TASK = "task";
+  /** Half a minute in, so the counters are complete from 12:01. */
+  private static final LocalDateTime START = LocalDateTime.of(2025, 3, 12, 12, 0, 30);
+
+  private final VirtualClock clock = new VirtualClock(START);
+  private final EventCounters counters = new EventCounters(Duration.ofMinutes(5), clock);
+
+  @Test
+  void countsWholeMinutesFromWhenCountingStarted() {
+    assertThat(counters.coveredFrom()).isEqualTo(minute(1));
+
+    clock.advance(Duration.ofMinutes(1));
+    increment("created", minute(1).plusSeconds(5), 2);
+    increment("created", minute(1).plusSeconds(50), 1);
+    increment("deleted", minute(1).plusSeconds(50), 1);
+
+    assertThat(counts(minute(1))).isEqualTo(Map.of("created", 3L, "deleted", 1L));
+    assertThat(counters.count(TENANT, "project", minute(1), clock.now())).isEmpty();
+  }
+
+  @Test
+  void partialFirstMinuteIsLeftToTheRawEvents() {
+    clock.advance(Duration.ofMinutes(2));
+    increment("created", minute(1).plusSeconds(10), 1);
+    increment("created", minute(1).plusSeconds(40), 1);
+    increment("created", minute(2).plusSeconds(10), 1);
+
+    LocalDateTime since = minute(1).plusSeconds(30);
+    LocalDateTime countedFrom = counters.countedFrom(since);
+
+    // Counting all of 12:01 would include the event at 12:01:10
+    assertThat(countedFrom).isEqualTo(minute(2));
+    assertThat(counters.count(TENANT, TASK, countedFrom, clock.now()))
+        .isEqualTo(Map.of("created", 1L));
+    assertThat(counters.count(TENANT, TASK, since, clock.now())).isEqualTo(Map.of("created", 1L));
+
+    assertThat(counters.countedFrom(minute(1))).isEqualTo(minute(1));
+    assertThat(counts(minute(1))).isEqualTo(Map.of("created", 3L));
+  }
+
+  @Test
+  void countsBeforeCoverageOrBeyondTheHorizonFallBackToRawEvents() {
+    // Nothing before the first whole minute of this instance is known
+    assertThat(counters.countedFrom(START.minusHours(1))).isEqualTo(minute(1));
+
+    clock.advance(Duration.ofMinutes(1));
+    increment("created", minute(1), 1);
+    clock.advance(Duration.ofMinutes(10));
+
+    // 12:01 has left the five-minute horizon, which now starts at 12:07
+    assertThat(counters.horizonStart()).isEqualTo(minute(7));
+    assertThat(counters.coveredFrom()).isEqualTo(minute(7));
+    assertThat(counters.countedFrom(minute(1))).isEqualTo(minute(7));
+    assertThat(counts(minute(1))).isEmpty();
+
+    // Too old to be counted at all
+    increment("created", minute(6).plusSeconds(59), 1);
+    assertThat(counters.takeDeltas()).isEmpty();
+  }
+
+  @Test
+  void ringSlotsAreReusedAFullTurnLater() {
+    clock.advance(Duration.ofMinutes(1));
+    increment("created", minute(1), 4);
+
+    // 12:06 takes the slot of 12:01, five minutes older
+    clock.advance(Duration.ofMinutes(5));
+    increment("created", minute(6), 1);
+    assertThat(counts(minute(2))).isEqualTo(Map.of("created", 1L));
+
+    // A straggler for 12:01 can no longer claim the slot back
+    increment("created", minute(1).plusSeconds(30), 1);
+    assertThat(counts(minute(2))).isEqualTo(Map.of("created", 1L));
+    assertThat(counters.takeDeltas()).containsExactly(delta("created", minute(6), 1));
+  }
+
+  @Test
+  void restoredTotalsSetCoverageAndSeedTheCounts() {
+    counters.restore(List.of(delta("created", minute(-3), 7), delta("created", minute(-1), 2)));
+
+    assertThat(counters.coveredFrom()).isEqualTo(minute(-3));
+    assertThat(counts(minute(-3))).isEqualTo(Map.of("created", 9L));
+    assertThat(counters.takeDeltas()).isEmpty();
+  }
+
+  @Test
+  void checkpointHandsOutLocalCountsAndFoldsTotalsBackIn() {
+    clock.advance(Duration.ofMinutes(1));
+    increment("created", minute(1), 3);
+
+    List<MinuteCount> deltas = counters.takeDeltas();
+    assertThat(deltas).containsExactly(delta("created", minute(1), 3));
+    assertThat(counters.takeDeltas()).isEmpty();
+
+    // Another instance counted 10 in the same minute; the stored total has both
+    counters.applyTotals(List.of(delta("created", minute(1), 13)));
+    assertThat(counts(minute(1))).isEqualTo(Map.of("created", 13L));
+
+    // Counting goes on locally between checkpoints
+    increment("created", minute(1), 2);
+    assertThat(counts(minute(1))).isEqualTo(Map.of("created", 15L));
+    assertThat(counters.takeDeltas()).containsExactly(delta("created", minute(1), 2));
+    counters.applyTotals(List.of(delta("created", minute(1), 16)));
+    assertThat(counts(minute(1))).isEqualTo(Map.of("created", 16L));
+  }
+
+  @Test
+  void deltasOfAFailedCheckpointAreHandedOutAgain() {
+    clock.advance(Duration.ofMinutes(1));
+    increment("created", minute(1), 3);
+    increment("deleted", minute(1), 1);
+
+    List<MinuteCount> failed = counters.takeDeltas();
+    increment("created", minute(1), 1);
+    counters.returnDeltas(failed);
+
+    // Reads never changed, and the next checkpoint carries everything not yet stored
+    assertThat(counts(minute(1))).isEqualTo(Map.of("created", 4L, "deleted", 1L));
+    assertThat(counters.takeDeltas())
+        .containsExactlyInAnyOrder(delta("created", minute(1), 4), delta("deleted", minute(1), 1));
+
+    // Stored totals without a returned delta still read with it, and it goes out again
+    increment("created", minute(1), 1);
+    counters.returnDeltas(counters.takeDeltas());
+    counters.applyTotals(List.of(delta("created", minute(1), 4)));
+    assertThat(counts(minute(1))).isEqualTo(Map.of("created", 5L, "deleted", 1L));
+    assertThat(counters.takeDeltas()).containsExactly(delta("created", minute(1), 1));
+  }
+
+  private void increment(String eventName, LocalDateTime at, int times) {
+    for (int i = 0; i < times; i++) {
+      counters.increment(TENANT, TASK, eventName, at);
+    }
+  }
+
+  private Map<String, Long> counts(LocalDateTime from) {
+    return counters.count(TENANT, TASK, from, clock.now());
+  }
+
+  private static MinuteCount delta(String eventName, LocalDateTime minute, long count) {
+    return new MinuteCount(TENANT, TASK, eventName, minute, count);
+  }
+
+  /** Start of the minute {@code offset} minutes after 12:00. */
+  private static LocalDateTime minute(int offset) {
+    return START.withSecond(0).plusMinutes(offset);
+  }
+
+  private static final class VirtualClock extends Clock {
+
+    private Instant instant;
+
+    VirtualClock(LocalDateTime start) {
+      this.instant = start.toInstant(ZoneOffset.UTC);
+    }
+
+    LocalDateTime now() {
+      return LocalDateTime.now(this);
+    }
+
+    void advance(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package com.twelvenexus.oneplan.analytics.dashboard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.twelvenexus.oneplan.analytics.dto.DashboardDataDto;
+import com.twelvenexus.oneplan.analytics.dto.WidgetDataDto;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Dashboard;
+import com.twelvenexus.oneplan.analytics.model.DashboardWidget;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class DashboardSnapshotsTests {
+
+  private static final UUID TENANT = UUID.randomUUID();
+  private static final UUID PROJECT = UUID.randomUUID();
+  private static final LocalDateTime VERSION = LocalDateTime.of(2025, 3, 12, 9, 0);
+
+  private final DashboardSnapshots snapshots =
+      new DashboardSnapshots(
+          Duration.ofMinutes(5),
+          Duration.ofSeconds(10),
+          4,
+          100,
+          Duration.ofMinutes(30),
+          Clock.systemDefaultZone());
+  private final Dashboard dashboard = new Dashboard();
+  private final AtomicInteger layoutLoads = new AtomicInteger();
+  private final Map<MetricType, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+  DashboardSnapshotsTests() {
+    dashboard.setId(UUID.randomUUID());
+    dashboard.setTenantId(TENANT);
+    dashboard.setName("Team");
+    dashboard.setWidgets(new ArrayList<>());
+    widget("Lead time", MetricType.TASK_LEAD_TIME, "DAY");
+    widget("Cycle time", MetricType.TASK_CYCLE_TIME, null);
+    widget("Notes", null, null);
+  }
+
+  @AfterEach
+  void close() {
+    snapshots.close();
+  }
+
+  @Test
+  void unchangedDashboardIsServedFromTheSnapshot() {
+    DashboardDataDto first = render(VERSION);
+    DashboardDataDto second = render(VERSION);
+
+    assertThat(layoutLoads).hasValue(1);
+    assertThat(loads.get(MetricType.TASK_LEAD_TIME)).hasValue(1);
+    assertThat(loads.get(MetricType.TASK_CYCLE_TIME)).hasValue(1);
+    assertThat(second.getWidgets())
+        .extracting(WidgetDataDto::getData)
+        .containsExactly("TASK_LEAD_TIME#1", "TASK_CYCLE_TIME#1", null);
+    assertThat(second.getWidgets())
+        .extracting(WidgetDataDto::getComputedAt)
+        .isEqualTo(first.getWidgets().stream().map(WidgetDataDto::getComputedAt).toList());
+    assertThat(snapshots.cached()).isEqualTo(2);
+  }
+
+  @Test
+  void onlyWidgetsOfChangedSeriesAreRefreshed() {
+    render(VERSION);
+    snapshots.changed(TENANT, PROJECT, MetricType.TASK_CYCLE_TIME);
+    snapshots.changed(UUID.randomUUID(), PROJECT, MetricType.TASK_LEAD_TIME);
+    snapshots.changed(TENANT, UUID.randomUUID(), MetricType.TASK_LEAD_TIME);
+
+    assertThat(render(VERSION).getWidgets())
+        .extracting(WidgetDataDto::getData)
+        .containsExactly("TASK_LEAD_TIME#1", "TASK_CYCLE_TIME#2", null);
+  }
+
+  @Test
+  void editedLayoutKeepsResultsOfUnchangedQueries() {
+    render(VERSION);
+    dashboard.getWidgets().get(0).setTitle("Lead time (days)");
+    dashboard.getWidgets().get(1).getConfiguration().put(WidgetQuery.PERIOD, "WEEK");
+    widget("Lead time again", MetricType.TASK_LEAD_TIME, "DAY");
+
+    DashboardDataDto edited = render(VERSION.plusSeconds(1));
+    assertThat(layoutLoads).hasValue(2);
+    assertThat(edited.getWidgets())
+        .extracting(WidgetDataDto::getTitle)
+        .containsExactly("Lead time (days)", "Cycle time", "Notes", "Lead time again");
+    assertThat(edited.getWidgets())
+        .extracting(WidgetDataDto::getData)
+        .containsExactly("TASK_LEAD_TIME#1", "TASK_CYCLE_TIME#2", null, "TASK_LEAD_TIME#1");
+  }
+
+  @Test
+  void concurrentViewersShareOneRefresh() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    List<Thread> viewers = new ArrayList<>();
+    List<DashboardDataDto> rendered = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      viewers.add(
+          Thread.ofVirtual()
+              .start(
+                  () -> {
+                    DashboardDataDto data =
+                        snapshots.render(
+                            dashboard.getId(),
+                            VERSION,
+                            () -> dashboard,
+                            query -> {
+                              release.await();
+                              return load(query);
+                            });
+                    synchronized (rendered) {
+                      rendered.add(data);
+                    }
+                  }));
+    }
+    Thread.sleep(100);
+    release.countDown();
+    for (Thread viewer : viewers) {
+      viewer.join();
+    }
+
+    assertThat(rendered).hasSize(8);
+    assertThat(loads.get(MetricType.TASK_LEAD_TIME)).hasValue(1);
+    assertThat(loads.get(MetricType.TASK_CYCLE_TIME)).hasValue(1);
+  }
+
+  @Test
+  void invalidConfigurationOnlyFailsItsWidget() {
+    widget("Broken", MetricType.TASK_CREATED, "FORTNIGHT");
+
+    List<WidgetDataDto> widgets = render(VERSION).getWidgets();
+    assertThat(widgets.get(0).getData()).isEqualTo("TASK_LEAD_TIME#1");
+    assertThat(widgets.get(3).getError()).contains("FORTNIGHT");
+  }
+
+  private DashboardDataDto render(LocalDateTime version) {
+    return snapshots.render(
+        dashboard.getId(),
+        version,
+        () -> {
+          layoutLoads.incrementAndGet();
+          return dashboard;
+        },
+        this::load);
+  }
+
+  private Object load(WidgetQuery query) {
+    assertThat(query.tenantId()).isEqualTo(TENANT);
+    int count = loads.computeIfAbsent(query.type(), type -> new AtomicInteger()).incrementAndGet();
+    return query.type() + "#" + count;
+  }
+
+  private void widget(String title, MetricType type, String period) {
+    Map<String, String> configuration = new HashMap<>();
+    if (type != null) {
+      configuration.put(WidgetQuery.METRIC_TYPE, type.name());
+      configuration.put(WidgetQuery.ENTITY_ID, PROJECT.toString());
+    }
+    if (period != null) {
+      configuration.put(WidgetQuery.PERIOD, period);
+    }
+    DashboardWidget widget = new DashboardWidget();
+    widget.setId(UUID.randomUUID());
+    widget.setDashboard(dashboard);
+    widget.setTitle(title);
+    widget.setType("chart");
+    widget.setPosition(dashboard.getWidgets().size());
+    widget.setConfiguration(configuration);
+    dashboard.getWidgets().add(widget);
+  }
+}
@@ -0,0 +1,133 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+import static com.twelvenexus.oneplan.analytics.ingest.EventWriteAheadLogTests.events;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventIngestionBufferTests {
+
+  private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+  private final List<List<AnalyticsEvent>> batches =
+      Collections.synchronizedList(new ArrayList<>());
+
+  @TempDir Path directory;
+
+  @Test
+  void fullBufferRejectsTheWholeSubmission() {
+    EventIngestionBuffer buffer =
+        new EventIngestionBuffer(4, 10, Duration.ofSeconds(1), this::record);
+    buffer.submit(events("a", "b", "c"));
+
+    // The controller answers these with 429 Too Many Requests
+    assertThatThrownBy(() -> buffer.submit(events("d", "e")))
+        .isInstanceOf(EventBufferFullException.class)
+        .hasMessageContaining("capacity 4");
+
+    assertThat(buffer.size()).isEqualTo(3);
+    assertThat(buffer.rejected()).isEqualTo(2);
+    buffer.submit(events("d"));
+    assertThat(buffer.size()).isEqualTo(4);
+  }
+
+  @Test
+  void concurrentSubmissionsAreWrittenInBatches() throws InterruptedException {
+    EventIngestionBuffer buffer =
+        new EventIngestionBuffer(1024, 50, Duration.ofMillis(20), this::record);
+    buffer.start();
+
+    List<Thread> producers = new ArrayList<>();
+    for (int p = 0; p < 4; p++) {
+      producers.add(
+          Thread.ofPlatform()
+              .start(
+                  () -> {
+                    for (int i = 0; i < 250; i++) {
+                      submitRetrying(buffer, events("e" + i));
+                    }
+                  }));
+    }
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    buffer.close(Duration.ofSeconds(10));
+
+    assertThat(buffer.persisted()).isEqualTo(1000);
+    assertThat(batches.stream().mapToInt(List::size).sum()).isEqualTo(1000);
+    assertThat(batches).allSatisfy(batch -> assertThat(batch.size()).isBetween(1, 50));
+    assertThatThrownBy(() -> buffer.submit(events("late")))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void persistedBatchesReleaseTheirSegments() throws IOException, InterruptedException {
+    // A one-byte segment size seals the segment after every persisted batch
+    EventWriteAheadLog log = new EventWriteAheadLog(directory, 1, objectMapper);
+    EventIngestionBuffer buffer =
+        new EventIngestionBuffer(64, 2, Duration.ofMillis(10), this::record, log);
+    buffer.start();
+
+    for (int i = 0; i < 5; i++) {
+      buffer.submit(events("a" + i, "b" + i));
+    }
+    buffer.close(Duration.ofSeconds(10));
+
+    assertThat(buffer.persisted()).isEqualTo(10);
+    assertThat(new EventWriteAheadLog(directory, 1, objectMapper).recover()).isEmpty();
+  }
+
+  @Test
+  void eventsStillBufferedAtACrashAreReplayedFromTheLog()
+      throws IOException, InterruptedException {
+    CountDownLatch sinkDown = new CountDownLatch(1);
+    Consumer<List<AnalyticsEvent>> sink =
+        batch -> {
+          sinkDown.countDown();
+          throw new IllegalStateException("Mongo unavailable");
+        };
+    EventWriteAheadLog log = new EventWriteAheadLog(directory, 1, objectMapper);
+    EventIngestionBuffer buffer =
+        new EventIngestionBuffer(64, 10, Duration.ofMillis(10), sink, log);
+    buffer.start();
+    List<AnalyticsEvent> submitted = events("a", "b", "c");
+    buffer.submit(submitted);
+    sinkDown.await();
+
+    // Nothing reached the sink; a restart finds every acknowledged event on disk
+    EventWriteAheadLog restarted = new EventWriteAheadLog(directory, 1, objectMapper);
+    assertThat(restarted.recover()).containsExactlyElementsOf(submitted);
+
+    // Shutting down with the sink still failing leaves them there as well
+    buffer.close(Duration.ofSeconds(10));
+    assertThat(buffer.persisted()).isZero();
+    assertThat(restarted.recover()).containsExactlyElementsOf(submitted);
+  }
+
+  /** The buffer reuses its batch list, so the sink keeps a copy. */
+  private void record(List<AnalyticsEvent> batch) {
+    batches.add(List.copyOf(batch));
+  }
+
+  private static void submitRetrying(EventIngestionBuffer buffer, List<AnalyticsEvent> events) {
+    while (true) {
+      try {
+        buffer.submit(events);
+        return;
+      } catch (EventBufferFullException e) {
+        Thread.yield();
+      }
+    }
+  }
+}
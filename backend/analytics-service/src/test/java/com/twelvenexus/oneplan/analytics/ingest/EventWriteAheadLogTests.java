@@ -0,0 +1,126 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventWriteAheadLogTests {
+
+  private static final UUID TENANT = UUID.randomUUID();
+
+  private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+  @TempDir Path directory;
+
+  @Test
+  void eventsAppendedBeforeACrashAreRecovered() throws IOException {
+    EventWriteAheadLog log = new EventWriteAheadLog(directory, 1 << 20, objectMapper);
+    List<AnalyticsEvent> first = events("a", "b");
+    List<AnalyticsEvent> second = events("c");
+    log.append(0, first);
+    log.append(2, second);
+
+    // The process dies without closing the log
+    EventWriteAheadLog restarted = new EventWriteAheadLog(directory, 1 << 20, objectMapper);
+    List<AnalyticsEvent> recovered = restarted.recover();
+
+    assertThat(recovered).containsExactly(first.get(0), first.get(1), second.get(0));
+    assertThat(segments()).hasSize(1);
+
+    restarted.deleteRecovered();
+    assertThat(segments()).isEmpty();
+    assertThat(restarted.recover()).isEmpty();
+  }
+
+  @Test
+  void tornRecordAtTheEndOfASegmentIsIgnored() throws IOException {
+    EventWriteAheadLog log = new EventWriteAheadLog(directory, 1 << 20, objectMapper);
+    List<AnalyticsEvent> events = events("a", "b");
+    log.append(0, events);
+
+    // A record whose length made it to disk but whose body did not
+    Files.write(
+        segments().get(0),
+        ByteBuffer.allocate(7).putInt(200).put(new byte[] {'{', '"', 'i'}).array(),
+        StandardOpenOption.APPEND);
+
+    assertThat(new EventWriteAheadLog(directory, 1 << 20, objectMapper).recover())
+        .containsExactlyElementsOf(events);
+  }
+
+  @Test
+  void segmentsAreDeletedOnceEveryEventInThemIsPersisted() throws IOException {
+    // Every release seals the current segment, since any append outgrows one byte
+    EventWriteAheadLog log = new EventWriteAheadLog(directory, 1, objectMapper);
+    log.append(0, events("a", "b"));
+    log.release(0);
+    Path first = segments().get(0);
+    log.append(2, events("c"));
+
+    // Sequences 0 and 1 are persisted, so the first segment goes and the second stays
+    log.release(2);
+    assertThat(first).doesNotExist();
+    assertThat(new EventWriteAheadLog(directory, 1, objectMapper).recover())
+        .extracting(AnalyticsEvent::getEventName)
+        .containsExactly("c");
+
+    log.release(3);
+    assertThat(new EventWriteAheadLog(directory, 1, objectMapper).recover()).isEmpty();
+  }
+
+  @Test
+  void closeKeepsSegmentsWithUnpersistedEventsForReplay() throws IOException {
+    EventWriteAheadLog log = new EventWriteAheadLog(directory, 1 << 20, objectMapper);
+    log.append(0, events("a", "b", "c"));
+
+    log.close(2);
+
+    // Replay is per segment, so the persisted events come back too
+    assertThat(new EventWriteAheadLog(directory, 1 << 20, objectMapper).recover())
+        .extracting(AnalyticsEvent::getEventName)
+        .containsExactly("a", "b", "c");
+
+    EventWriteAheadLog restarted = new EventWriteAheadLog(directory, 1 << 20, objectMapper);
+    restarted.recover();
+    restarted.deleteRecovered();
+    restarted.append(0, events("d"));
+    restarted.close(1);
+    assertThat(segments()).isEmpty();
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().toList();
+    }
+  }
+
+  static List<AnalyticsEvent> events(String... names) {
+    List<AnalyticsEvent> events = new ArrayList<>();
+    for (String name : names) {
+      AnalyticsEvent event = new AnalyticsEvent();
+      event.setTenantId(TENANT);
+      event.setEntityId(UUID.randomUUID());
+      event.setEntityType("task");
+      event.setEventType("action");
+      event.setEventName(name);
+      event.setProperties(Map.of("source", "web", "count", 3));
+      event.setTimestamp(LocalDateTime.of(2025, 3, 12, 9, 30));
+      events.add(event);
+    }
+    return events;
+  }
+}
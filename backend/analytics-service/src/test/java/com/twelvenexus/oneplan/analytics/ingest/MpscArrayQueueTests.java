@@ -0,0 +1,123 @@
+package com.twelvenexus.oneplan.analytics.ingest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class MpscArrayQueueTests {
+
+  @Test
+  void capacityIsRoundedUpToAPowerOfTwo() {
+    assertThat(new MpscArrayQueue<String>(2).capacity()).isEqualTo(2);
+    assertThat(new MpscArrayQueue<String>(1000).capacity()).isEqualTo(1024);
+    assertThat(new MpscArrayQueue<String>(1024).capacity()).isEqualTo(1024);
+    assertThatThrownBy(() -> new MpscArrayQueue<String>(1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void claimFailsWithoutRoomForTheWholeRun() {
+    MpscArrayQueue<String> queue = new MpscArrayQueue<>(4);
+    assertThat(queue.claim(3)).isEqualTo(0);
+    assertThat(queue.claim(2)).isEqualTo(-1);
+    assertThat(queue.claim(1)).isEqualTo(3);
+    for (int i = 0; i < 4; i++) {
+      queue.publish(i, "e" + i);
+    }
+
+    List<String> drained = new ArrayList<>();
+    assertThat(queue.drain(drained::add, 2)).isEqualTo(2);
+
+    // Freed slots are reused, wrapping around the ring
+    assertThat(queue.claim(2)).isEqualTo(4);
+    queue.publish(4, "e4");
+    queue.publish(5, "e5");
+    assertThat(queue.size()).isEqualTo(4);
+    queue.drain(drained::add, Integer.MAX_VALUE);
+    assertThat(drained).containsExactly("e0", "e1", "e2", "e3", "e4", "e5");
+    assertThat(queue.consumed()).isEqualTo(6);
+  }
+
+  @Test
+  void drainStopsAtAClaimedButUnpublishedSlot() {
+    MpscArrayQueue<String> queue = new MpscArrayQueue<>(8);
+    long first = queue.claim(1);
+    long second = queue.claim(1);
+    queue.publish(second, "second");
+
+    List<String> drained = new ArrayList<>();
+    assertThat(queue.drain(drained::add, 10)).isZero();
+
+    queue.publish(first, "first");
+    assertThat(queue.drain(drained::add, 10)).isEqualTo(2);
+    assertThat(drained).containsExactly("first", "second");
+  }
+
+  @Test
+  void concurrentProducersAreDrainedCompletelyAndInClaimOrder() throws InterruptedException {
+    int producers = 4;
+    int perProducer = 50_000;
+    MpscArrayQueue<long[]> queue = new MpscArrayQueue<>(256);
+    AtomicBoolean producing = new AtomicBoolean(true);
+    long[] next = new long[producers];
+    List<String> errors = new ArrayList<>();
+
+    Thread consumer =
+        Thread.ofPlatform()
+            .start(
+                () -> {
+                  while (producing.get() || queue.size() > 0) {
+                    queue.drain(
+                        element -> {
+                          int producer = (int) element[0];
+                          if (element[1] != next[producer]) {
+                            errors.add(producer + ": " + element[1] + " after " + next[producer]);
+                          }
+                          next[producer] = element[1] + 1;
+                        },
+                        64);
+                  }
+                });
+
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      threads.add(
+          Thread.ofPlatform()
+              .start(
+                  () -> {
+                    int sent = 0;
+                    while (sent < perProducer) {
+                      int count =
+                          Math.min(ThreadLocalRandom.current().nextInt(1, 9), perProducer - sent);
+                      long first = queue.claim(count);
+                      if (first < 0) {
+                        Thread.yield();
+                        continue;
+                      }
+                      for (int i = 0; i < count; i++) {
+                        queue.publish(first + i, new long[] {producer, sent + i});
+                      }
+                      sent += count;
+                    }
+                  }));
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    producing.set(false);
+    consumer.join();
+
+    assertThat(errors).isEmpty();
+    for (long received : next) {
+      assertThat(received).isEqualTo(perProducer);
+    }
+    assertThat(queue.consumed()).isEqualTo((long) producers * perProducer);
+    assertThat(queue.size()).isZero();
+  }
+}
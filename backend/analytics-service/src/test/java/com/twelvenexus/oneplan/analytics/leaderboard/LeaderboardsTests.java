@@ -0,0 +1,232 @@
+package com.twelvenexus.oneplan.analytics.leaderboard;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.repository.MetricRepository;
+import com.twelvenexus.oneplan.analytics.store.JpaMetricStore;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Boards against the store's real top query, on an in-memory database. Tests run outside a
+ * transaction, as the processor's workers do, so that recording is not held back for a commit.
+ */
+@DataJpaTest(
+    properties = {
+      "spring.flyway.enabled=false",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+      // metrics.value and friends are keywords in H2
+      "spring.jpa.properties.hibernate.globally_quoted_identifiers=true"
+    })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class LeaderboardsTests {
+
+  /** Late evening, so the day window rolls over within the tests. */
+  private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 12, 23, 30);
+
+  private static final LocalDateTime DAY_START = AggregationPeriod.DAY.bucketStart(NOW);
+
+  // Each test has its own tenant, so the rows other tests committed never show up
+  private final UUID tenant = UUID.randomUUID();
+  private final Random random = new Random(42);
+  private final VirtualClock clock = new VirtualClock(NOW);
+
+  @Autowired private MetricRepository metricRepository;
+
+  private MetricStore store;
+  private Leaderboards leaderboards;
+
+  @AfterEach
+  void clearSynchronization() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  void topKKeepsGreatestDistinctElements() {
+    TopK<Metric, UUID> top =
+        new TopK<>(10, Comparator.comparingDouble(Metric::getValue), Metric::getId);
+    List<Metric> offered = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Metric metric = metric(MetricType.TASK_LEAD_TIME, NOW);
+      metric.setId(UUID.randomUUID());
+      offered.add(metric);
+      top.offer(metric);
+      if (i % 7 == 0) {
+        top.offer(metric); // Repeats must not take a second slot
+      }
+    }
+
+    assertThat(values(top.top(10))).isEqualTo(values(greatest(offered, 10)));
+    assertThat(values(top.top(3))).isEqualTo(values(greatest(offered, 3)));
+  }
+
+  @Test
+  void boardMatchesTheStoreQueryAfterLiveRecordsAndRefresh() {
+    leaderboards(Duration.ZERO);
+
+    // Metrics from before the window and of other types must never show up
+    for (int i = 0; i < 50; i++) {
+      save(metric(MetricType.TASK_LEAD_TIME, DAY_START.minusHours(1)));
+      save(metric(MetricType.TASK_CYCLE_TIME, DAY_START));
+    }
+    Metric beforeWindow = metric(MetricType.TASK_LEAD_TIME, DAY_START.minusSeconds(1));
+    beforeWindow.setValue(30_000.0);
+    save(beforeWindow);
+    Metric atWindowStart = metric(MetricType.TASK_LEAD_TIME, DAY_START);
+    atWindowStart.setValue(20_000.0);
+    save(atWindowStart);
+    saveLeadTimes(50, DAY_START.plusHours(3));
+    leaderboards.top(tenant, MetricType.TASK_LEAD_TIME, AggregationPeriod.DAY, 20);
+
+    // Recorded by this instance, then by "another" instance that only the refresh sees
+    for (int i = 0; i < 50; i++) {
+      leaderboards.record(List.of(save(metric(MetricType.TASK_LEAD_TIME, NOW))));
+    }
+    saveLeadTimes(50, NOW);
+
+    List<Metric> board =
+        leaderboards.top(tenant, MetricType.TASK_LEAD_TIME, AggregationPeriod.DAY, 20);
+    List<Metric> queried =
+        store.findTop(tenant, MetricType.TASK_LEAD_TIME, DAY_START.minusNanos(1), 20);
+    assertThat(queried).hasSize(20);
+    assertThat(values(board)).isEqualTo(values(queried));
+    assertThat(board.get(0).getId()).isEqualTo(atWindowStart.getId());
+    assertThat(board).allSatisfy(m -> assertThat(m.getTimestamp()).isAfterOrEqualTo(DAY_START));
+  }
+
+  @Test
+  void metricsRecordedInATransactionJoinTheBoardOnlyOnCommit() {
+    // Never refreshed after seeding, so only recording can change the board
+    leaderboards(Duration.ofDays(1));
+    saveLeadTimes(5, NOW);
+    List<Metric> seeded =
+        leaderboards.top(tenant, MetricType.TASK_LEAD_TIME, AggregationPeriod.DAY, 10);
+
+    TransactionSynchronizationManager.initSynchronization();
+    Metric committed = metric(MetricType.TASK_LEAD_TIME, NOW);
+    committed.setId(UUID.randomUUID());
+    committed.setValue(50_000.0);
+    leaderboards.record(List.of(committed));
+
+    assertThat(leaderboards.top(tenant, MetricType.TASK_LEAD_TIME, AggregationPeriod.DAY, 10))
+        .isEqualTo(seeded);
+
+    List<TransactionSynchronization> synchronizations =
+        TransactionSynchronizationManager.getSynchronizations();
+    TransactionSynchronizationManager.clearSynchronization();
+    synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+    assertThat(leaderboards.top(tenant, MetricType.TASK_LEAD_TIME, AggregationPeriod.DAY, 1))
+        .containsExactly(committed);
+  }
+
+  @Test
+  void boardsFollowTheClockIntoTheNextWindow() {
+    leaderboards(Duration.ofDays(1));
+    Metric today = save(metric(MetricType.TASK_LEAD_TIME, NOW));
+    assertThat(leaderboards.top(tenant, MetricType.TASK_LEAD_TIME, AggregationPeriod.DAY, 5))
+        .containsExactly(today);
+
+    clock.advance(Duration.ofHours(1));
+    Metric tomorrow = save(metric(MetricType.TASK_LEAD_TIME, NOW.plusHours(1)));
+    // A straggler for yesterday goes to yesterday's board
+    leaderboards.record(List.of(save(metric(MetricType.TASK_LEAD_TIME, NOW))));
+
+    assertThat(leaderboards.top(tenant, MetricType.TASK_LEAD_TIME, AggregationPeriod.DAY, 5))
+        .containsExactly(tomorrow);
+  }
+
+  private void leaderboards(Duration refreshInterval) {
+    store = new JpaMetricStore(metricRepository, null, null);
+    leaderboards = new Leaderboards(store, clock);
+    ReflectionTestUtils.setField(leaderboards, "windows", List.of(AggregationPeriod.DAY));
+    ReflectionTestUtils.setField(leaderboards, "capacity", 20);
+    ReflectionTestUtils.setField(leaderboards, "refreshInterval", refreshInterval);
+  }
+
+  private void saveLeadTimes(int count, LocalDateTime timestamp) {
+    for (int i = 0; i < count; i++) {
+      save(metric(MetricType.TASK_LEAD_TIME, timestamp));
+    }
+  }
+
+  private Metric save(Metric metric) {
+    return metricRepository.saveAndFlush(metric);
+  }
+
+  /** A metric without an id, which the database assigns when it is saved. */
+  private Metric metric(MetricType type, LocalDateTime timestamp) {
+    Metric metric = new Metric();
+    metric.setTenantId(tenant);
+    metric.setEntityId(UUID.randomUUID());
+    metric.setEntityType("task");
+    metric.setType(type);
+    metric.setValue((double) random.nextInt(10_000));
+    metric.setTimestamp(timestamp);
+    return metric;
+  }
+
+  private static List<Metric> greatest(List<Metric> metrics, int limit) {
+    return metrics.stream()
+        .sorted(Comparator.comparingDouble(Metric::getValue).reversed())
+        .limit(limit)
+        .toList();
+  }
+
+  private static List<Double> values(List<Metric> metrics) {
+    return metrics.stream().map(Metric::getValue).toList();
+  }
+
+  private static final class VirtualClock extends Clock {
+
+    private Instant instant;
+
+    VirtualClock(LocalDateTime start) {
+      this.instant = start.toInstant(ZoneOffset.UTC);
+    }
+
+    void advance(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
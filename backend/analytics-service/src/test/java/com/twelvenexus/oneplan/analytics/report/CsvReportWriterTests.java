@@ -0,0 +1,83 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CsvReportWriterTests {
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  @Test
+  void cellsAreQuotedOnlyWhenTheyMustBe() throws IOException {
+    try (CsvReportWriter writer = new CsvReportWriter(out)) {
+      writer.startTable("cells", "text", "value");
+      writer.row("plain", 1.5);
+      writer.row("a,b", null);
+      writer.row("say \"hi\"", "line\nbreak");
+      writer.row("carriage\rreturn", "  spaced  ");
+      writer.row("naïve – ünïcode", "");
+    }
+
+    assertThat(csv())
+        .isEqualTo(
+            "\r\ncells\r\n"
+                + "text,value\r\n"
+                + "plain,1.5\r\n"
+                + "\"a,b\",\r\n"
+                + "\"say \"\"hi\"\"\",\"line\nbreak\"\r\n"
+                + "\"carriage\rreturn\",  spaced  \r\n"
+                + "naïve – ünïcode,\r\n");
+  }
+
+  @Test
+  void fieldsComeFirstThenEachTableAfterABlankLine() throws IOException {
+    Map<String, Object> period = new LinkedHashMap<>();
+    period.put("start", LocalDateTime.of(2025, 3, 1, 0, 0));
+    period.put("end", LocalDateTime.of(2025, 3, 31, 0, 0));
+
+    try (CsvReportWriter writer = new CsvReportWriter(out)) {
+      writer.field("name", "Sprint, review");
+      writer.field("period", period);
+      writer.startTable("daily", "date", "count");
+      writer.row(LocalDateTime.of(2025, 3, 1, 0, 0), 3.0);
+      writer.endTable();
+      writer.startTable("empty", "a");
+      writer.endTable();
+    }
+
+    assertThat(csv())
+        .isEqualTo(
+            "field,value\r\n"
+                + "name,\"Sprint, review\"\r\n"
+                + "period.start,2025-03-01T00:00\r\n"
+                + "period.end,2025-03-31T00:00\r\n"
+                + "\r\ndaily\r\n"
+                + "date,count\r\n"
+                + "2025-03-01T00:00,3.0\r\n"
+                + "\r\nempty\r\n"
+                + "a\r\n");
+  }
+
+  @Test
+  void closingFlushesButLeavesTheTargetOpen() throws IOException {
+    CsvReportWriter writer = new CsvReportWriter(out);
+    writer.field("a", 1);
+    assertThat(out.size()).isZero();
+
+    writer.close();
+    out.write('x');
+
+    assertThat(csv()).isEqualTo("field,value\r\na,1\r\nx");
+  }
+
+  private String csv() {
+    return out.toString(StandardCharsets.UTF_8);
+  }
+}
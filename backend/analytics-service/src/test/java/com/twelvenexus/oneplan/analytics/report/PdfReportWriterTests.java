@@ -0,0 +1,146 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class PdfReportWriterTests {
+
+  private static final Pattern XREF_ENTRY = Pattern.compile("(\\d{10}) (\\d{5}) ([fn]) \n");
+  private static final Pattern STREAM =
+      Pattern.compile("<< /Length (\\d+) >>\nstream\n", Pattern.DOTALL);
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  @Test
+  void crossReferenceTablePointsAtEveryObject() throws IOException {
+    try (PdfReportWriter writer = new PdfReportWriter(out)) {
+      writer.field("name", "Sprint (review) \\ 1");
+      writer.startTable("daily", "date", "count");
+      for (int i = 0; i < PdfReportWriter.LINES_PER_PAGE * 3; i++) {
+        writer.row("2025-03-" + i, i);
+      }
+      writer.endTable();
+    }
+    String pdf = pdf();
+
+    assertThat(pdf).startsWith("%PDF-1.4\n").endsWith("%%EOF\n");
+    int xref = Integer.parseInt(after(pdf, "startxref\n").split("\n")[0]);
+    assertThat(pdf.substring(xref)).startsWith("xref\n0 ");
+
+    List<Long> offsets = xrefOffsets(pdf, xref);
+    assertThat(pdf).contains("trailer\n<< /Size " + offsets.size() + " /Root 1 0 R >>");
+    for (int object = 1; object < offsets.size(); object++) {
+      assertThat(pdf.substring(offsets.get(object).intValue())).startsWith(object + " 0 obj\n");
+    }
+    // Catalog, pages, font, and a content stream and page object per page
+    assertThat(offsets).hasSize(4 + 2 * 4);
+  }
+
+  @Test
+  void linesSplitIntoFullPagesWithMatchingStreamLengths() throws IOException {
+    int lines = PdfReportWriter.LINES_PER_PAGE * 2 + 1;
+    try (PdfReportWriter writer = new PdfReportWriter(out)) {
+      for (int i = 0; i < lines; i++) {
+        writer.field("line", i);
+      }
+    }
+    String pdf = pdf();
+
+    List<String> pages = contentStreams(pdf);
+    assertThat(pages).hasSize(3);
+    assertThat(pdf).contains("/Type /Pages /Count 3 /Kids [ 5 0 R 7 0 R 9 0 R ]");
+    assertThat(count(pages.get(0), " Tj T*")).isEqualTo(PdfReportWriter.LINES_PER_PAGE);
+    assertThat(count(pages.get(1), " Tj T*")).isEqualTo(PdfReportWriter.LINES_PER_PAGE);
+    assertThat(count(pages.get(2), " Tj T*")).isEqualTo(1);
+    assertThat(pages.get(0)).contains("(line: 0) Tj T*");
+    assertThat(pages.get(2)).contains("(line: " + (lines - 1) + ") Tj T*");
+  }
+
+  @Test
+  void fullLastPageIsNotFollowedByAnEmptyOne() throws IOException {
+    try (PdfReportWriter writer = new PdfReportWriter(out)) {
+      for (int i = 0; i < PdfReportWriter.LINES_PER_PAGE; i++) {
+        writer.field("line", i);
+      }
+    }
+
+    assertThat(contentStreams(pdf())).hasSize(1);
+  }
+
+  @Test
+  void emptyReportIsOneBlankPage() throws IOException {
+    new PdfReportWriter(out).close();
+
+    List<String> pages = contentStreams(pdf());
+    assertThat(pages).hasSize(1);
+    assertThat(count(pages.get(0), " Tj T*")).isZero();
+    assertThat(pdf()).contains("/Count 1 ");
+  }
+
+  @Test
+  void textIsEscapedAndClipped() throws IOException {
+    try (PdfReportWriter writer = new PdfReportWriter(out)) {
+      writer.field("name", "a (b) \\ c\td – é");
+      writer.field("long", "x".repeat(200));
+      writer.startTable("t", "column", "other");
+      writer.row("y".repeat(30), null);
+    }
+    String page = contentStreams(pdf()).get(0);
+
+    assertThat(page).contains("(name: a \\(b\\) \\\\ c?d ? é) Tj T*");
+    assertThat(page).contains("(long: " + "x".repeat(89) + ") Tj T*");
+    assertThat(page).contains("(" + "y".repeat(19) + " null) Tj T*");
+  }
+
+  private String pdf() {
+    return out.toString(StandardCharsets.ISO_8859_1);
+  }
+
+  private static List<Long> xrefOffsets(String pdf, int xref) {
+    String[] header = pdf.substring(xref).split("\n", 3);
+    int size = Integer.parseInt(header[1].split(" ")[1]);
+    Matcher entry = XREF_ENTRY.matcher(header[2]);
+    List<Long> offsets = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      assertThat(entry.find()).isTrue();
+      assertThat(entry.group(3)).isEqualTo(i == 0 ? "f" : "n");
+      offsets.add(Long.parseLong(entry.group(1)));
+    }
+    return offsets;
+  }
+
+  /** Each page's content, checked against the length its stream declares. */
+  private static List<String> contentStreams(String pdf) {
+    List<String> streams = new ArrayList<>();
+    Matcher stream = STREAM.matcher(pdf);
+    while (stream.find()) {
+      int length = Integer.parseInt(stream.group(1));
+      String content = pdf.substring(stream.end(), stream.end() + length);
+      assertThat(pdf.substring(stream.end() + length)).startsWith("\nendstream\nendobj\n");
+      streams.add(content);
+    }
+    return streams;
+  }
+
+  private static String after(String text, String marker) {
+    int at = text.lastIndexOf(marker);
+    assertThat(at).isNotNegative();
+    return text.substring(at + marker.length());
+  }
+
+  private static int count(String text, String needle) {
+    int count = 0;
+    for (int at = text.indexOf(needle); at >= 0; at = text.indexOf(needle, at + 1)) {
+      count++;
+    }
+    return count;
+  }
+}
@@ -0,0 +1,422 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.twelvenexus.oneplan.analytics.enums.ReportRunStatus;
+import com.twelvenexus.oneplan.analytics.enums.ReportType;
+import com.twelvenexus.oneplan.analytics.model.Report;
+import com.twelvenexus.oneplan.analytics.report.ReportExecutor.ReportTask;
+import com.twelvenexus.oneplan.analytics.repository.ReportRunRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ReportExecutorTests {
+
+  private static final String OWNER = "instance-1";
+  private static final Duration WAIT = Duration.ofSeconds(10);
+
+  private final UUID tenantA = UUID.randomUUID();
+  private final UUID tenantB = UUID.randomUUID();
+  private final UUID tenantC = UUID.randomUUID();
+  private final StubRunRepository runRepository = new StubRunRepository();
+  private final Queue<String> started = new ConcurrentLinkedQueue<>();
+
+  private Duration cancelPollInterval = Duration.ofMinutes(1);
+  private ReportExecutor executor;
+
+  @AfterEach
+  void close() {
+    if (executor != null) {
+      executor.close();
+    }
+  }
+
+  @Test
+  void queuedTenantsAreServedInTurn() throws Exception {
+    executor(1, 1, Duration.ofMinutes(1));
+    Gate gate = new Gate();
+
+    CompletableFuture<ReportRunStatus> first = submit(tenantA, "a1", gate);
+    awaitStarted("a1");
+    List<CompletableFuture<ReportRunStatus>> rest =
+        List.of(
+            submit(tenantA, "a2", gate),
+            submit(tenantA, "a3", gate),
+            submit(tenantB, "b1", gate),
+            submit(tenantC, "c1", gate));
+    assertThat(executor.queued()).isEqualTo(4);
+
+    // With one worker, letting one run through at a time shows the order they start in
+    for (int count = 2; count <= 5; count++) {
+      gate.open(1);
+      int startedCount = count;
+      await(() -> started.size() == startedCount);
+    }
+    gate.open(1);
+
+    assertThat(started).containsExactly("a1", "a2", "b1", "c1", "a3");
+    assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SUCCEEDED);
+    for (CompletableFuture<ReportRunStatus> completion : rest) {
+      assertThat(completion.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SUCCEEDED);
+    }
+    awaitIdle();
+  }
+
+  @Test
+  void tenantsAreCappedAndQueuedRunsCanBeCancelled() throws Exception {
+    executor(4, 2, Duration.ofMinutes(1));
+    Gate gate = new Gate();
+    Gate gateB = new Gate();
+
+    submit(tenantA, "a1", gate);
+    submit(tenantA, "a2", gate);
+    Report a3 = report(tenantA);
+    CompletableFuture<ReportRunStatus> third = executor.submit(a3, null, null, task("a3", gate));
+    CompletableFuture<ReportRunStatus> fourth = submit(tenantA, "a4", gate);
+    submit(tenantB, "b1", gateB);
+    awaitStarted("a1", "a2", "b1");
+
+    // Two of the four workers are free, but tenant A already has both of its own
+    assertThat(executor.running()).isEqualTo(3);
+    assertThat(executor.queued()).isEqualTo(2);
+
+    assertThat(executor.cancel(a3.getId())).isTrue();
+    assertThat(third.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.CANCELLED);
+    assertThat(executor.queued()).isEqualTo(1);
+    assertThat(runRepository.claims).doesNotContainKey(a3.getId());
+
+    // Only a slot of tenant A's own lets its next run start
+    gateB.open(1);
+    Thread.sleep(100);
+    assertThat(started).doesNotContain("a4");
+    gate.open(1);
+    awaitStarted("a1", "a2", "b1", "a4");
+    gate.open(2);
+    assertThat(fourth.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SUCCEEDED);
+    awaitIdle();
+    assertThat(executor.queued()).isZero();
+  }
+
+  @Test
+  void runsStoppedWhileClaimingAreRecordedWithoutGenerating() throws Exception {
+    executor(1, 1, Duration.ofMinutes(1));
+    Report report = report(tenantA);
+    runRepository.claimGate = new CountDownLatch(1);
+
+    CompletableFuture<ReportRunStatus> completion =
+        executor.submit(report, null, null, task("a1", new Gate()));
+    assertThat(runRepository.claiming.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(executor.cancel(report.getId())).isTrue();
+    assertThat(completion.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.CANCELLED);
+
+    // The claim is still being made, and its thread holds the slot
+    assertThat(executor.running()).isEqualTo(1);
+    assertThat(runRepository.outcomes).isEmpty();
+
+    runRepository.claimGate.countDown();
+    awaitIdle();
+    assertThat(started).isEmpty();
+    assertThat(runRepository.outcomes).containsExactly(Map.entry(report.getId(), "CANCELLED"));
+    // Recorded with the interrupt that stopped the run cleared
+    assertThat(runRepository.interruptedWhileFinishing).isFalse();
+  }
+
+  @Test
+  void runsAlreadyClaimedElsewhereAreSkipped() throws Exception {
+    executor(1, 1, Duration.ofMinutes(1));
+    Report report = report(tenantA);
+    runRepository.heldElsewhere.add(report.getId());
+
+    CompletableFuture<ReportRunStatus> completion =
+        executor.submit(report, null, null, task("a1", new Gate()));
+
+    assertThat(completion.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SKIPPED);
+    awaitIdle();
+    assertThat(started).isEmpty();
+    assertThat(runRepository.outcomes).isEmpty();
+  }
+
+  @Test
+  void runsPastTheTimeoutAreInterrupted() throws Exception {
+    executor(1, 1, Duration.ofMillis(100));
+    Report report = report(tenantA);
+
+    CompletableFuture<ReportRunStatus> completion =
+        executor.submit(
+            report,
+            null,
+            null,
+            () -> {
+              Thread.sleep(WAIT.toMillis());
+              return "late";
+            });
+
+    assertThat(completion.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.TIMED_OUT);
+    awaitIdle();
+    assertThat(runRepository.outcomes).containsExactly(Map.entry(report.getId(), "TIMED_OUT"));
+  }
+
+  @Test
+  void stoppedRunsKeepTheirSlotUntilTheirThreadReturns() throws Exception {
+    executor(1, 1, Duration.ofMinutes(1));
+    Report stuck = report(tenantA);
+    CountDownLatch blocked = new CountDownLatch(1);
+    CompletableFuture<ReportRunStatus> stopped =
+        executor.submit(
+            stuck,
+            null,
+            null,
+            () -> {
+              started.add("stuck");
+              awaitUninterruptibly(blocked); // Like a query that cannot be interrupted
+              return "ignored";
+            });
+    awaitStarted("stuck");
+
+    assertThat(executor.cancel(stuck.getId())).isTrue();
+    assertThat(stopped.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.CANCELLED);
+    CompletableFuture<ReportRunStatus> next = submit(tenantB, "b1", new Gate(1));
+
+    Thread.sleep(100);
+    assertThat(started).containsExactly("stuck");
+    assertThat(executor.running()).isEqualTo(1);
+    assertThat(executor.queued()).isEqualTo(1);
+
+    blocked.countDown();
+    assertThat(next.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SUCCEEDED);
+    awaitIdle();
+    // What the stopped run produced in the end is discarded
+    assertThat(runRepository.outcomes).containsEntry(stuck.getId(), "CANCELLED");
+  }
+
+  @Test
+  void reportsRunOnceAtATimeAndAgainOnceFinished() throws Exception {
+    executor(2, 2, Duration.ofMinutes(1));
+    Report report = report(tenantA);
+    Gate gate = new Gate();
+
+    CompletableFuture<ReportRunStatus> first = executor.submit(report, null, null, task("r", gate));
+    assertThat(executor.submit(report, null, null, task("again", gate))).isSameAs(first);
+    gate.open(1);
+    assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SUCCEEDED);
+    assertThat(runRepository.outcomes).containsExactly(Map.entry(report.getId(), "SUCCEEDED"));
+
+    CompletableFuture<ReportRunStatus> failed =
+        executor.submit(
+            report,
+            null,
+            null,
+            () -> {
+              throw new IllegalStateException("boom");
+            });
+    assertThat(failed).isNotSameAs(first);
+    assertThat(failed.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.FAILED);
+    assertThat(runRepository.results).containsEntry(report.getId(), "Error: boom");
+    awaitIdle();
+    assertThat(started).containsExactly("r");
+  }
+
+  @Test
+  void exportsShareTheLimitsButNeitherClaimNorRecord() throws Exception {
+    executor(1, 1, Duration.ofMinutes(1));
+    Report report = report(tenantA);
+    Gate gate = new Gate();
+
+    CompletableFuture<ReportRunStatus> run = executor.submit(report, null, null, task("run", gate));
+    CompletableFuture<ReportRunStatus> export = executor.submitExport(report, task("export", gate));
+    awaitStarted("run");
+    assertThat(executor.queued()).isEqualTo(1);
+
+    gate.open(2);
+    assertThat(run.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SUCCEEDED);
+    assertThat(export.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.SUCCEEDED);
+    assertThat(started).containsExactly("run", "export");
+
+    // Runs elsewhere do not hold exports back, and exports leave the last run alone
+    runRepository.heldElsewhere.add(report.getId());
+    gate.open(1);
+    assertThat(executor.submitExport(report, task("again", gate)).get(10, TimeUnit.SECONDS))
+        .isEqualTo(ReportRunStatus.SUCCEEDED);
+    assertThat(runRepository.outcomes).containsExactly(Map.entry(report.getId(), "SUCCEEDED"));
+    assertThat(runRepository.results).containsExactly(Map.entry(report.getId(), "run"));
+    awaitIdle();
+  }
+
+  @Test
+  void cancellationsRequestedElsewhereArePickedUp() throws Exception {
+    cancelPollInterval = Duration.ofMillis(20);
+    executor(1, 1, Duration.ofMinutes(1));
+    Report report = report(tenantA);
+    CompletableFuture<ReportRunStatus> completion =
+        executor.submit(report, null, null, task("a1", new Gate()));
+    awaitStarted("a1");
+
+    runRepository.cancelRequested.add(report.getId());
+
+    assertThat(completion.get(10, TimeUnit.SECONDS)).isEqualTo(ReportRunStatus.CANCELLED);
+    awaitIdle();
+  }
+
+  private void executor(int workers, int perTenant, Duration timeout) {
+    executor =
+        new ReportExecutor(
+            runRepository,
+            new SimpleMeterRegistry(),
+            OWNER,
+            workers,
+            perTenant,
+            timeout,
+            cancelPollInterval);
+  }
+
+  private CompletableFuture<ReportRunStatus> submit(UUID tenantId, String name, Gate gate) {
+    return executor.submit(report(tenantId), null, null, task(name, gate));
+  }
+
+  /** Notes that the run started, then waits at the gate. */
+  private ReportTask task(String name, Gate gate) {
+    return () -> {
+      started.add(name);
+      gate.pass();
+      return name;
+    };
+  }
+
+  private void awaitStarted(String... names) throws InterruptedException {
+    await(() -> started.containsAll(List.of(names)));
+    assertThat(started).containsExactlyInAnyOrder(names);
+  }
+
+  private void awaitIdle() throws InterruptedException {
+    await(() -> executor.running() == 0 && executor.queued() == 0);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + WAIT.toNanos();
+    while (!condition.getAsBoolean()) {
+      assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  private static Report report(UUID tenantId) {
+    Report report = new Report();
+    report.setId(UUID.randomUUID());
+    report.setTenantId(tenantId);
+    report.setType(ReportType.PROJECT_SUMMARY);
+    return report;
+  }
+
+  /** Waits like a blocking driver call that swallows interrupts, and keeps the flag set after. */
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Lets runs through one permit at a time. */
+  private static final class Gate {
+
+    private final Semaphore permits;
+
+    Gate() {
+      this(0);
+    }
+
+    Gate(int permits) {
+      this.permits = new Semaphore(permits);
+    }
+
+    void open(int count) {
+      permits.release(count);
+    }
+
+    void pass() throws InterruptedException {
+      permits.acquire();
+    }
+  }
+
+  /** Keeps claims and outcomes in memory, as the reports table would. */
+  private static final class StubRunRepository extends ReportRunRepository {
+
+    final Map<UUID, String> claims = new ConcurrentHashMap<>();
+    final Map<UUID, String> outcomes = new ConcurrentHashMap<>();
+    final Map<UUID, String> results = new ConcurrentHashMap<>();
+    final Set<UUID> heldElsewhere = ConcurrentHashMap.newKeySet();
+    final Set<UUID> cancelRequested = ConcurrentHashMap.newKeySet();
+    final CountDownLatch claiming = new CountDownLatch(1);
+    volatile CountDownLatch claimGate;
+    volatile boolean interruptedWhileFinishing;
+
+    StubRunRepository() {
+      super(null);
+    }
+
+    @Override
+    public boolean claim(
+        UUID reportId,
+        String owner,
+        LocalDateTime now,
+        LocalDateTime leaseUntil,
+        LocalDateTime dueBy,
+        LocalDateTime nextRunAt) {
+      claiming.countDown();
+      CountDownLatch gate = claimGate;
+      if (gate != null) {
+        awaitUninterruptibly(gate);
+      }
+      return !heldElsewhere.contains(reportId) && claims.putIfAbsent(reportId, owner) == null;
+    }
+
+    @Override
+    public void finish(
+        UUID reportId,
+        String owner,
+        ReportRunStatus status,
+        LocalDateTime finishedAt,
+        long durationMs,
+        String result) {
+      interruptedWhileFinishing |= Thread.currentThread().isInterrupted();
+      if (claims.remove(reportId, owner)) {
+        outcomes.put(reportId, status.name());
+        if (result != null) {
+          results.put(reportId, result);
+        }
+      }
+    }
+
+    @Override
+    public boolean requestCancel(UUID reportId, LocalDateTime now) {
+      return claims.containsKey(reportId) && cancelRequested.add(reportId);
+    }
+
+    @Override
+    public List<UUID> findCancelRequested(String owner) {
+      return cancelRequested.stream().filter(id -> owner.equals(claims.get(id))).toList();
+    }
+  }
+}
@@ -0,0 +1,157 @@
+package com.twelvenexus.oneplan.analytics.report;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class ReportSchedulerTests {
+
+  private static final String HOURLY = "0 * * * *";
+  private static final LocalDateTime START = LocalDateTime.of(2025, 3, 12, 0, 0);
+  private static final LocalDateTime CREATED = START.plusMinutes(30);
+
+  private final ReportSchedule schedule = new ReportSchedule(Duration.ofMinutes(10));
+  private final VirtualClock clock = new VirtualClock(START);
+
+  @Test
+  void acceptsClassicAndSecondsCron() {
+    assertThat(ReportSchedule.parse("30 2 * * MON").next(START))
+        .isEqualTo(LocalDateTime.of(2025, 3, 17, 2, 30));
+    assertThat(ReportSchedule.parse("15 30 2 * * *").next(START))
+        .isEqualTo(LocalDateTime.of(2025, 3, 12, 2, 30, 15));
+    assertThatThrownBy(() -> ReportSchedule.parse("every day"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void jitterSpreadsSharedSchedulesEvenly() {
+    int[] buckets = new int[60]; // Ten-second buckets over the ten-minute window
+    for (int i = 0; i < 6000; i++) {
+      UUID id = UUID.randomUUID();
+      LocalDateTime next = schedule.nextRun(id, HOURLY, CREATED);
+      assertThat(next).isBetween(START.plusHours(1), START.plusHours(1).plusMinutes(10));
+      assertThat(schedule.nextRun(id, HOURLY, CREATED)).isEqualTo(next);
+      buckets[(int) Duration.between(START.plusHours(1), next).toSeconds() / 10]++;
+    }
+    for (int count : buckets) {
+      assertThat(count).isBetween(60, 140);
+    }
+  }
+
+  @Test
+  void eachRunFiresOnceOnTimeAcrossInstances() {
+    // Two instances share the reports table; each polls and queues what is due soon
+    Map<UUID, LocalDateTime> nextRunAt = new HashMap<>();
+    Map<UUID, List<LocalDateTime>> runs = new HashMap<>();
+    int[] perMinute = new int[3 * 60];
+    for (int i = 0; i < 1000; i++) {
+      UUID id = UUID.randomUUID();
+      nextRunAt.put(id, schedule.nextRun(id, HOURLY, CREATED));
+      runs.put(id, new ArrayList<>());
+    }
+    List<ReportScheduler> instances =
+        List.of(new ReportScheduler(clock), new ReportScheduler(clock));
+
+    for (int second = 0; second < 3 * 3600; second++) {
+      LocalDateTime now = clock.now();
+      if (second % 60 == 0) {
+        for (ReportScheduler scheduler : instances) {
+          nextRunAt.forEach(
+              (id, dueAt) -> {
+                if (dueAt.isBefore(now.plusMinutes(1))) {
+                  scheduler.schedule(id, dueAt, () -> claim(id, dueAt, nextRunAt, runs));
+                }
+              });
+        }
+      }
+      for (ReportScheduler scheduler : instances) {
+        scheduler.runDue();
+      }
+      clock.advance(Duration.ofSeconds(1));
+    }
+    runs.values().stream()
+        .flatMap(List::stream)
+        .forEach(ranAt -> perMinute[(int) Duration.between(START, ranAt).toMinutes()]++);
+
+    runs.forEach(
+        (id, ranAt) -> {
+          LocalDateTime first = schedule.nextRun(id, HOURLY, CREATED);
+          assertThat(ranAt).containsExactly(first, first.plusHours(1));
+        });
+    for (int minute = 0; minute < perMinute.length; minute++) {
+      int expected = minute >= 60 && minute % 60 < 10 ? 100 : 0;
+      assertThat(perMinute[minute]).isBetween(expected / 2, expected * 3 / 2);
+    }
+  }
+
+  @Test
+  void rescheduleReplacesTheEntry() {
+    ReportScheduler scheduler = new ReportScheduler(clock);
+    UUID id = UUID.randomUUID();
+    List<String> fired = new ArrayList<>();
+    scheduler.schedule(id, START.plusMinutes(5), () -> fired.add("old"));
+    scheduler.schedule(id, START.plusMinutes(2), () -> fired.add("new"));
+
+    clock.advance(Duration.ofMinutes(10));
+    assertThat(scheduler.runDue()).isEqualTo(1);
+    assertThat(fired).containsExactly("new");
+    assertThat(scheduler.size()).isZero();
+  }
+
+  /** The claim: runs only if still due, moving the report to its next run. */
+  private void claim(
+      UUID id,
+      LocalDateTime dueAt,
+      Map<UUID, LocalDateTime> nextRunAt,
+      Map<UUID, List<LocalDateTime>> runs) {
+    if (nextRunAt.get(id).isAfter(dueAt)) {
+      return; // The other instance ran it
+    }
+    nextRunAt.put(id, schedule.nextRun(id, HOURLY, dueAt));
+    runs.get(id).add(clock.now());
+  }
+
+  private static final class VirtualClock extends Clock {
+
+    private Instant instant;
+
+    VirtualClock(LocalDateTime start) {
+      this.instant = start.toInstant(ZoneOffset.UTC);
+    }
+
+    LocalDateTime now() {
+      return LocalDateTime.now(this);
+    }
+
+    void advance(Duration duration) {
+      instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package com.twelvenexus.oneplan.analytics.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.twelvenexus.oneplan.analytics.dto.WidgetLayoutDto;
+import com.twelvenexus.oneplan.analytics.model.Dashboard;
+import com.twelvenexus.oneplan.analytics.model.DashboardWidget;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+/** Layout statements on an in-memory database; each test rolls back. */
+@DataJpaTest(
+    properties = {
+      "spring.flyway.enabled=false",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+    })
+@Import(DashboardLayoutRepository.class)
+class DashboardLayoutRepositoryTests {
+
+  private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 12, 9, 0);
+
+  private final UUID tenant = UUID.randomUUID();
+
+  @Autowired private TestEntityManager entityManager;
+  @Autowired private DashboardLayoutRepository layoutRepository;
+  @Autowired private DashboardWidgetRepository widgetRepository;
+
+  @Test
+  void nullFieldsKeepTheirCurrentValue() {
+    Dashboard dashboard = dashboard(tenant, 3);
+    List<DashboardWidget> widgets = dashboard.getWidgets();
+
+    int matched =
+        layoutRepository.updateLayout(
+            dashboard.getId(),
+            List.of(
+                layout(widgets.get(0).getId(), 2, null, null),
+                layout(widgets.get(2).getId(), 0, 12, null),
+                layout(widgets.get(1).getId(), null, null, 8)),
+            NOW);
+    entityManager.clear();
+
+    assertThat(matched).isEqualTo(3);
+    assertLayout(widgets.get(0).getId(), 2, 6, 4);
+    assertLayout(widgets.get(1).getId(), 1, 6, 8);
+    assertLayout(widgets.get(2).getId(), 0, 12, 4);
+    assertThat(widget(widgets.get(0).getId()).getUpdatedAt()).isEqualTo(NOW);
+  }
+
+  @Test
+  void layoutWithoutAnyValueOnlyTouchesTheWidgets() {
+    Dashboard dashboard = dashboard(tenant, 2);
+    UUID widgetId = dashboard.getWidgets().get(1).getId();
+
+    int matched =
+        layoutRepository.updateLayout(
+            dashboard.getId(), List.of(layout(widgetId, null, null, null)), NOW);
+    entityManager.clear();
+
+    assertThat(matched).isEqualTo(1);
+    assertLayout(widgetId, 1, 6, 4);
+    assertThat(widget(widgetId).getUpdatedAt()).isEqualTo(NOW);
+  }
+
+  @Test
+  void widgetsOfOtherDashboardsAreNeitherMatchedNorChanged() {
+    Dashboard dashboard = dashboard(tenant, 1);
+    Dashboard other = dashboard(tenant, 1);
+    UUID foreign = other.getWidgets().get(0).getId();
+
+    int matched =
+        layoutRepository.updateLayout(
+            dashboard.getId(),
+            List.of(
+                layout(dashboard.getWidgets().get(0).getId(), 5, null, null),
+                layout(foreign, 7, 1, 1),
+                layout(UUID.randomUUID(), 9, null, null)),
+            NOW);
+    entityManager.clear();
+
+    // The caller compares this with the number of layouts to reject the edit
+    assertThat(matched).isEqualTo(1);
+    assertLayout(foreign, 0, 6, 4);
+  }
+
+  @Test
+  void closingTheGapShiftsOnlyLaterWidgetsOfTheDashboard() {
+    Dashboard dashboard = dashboard(tenant, 4);
+    Dashboard other = dashboard(tenant, 4);
+    List<DashboardWidget> widgets = new ArrayList<>(dashboard.getWidgets());
+    dashboard.getWidgets().remove(widgets.get(1));
+    entityManager.remove(widgets.get(1));
+    entityManager.flush();
+
+    layoutRepository.closeGap(dashboard.getId(), 1, NOW);
+    entityManager.clear();
+
+    assertThat(widget(widgets.get(0).getId()).getPosition()).isZero();
+    assertThat(widget(widgets.get(2).getId()).getPosition()).isEqualTo(1);
+    assertThat(widget(widgets.get(3).getId()).getPosition()).isEqualTo(2);
+    assertThat(widget(widgets.get(3).getId()).getUpdatedAt()).isEqualTo(NOW);
+    assertThat(other.getWidgets())
+        .allSatisfy(w -> assertThat(widget(w.getId()).getPosition()).isEqualTo(w.getPosition()));
+  }
+
+  @Test
+  void touchMovesTheVersionByAtLeastASecondWithinTheTenant() {
+    UUID dashboardId = dashboard(tenant, 0).getId();
+    entityManager.clear();
+    LocalDateTime version = entityManager.find(Dashboard.class, dashboardId).getUpdatedAt();
+    LocalDateTime later = version.plusMinutes(5).withNano(0);
+
+    assertThat(layoutRepository.touch(dashboardId, UUID.randomUUID(), later)).isFalse();
+    // NOW lies before the current version, so the version moves by the second instead
+    assertThat(layoutRepository.touch(dashboardId, tenant, NOW)).isTrue();
+    assertThat(version(dashboardId)).isEqualTo(version.plusSeconds(1));
+    assertThat(layoutRepository.touch(dashboardId, tenant, later)).isTrue();
+    assertThat(version(dashboardId)).isEqualTo(later);
+  }
+
+  @Test
+  void widgetsAreOnlyFoundWithinTheirTenant() {
+    Dashboard dashboard = dashboard(tenant, 1);
+    UUID widgetId = dashboard.getWidgets().get(0).getId();
+    entityManager.clear();
+
+    assertThat(widgetRepository.findByIdAndTenantId(widgetId, UUID.randomUUID())).isEmpty();
+    assertThat(widgetRepository.findByIdAndTenantId(UUID.randomUUID(), tenant)).isEmpty();
+    DashboardWidget found = widgetRepository.findByIdAndTenantId(widgetId, tenant).orElseThrow();
+    assertThat(found.getDashboard().getId()).isEqualTo(dashboard.getId());
+  }
+
+  private Dashboard dashboard(UUID tenantId, int widgets) {
+    Dashboard dashboard = new Dashboard();
+    dashboard.setTenantId(tenantId);
+    dashboard.setName("Delivery");
+    dashboard.setOwnerId(UUID.randomUUID());
+    dashboard.setWidgets(new ArrayList<>());
+    entityManager.persist(dashboard);
+    for (int position = 0; position < widgets; position++) {
+      DashboardWidget widget = new DashboardWidget();
+      widget.setDashboard(dashboard);
+      widget.setTitle("Widget " + position);
+      widget.setType("chart");
+      widget.setPosition(position);
+      widget.setWidth(6);
+      widget.setHeight(4);
+      entityManager.persist(widget);
+      dashboard.getWidgets().add(widget);
+    }
+    entityManager.flush();
+    return dashboard;
+  }
+
+  private LocalDateTime version(UUID dashboardId) {
+    entityManager.clear();
+    return entityManager.find(Dashboard.class, dashboardId).getUpdatedAt();
+  }
+
+  private DashboardWidget widget(UUID widgetId) {
+    return entityManager.find(DashboardWidget.class, widgetId);
+  }
+
+  private void assertLayout(UUID widgetId, int position, int width, int height) {
+    DashboardWidget widget = widget(widgetId);
+    assertThat(widget.getPosition()).isEqualTo(position);
+    assertThat(widget.getWidth()).isEqualTo(width);
+    assertThat(widget.getHeight()).isEqualTo(height);
+  }
+
+  private static WidgetLayoutDto layout(UUID widgetId, Integer position, Integer width, Integer height) {
+    WidgetLayoutDto layout = new WidgetLayoutDto();
+    layout.setId(widgetId);
+    layout.setPosition(position);
+    layout.setWidth(width);
+    layout.setHeight(height);
+    return layout;
+  }
+}
@@ -0,0 +1,252 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.twelvenexus.oneplan.analytics.dashboard.DashboardSnapshots;
+import com.twelvenexus.oneplan.analytics.dto.WidgetLayoutDto;
+import com.twelvenexus.oneplan.analytics.model.Dashboard;
+import com.twelvenexus.oneplan.analytics.model.DashboardWidget;
+import com.twelvenexus.oneplan.analytics.repository.DashboardLayoutRepository;
+import com.twelvenexus.oneplan.analytics.repository.DashboardRepository;
+import com.twelvenexus.oneplan.analytics.repository.DashboardWidgetRepository;
+import com.twelvenexus.oneplan.analytics.service.MetricService;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Widget edits on an in-memory database. Tests run outside a transaction, so each service call
+ * commits or rolls back on its own, as it does behind the controller.
+ */
+@DataJpaTest(
+    properties = {
+      "spring.flyway.enabled=false",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+    })
+@Import({DashboardServiceImpl.class, DashboardLayoutRepository.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DashboardServiceImplTests {
+
+  // Each test has its own tenant, so the rows other tests committed never show up
+  private final UUID tenant = UUID.randomUUID();
+
+  @Autowired private DashboardServiceImpl dashboardService;
+  @Autowired private DashboardRepository dashboardRepository;
+  @Autowired private DashboardWidgetRepository widgetRepository;
+
+  @MockitoBean private DashboardSnapshots dashboardSnapshots;
+  @MockitoBean private MetricService metricService;
+
+  @Test
+  void layoutMovesAndResizesOnlyTheGivenFields() {
+    Dashboard dashboard = dashboard(tenant, 3);
+    List<UUID> widgets = widgetIds(dashboard);
+    LocalDateTime version = version(dashboard);
+
+    dashboardService.updateLayout(
+        dashboard.getId(),
+        tenant,
+        List.of(layout(widgets.get(0), 2, 12, null), layout(widgets.get(2), 0, null, null)));
+
+    assertThat(layouts(dashboard))
+        .containsExactly(
+            List.of(widgets.get(2), 0, 6, 4),
+            List.of(widgets.get(1), 1, 6, 4),
+            List.of(widgets.get(0), 2, 12, 4));
+    assertThat(version(dashboard)).isAfter(version);
+  }
+
+  @Test
+  void unknownWidgetRollsBackTheWholeLayout() {
+    Dashboard dashboard = dashboard(tenant, 2);
+    List<List<Object>> before = layouts(dashboard);
+    LocalDateTime version = version(dashboard);
+
+    assertThatThrownBy(
+            () ->
+                dashboardService.updateLayout(
+                    dashboard.getId(),
+                    tenant,
+                    List.of(
+                        layout(widgetIds(dashboard).get(0), 1, null, null),
+                        layout(UUID.randomUUID(), 0, null, null))))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Widget not found");
+
+    assertThat(layouts(dashboard)).isEqualTo(before);
+    assertThat(version(dashboard)).isEqualTo(version);
+  }
+
+  @Test
+  void widgetOfAnotherDashboardRollsBackTheWholeLayout() {
+    Dashboard dashboard = dashboard(tenant, 2);
+    Dashboard foreign = dashboard(UUID.randomUUID(), 1);
+    List<List<Object>> before = layouts(dashboard);
+    List<List<Object>> foreignBefore = layouts(foreign);
+
+    assertThatThrownBy(
+            () ->
+                dashboardService.updateLayout(
+                    dashboard.getId(),
+                    tenant,
+                    List.of(
+                        layout(widgetIds(dashboard).get(1), 0, null, null),
+                        layout(widgetIds(foreign).get(0), 5, 1, 1))))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Widget not found");
+
+    assertThat(layouts(dashboard)).isEqualTo(before);
+    assertThat(layouts(foreign)).isEqualTo(foreignBefore);
+  }
+
+  @Test
+  void layoutOfAnotherTenantsDashboardIsNotFound() {
+    Dashboard dashboard = dashboard(tenant, 1);
+    List<List<Object>> before = layouts(dashboard);
+
+    assertThatThrownBy(
+            () ->
+                dashboardService.updateLayout(
+                    dashboard.getId(),
+                    UUID.randomUUID(),
+                    List.of(layout(widgetIds(dashboard).get(0), 3, null, null))))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Dashboard not found");
+
+    assertThat(layouts(dashboard)).isEqualTo(before);
+  }
+
+  @Test
+  void widgetListedTwiceIsRejectedBeforeAnythingChanges() {
+    Dashboard dashboard = dashboard(tenant, 2);
+    UUID widgetId = widgetIds(dashboard).get(0);
+    List<List<Object>> before = layouts(dashboard);
+    LocalDateTime version = version(dashboard);
+
+    assertThatThrownBy(
+            () ->
+                dashboardService.updateLayout(
+                    dashboard.getId(),
+                    tenant,
+                    List.of(layout(widgetId, 1, null, null), layout(widgetId, null, 3, null))))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("listed twice");
+
+    assertThat(layouts(dashboard)).isEqualTo(before);
+    assertThat(version(dashboard)).isEqualTo(version);
+  }
+
+  @Test
+  void removingAWidgetClosesTheGapInPositions() {
+    Dashboard dashboard = dashboard(tenant, 4);
+    List<UUID> widgets = widgetIds(dashboard);
+    LocalDateTime version = version(dashboard);
+
+    dashboardService.removeWidget(widgets.get(1), tenant);
+
+    assertThat(widgetRepository.findById(widgets.get(1))).isEmpty();
+    assertThat(layouts(dashboard))
+        .containsExactly(
+            List.of(widgets.get(0), 0, 6, 4),
+            List.of(widgets.get(2), 1, 6, 4),
+            List.of(widgets.get(3), 2, 6, 4));
+    assertThat(version(dashboard)).isAfter(version);
+  }
+
+  @Test
+  void widgetsOfAnotherTenantCanBeNeitherRemovedNorUpdated() {
+    Dashboard dashboard = dashboard(tenant, 2);
+    UUID widgetId = widgetIds(dashboard).get(0);
+    UUID otherTenant = UUID.randomUUID();
+
+    assertThatThrownBy(() -> dashboardService.removeWidget(widgetId, otherTenant))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Widget not found");
+    assertThatThrownBy(
+            () -> dashboardService.updateWidget(widgetId, otherTenant, "Renamed", Map.of()))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Widget not found");
+
+    assertThat(layouts(dashboard)).hasSize(2);
+    assertThat(widgetRepository.findById(widgetId).orElseThrow().getTitle()).isEqualTo("Widget 0");
+  }
+
+  @Test
+  void updatingAWidgetMovesTheDashboardVersion() {
+    Dashboard dashboard = dashboard(tenant, 1);
+    UUID widgetId = widgetIds(dashboard).get(0);
+    LocalDateTime version = version(dashboard);
+
+    // Mutable, like the map the controller binds from the request body
+    Map<String, String> configuration = new HashMap<>(Map.of("color", "blue"));
+
+    DashboardWidget updated =
+        dashboardService.updateWidget(widgetId, tenant, "Renamed", configuration);
+
+    assertThat(updated.getTitle()).isEqualTo("Renamed");
+    assertThat(widgetRepository.findById(widgetId).orElseThrow().getTitle())
+        .isEqualTo("Renamed");
+    assertThat(version(dashboard)).isAfter(version);
+  }
+
+  private Dashboard dashboard(UUID tenantId, int widgets) {
+    Dashboard dashboard = new Dashboard();
+    dashboard.setTenantId(tenantId);
+    dashboard.setName("Delivery");
+    dashboard.setOwnerId(UUID.randomUUID());
+    dashboard.setWidgets(new ArrayList<>());
+    for (int position = 0; position < widgets; position++) {
+      DashboardWidget widget = new DashboardWidget();
+      widget.setDashboard(dashboard);
+      widget.setTitle("Widget " + position);
+      widget.setType("chart");
+      widget.setPosition(position);
+      widget.setWidth(6);
+      widget.setHeight(4);
+      dashboard.getWidgets().add(widget);
+    }
+    return dashboardRepository.save(dashboard);
+  }
+
+  private List<UUID> widgetIds(Dashboard dashboard) {
+    return dashboard.getWidgets().stream().map(DashboardWidget::getId).toList();
+  }
+
+  /** Id, position, width and height of the dashboard's widgets as committed, by position. */
+  private List<List<Object>> layouts(Dashboard dashboard) {
+    return widgetRepository.findAll().stream()
+        .filter(w -> w.getDashboard().getId().equals(dashboard.getId()))
+        .sorted(Comparator.comparing(DashboardWidget::getPosition))
+        .map(w -> List.<Object>of(w.getId(), w.getPosition(), w.getWidth(), w.getHeight()))
+        .toList();
+  }
+
+  private LocalDateTime version(Dashboard dashboard) {
+    return dashboardRepository
+        .findVersion(dashboard.getId(), dashboard.getTenantId())
+        .orElseThrow();
+  }
+
+  private static WidgetLayoutDto layout(
+      UUID widgetId, Integer position, Integer width, Integer height) {
+    WidgetLayoutDto layout = new WidgetLayoutDto();
+    layout.setId(widgetId);
+    layout.setPosition(position);
+    layout.setWidth(width);
+    layout.setHeight(height);
+    return layout;
+  }
+}
@@ -0,0 +1,177 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import static com.twelvenexus.oneplan.analytics.service.impl.MetricRollupServiceImpl.ROLLUP_LEASE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
+import com.twelvenexus.oneplan.analytics.dto.BackfillResultDto;
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.BackfillStatus;
+import com.twelvenexus.oneplan.analytics.repository.BackfillRepository;
+import com.twelvenexus.oneplan.analytics.repository.MetricAggregationRepository;
+import com.twelvenexus.oneplan.analytics.repository.RollupStateRepository;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import com.twelvenexus.oneplan.analytics.stream.MetricStreamHub;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class MetricRollupServiceImplTests {
+
+  private static final String INSTANCE = "analytics-1";
+  private static final Duration LEASE_TTL = Duration.ofMinutes(10);
+  private static final LocalDateTime FROM = LocalDateTime.of(2025, 3, 12, 9, 15);
+
+  private final MetricAggregationRepository aggregationRepository =
+      mock(MetricAggregationRepository.class);
+  private final RollupStateRepository stateRepository = mock(RollupStateRepository.class);
+  private final MetricStore metricStore = mock(MetricStore.class);
+  private final BackfillRepository backfillRepository = mock(BackfillRepository.class);
+  private final MetricRollupServiceImpl service =
+      new MetricRollupServiceImpl(
+          aggregationRepository,
+          stateRepository,
+          metricStore,
+          mock(MetricQueryCache.class),
+          mock(MetricStreamHub.class),
+          backfillRepository);
+
+  MetricRollupServiceImplTests() {
+    ReflectionTestUtils.setField(service, "batchSize", 500);
+    ReflectionTestUtils.setField(service, "allowedLateness", Duration.ofMinutes(5));
+    ReflectionTestUtils.setField(service, "maxBucketsPerRun", 168);
+    ReflectionTestUtils.setField(service, "backfillParallelism", 2);
+    ReflectionTestUtils.setField(service, "instanceId", INSTANCE);
+    ReflectionTestUtils.setField(service, "leaseTtl", LEASE_TTL);
+  }
+
+  @AfterEach
+  void stopBackfills() {
+    service.stopBackfills();
+  }
+
+  @Test
+  void rollupIsSkippedWhileAnotherInstanceHoldsTheLease() {
+    when(stateRepository.tryAcquireLease(ROLLUP_LEASE, INSTANCE, LEASE_TTL)).thenReturn(false);
+
+    service.rollUp();
+
+    verify(stateRepository, never()).findDirty(any(), anyInt());
+    verify(stateRepository, never()).releaseLease(any(), any());
+    verifyNoInteractions(metricStore, aggregationRepository);
+  }
+
+  @Test
+  void rollupRunsUnderTheLeaseAndReleasesIt() {
+    when(stateRepository.tryAcquireLease(ROLLUP_LEASE, INSTANCE, LEASE_TTL)).thenReturn(true);
+
+    service.rollUp();
+
+    // The first HOUR bucket is aggregated; coarser periods wait for the HOUR watermark
+    verify(metricStore).scanPeriod(any(), any(), eq(null), any());
+    verify(stateRepository).saveWatermark(eq(AggregationPeriod.HOUR), any());
+    verify(stateRepository).findDirty(AggregationPeriod.YEAR, 168);
+    verify(stateRepository).releaseLease(ROLLUP_LEASE, INSTANCE);
+  }
+
+  @Test
+  void rollupStopsOnceTheLeaseIsLost() {
+    when(stateRepository.tryAcquireLease(ROLLUP_LEASE, INSTANCE, LEASE_TTL))
+        .thenReturn(true, true, false);
+
+    service.rollUp();
+
+    verify(stateRepository).findDirty(AggregationPeriod.HOUR, 168);
+    verify(stateRepository, never()).findDirty(eq(AggregationPeriod.DAY), anyInt());
+    verify(stateRepository).releaseLease(ROLLUP_LEASE, INSTANCE);
+  }
+
+  @Test
+  void failedRollupReleasesTheLease() {
+    when(stateRepository.tryAcquireLease(ROLLUP_LEASE, INSTANCE, LEASE_TTL)).thenReturn(true);
+    doThrow(new IllegalStateException("Store down"))
+        .when(metricStore)
+        .scanPeriod(any(), any(), any(), any());
+
+    assertThatThrownBy(service::rollUp).hasMessage("Store down");
+
+    verify(stateRepository).releaseLease(ROLLUP_LEASE, INSTANCE);
+  }
+
+  @Test
+  void backfillRunsInTheBackgroundAndRecordsItsOutcome() throws InterruptedException {
+    UUID tenantId = UUID.randomUUID();
+    CountDownLatch proceed = new CountDownLatch(1);
+    when(metricStore.findTenants(any(), any()))
+        .thenAnswer(
+            call -> {
+              proceed.await(5, TimeUnit.SECONDS);
+              return List.of(tenantId);
+            });
+
+    BackfillResultDto started =
+        service.startBackfill(AggregationPeriod.HOUR, FROM, FROM.plusHours(2));
+
+    assertThat(started.getId()).isNotNull();
+    assertThat(started.getStatus()).isEqualTo(BackfillStatus.RUNNING);
+    assertThat(started.getFrom()).isEqualTo(LocalDateTime.of(2025, 3, 12, 9, 0));
+    assertThat(started.getTo()).isEqualTo(LocalDateTime.of(2025, 3, 12, 12, 0));
+    verify(backfillRepository).create(started, INSTANCE);
+    verify(backfillRepository, never()).finish(any());
+
+    proceed.countDown();
+
+    ArgumentCaptor<BackfillResultDto> outcome = ArgumentCaptor.forClass(BackfillResultDto.class);
+    verify(backfillRepository, timeout(5000)).finish(outcome.capture());
+    assertThat(outcome.getValue().getId()).isEqualTo(started.getId());
+    assertThat(outcome.getValue().getStatus()).isEqualTo(BackfillStatus.SUCCEEDED);
+    assertThat(outcome.getValue().getBucketsRebuilt()).isEqualTo(3);
+    assertThat(outcome.getValue().getFinishedAt()).isNotNull();
+    verify(metricStore, times(3)).scanPeriod(any(), any(), eq(tenantId), any());
+
+    // What the caller got back is not touched by the run
+    assertThat(started.getStatus()).isEqualTo(BackfillStatus.RUNNING);
+    assertThat(started.getBucketsRebuilt()).isZero();
+  }
+
+  @Test
+  void failedBackfillIsRecordedAsFailed() {
+    when(metricStore.findTenants(any(), any())).thenThrow(new IllegalStateException("Store down"));
+
+    BackfillResultDto started =
+        service.startBackfill(AggregationPeriod.DAY, FROM, FROM.plusDays(1));
+
+    ArgumentCaptor<BackfillResultDto> outcome = ArgumentCaptor.forClass(BackfillResultDto.class);
+    verify(backfillRepository, timeout(5000)).finish(outcome.capture());
+    assertThat(outcome.getValue().getId()).isEqualTo(started.getId());
+    assertThat(outcome.getValue().getStatus()).isEqualTo(BackfillStatus.FAILED);
+    assertThat(outcome.getValue().getError()).isEqualTo("Store down");
+  }
+
+  @Test
+  void emptyBackfillRangeIsRejectedUpFront() {
+    assertThatThrownBy(() -> service.startBackfill(AggregationPeriod.HOUR, FROM, FROM))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    verifyNoInteractions(backfillRepository);
+  }
+}
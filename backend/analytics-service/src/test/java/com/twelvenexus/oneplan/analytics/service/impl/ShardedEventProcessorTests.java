@@ -0,0 +1,259 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.twelvenexus.oneplan.analytics.cache.MetricQueryCache;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.leaderboard.Leaderboards;
+import com.twelvenexus.oneplan.analytics.model.AnalyticsEvent;
+import com.twelvenexus.oneplan.analytics.model.EventProcessorShard;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.repository.EventProcessingRepository;
+import com.twelvenexus.oneplan.analytics.store.MetricStore;
+import com.twelvenexus.oneplan.analytics.stream.MetricStreamHub;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ShardedEventProcessorTests {
+
+  private static final Duration LEASE_TTL = Duration.ofMinutes(5);
+  private static final UUID TENANT = UUID.randomUUID();
+  private static final int SHARD = ShardedEventProcessor.shardOf(TENANT);
+  private static final LocalDateTime EVENT_TIME =
+      LocalDateTime.now().minusHours(2).withMinute(10).withSecond(0).withNano(0);
+
+  private final EventTable table = new EventTable();
+  private final EventProcessingRepository repository = table.repository();
+  /** Every append, in order; the real store skips ids it already holds. */
+  private final List<Metric> appended = Collections.synchronizedList(new ArrayList<>());
+  private final MetricStore metricStore = mock(MetricStore.class);
+
+  ShardedEventProcessorTests() {
+    doAnswer(call -> appended.addAll(call.getArgument(0))).when(metricStore).append(any());
+  }
+
+  @Test
+  void metricsCarryTheEventTimeAndOneLoginMetricPerEvent() {
+    UUID user = UUID.randomUUID();
+    table.add("user.login", user, Map.of());
+    table.add("user.login", user, Map.of());
+    table.add("task.completed", user, Map.of("leadTime", 12.5, "priority", "high"));
+
+    processor("a", 10).processAll();
+
+    assertThat(appended)
+        .extracting(Metric::getType)
+        .containsExactly(
+            MetricType.USER_ACTIVE,
+            MetricType.USER_ACTIVE,
+            MetricType.TASK_LEAD_TIME,
+            MetricType.TASK_COMPLETED);
+    assertThat(appended).extracting(Metric::getTimestamp).containsOnly(EVENT_TIME);
+    assertThat(table.unprocessed()).isZero();
+  }
+
+  @Test
+  void metricIdsDoNotDependOnHowEventsArePaged() {
+    UUID user = UUID.randomUUID();
+    for (int i = 0; i < 5; i++) {
+      table.add("user.login", user, Map.of());
+      table.add("project.created", user, Map.of());
+    }
+
+    processor("a", 10).processAll();
+    List<Metric> onePage = List.copyOf(appended);
+    appended.clear();
+    table.reset();
+    processor("b", 3).processAll();
+
+    assertThat(appended).hasSize(10);
+    assertThat(appended).containsExactlyInAnyOrderElementsOf(onePage);
+  }
+
+  @Test
+  void shardOfADeadInstanceIsTakenOverAndItsPageReplayedIdempotently() {
+    UUID user = UUID.randomUUID();
+    table.add("user.login", user, Map.of());
+    table.add("task.completed", user, Map.of("cycleTime", 3.0));
+    table.add("user.login", user, Map.of());
+
+    // The first instance dies after appending the page, before marking or checkpointing it
+    table.crashOnMarkProcessed = true;
+    processor("a", 10).processAll();
+    List<Metric> beforeCrash = List.copyOf(appended);
+    assertThat(beforeCrash).hasSize(4);
+    table.crashOnMarkProcessed = false;
+
+    // Its lease is still live, so nobody else touches the shard
+    ShardedEventProcessor survivor = processor("b", 10);
+    survivor.processAll();
+    assertThat(appended).hasSize(4);
+
+    table.now = table.now.plus(LEASE_TTL).plusSeconds(1);
+    survivor.processAll();
+
+    List<Metric> replayed = appended.subList(4, appended.size());
+    // Same metrics and ids; only the time they were built at differs
+    assertThat(replayed)
+        .usingRecursiveComparison()
+        .ignoringFields("createdAt")
+        .isEqualTo(beforeCrash);
+    assertThat(new HashSet<>(appended.stream().map(Metric::getId).toList())).hasSize(4);
+    assertThat(table.shards.get(SHARD).getOwner()).isNull();
+    assertThat(table.shards.get(SHARD).getLastEventId()).isEqualTo(table.lastId());
+    assertThat(table.unprocessed()).isZero();
+  }
+
+  private ShardedEventProcessor processor(String instanceId, int pageSize) {
+    ShardedEventProcessor processor =
+        new ShardedEventProcessor(
+            repository,
+            metricStore,
+            mock(Leaderboards.class),
+            mock(MetricQueryCache.class),
+            mock(MetricStreamHub.class));
+    ReflectionTestUtils.setField(processor, "instanceId", instanceId);
+    ReflectionTestUtils.setField(processor, "pageSize", pageSize);
+    ReflectionTestUtils.setField(processor, "workers", 4);
+    ReflectionTestUtils.setField(processor, "delay", Duration.ofMinutes(5));
+    ReflectionTestUtils.setField(processor, "lateWindow", Duration.ofHours(1));
+    ReflectionTestUtils.setField(processor, "leaseTtl", LEASE_TTL);
+    return processor;
+  }
+
+  /** The events and shard collections, with lease expiry on a clock the test moves. */
+  private static final class EventTable {
+
+    final TreeMap<String, AnalyticsEvent> events = new TreeMap<>();
+    final Map<Integer, EventProcessorShard> shards = new ConcurrentHashMap<>();
+    volatile LocalDateTime now = LocalDateTime.now();
+    volatile boolean crashOnMarkProcessed;
+    private final Set<Integer> crashed = ConcurrentHashMap.newKeySet();
+
+    void add(String eventType, UUID userId, Map<String, Object> properties) {
+      AnalyticsEvent event = new AnalyticsEvent();
+      // Time-ordered like the ObjectIds the service assigns
+      event.setId(String.format("%024x", events.size() + 1));
+      event.setTenantId(TENANT);
+      event.setShard(SHARD);
+      event.setEntityId(UUID.randomUUID());
+      event.setEntityType("task");
+      event.setEventType(eventType);
+      event.setUserId(userId);
+      event.setProperties(properties);
+      event.setTimestamp(EVENT_TIME);
+      events.put(event.getId(), event);
+    }
+
+    String lastId() {
+      return events.lastKey();
+    }
+
+    synchronized long unprocessed() {
+      return events.values().stream().filter(event -> !event.isProcessed()).count();
+    }
+
+    /** Unprocesses every event and forgets the shards, as if processing had never run. */
+    synchronized void reset() {
+      events.values().forEach(event -> event.setProcessed(false));
+      shards.clear();
+    }
+
+    EventProcessingRepository repository() {
+      EventProcessingRepository repository = mock(EventProcessingRepository.class);
+      when(repository.findPage(anyInt(), any(), any(), anyInt()))
+          .thenAnswer(
+              call -> findPage(call.getArgument(0), call.getArgument(1), call.getArgument(3)));
+      doAnswer(
+              call -> {
+                markProcessed(call.getArgument(0));
+                return null;
+              })
+          .when(repository)
+          .markProcessed(any(), any());
+      when(repository.tryAcquire(anyInt(), any(), any()))
+          .thenAnswer(call -> tryAcquire(call.getArgument(0), call.getArgument(1)));
+      when(repository.saveCheckpoint(anyInt(), any(), any(), any()))
+          .thenAnswer(
+              call ->
+                  saveCheckpoint(call.getArgument(0), call.getArgument(1), call.getArgument(2)));
+      doAnswer(
+              call -> {
+                release(call.getArgument(0), call.getArgument(1));
+                return null;
+              })
+          .when(repository)
+          .release(anyInt(), any());
+      return repository;
+    }
+
+    private synchronized List<AnalyticsEvent> findPage(int shard, String afterId, int pageSize) {
+      Map<String, AnalyticsEvent> after = afterId == null ? events : events.tailMap(afterId, false);
+      return after.values().stream()
+          .filter(event -> event.getShard() == shard && !event.isProcessed())
+          .limit(pageSize)
+          .toList();
+    }
+
+    private synchronized void markProcessed(List<String> ids) {
+      if (crashOnMarkProcessed) {
+        crashed.add(events.get(ids.get(0)).getShard());
+        throw new IllegalStateException("Instance died");
+      }
+      ids.forEach(id -> events.get(id).setProcessed(true));
+    }
+
+    private synchronized Optional<EventProcessorShard> tryAcquire(int shard, String owner) {
+      EventProcessorShard state =
+          shards.computeIfAbsent(shard, id -> new EventProcessorShard(id, null, null, null, now));
+      if (state.getOwner() != null
+          && !state.getOwner().equals(owner)
+          && !state.getLeaseExpiresAt().isBefore(now)) {
+        return Optional.empty();
+      }
+      state.setOwner(owner);
+      state.setLeaseExpiresAt(now.plus(LEASE_TTL));
+      return Optional.of(
+          new EventProcessorShard(
+              shard, owner, state.getLeaseExpiresAt(), state.getLastEventId(), now));
+    }
+
+    private synchronized boolean saveCheckpoint(int shard, String owner, String lastEventId) {
+      EventProcessorShard state = shards.get(shard);
+      if (!owner.equals(state.getOwner())) {
+        return false;
+      }
+      state.setLastEventId(lastEventId);
+      state.setLeaseExpiresAt(now.plus(LEASE_TTL));
+      return true;
+    }
+
+    private synchronized void release(int shard, String owner) {
+      // A dead instance releases nothing; its lease has to expire
+      if (crashed.remove(shard)) {
+        return;
+      }
+      EventProcessorShard state = shards.get(shard);
+      if (owner.equals(state.getOwner())) {
+        state.setOwner(null);
+      }
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package com.twelvenexus.oneplan.analytics.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.twelvenexus.oneplan.analytics.enums.AggregationPeriod;
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.AggregatedMetric;
+import com.twelvenexus.oneplan.analytics.sketch.QuantileSketch;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class StreamingMetricAggregatorTests {
+
+  private static final LocalDateTime HOUR = LocalDateTime.of(2025, 3, 12, 9, 0);
+  private static final String TENANT = UUID.randomUUID().toString();
+  private static final String ENTITY = UUID.randomUUID().toString();
+
+  private final List<List<AggregatedMetric>> batches = new ArrayList<>();
+
+  @Test
+  void eachGroupOfTheOrderedStreamBecomesOneAggregate() {
+    StreamingMetricAggregator aggregator = aggregator(100);
+    for (int value = 1; value <= 100; value++) {
+      aggregator.accept(TENANT, ENTITY, "task", "TASK_LEAD_TIME", value);
+    }
+    // Same entity, but another type and another entity type
+    aggregator.accept(TENANT, ENTITY, "task", "TASK_CYCLE_TIME", 7);
+    aggregator.accept(TENANT, ENTITY, "project", "TASK_CYCLE_TIME", 8);
+    assertThat(batches).isEmpty();
+
+    aggregator.finish();
+
+    assertThat(aggregator.rows()).isEqualTo(102);
+    assertThat(aggregator.groups()).isEqualTo(3);
+    assertThat(batches).hasSize(1);
+    List<AggregatedMetric> aggregates = batches.get(0);
+    assertThat(aggregates)
+        .extracting(AggregatedMetric::getType)
+        .containsExactly(
+            MetricType.TASK_LEAD_TIME, MetricType.TASK_CYCLE_TIME, MetricType.TASK_CYCLE_TIME);
+    assertThat(aggregates)
+        .extracting(AggregatedMetric::getEntityType)
+        .containsExactly("task", "task", "project");
+
+    AggregatedMetric leadTime = aggregates.get(0);
+    assertThat(leadTime.getTenantId()).isEqualTo(UUID.fromString(TENANT));
+    assertThat(leadTime.getEntityId()).isEqualTo(UUID.fromString(ENTITY));
+    assertThat(leadTime.getPeriod()).isEqualTo(AggregationPeriod.HOUR);
+    assertThat(leadTime.getPeriodStart()).isEqualTo(HOUR);
+    assertThat(leadTime.getPeriodEnd()).isEqualTo(HOUR.plusHours(1));
+    assertThat(leadTime.getMinValue()).isEqualTo(1.0);
+    assertThat(leadTime.getMaxValue()).isEqualTo(100.0);
+    assertThat(leadTime.getSumValue()).isEqualTo(5050.0);
+    assertThat(leadTime.getAvgValue()).isEqualTo(50.5);
+    assertThat(leadTime.getCount()).isEqualTo(100);
+    assertThat(leadTime.getPercentiles()).containsOnlyKeys(50, 90, 95, 99);
+    assertThat(leadTime.getPercentiles().get(90)).isCloseTo(90.0, within(2.0));
+    assertThat(QuantileSketch.fromBytes(leadTime.getSketch()).count()).isEqualTo(100);
+
+    // Nothing of the first group leaks into the next
+    AggregatedMetric cycleTime = aggregates.get(1);
+    assertThat(cycleTime.getMinValue()).isEqualTo(7.0);
+    assertThat(cycleTime.getMaxValue()).isEqualTo(7.0);
+    assertThat(cycleTime.getCount()).isEqualTo(1);
+  }
+
+  @Test
+  void fullBatchesGoToTheSinkAsTheyFillAndTheRestOnFinish() {
+    StreamingMetricAggregator aggregator = aggregator(2);
+    for (int entity = 0; entity < 5; entity++) {
+      String entityId = new UUID(0, entity).toString();
+      aggregator.accept(TENANT, entityId, "task", "TASK_COMPLETED", 1);
+      aggregator.accept(TENANT, entityId, "task", "TASK_COMPLETED", 1);
+    }
+    // The fifth group is still open until finish
+    assertThat(batches).extracting(List::size).containsExactly(2, 2);
+
+    aggregator.finish();
+
+    assertThat(batches).extracting(List::size).containsExactly(2, 2, 1);
+    assertThat(batches.get(2).get(0).getEntityId()).isEqualTo(new UUID(0, 4));
+    assertThat(batches.get(2).get(0).getSumValue()).isEqualTo(2.0);
+  }
+
+  @Test
+  void emptyStreamEmitsNothing() {
+    StreamingMetricAggregator aggregator = aggregator(10);
+
+    aggregator.finish();
+
+    assertThat(batches).isEmpty();
+    assertThat(aggregator.groups()).isZero();
+  }
+
+  @Test
+  void finerAggregatesMergeIntoOneCoarserAggregate() {
+    QuantileSketch first = new QuantileSketch();
+    for (int value = 1; value <= 10; value++) {
+      first.add(value);
+    }
+    StreamingMetricAggregator aggregator = aggregator(10);
+
+    aggregator.acceptAggregate(
+        TENANT, ENTITY, "task", "TASK_LEAD_TIME", 1, 10, 55, 10, first.toBytes());
+    // Stored before sketches existed: min, max and the average stand in for its values
+    aggregator.acceptAggregate(TENANT, ENTITY, "task", "TASK_LEAD_TIME", 20, 40, 120, 4, null);
+    aggregator.finish();
+
+    AggregatedMetric merged = batches.get(0).get(0);
+    assertThat(aggregator.rows()).isEqualTo(2);
+    assertThat(merged.getMinValue()).isEqualTo(1.0);
+    assertThat(merged.getMaxValue()).isEqualTo(40.0);
+    assertThat(merged.getSumValue()).isEqualTo(175.0);
+    assertThat(merged.getCount()).isEqualTo(14);
+    assertThat(merged.getAvgValue()).isEqualTo(12.5);
+    assertThat(QuantileSketch.fromBytes(merged.getSketch()).count()).isEqualTo(14);
+    // 1 to 10 from the first sketch, then 20, 30, 30 and 40 standing in for the second
+    assertThat(merged.getPercentiles().get(50)).isCloseTo(7.0, within(0.1));
+    assertThat(merged.getPercentiles().get(95)).isCloseTo(30.0, within(0.5));
+  }
+
+  @Test
+  void sketchesOfAggregatesWithoutOneAreApproximatedFromTheirSummary() {
+    QuantileSketch single = StreamingMetricAggregator.sketchOf(5, 5, 5, 1, null);
+    QuantileSketch pair = StreamingMetricAggregator.sketchOf(2, 8, 10, 2, null);
+    QuantileSketch many = StreamingMetricAggregator.sketchOf(0, 100, 500, 10, null);
+
+    assertThat(single.count()).isEqualTo(1);
+    assertThat(pair.count()).isEqualTo(2);
+    assertThat(pair.quantile(0)).isCloseTo(2.0, within(0.05));
+    assertThat(pair.quantile(1)).isCloseTo(8.0, within(0.1));
+    assertThat(many.count()).isEqualTo(10);
+    assertThat(many.quantile(0.5)).isCloseTo(50.0, within(0.5));
+  }
+
+  private StreamingMetricAggregator aggregator(int batchSize) {
+    return new StreamingMetricAggregator(
+        AggregationPeriod.HOUR, HOUR, HOUR.plusHours(1), batchSize, batches::add);
+  }
+}
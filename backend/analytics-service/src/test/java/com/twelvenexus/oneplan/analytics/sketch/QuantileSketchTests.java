@@ -0,0 +1,175 @@
+package com.twelvenexus.oneplan.analytics.sketch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+import org.junit.jupiter.api.Test;
+
+class QuantileSketchTests {
+
+  private static final double[] QUANTILES = {0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 1};
+
+  private final Random random = new Random(42);
+
+  @Test
+  void quantilesOfUniformValuesAreWithinTheRelativeAccuracy() {
+    assertWithinAccuracy(values(100_000, () -> 1 + random.nextDouble() * 999), 0.01);
+  }
+
+  @Test
+  void quantilesOfSkewedValuesAreWithinTheRelativeAccuracy() {
+    // Log-normal latencies spanning several orders of magnitude
+    assertWithinAccuracy(values(100_000, () -> Math.exp(3 + 2 * random.nextGaussian())), 0.01);
+    assertWithinAccuracy(values(50_000, () -> -Math.log(1 - random.nextDouble())), 0.02);
+  }
+
+  @Test
+  void quantilesAcrossNegativeZeroAndPositiveValues() {
+    double[] values =
+        values(
+            30_000,
+            () -> {
+              int kind = random.nextInt(3);
+              return kind == 0 ? 0 : (kind == 1 ? -1 : 1) * Math.exp(5 * random.nextDouble());
+            });
+    assertWithinAccuracy(values, 0.01);
+  }
+
+  @Test
+  void collapsingKeepsTheLargeValuesAccurate() {
+    // 40 decades need about 4600 buckets at 1%; MAX_BINS covers the top 17 or so
+    double[] values = values(20_000, () -> Math.pow(10, -20 + 40 * random.nextDouble()));
+    QuantileSketch sketch = sketchOf(values, 0.01);
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    for (double q : new double[] {0.75, 0.9, 0.99, 1}) {
+      double exact = sorted[(int) (q * (sorted.length - 1))];
+      assertThat(sketch.quantile(q)).isCloseTo(exact, within(exact * 0.01));
+    }
+    assertThat(sketch.quantile(0)).isEqualTo(sorted[0]);
+    assertThat(sketch.count()).isEqualTo(values.length);
+  }
+
+  @Test
+  void mergingEqualsAddingEverythingToOneSketch() {
+    double[] values = values(10_000, () -> random.nextGaussian() * 100);
+    QuantileSketch all = sketchOf(values, 0.01);
+    QuantileSketch left = sketchOf(Arrays.copyOfRange(values, 0, 3_000), 0.01);
+    QuantileSketch right = sketchOf(Arrays.copyOfRange(values, 3_000, values.length), 0.01);
+
+    left.merge(right);
+
+    assertThat(left.count()).isEqualTo(all.count());
+    for (double q : QUANTILES) {
+      assertThat(left.quantile(q)).isEqualTo(all.quantile(q));
+    }
+    assertThat(left.toBytes()).isEqualTo(all.toBytes());
+  }
+
+  @Test
+  void mergingIntoAnEmptySketchCopiesIt() {
+    QuantileSketch source = sketchOf(new double[] {-3, 0, 5, 7}, 0.01);
+    QuantileSketch empty = new QuantileSketch(0.01);
+
+    empty.merge(source);
+
+    assertThat(empty.toBytes()).isEqualTo(source.toBytes());
+  }
+
+  @Test
+  void sketchesWithDifferentAccuracyDoNotMerge() {
+    assertThatThrownBy(() -> new QuantileSketch(0.01).merge(new QuantileSketch(0.02)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void roundTripsThroughBytes() {
+    QuantileSketch sketch =
+        sketchOf(values(5_000, () -> (random.nextDouble() - 0.3) * 1e6), 0.005);
+    sketch.add(0, 17);
+
+    QuantileSketch copy = QuantileSketch.fromBytes(sketch.toBytes());
+
+    assertThat(copy.count()).isEqualTo(sketch.count());
+    for (double q : QUANTILES) {
+      assertThat(copy.quantile(q)).isEqualTo(sketch.quantile(q));
+    }
+    assertThat(copy.toBytes()).isEqualTo(sketch.toBytes());
+  }
+
+  @Test
+  void emptySketchRoundTrips() {
+    QuantileSketch copy = QuantileSketch.fromBytes(new QuantileSketch().toBytes());
+
+    assertThat(copy.isEmpty()).isTrue();
+    assertThat(copy.quantile(0.5)).isNaN();
+
+    // Still usable, with min and max starting from nothing
+    copy.add(-2);
+    copy.add(4);
+    assertThat(copy.quantile(0)).isEqualTo(-2);
+    assertThat(copy.quantile(1)).isEqualTo(4);
+  }
+
+  @Test
+  void negativeOnlySketchRoundTrips() {
+    QuantileSketch sketch = sketchOf(new double[] {-1e-3, -1, -250, -1e9}, 0.01);
+
+    QuantileSketch copy = QuantileSketch.fromBytes(sketch.toBytes());
+
+    assertThat(copy.quantile(0)).isEqualTo(-1e9);
+    assertThat(copy.quantile(1)).isEqualTo(-1e-3);
+    assertThat(copy.quantile(0.5)).isCloseTo(-250, within(2.5));
+  }
+
+  @Test
+  void truncatedOrForeignBytesAreRejected() {
+    byte[] bytes = sketchOf(new double[] {-5, 0, 1, 2, 300}, 0.01).toBytes();
+
+    for (int length = 0; length < bytes.length; length++) {
+      byte[] truncated = Arrays.copyOf(bytes, length);
+      assertThatThrownBy(() -> QuantileSketch.fromBytes(truncated))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+    byte[] otherVersion = bytes.clone();
+    otherVersion[0] = 9;
+    assertThatThrownBy(() -> QuantileSketch.fromBytes(otherVersion))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("format");
+  }
+
+  /** Compares against exact quantiles at the rank the sketch uses, {@code q * (n - 1)}. */
+  private static void assertWithinAccuracy(double[] values, double relativeAccuracy) {
+    QuantileSketch sketch = sketchOf(values, relativeAccuracy);
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+
+    for (double q : QUANTILES) {
+      double exact = sorted[(int) (q * (sorted.length - 1))];
+      assertThat(sketch.quantile(q))
+          .as("quantile %s", q)
+          .isCloseTo(exact, within(Math.abs(exact) * relativeAccuracy + 1e-12));
+    }
+  }
+
+  private static QuantileSketch sketchOf(double[] values, double relativeAccuracy) {
+    QuantileSketch sketch = new QuantileSketch(relativeAccuracy);
+    for (double value : values) {
+      sketch.add(value);
+    }
+    return sketch;
+  }
+
+  private static double[] values(int count, DoubleSupplier next) {
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      values[i] = next.getAsDouble();
+    }
+    return values;
+  }
+}
@@ -0,0 +1,185 @@
+package com.twelvenexus.oneplan.analytics.store.columnar;
+
+import static com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.fromMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.Series;
+import com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.SeriesKey;
+import com.twelvenexus.oneplan.analytics.store.columnar.ColumnarBlock.View;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+class ColumnarBlockTests {
+
+  private static final long CREATED_AT = 1_741_780_800_000L;
+  private static final UUID ENTITY = UUID.randomUUID();
+
+  private final Random random = new Random(42);
+
+  @Test
+  void bitsReadBackAcrossByteBoundaries() {
+    int[] widths = new int[500];
+    long[] values = new long[widths.length];
+    BitWriter writer = new BitWriter();
+    for (int i = 0; i < widths.length; i++) {
+      widths[i] = 1 + random.nextInt(64);
+      values[i] = widths[i] == 64 ? random.nextLong() : random.nextLong() & ((1L << widths[i]) - 1);
+      writer.write(values[i], widths[i]);
+    }
+    // Past the writer's first 64 bytes, so it has grown
+    byte[] bytes = writer.toByteArray();
+    assertThat(bytes.length).isGreaterThan(64);
+
+    // Read from an offset into a larger buffer, as blocks are
+    ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3).position(3).put(bytes).flip();
+    BitReader reader = new BitReader(buffer, 3);
+    for (int i = 0; i < widths.length; i++) {
+      assertThat(reader.read(widths[i])).isEqualTo(values[i]);
+    }
+  }
+
+  @Test
+  void partialLastByteIsPaddedWithZeros() {
+    BitWriter writer = new BitWriter();
+    writer.writeBit(true);
+    writer.write(0b101, 3);
+
+    assertThat(writer.toByteArray()).containsExactly((byte) 0b1101_0000);
+  }
+
+  @Test
+  void timestampsRoundTripThroughEveryDeltaOfDeltaBucket() {
+    long start = CREATED_AT - 3_600_000;
+    // Steady, then deltas changing by up to 7, 9, 12 and more bits, in both directions
+    long[] deltas = {
+      1000, 1000, 1000, 1030, 1000, 1200, 1000, 3000, 1000, 90_000_000, 1000, 0, 0, 1, 86_400_000
+    };
+    List<Metric> metrics = new ArrayList<>();
+    long timestamp = start;
+    for (long delta : deltas) {
+      timestamp += delta;
+      metrics.add(metric(ENTITY, MetricType.TASK_CYCLE_TIME, timestamp, 1.0));
+    }
+    metrics.add(metric(ENTITY, MetricType.TASK_CYCLE_TIME, start, 1.0));
+
+    Series series = single(decode(metrics));
+
+    long[] expected = metrics.stream().mapToLong(ColumnarBlockTests::millis).sorted().toArray();
+    assertThat(series.timestamps()).containsExactly(expected);
+  }
+
+  @Test
+  void valuesRoundTripBitForBit() {
+    double[] values = {
+      1.0, 1.0, 1.5, -0.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE,
+      Double.MAX_VALUE, -Double.MAX_VALUE, 12.25, 12.5, 12.75, 1e-300, 1e300, 42, 42, 42
+    };
+    double[] drifting = new double[200];
+    for (int i = 0; i < drifting.length; i++) {
+      // Small changes reuse the previous window, jumps open a new one
+      drifting[i] = i % 50 == 0 ? random.nextDouble() * 1e6 : 100 + random.nextInt(8);
+    }
+
+    for (double[] column : List.of(values, drifting)) {
+      List<Metric> metrics = new ArrayList<>();
+      for (int i = 0; i < column.length; i++) {
+        metrics.add(metric(ENTITY, MetricType.TASK_LEAD_TIME, CREATED_AT + i * 1000L, column[i]));
+      }
+
+      double[] decoded = single(decode(metrics)).values();
+
+      assertThat(Arrays.stream(decoded).mapToLong(Double::doubleToRawLongBits).toArray())
+          .containsExactly(Arrays.stream(column).mapToLong(Double::doubleToRawLongBits).toArray());
+    }
+  }
+
+  @Test
+  void seriesAreStoredInKeyOrderWithTheirIdsAndDimensions() {
+    UUID first = new UUID(1, 1);
+    UUID second = new UUID(2, 2);
+    Map<String, String> dimensions = new HashMap<>();
+    dimensions.put("priority", "high");
+    dimensions.put("sprint", null);
+    Metric withDimensions = metric(second, MetricType.TASK_COMPLETED, CREATED_AT, 1);
+    withDimensions.setDimensions(dimensions);
+    Metric withoutDimensions = metric(first, MetricType.TASK_COMPLETED, CREATED_AT + 5, 2);
+    withoutDimensions.setDimensions(null);
+    List<Metric> metrics =
+        List.of(
+            withDimensions,
+            metric(first, MetricType.TASK_LEAD_TIME, CREATED_AT, 3),
+            withoutDimensions);
+
+    View view = decode(metrics);
+
+    assertThat(view.createdAt()).isEqualTo(CREATED_AT);
+    assertThat(view.series().stream().map(Series::key).toList())
+        .containsExactly(
+            new SeriesKey(first.toString(), "task", "TASK_COMPLETED"),
+            new SeriesKey(first.toString(), "task", "TASK_LEAD_TIME"),
+            new SeriesKey(second.toString(), "task", "TASK_COMPLETED"));
+    Series last = view.series().get(2);
+    assertThat(last.id(0)).isEqualTo(withDimensions.getId());
+    assertThat(last.dimensions()).containsExactly(dimensions);
+    assertThat(view.series().get(0).dimensions()).containsExactly(Map.of());
+  }
+
+  @Test
+  void tornOrCorruptBlocksHaveNoEnd() {
+    byte[] block =
+        ColumnarBlock.encode(
+            List.of(metric(ENTITY, MetricType.TASK_COMPLETED, CREATED_AT, 1)), CREATED_AT);
+    ByteBuffer two = ByteBuffer.allocate(block.length * 2).put(block).put(block).flip();
+
+    assertThat(ColumnarBlock.end(two, 0)).isEqualTo(block.length);
+    assertThat(ColumnarBlock.end(two, block.length)).isEqualTo(block.length * 2);
+    assertThat(ColumnarBlock.end(two, block.length * 2)).isEqualTo(-1);
+
+    // Cut short while being written
+    for (int length : new int[] {4, ColumnarBlock.HEADER_BYTES, block.length - 1}) {
+      assertThat(ColumnarBlock.end(ByteBuffer.wrap(block, 0, length).slice(), 0)).isEqualTo(-1);
+    }
+
+    // A flipped payload bit fails the checksum; a zeroed header is not a block
+    byte[] corrupt = block.clone();
+    corrupt[block.length - 1] ^= 1;
+    assertThat(ColumnarBlock.end(ByteBuffer.wrap(corrupt), 0)).isEqualTo(-1);
+    assertThat(ColumnarBlock.end(ByteBuffer.wrap(new byte[block.length]), 0)).isEqualTo(-1);
+  }
+
+  private static View decode(List<Metric> metrics) {
+    ByteBuffer buffer = ByteBuffer.wrap(ColumnarBlock.encode(metrics, CREATED_AT));
+    assertThat(ColumnarBlock.end(buffer, 0)).isEqualTo(buffer.limit());
+    return new View(buffer, 0);
+  }
+
+  private static Series single(View view) {
+    assertThat(view.series()).hasSize(1);
+    return view.series().get(0);
+  }
+
+  private static long millis(Metric metric) {
+    return ColumnarBlock.toMillis(metric.getTimestamp());
+  }
+
+  static Metric metric(UUID entityId, MetricType type, long timestamp, double value) {
+    Metric metric = new Metric();
+    metric.setId(UUID.randomUUID());
+    metric.setEntityId(entityId);
+    metric.setEntityType("task");
+    metric.setType(type);
+    metric.setValue(value);
+    metric.setDimensions(Map.of());
+    metric.setTimestamp(fromMillis(timestamp));
+    return metric;
+  }
+}
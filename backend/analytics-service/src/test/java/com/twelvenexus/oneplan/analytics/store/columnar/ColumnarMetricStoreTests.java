@@ -0,0 +1,155 @@
+package com.twelvenexus.oneplan.analytics.store.columnar;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ColumnarMetricStoreTests {
+
+  private static final UUID TENANT = UUID.randomUUID();
+  private static final LocalDateTime DAY = LocalDateTime.of(2025, 3, 12, 0, 0);
+  private static final Clock CLOCK =
+      Clock.fixed(DAY.plusDays(1).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+
+  @TempDir Path root;
+
+  @Test
+  void repeatedMetricsAreSkippedAcrossBatchesAndRestarts() throws IOException {
+    UUID entity = UUID.randomUUID();
+    Metric first = metric(entity, MetricType.TASK_COMPLETED, DAY.plusHours(1), 1);
+    Metric second = metric(entity, MetricType.TASK_COMPLETED, DAY.plusHours(2), 2);
+
+    ColumnarMetricStore store = store();
+    store.append(List.of(first, first, second));
+    store.append(List.of(second));
+
+    // A new instance loads the partition's ids before its first append
+    Metric third = metric(entity, MetricType.TASK_COMPLETED, DAY.plusHours(3), 3);
+    store().append(List.of(first, third));
+
+    assertThat(store.find(TENANT, entity, MetricType.TASK_COMPLETED, DAY, DAY.plusDays(1)))
+        .usingRecursiveFieldByFieldElementComparator()
+        .containsExactly(stored(first), stored(second), stored(third));
+    assertThat(segments(DAY)).hasSize(1);
+  }
+
+  @Test
+  void tornBlockHidesOnlyItselfAndWritingGoesOnInANewSegment() throws IOException {
+    UUID entity = UUID.randomUUID();
+    Metric before = metric(entity, MetricType.TASK_LEAD_TIME, DAY.plusHours(1), 4);
+    store().append(List.of(before));
+
+    // A crash halfway through the next block
+    Path segment = segments(DAY).get(0);
+    Metric lost = metric(entity, MetricType.TASK_LEAD_TIME, DAY.plusHours(2), 5);
+    byte[] block = ColumnarBlock.encode(List.of(lost), 0);
+    Files.write(segment, Arrays.copyOf(block, block.length / 2), StandardOpenOption.APPEND);
+
+    ColumnarMetricStore restarted = store();
+    assertThat(restarted.find(TENANT, entity, MetricType.TASK_LEAD_TIME, DAY, DAY.plusDays(1)))
+        .extracting(Metric::getId)
+        .containsExactly(before.getId());
+
+    // The torn metric was never acknowledged, so it comes again
+    Metric after = metric(entity, MetricType.TASK_LEAD_TIME, DAY.plusHours(3), 6);
+    restarted.append(List.of(lost, after));
+
+    assertThat(segments(DAY)).hasSize(2);
+    assertThat(restarted.find(TENANT, entity, MetricType.TASK_LEAD_TIME, DAY, DAY.plusDays(1)))
+        .extracting(Metric::getId)
+        .containsExactly(before.getId(), lost.getId(), after.getId());
+  }
+
+  @Test
+  void scanPeriodHandsOutEachSeriesWholeAndInKeyOrder() throws IOException {
+    UUID a = new UUID(1, 0);
+    UUID b = new UUID(2, 0);
+    UUID c = new UUID(3, 0);
+    ColumnarMetricStore store = store();
+    // Every series is spread over several blocks and two days
+    store.append(
+        List.of(
+            metric(c, MetricType.TASK_COMPLETED, DAY.plusHours(1), 1),
+            metric(a, MetricType.TASK_COMPLETED, DAY.plusHours(1), 2)));
+    store.append(
+        List.of(
+            metric(b, MetricType.TASK_LEAD_TIME, DAY.plusHours(2), 3),
+            metric(a, MetricType.TASK_COMPLETED, DAY.plusHours(2), 4)));
+    store.append(
+        List.of(
+            metric(c, MetricType.TASK_COMPLETED, DAY.plusDays(1).plusHours(1), 5),
+            metric(b, MetricType.TASK_LEAD_TIME, DAY.plusDays(1).plusHours(2), 6),
+            metric(a, MetricType.TASK_CYCLE_TIME, DAY.plusDays(1).plusHours(3), 7),
+            // Outside the period
+            metric(a, MetricType.TASK_COMPLETED, DAY.plusDays(2), 8)));
+
+    Map<String, String> names = Map.of(a.toString(), "a", b.toString(), "b", c.toString(), "c");
+    List<String> scanned = new ArrayList<>();
+    store.scanPeriod(
+        DAY,
+        DAY.plusDays(2),
+        null,
+        (tenantId, entityId, entityType, type, value) -> {
+          assertThat(tenantId).isEqualTo(TENANT.toString());
+          scanned.add(names.get(entityId) + " " + type + " " + (int) value);
+        });
+
+    assertThat(scanned)
+        .containsExactly(
+            "a TASK_COMPLETED 2",
+            "a TASK_COMPLETED 4",
+            "a TASK_CYCLE_TIME 7",
+            "b TASK_LEAD_TIME 3",
+            "b TASK_LEAD_TIME 6",
+            "c TASK_COMPLETED 1",
+            "c TASK_COMPLETED 5");
+  }
+
+  private ColumnarMetricStore store() throws IOException {
+    return new ColumnarMetricStore(root, 1 << 20, CLOCK);
+  }
+
+  private List<Path> segments(LocalDateTime day) throws IOException {
+    Path directory = root.resolve(TENANT.toString()).resolve(day.toLocalDate().toString());
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().toList();
+    }
+  }
+
+  private static Metric stored(Metric metric) {
+    Metric stored = new Metric();
+    stored.setId(metric.getId());
+    stored.setTenantId(metric.getTenantId());
+    stored.setEntityId(metric.getEntityId());
+    stored.setEntityType(metric.getEntityType());
+    stored.setType(metric.getType());
+    stored.setValue(metric.getValue());
+    stored.setDimensions(metric.getDimensions());
+    stored.setTimestamp(metric.getTimestamp());
+    stored.setCreatedAt(LocalDateTime.now(CLOCK));
+    return stored;
+  }
+
+  private static Metric metric(UUID entityId, MetricType type, LocalDateTime at, double value) {
+    Metric metric = ColumnarBlockTests.metric(entityId, type, ColumnarBlock.toMillis(at), value);
+    metric.setTenantId(TENANT);
+    metric.setDimensions(Map.of("priority", "high"));
+    return metric;
+  }
+}
@@ -0,0 +1,137 @@
+package com.twelvenexus.oneplan.analytics.stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.twelvenexus.oneplan.analytics.enums.MetricType;
+import com.twelvenexus.oneplan.analytics.model.Metric;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class MetricStreamHubTests {
+
+  private static final UUID TENANT = UUID.randomUUID();
+  private static final UUID PROJECT = UUID.randomUUID();
+  private static final String TOPIC = PROJECT + ":" + MetricType.TASK_COMPLETED;
+  private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 12, 9, 0);
+
+  private final MetricStreamHub hub = new MetricStreamHub(null, 10, Duration.ofHours(1));
+
+  @AfterEach
+  void close() {
+    hub.close();
+  }
+
+  @Test
+  void slowSubscriberGetsTheLatestValueInsteadOfABacklog() throws Exception {
+    CountDownLatch unblock = new CountDownLatch(1);
+    RecordingSink slow = new RecordingSink(unblock);
+    RecordingSink fast = new RecordingSink(null);
+    hub.subscribe(TENANT, List.of(TOPIC), slow);
+    hub.subscribe(TENANT, List.of(TOPIC), fast);
+
+    hub.publishMetrics(List.of(metric(TENANT, 0)));
+    slow.awaitValue(0); // And now stalled writing it
+    for (int i = 1; i < 1000; i++) {
+      hub.publishMetrics(List.of(metric(TENANT, i)));
+    }
+    // The stalled client holds up nobody else
+    fast.awaitValue(999);
+    assertThat(fast.values).isSorted();
+    unblock.countDown();
+    slow.awaitValue(999);
+
+    // Everything published while it stalled collapsed into the latest value
+    assertThat(slow.values).containsExactly(0.0, 999.0);
+    assertThat(hub.conflated()).isGreaterThanOrEqualTo(998);
+  }
+
+  @Test
+  void subscribersOnlySeeTheirTenantsTopics() throws Exception {
+    RecordingSink sink = new RecordingSink(null);
+    hub.subscribe(TENANT, List.of(TOPIC), sink);
+
+    hub.publishMetrics(List.of(metric(UUID.randomUUID(), 1)));
+    hub.publishMetrics(List.of(metric(TENANT, 2)));
+    sink.awaitValue(2);
+
+    assertThat(sink.values).containsExactly(2.0);
+  }
+
+  @Test
+  void failingClientIsUnsubscribed() throws Exception {
+    RecordingSink gone = new RecordingSink(null);
+    gone.fail = true;
+    hub.subscribe(TENANT, List.of(TOPIC), gone);
+
+    hub.publishMetrics(List.of(metric(TENANT, 1)));
+    assertThat(gone.closed.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(hub.subscribers()).isZero();
+  }
+
+  @Test
+  void rejectsInvalidTopics() {
+    assertThatThrownBy(() -> hub.subscribe(TENANT, List.of("TASK_COMPLETED"), null))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> hub.subscribe(TENANT, List.of(), null))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static Metric metric(UUID tenantId, double value) {
+    Metric metric = new Metric();
+    metric.setId(UUID.randomUUID());
+    metric.setTenantId(tenantId);
+    metric.setEntityId(PROJECT);
+    metric.setType(MetricType.TASK_COMPLETED);
+    metric.setValue(value);
+    metric.setTimestamp(NOW.plusSeconds((long) value));
+    return metric;
+  }
+
+  private static final class RecordingSink implements MetricStreamHub.Sink {
+
+    final List<Double> values = new CopyOnWriteArrayList<>();
+    final CountDownLatch closed = new CountDownLatch(1);
+    final CountDownLatch blockAfterFirst;
+    volatile boolean fail;
+
+    RecordingSink(CountDownLatch blockAfterFirst) {
+      this.blockAfterFirst = blockAfterFirst;
+    }
+
+    @Override
+    public void send(MetricUpdate update) throws Exception {
+      if (fail) {
+        throw new IOException("Broken pipe");
+      }
+      values.add(update.value());
+      if (blockAfterFirst != null && values.size() == 1) {
+        blockAfterFirst.await();
+      }
+    }
+
+    @Override
+    public void heartbeat() {}
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+
+    void awaitValue(double value) throws InterruptedException {
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (!values.contains(value) && System.nanoTime() < deadline) {
+        Thread.sleep(5);
+      }
+      assertThat(values).contains(value);
+    }
+  }
+}
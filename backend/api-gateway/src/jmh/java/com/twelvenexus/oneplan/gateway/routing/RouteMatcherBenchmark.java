@@ -0,0 +1,110 @@
+package com.twelvenexus.oneplan.gateway.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-request path classification cost over a realistic path corpus. {@code extraRoutes} adds
+ * synthetic webhook and share routes to show how the cost grows as the route table grows.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteMatcherBenchmark {
+
+    private static final List<String> PUBLIC_PATHS = List.of(
+        "/api/v1/auth/login", "/api/v1/auth/signup", "/api/v1/auth/refresh",
+        "/api/v1/auth/forgot-password", "/api/v1/auth/reset-password", "/api/v1/plans",
+        "/api/v1/webhooks/razorpay", "/api/v1/webhooks/phonepe", "/api/v1/storyboards/shared",
+        "/actuator/health", "/actuator/info", "/swagger-ui", "/v3/api-docs", "/api-docs", "/api/docs"
+    );
+
+    private static final String[][] ROUTES = {
+        {"identity-service-auth", "/api/v1/auth/**"},
+        {"tenant-service", "/api/v1/tenants/**"},
+        {"organization-service", "/api/v1/organizations/**"},
+        {"organization-service", "/api/v1/teams/**"},
+        {"project-service", "/api/v1/projects/**"},
+        {"task-service", "/api/v1/tasks/**"},
+        {"requirement-service", "/api/v1/requirements/**"},
+        {"storyboard-service", "/api/v1/storyboards/**"},
+        {"integration-service", "/api/v1/integrations/**"},
+        {"integration-service", "/api/v1/webhooks/**"},
+        {"notification-service", "/api/v1/notifications/**"},
+        {"analytics-service", "/api/v1/metrics/**"},
+        {"analytics-service", "/api/v1/events/**"},
+        {"analytics-service", "/api/v1/reports/**"},
+        {"analytics-service", "/api/v1/dashboards/**"},
+        {"subscription-service", "/api/v1/plans/**"},
+        {"subscription-service", "/api/v1/subscriptions/**"},
+    };
+
+    private static final String[] CORPUS = {
+        "/api/v1/tasks/8c1f2e9a-4b7d-4e0f-9a31-2d5c6b7e8f90",
+        "/api/v1/tasks",
+        "/api/v1/projects/3a9d7c21-1e4b-4f6a-8d2c-5b0e9f1a2c3d/members",
+        "/api/v1/dashboards/91b2c3d4-e5f6-4a7b-8c9d-0e1f2a3b4c5d",
+        "/api/v1/events",
+        "/api/v1/metrics/statistics",
+        "/api/v1/auth/login",
+        "/api/v1/auth/refresh",
+        "/api/v1/plans",
+        "/api/v1/notifications/unread",
+        "/api/v1/webhooks/razorpay",
+        "/api/v1/storyboards/shared/abc123",
+        "/actuator/health",
+        "/swagger-ui/index.html",
+        "/api/v1/unknown/path",
+    };
+
+    @Param({"0", "50", "200"})
+    public int extraRoutes;
+
+    private RouteMatcher matcher;
+    private List<String> publicPaths;
+
+    @Setup
+    public void setUp() {
+        publicPaths = new ArrayList<>(PUBLIC_PATHS);
+        RouteMatcher.Builder builder = RouteMatcher.builder();
+        for (String[] route : ROUTES) {
+            builder.route(route[0], route[1]);
+        }
+        for (int i = 0; i < extraRoutes; i++) {
+            String webhook = "/api/v1/webhooks/partner-" + i;
+            String share = "/api/v1/share/resource-" + i;
+            publicPaths.add(webhook);
+            publicPaths.add(share);
+            builder.route("integration-service", webhook + "/**");
+            builder.route("storyboard-service", share + "/**");
+        }
+        publicPaths.forEach(builder::publicPath);
+        matcher = builder.build();
+    }
+
+    @Benchmark
+    public void streamStartsWith(Blackhole blackhole) {
+        for (String path : CORPUS) {
+            blackhole.consume(publicPaths.stream().anyMatch(path::startsWith));
+        }
+    }
+
+    @Benchmark
+    public void trie(Blackhole blackhole) {
+        for (String path : CORPUS) {
+            blackhole.consume(matcher.match(path));
+        }
+    }
+}
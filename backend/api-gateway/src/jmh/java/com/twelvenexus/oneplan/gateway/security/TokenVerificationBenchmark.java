@@ -0,0 +1,59 @@
+package com.twelvenexus.oneplan.gateway.security;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Per-request authentication cost with and without the verified token cache.
+ * Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenVerificationBenchmark {
+
+    private static final String SECRET = "a-very-long-and-secure-secret-key-that-is-at-least-32-bytes-long";
+
+    private JwtTokenVerifier verifier;
+    private VerifiedTokenCache cache;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        verifier = new JwtTokenVerifier(SECRET);
+        cache = new VerifiedTokenCache(verifier, 10_000, Duration.ofMinutes(5));
+        token = Jwts.builder()
+            .subject("user@example.com")
+            .claim("userId", "2f1c7a52-0d43-4d1e-9a53-6f0d2b7c1e11")
+            .claim("tenantId", "7b0e9d1c-5a44-4c3f-8f21-1d9e6a2b3c44")
+            .claim("roles", List.of("ROLE_USER", "ROLE_ADMIN"))
+            .issuedAt(new Date())
+            .expiration(new Date(System.currentTimeMillis() + 3_600_000))
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+    }
+
+    @Benchmark
+    public AuthenticatedUser uncached() {
+        return verifier.verify(token);
+    }
+
+    @Benchmark
+    public AuthenticatedUser cached() {
+        return cache.resolve(token);
+    }
+}
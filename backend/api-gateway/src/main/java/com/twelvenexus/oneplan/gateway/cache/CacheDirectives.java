@@ -0,0 +1,48 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The subset of {@code Cache-Control} directives the gateway response cache acts on.
+ */
+record CacheDirectives(boolean noStore, boolean noCache, Long maxAgeSeconds) {
+
+    /**
+     * Whether a stored response has to be revalidated before every use.
+     */
+    boolean mustRevalidate() {
+        return noCache || (maxAgeSeconds != null && maxAgeSeconds <= 0);
+    }
+
+    static CacheDirectives parse(List<String> headerValues) {
+        boolean noStore = false;
+        boolean noCache = false;
+        Long maxAge = null;
+        Long sharedMaxAge = null;
+
+        for (String value : headerValues) {
+            for (String directive : value.split(",")) {
+                String d = directive.trim().toLowerCase(Locale.ROOT);
+                if (d.equals("no-store")) {
+                    noStore = true;
+                } else if (d.equals("no-cache")) {
+                    noCache = true;
+                } else if (d.startsWith("max-age=")) {
+                    maxAge = parseSeconds(d.substring("max-age=".length()));
+                } else if (d.startsWith("s-maxage=")) {
+                    sharedMaxAge = parseSeconds(d.substring("s-maxage=".length()));
+                }
+            }
+        }
+        return new CacheDirectives(noStore, noCache, sharedMaxAge != null ? sharedMaxAge : maxAge);
+    }
+
+    private static Long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downstream response held by the response cache. {@code etag} is always set, either from the
+ * downstream response or derived from the body, so clients can revalidate with
+ * {@code If-None-Match}.
+ */
+public record CachedResponse(
+    int status,
+    Map<String, List<String>> headers,
+    byte[] body,
+    String etag,
+    long expiresAtMillis
+) {
+
+    public boolean isFresh(long nowMillis) {
+        return nowMillis < expiresAtMillis;
+    }
+
+    public CachedResponse withExpiresAt(long expiresAtMillis) {
+        return new CachedResponse(status, headers, body, etag, expiresAtMillis);
+    }
+}
@@ -0,0 +1,185 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+
+import com.twelvenexus.oneplan.gateway.cache.ResponseCacheMetrics.Result;
+import com.twelvenexus.oneplan.gateway.config.ResponseCacheProperties.Rule;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Response through which the downstream body is written. Passes everything through until
+ * {@link ResponseCacheFilter} arms it for a cache miss or revalidation; then it captures a
+ * cacheable body on its way to the client, or swaps a downstream {@code 304} for the stale entry
+ * being revalidated.
+ */
+class CachingResponse extends ServerHttpResponseDecorator {
+
+    static final String EXCHANGE_ATTRIBUTE = CachingResponse.class.getName();
+    static final String CACHE_STATUS_HEADER = "X-Cache";
+
+    private static final List<String> STORED_HEADERS = List.of(
+        HttpHeaders.CONTENT_TYPE,
+        HttpHeaders.CONTENT_ENCODING,
+        HttpHeaders.CONTENT_LANGUAGE,
+        HttpHeaders.CACHE_CONTROL,
+        HttpHeaders.LAST_MODIFIED,
+        HttpHeaders.VARY
+    );
+
+    private final ResponseCacheStore store;
+    private final ResponseCacheMetrics metrics;
+    private final long maxEntryBytes;
+
+    private volatile Capture capture;
+
+    CachingResponse(ServerHttpResponse delegate, ResponseCacheStore store, ResponseCacheMetrics metrics,
+                    long maxEntryBytes) {
+        super(delegate);
+        this.store = store;
+        this.metrics = metrics;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * Caches what downstream answers under {@code key}. {@code request} is the client's request,
+     * whose {@code If-None-Match} decides whether a revalidated entry goes out as a {@code 304}.
+     */
+    void arm(ServerHttpRequest request, ResponseCacheKey key, Rule rule, CachedResponse stale) {
+        this.capture = new Capture(request, key, rule, stale);
+    }
+
+    @Override
+    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+        Capture armed = capture;
+        if (armed == null) {
+            return super.writeWith(body);
+        }
+        int status = statusValue(getDelegate());
+
+        if (armed.stale() != null && status == HttpStatus.NOT_MODIFIED.value()) {
+            CachedResponse refreshed = armed.stale().withExpiresAt(expiresAt(getHeaders(), armed.rule()));
+            metrics.record(armed.key().routeId(), Result.REVALIDATED);
+            return Flux.from(body).doOnNext(DataBufferUtils::release).then()
+                .then(store.put(armed.key(), refreshed))
+                .then(writeCached(getDelegate(), refreshed,
+                    clientHasCurrentVersion(armed.request(), refreshed), "REVALIDATED"));
+        }
+
+        metrics.record(armed.key().routeId(), Result.MISS);
+        getHeaders().set(CACHE_STATUS_HEADER, "MISS");
+        if (status != HttpStatus.OK.value() || !isCacheable(getHeaders())) {
+            return super.writeWith(body);
+        }
+
+        return DataBufferUtils.join(Flux.from(body))
+            .flatMap(joined -> {
+                byte[] bytes = new byte[joined.readableByteCount()];
+                joined.read(bytes);
+                DataBufferUtils.release(joined);
+
+                Mono<Void> cache = Mono.empty();
+                if (bytes.length <= maxEntryBytes) {
+                    String etag = getHeaders().getETag() != null ? getHeaders().getETag() : bodyETag(bytes);
+                    getHeaders().setETag(etag);
+                    cache = store.put(armed.key(), new CachedResponse(status, storedHeaders(getHeaders()),
+                        bytes, etag, expiresAt(getHeaders(), armed.rule())));
+                }
+                return cache.then(super.writeWith(Mono.just(bufferFactory().wrap(bytes))));
+            })
+            .switchIfEmpty(Mono.defer(() -> super.writeWith(Flux.empty())));
+    }
+
+    static Mono<Void> writeCached(ServerHttpResponse response, CachedResponse cached,
+                                  boolean notModified, String cacheStatus) {
+        HttpHeaders headers = response.getHeaders();
+        cached.headers().forEach(headers::put);
+        headers.setETag(cached.etag());
+        headers.set(CACHE_STATUS_HEADER, cacheStatus);
+
+        if (notModified) {
+            response.setStatusCode(HttpStatus.NOT_MODIFIED);
+            headers.remove(HttpHeaders.CONTENT_TYPE);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            return response.setComplete();
+        }
+        response.setStatusCode(HttpStatus.valueOf(cached.status()));
+        headers.setContentLength(cached.body().length);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(cached.body())));
+    }
+
+    static boolean clientHasCurrentVersion(ServerHttpRequest request, CachedResponse cached) {
+        List<String> ifNoneMatch = request.getHeaders().getIfNoneMatch();
+        return ifNoneMatch.contains(cached.etag()) || ifNoneMatch.contains("*");
+    }
+
+    static int statusValue(ServerHttpResponse response) {
+        return response.getStatusCode() != null ? response.getStatusCode().value() : HttpStatus.OK.value();
+    }
+
+    /**
+     * {@code no-cache} and {@code max-age=0} responses are kept for revalidation only, which needs
+     * an ETag the downstream service itself understands.
+     */
+    private boolean isCacheable(HttpHeaders headers) {
+        CacheDirectives directives = CacheDirectives.parse(headers.getOrEmpty(HttpHeaders.CACHE_CONTROL));
+        if (directives.noStore() || headers.containsKey(HttpHeaders.SET_COOKIE)) {
+            return false;
+        }
+        if (directives.mustRevalidate() && headers.getETag() == null) {
+            return false;
+        }
+        return headers.getContentLength() <= maxEntryBytes;
+    }
+
+    private static long expiresAt(HttpHeaders headers, Rule rule) {
+        CacheDirectives directives = CacheDirectives.parse(headers.getOrEmpty(HttpHeaders.CACHE_CONTROL));
+        long now = System.currentTimeMillis();
+        if (directives.mustRevalidate()) {
+            return now - 1; // Stale from the start, kept for the stale retention
+        }
+        Duration ttl = directives.maxAgeSeconds() != null
+            ? Duration.ofSeconds(Math.min(directives.maxAgeSeconds(), rule.getMaxTtl().toSeconds()))
+            : rule.getTtl();
+        return now + ttl.toMillis();
+    }
+
+    private static Map<String, List<String>> storedHeaders(HttpHeaders headers) {
+        Map<String, List<String>> stored = new LinkedHashMap<>();
+        for (String name : STORED_HEADERS) {
+            List<String> values = headers.get(name);
+            if (values != null) {
+                stored.put(name, List.copyOf(values));
+            }
+        }
+        return stored;
+    }
+
+    private static String bodyETag(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            return "W/\"" + HexFormat.of().formatHex(hash, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Capture(ServerHttpRequest request, ResponseCacheKey key, Rule rule, CachedResponse stale) {
+    }
+}
@@ -0,0 +1,176 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import com.twelvenexus.oneplan.gateway.cache.ResponseCacheMetrics.Result;
+import com.twelvenexus.oneplan.gateway.config.ResponseCacheProperties;
+import com.twelvenexus.oneplan.gateway.config.ResponseCacheProperties.Rule;
+import com.twelvenexus.oneplan.gateway.routing.RouteMatch;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches GET responses of the paths listed under {@code gateway.response-cache.rules}, keyed by
+ * route, path, query, tenant and user.
+ *
+ * <ul>
+ *   <li>Fresh entries are served without calling downstream; a matching {@code If-None-Match}
+ *       gets a {@code 304}.</li>
+ *   <li>Expired entries are revalidated downstream with their ETag; a downstream {@code 304}
+ *       refreshes the entry instead of transferring the body again.</li>
+ *   <li>Only responses whose service opts in are stored: {@code no-store}, which Spring
+ *       Security sends by default, is honoured, {@code no-cache} and {@code max-age=0} responses
+ *       are stored for revalidation only, and {@code max-age}/{@code s-maxage} overrides the
+ *       rule's TTL up to its {@code max-ttl}.</li>
+ *   <li>A successful write (POST/PUT/PATCH/DELETE) through a route drops the tenant's cached
+ *       responses for that route.</li>
+ * </ul>
+ *
+ * <p>Runs after the route's own filters, so cache hits are rate limited and pass the circuit
+ * breaker and bulkhead like any other request, but before a service instance is chosen. The
+ * downstream body is captured by the {@link CachingResponse} that {@link ResponseCaptureFilter}
+ * installed earlier in the chain.
+ */
+@Component
+public class ResponseCacheFilter implements GlobalFilter, Ordered {
+
+    private static final Set<HttpMethod> UNSAFE_METHODS =
+        Set.of(HttpMethod.POST, HttpMethod.PUT, HttpMethod.PATCH, HttpMethod.DELETE);
+
+    private final ResponseCacheProperties properties;
+    private final ResponseCacheStore store;
+    private final ResponseCacheMetrics metrics;
+    private final List<CompiledRule> rules;
+
+    public ResponseCacheFilter(ResponseCacheProperties properties,
+                               ResponseCacheStore store,
+                               ResponseCacheMetrics metrics) {
+        this.properties = properties;
+        this.store = store;
+        this.metrics = metrics;
+        PathPatternParser parser = PathPatternParser.defaultInstance;
+        this.rules = properties.getRules().stream()
+            .map(rule -> new CompiledRule(parser.parse(rule.getPath()), rule))
+            .toList();
+    }
+
+    @Override
+    public int getOrder() {
+        // Route filters are ordered by position from 1, and RequestRateLimiter is one of them
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (!properties.isEnabled() || route == null) {
+            return chain.filter(exchange);
+        }
+
+        ServerHttpRequest request = exchange.getRequest();
+        if (UNSAFE_METHODS.contains(request.getMethod())) {
+            return chain.filter(exchange).then(Mono.defer(() -> invalidateOnSuccess(exchange, route)));
+        }
+        CachingResponse capture = exchange.getAttribute(CachingResponse.EXCHANGE_ATTRIBUTE);
+        if (capture == null) {
+            return chain.filter(exchange);
+        }
+
+        Rule rule = findRule(request.getPath().pathWithinApplication());
+        if (rule == null) {
+            return chain.filter(exchange);
+        }
+
+        ResponseCacheKey key = cacheKey(exchange, route);
+        CacheDirectives requestDirectives = CacheDirectives.parse(request.getHeaders().getOrEmpty(HttpHeaders.CACHE_CONTROL));
+        if (requestDirectives.noStore()) {
+            return chain.filter(exchange);
+        }
+        Mono<CachedResponse> lookup = requestDirectives.noCache() ? Mono.empty() : store.get(key);
+
+        return lookup
+            .map(cached -> serveOrRevalidate(exchange, chain, capture, key, rule, cached))
+            .switchIfEmpty(Mono.fromSupplier(() -> fetch(exchange, chain, capture, key, rule, null)))
+            .flatMap(result -> result);
+    }
+
+    private Mono<Void> serveOrRevalidate(ServerWebExchange exchange, GatewayFilterChain chain,
+                                         CachingResponse capture, ResponseCacheKey key, Rule rule,
+                                         CachedResponse cached) {
+        if (cached.isFresh(System.currentTimeMillis())) {
+            boolean notModified = CachingResponse.clientHasCurrentVersion(exchange.getRequest(), cached);
+            metrics.record(key.routeId(), notModified ? Result.NOT_MODIFIED : Result.HIT);
+            return CachingResponse.writeCached(exchange.getResponse(), cached, notModified, "HIT");
+        }
+
+        ServerWebExchange revalidation = exchange.mutate()
+            .request(builder -> builder.headers(headers -> headers.setIfNoneMatch(cached.etag())))
+            .build();
+        capture.arm(exchange.getRequest(), key, rule, cached);
+        return chain.filter(revalidation);
+    }
+
+    private Mono<Void> fetch(ServerWebExchange exchange, GatewayFilterChain chain, CachingResponse capture,
+                             ResponseCacheKey key, Rule rule, CachedResponse stale) {
+        capture.arm(exchange.getRequest(), key, rule, stale);
+        return chain.filter(exchange);
+    }
+
+    private Mono<Void> invalidateOnSuccess(ServerWebExchange exchange, Route route) {
+        HttpStatus status = HttpStatus.resolve(CachingResponse.statusValue(exchange.getResponse()));
+        if (status == null || !status.is2xxSuccessful()) {
+            return Mono.empty();
+        }
+        return store.invalidate(route.getId(), trustedHeader(exchange, "X-Tenant-Id"));
+    }
+
+    private Rule findRule(PathContainer path) {
+        for (CompiledRule rule : rules) {
+            if (rule.pattern().matches(path)) {
+                return rule.rule();
+            }
+        }
+        return null;
+    }
+
+    private ResponseCacheKey cacheKey(ServerWebExchange exchange, Route route) {
+        ServerHttpRequest request = exchange.getRequest();
+        return ResponseCacheKey.of(route.getId(),
+            trustedHeader(exchange, "X-Tenant-Id"),
+            trustedHeader(exchange, "X-User-Id"),
+            request.getPath().value(),
+            request.getURI().getRawQuery());
+    }
+
+    /**
+     * Identity headers are only trusted when the authentication filter set them, i.e. on
+     * protected paths.
+     */
+    private static String trustedHeader(ServerWebExchange exchange, String name) {
+        RouteMatch routeMatch = exchange.getAttribute(RouteMatch.EXCHANGE_ATTRIBUTE);
+        if (routeMatch == null || routeMatch.isPublic()) {
+            return null;
+        }
+        return exchange.getRequest().getHeaders().getFirst(name);
+    }
+
+    private record CompiledRule(PathPattern pattern, Rule rule) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+/**
+ * Cache key for a GET response. Entries are private to the caller: tenant and user are part of
+ * the key, so one user's dashboard is never served to another.
+ */
+public record ResponseCacheKey(String routeId, String tenantId, String userId, String path, String query) {
+
+    private static final String ANONYMOUS = "-";
+
+    public static ResponseCacheKey of(String routeId, String tenantId, String userId, String path, String query) {
+        return new ResponseCacheKey(routeId,
+            tenantId != null ? tenantId : ANONYMOUS,
+            userId != null ? userId : ANONYMOUS,
+            path,
+            query != null ? query : "");
+    }
+
+    /**
+     * Prefix shared by every entry of a route and tenant, used for invalidation.
+     */
+    public static String scope(String routeId, String tenantId) {
+        return routeId + '|' + (tenantId != null ? tenantId : ANONYMOUS) + '|';
+    }
+
+    public String scope() {
+        return scope(routeId, tenantId);
+    }
+
+    public String asString() {
+        return scope() + userId + '|' + path + '?' + query;
+    }
+}
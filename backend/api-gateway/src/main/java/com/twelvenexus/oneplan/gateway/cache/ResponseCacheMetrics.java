@@ -0,0 +1,66 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Per-route response cache counters ({@code gateway.response.cache.requests}) and hit ratio
+ * ({@code gateway.response.cache.hit.ratio}) on the actuator metrics endpoint.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResponseCacheMetrics {
+
+    public enum Result {
+        HIT, MISS, REVALIDATED, NOT_MODIFIED
+    }
+
+    private final MeterRegistry registry;
+    private final Map<String, RouteStats> routes = new ConcurrentHashMap<>();
+
+    public void record(String routeId, Result result) {
+        routes.computeIfAbsent(routeId, this::register).record(result);
+    }
+
+    private RouteStats register(String routeId) {
+        RouteStats stats = new RouteStats();
+        for (Result result : Result.values()) {
+            stats.counters.put(result, Counter.builder("gateway.response.cache.requests")
+                .tag("route", routeId)
+                .tag("result", result.name().toLowerCase())
+                .register(registry));
+        }
+        Gauge.builder("gateway.response.cache.hit.ratio", stats, RouteStats::hitRatio)
+            .tag("route", routeId)
+            .register(registry);
+        return stats;
+    }
+
+    private static final class RouteStats {
+
+        private final Map<Result, Counter> counters = new ConcurrentHashMap<>();
+        private final LongAdder served = new LongAdder();
+        private final LongAdder total = new LongAdder();
+
+        void record(Result result) {
+            counters.get(result).increment();
+            total.increment();
+            if (result != Result.MISS) {
+                served.increment();
+            }
+        }
+
+        double hitRatio() {
+            long requests = total.sum();
+            return requests == 0 ? 0.0 : (double) served.sum() / requests;
+        }
+    }
+}
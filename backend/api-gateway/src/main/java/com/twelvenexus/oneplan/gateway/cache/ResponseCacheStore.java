@@ -0,0 +1,157 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.twelvenexus.oneplan.gateway.config.ResponseCacheProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Two-tier store for cached responses: a Caffeine tier bounded by total body size and, when
+ * {@code gateway.response-cache.redis.enabled} is set, a Redis tier shared by all gateway
+ * instances. Redis failures degrade to the in-memory tier only.
+ */
+@Slf4j
+@Component
+public class ResponseCacheStore {
+
+    private static final String ENTRY_PREFIX = "response_cache:";
+    private static final String INDEX_PREFIX = "response_cache_index:";
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private final ResponseCacheProperties properties;
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CachedResponse> local;
+
+    public ResponseCacheStore(ResponseCacheProperties properties,
+                              ReactiveStringRedisTemplate redisTemplate,
+                              ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.local = Caffeine.newBuilder()
+            .maximumWeight(properties.getMaximumSize().toBytes())
+            .weigher((String key, CachedResponse response) -> response.body().length + ENTRY_OVERHEAD_BYTES)
+            .expireAfter(new RetentionExpiry())
+            .build();
+    }
+
+    public Mono<CachedResponse> get(ResponseCacheKey key) {
+        String id = key.asString();
+        CachedResponse cached = local.getIfPresent(id);
+        if (cached != null || !properties.getRedis().isEnabled()) {
+            return Mono.justOrEmpty(cached);
+        }
+        return redisTemplate.opsForValue().get(ENTRY_PREFIX + id)
+            .timeout(properties.getRedis().getTimeout())
+            .flatMap(json -> Mono.justOrEmpty(deserialize(json)))
+            .doOnNext(response -> local.put(id, response))
+            .onErrorResume(e -> {
+                log.debug("Response cache lookup in Redis failed: {}", e.getMessage());
+                return Mono.empty();
+            });
+    }
+
+    public Mono<Void> put(ResponseCacheKey key, CachedResponse response) {
+        String id = key.asString();
+        local.put(id, response);
+        if (!properties.getRedis().isEnabled()) {
+            return Mono.empty();
+        }
+
+        String json = serialize(response);
+        Duration retention = retention(response);
+        if (json == null || retention.isZero()) {
+            return Mono.empty();
+        }
+        String index = INDEX_PREFIX + key.scope();
+        return redisTemplate.opsForValue().set(ENTRY_PREFIX + id, json, retention)
+            .then(redisTemplate.opsForSet().add(index, id))
+            .then(redisTemplate.expire(index, retention.plus(properties.getStaleRetention())))
+            .timeout(properties.getRedis().getTimeout())
+            .onErrorResume(e -> {
+                log.debug("Response cache write to Redis failed: {}", e.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    /**
+     * Drops every entry of a route and tenant, e.g. after a successful write through that route.
+     */
+    public Mono<Void> invalidate(String routeId, String tenantId) {
+        String scope = ResponseCacheKey.scope(routeId, tenantId);
+        local.asMap().keySet().removeIf(id -> id.startsWith(scope));
+        if (!properties.getRedis().isEnabled()) {
+            return Mono.empty();
+        }
+
+        String index = INDEX_PREFIX + scope;
+        return redisTemplate.opsForSet().members(index)
+            .map(id -> ENTRY_PREFIX + id)
+            .concatWithValues(index)
+            .collectList()
+            .flatMap(keys -> redisTemplate.delete(keys.toArray(String[]::new)))
+            .timeout(properties.getRedis().getTimeout())
+            .onErrorResume(e -> {
+                log.debug("Response cache invalidation in Redis failed: {}", e.getMessage());
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private Duration retention(CachedResponse response) {
+        long millis = response.expiresAtMillis() - System.currentTimeMillis()
+            + properties.getStaleRetention().toMillis();
+        return Duration.ofMillis(Math.max(0, millis));
+    }
+
+    private String serialize(CachedResponse response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize cached response", e);
+            return null;
+        }
+    }
+
+    private CachedResponse deserialize(String json) {
+        try {
+            return objectMapper.readValue(json, CachedResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not deserialize cached response", e);
+            return null;
+        }
+    }
+
+    private class RetentionExpiry implements Expiry<String, CachedResponse> {
+
+        @Override
+        public long expireAfterCreate(String key, CachedResponse response, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(retention(response).toMillis());
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, CachedResponse response, long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(key, response, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, CachedResponse response, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.twelvenexus.oneplan.gateway.config.ResponseCacheProperties;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
+
+/**
+ * Puts a {@link CachingResponse} in place for GET requests. {@link NettyWriteResponseFilter}
+ * writes the downstream body through the response of the exchange it was handed, so the decorator
+ * has to be installed ahead of it; whether anything is cached is decided later, by
+ * {@link ResponseCacheFilter}.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResponseCaptureFilter implements GlobalFilter, Ordered {
+
+    private final ResponseCacheProperties properties;
+    private final ResponseCacheStore store;
+    private final ResponseCacheMetrics metrics;
+
+    @Override
+    public int getOrder() {
+        return NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        if (!properties.isEnabled() || exchange.getRequest().getMethod() != HttpMethod.GET) {
+            return chain.filter(exchange);
+        }
+        CachingResponse response = new CachingResponse(exchange.getResponse(), store, metrics,
+            properties.getMaxEntrySize().toBytes());
+        ServerWebExchange decorated = exchange.mutate().response(response).build();
+        decorated.getAttributes().put(CachingResponse.EXCHANGE_ATTRIBUTE, response);
+        return chain.filter(decorated);
+    }
+}
@@ -0,0 +1,49 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@ConfigurationProperties(prefix = "gateway.auth")
+@Data
+public class GatewayAuthProperties {
+
+    /**
+     * Path prefixes that bypass token validation.
+     */
+    private List<String> publicPaths = new ArrayList<>();
+
+    private SessionRevocation sessionRevocation = new SessionRevocation();
+
+    @Data
+    public static class SessionRevocation {
+        private boolean enabled = true;
+
+        /**
+         * Revoked-sessions endpoint of the identity service; the host is resolved through the
+         * load balancer.
+         */
+        private String uri = "http://identity-service/api/v1/auth/revoked-sessions";
+
+        private Duration pollInterval = Duration.ofSeconds(10);
+
+        /**
+         * How long a revoked session is remembered. Must cover the access token lifetime.
+         */
+        private Duration retention = Duration.ofHours(24);
+
+        /**
+         * Sizing of the membership filter; revocations beyond this only raise the false
+         * positive rate, which the exact set absorbs.
+         */
+        private int expectedRevocations = 100_000;
+
+        private double falsePositiveRate = 0.001;
+    }
+}
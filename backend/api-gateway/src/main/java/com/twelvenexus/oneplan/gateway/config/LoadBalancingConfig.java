@@ -0,0 +1,31 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import java.nio.file.Path;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.gateway.loadbalancer.FileServiceInstanceRegistry;
+import com.twelvenexus.oneplan.gateway.loadbalancer.LoadBalancerClientConfig;
+
+/**
+ * Wires {@code lb://} routes to the registered discovery clients: the static list under
+ * {@code spring.cloud.discovery.client.simple.instances} and, when configured, the file-watched
+ * registry. Any other {@code ReactiveDiscoveryClient} on the classpath (e.g. Consul) is picked up
+ * the same way.
+ */
+@Configuration
+@LoadBalancerClients(defaultConfiguration = LoadBalancerClientConfig.class)
+public class LoadBalancingConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "gateway.load-balancing.file", name = "path")
+    public FileServiceInstanceRegistry fileServiceInstanceRegistry(LoadBalancingProperties properties,
+                                                                   ObjectMapper objectMapper) {
+        LoadBalancingProperties.File file = properties.getFile();
+        return new FileServiceInstanceRegistry(Path.of(file.getPath()), file.getRefreshInterval(), objectMapper);
+    }
+}
@@ -0,0 +1,34 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Data;
+
+@Configuration
+@ConfigurationProperties(prefix = "gateway.load-balancing")
+@Data
+public class LoadBalancingProperties {
+
+    /**
+     * How long an instance receives no traffic after a failed or 5xx-unavailable call.
+     */
+    private Duration drainDuration = Duration.ofSeconds(30);
+
+    private File file = new File();
+
+    @Data
+    public static class File {
+        /**
+         * JSON file mapping service ids to instance URIs. Leave empty to disable the file registry.
+         */
+        private String path;
+
+        /**
+         * How often the file is checked for changes.
+         */
+        private Duration refreshInterval = Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,84 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Configuration
+@ConfigurationProperties(prefix = "gateway.rate-limit")
+@Data
+public class RateLimitProperties {
+
+    /**
+     * Default quota shared by all users of a tenant on a route.
+     */
+    private Quota tenant = new Quota(100, 200, 1);
+
+    /**
+     * Default quota per user (or per client address for anonymous calls) on a route.
+     */
+    private Quota user = new Quota(10, 20, 1);
+
+    /**
+     * Per-route overrides keyed by gateway route id. Unset quotas fall back to the defaults.
+     */
+    private Map<String, RouteQuota> routes = new LinkedHashMap<>();
+
+    /**
+     * Upper bound on a Redis round trip before the local fallback is used.
+     */
+    private Duration redisTimeout = Duration.ofMillis(200);
+
+    /**
+     * How long to stay on the local fallback after Redis failed.
+     */
+    private Duration fallbackCooldown = Duration.ofSeconds(10);
+
+    /**
+     * Maximum number of buckets held by the local fallback.
+     */
+    private long localMaxBuckets = 100_000;
+
+    public RouteQuota quotaFor(String routeId) {
+        RouteQuota override = routes.get(routeId);
+        return new RouteQuota(
+            override != null && override.getTenant() != null ? override.getTenant() : tenant,
+            override != null && override.getUser() != null ? override.getUser() : user
+        );
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RouteQuota {
+        private Quota tenant;
+        private Quota user;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Quota {
+        /**
+         * Tokens added to the bucket per second.
+         */
+        private int replenishRate;
+
+        /**
+         * Maximum number of tokens the bucket can hold.
+         */
+        private int burstCapacity;
+
+        /**
+         * Tokens taken by a single request.
+         */
+        private int requestedTokens = 1;
+    }
+}
@@ -0,0 +1,56 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
+import org.springframework.cloud.client.circuitbreaker.Customizer;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.twelvenexus.oneplan.gateway.config.ResilienceProperties.Policy;
+import com.twelvenexus.oneplan.gateway.resilience.BulkheadFullException;
+import com.twelvenexus.oneplan.gateway.resilience.ResilientRouteDefinitionLocator;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+
+@Configuration
+public class ResilienceConfig {
+
+    /**
+     * Takes the place of the gateway's default properties locator so every route gets the
+     * resilience filters generated from {@code gateway.resilience}.
+     */
+    @Bean
+    public ResilientRouteDefinitionLocator propertiesRouteDefinitionLocator(GatewayProperties gatewayProperties,
+                                                                            ResilienceProperties resilienceProperties) {
+        return new ResilientRouteDefinitionLocator(gatewayProperties, resilienceProperties);
+    }
+
+    /**
+     * Builds breaker and time limiter settings on demand for each service id, or route id when the
+     * route has a policy of its own, so services added to the route table need no extra configuration.
+     */
+    @Bean
+    public Customizer<ReactiveResilience4JCircuitBreakerFactory> circuitBreakerCustomizer(
+            ResilienceProperties resilienceProperties) {
+        return factory -> factory.configureDefault(serviceId -> {
+            Policy policy = resilienceProperties.policyFor(serviceId);
+            return new Resilience4JConfigBuilder(serviceId)
+                .circuitBreakerConfig(CircuitBreakerConfig.custom()
+                    .slidingWindowType(CircuitBreakerConfig.SlidingWindowType.COUNT_BASED)
+                    .slidingWindowSize(policy.getSlidingWindowSize())
+                    .minimumNumberOfCalls(policy.getMinimumNumberOfCalls())
+                    .failureRateThreshold(policy.getFailureRateThreshold())
+                    .waitDurationInOpenState(policy.getWaitDurationInOpenState())
+                    .permittedNumberOfCallsInHalfOpenState(policy.getPermittedNumberOfCallsInHalfOpenState())
+                    // A full bulkhead is load shedding, not a sign the service is unhealthy
+                    .ignoreExceptions(BulkheadFullException.class)
+                    .build())
+                .timeLimiterConfig(TimeLimiterConfig.custom()
+                    .timeoutDuration(policy.getTimeout())
+                    .build())
+                .build();
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+
+import lombok.Data;
+
+/**
+ * Circuit breaker, time limiter, retry and bulkhead settings applied to every gateway route.
+ * Routes are grouped by downstream service: the service id is the {@code lb://} host when the
+ * route uses one, otherwise the route id up to and including {@code -service}, so
+ * {@code analytics-service-events} and {@code analytics-service-reports} share the
+ * {@code analytics-service} breaker and bulkhead. A route listed under {@link #routes} has a
+ * breaker and bulkhead of its own instead, named by its route id.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "gateway.resilience")
+@Data
+public class ResilienceProperties {
+
+    private static final String SERVICE_SUFFIX = "-service";
+
+    private Policy defaults = Policy.builtIn();
+
+    /**
+     * Per-service overrides keyed by service id. Unset values fall back to {@link #defaults}.
+     */
+    private Map<String, Policy> services = new LinkedHashMap<>();
+
+    /**
+     * Per-route overrides keyed by route id, for routes whose calls must not share their
+     * service's limits. Unset values fall back to the service's policy.
+     */
+    private Map<String, Policy> routes = new LinkedHashMap<>();
+
+    /**
+     * Only these methods are retried; they must be idempotent.
+     */
+    private List<HttpMethod> retryMethods = new ArrayList<>(List.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS));
+
+    private List<HttpStatus> retryStatuses = new ArrayList<>(List.of(
+        HttpStatus.BAD_GATEWAY, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT));
+
+    private Duration firstBackoff = Duration.ofMillis(50);
+
+    private Duration maxBackoff = Duration.ofMillis(500);
+
+    /**
+     * Policy of a breaker or bulkhead, named by {@link #resilienceName}.
+     */
+    public Policy policyFor(String name) {
+        Policy route = routes.get(name);
+        if (route != null) {
+            return route.withDefaults(servicePolicy(serviceId(name, null, null)));
+        }
+        return servicePolicy(name);
+    }
+
+    /**
+     * Name of the breaker and bulkhead of a route: its own id when it has a route policy,
+     * otherwise its service id.
+     */
+    public String resilienceName(String routeId, String serviceId) {
+        return routes.containsKey(routeId) ? routeId : serviceId;
+    }
+
+    private Policy servicePolicy(String serviceId) {
+        Policy override = services.get(serviceId);
+        return override == null ? defaults : override.withDefaults(defaults);
+    }
+
+    public static String serviceId(String routeId, String uriScheme, String uriHost) {
+        if ("lb".equals(uriScheme) && uriHost != null) {
+            return uriHost;
+        }
+        int suffix = routeId.indexOf(SERVICE_SUFFIX);
+        return suffix < 0 ? routeId : routeId.substring(0, suffix + SERVICE_SUFFIX.length());
+    }
+
+    @Data
+    public static class Policy {
+        /**
+         * Overall time budget of a request, including retries. Zero means no limit, for routes
+         * serving long-lived responses; such routes get no circuit breaker.
+         */
+        private Duration timeout;
+
+        private Integer retries;
+
+        /**
+         * Concurrent in-flight requests allowed to the service before fast-failing with 503.
+         */
+        private Integer maxConcurrentCalls;
+
+        private Float failureRateThreshold;
+
+        private Integer slidingWindowSize;
+
+        private Integer minimumNumberOfCalls;
+
+        private Duration waitDurationInOpenState;
+
+        private Integer permittedNumberOfCallsInHalfOpenState;
+
+        static Policy builtIn() {
+            Policy policy = new Policy();
+            policy.setTimeout(Duration.ofSeconds(10));
+            policy.setRetries(2);
+            policy.setMaxConcurrentCalls(200);
+            policy.setFailureRateThreshold(50f);
+            policy.setSlidingWindowSize(20);
+            policy.setMinimumNumberOfCalls(10);
+            policy.setWaitDurationInOpenState(Duration.ofSeconds(30));
+            policy.setPermittedNumberOfCallsInHalfOpenState(3);
+            return policy;
+        }
+
+        Policy withDefaults(Policy defaults) {
+            Policy merged = new Policy();
+            merged.setTimeout(timeout != null ? timeout : defaults.getTimeout());
+            merged.setRetries(retries != null ? retries : defaults.getRetries());
+            merged.setMaxConcurrentCalls(maxConcurrentCalls != null ? maxConcurrentCalls : defaults.getMaxConcurrentCalls());
+            merged.setFailureRateThreshold(failureRateThreshold != null ? failureRateThreshold : defaults.getFailureRateThreshold());
+            merged.setSlidingWindowSize(slidingWindowSize != null ? slidingWindowSize : defaults.getSlidingWindowSize());
+            merged.setMinimumNumberOfCalls(minimumNumberOfCalls != null ? minimumNumberOfCalls : defaults.getMinimumNumberOfCalls());
+            merged.setWaitDurationInOpenState(waitDurationInOpenState != null
+                ? waitDurationInOpenState : defaults.getWaitDurationInOpenState());
+            merged.setPermittedNumberOfCallsInHalfOpenState(permittedNumberOfCallsInHalfOpenState != null
+                ? permittedNumberOfCallsInHalfOpenState : defaults.getPermittedNumberOfCallsInHalfOpenState());
+            return merged;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import lombok.Data;
+
+@Configuration
+@ConfigurationProperties(prefix = "gateway.response-cache")
+@Data
+public class ResponseCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * Total body bytes held by the in-memory tier.
+     */
+    private DataSize maximumSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Responses larger than this are never cached.
+     */
+    private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+
+    /**
+     * How long an expired entry with an ETag is kept for conditional revalidation.
+     */
+    private Duration staleRetention = Duration.ofMinutes(10);
+
+    private Redis redis = new Redis();
+
+    /**
+     * GET paths that may be cached. The first matching rule applies.
+     */
+    private List<Rule> rules = new ArrayList<>();
+
+    @Data
+    public static class Redis {
+        /**
+         * Share cached responses between gateway instances through Redis.
+         */
+        private boolean enabled = false;
+
+        private Duration timeout = Duration.ofMillis(100);
+    }
+
+    @Data
+    public static class Rule {
+        /**
+         * Path pattern, e.g. {@code /api/v1/dashboards/*}.
+         */
+        private String path;
+
+        /**
+         * Freshness used when the downstream response has no {@code max-age}.
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        /**
+         * Upper bound on a downstream {@code max-age}.
+         */
+        private Duration maxTtl = Duration.ofMinutes(10);
+    }
+}
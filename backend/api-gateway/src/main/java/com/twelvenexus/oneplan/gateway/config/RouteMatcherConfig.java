@@ -0,0 +1,35 @@
+package com.twelvenexus.oneplan.gateway.config;
+
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.handler.predicate.PredicateDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.twelvenexus.oneplan.gateway.routing.RouteMatcher;
+
+@Configuration
+public class RouteMatcherConfig {
+
+    private static final String PATH_PREDICATE = "Path";
+
+    /**
+     * Compiles the configured public paths and the {@code Path} predicates of all gateway routes
+     * into a single matcher at startup.
+     */
+    @Bean
+    public RouteMatcher routeMatcher(GatewayAuthProperties authProperties,
+                                     GatewayProperties gatewayProperties) {
+        RouteMatcher.Builder builder = RouteMatcher.builder();
+        authProperties.getPublicPaths().forEach(builder::publicPath);
+
+        for (RouteDefinition route : gatewayProperties.getRoutes()) {
+            for (PredicateDefinition predicate : route.getPredicates()) {
+                if (PATH_PREDICATE.equals(predicate.getName())) {
+                    predicate.getArgs().values().forEach(pattern -> builder.route(route.getId(), pattern));
+                }
+            }
+        }
+        return builder.build();
+    }
+}
@@ -6,10 +6,14 @@ import org.springframework.security.config.annotation.web.reactive.EnableWebFlux
 import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatcher.MatchResult;
+import org.springframework.web.server.ServerWebExchange;
 
 import com.twelvenexus.oneplan.gateway.filter.JwtAuthenticationFilter;
+import com.twelvenexus.oneplan.gateway.routing.RouteMatcher;
 
 import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
 
 @Configuration
 @EnableWebFluxSecurity
@@ -17,6 +21,7 @@ import lombok.RequiredArgsConstructor;
 public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final RouteMatcher routeMatcher;
 
     @Bean
     public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
@@ -26,9 +31,16 @@ public class SecurityConfig {
                 .pathMatchers("/api/v1/auth/**").permitAll()
                 .pathMatchers("/actuator/**").permitAll()
                 .pathMatchers("/v3/api-docs/**", "/swagger-ui/**").permitAll()
+                .matchers(this::matchPublicPath).permitAll()
                 .anyExchange().authenticated()
             )
             .addFilterAt(jwtAuthenticationFilter, SecurityWebFiltersOrder.AUTHENTICATION)
             .build();
     }
-}
\ No newline at end of file
+
+    private Mono<MatchResult> matchPublicPath(ServerWebExchange exchange) {
+        return routeMatcher.match(exchange.getRequest().getPath().value()).isPublic()
+            ? MatchResult.match()
+            : MatchResult.notMatch();
+    }
+}
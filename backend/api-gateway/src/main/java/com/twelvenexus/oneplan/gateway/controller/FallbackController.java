@@ -0,0 +1,42 @@
+package com.twelvenexus.oneplan.gateway.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.twelvenexus.oneplan.gateway.resilience.BulkheadFullException;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Target of the circuit breaker {@code fallbackUri} on every route. Answers immediately with a
+ * 503 so clients do not wait on an open breaker, a timed-out call or a full bulkhead.
+ */
+@Slf4j
+@RestController
+public class FallbackController {
+
+    @RequestMapping("/fallback/{serviceId}")
+    public Mono<ResponseEntity<Map<String, Object>>> fallback(@PathVariable String serviceId,
+                                                              ServerWebExchange exchange) {
+        Throwable cause = exchange.getAttribute(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR);
+        log.warn("Fallback for {}: {}", serviceId, cause != null ? cause.toString() : "circuit open");
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", cause instanceof BulkheadFullException
+            ? "Service is overloaded"
+            : "Service temporarily unavailable");
+        body.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        body.put("service", serviceId);
+
+        return Mono.just(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(body));
+    }
+}
@@ -1,11 +1,10 @@
 package com.twelvenexus.oneplan.gateway.filter;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
-import java.util.Set;
 import java.util.stream.Collectors;
 
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -16,47 +15,50 @@ import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 
-import io.jsonwebtoken.Claims;
+import com.twelvenexus.oneplan.common.auth.InternalAuthProperties;
+import com.twelvenexus.oneplan.common.auth.InternalIdentity;
+import com.twelvenexus.oneplan.common.auth.InternalIdentityCodec;
+import com.twelvenexus.oneplan.gateway.routing.RouteMatch;
+import com.twelvenexus.oneplan.gateway.routing.RouteMatcher;
+import com.twelvenexus.oneplan.gateway.security.AuthenticatedUser;
+import com.twelvenexus.oneplan.gateway.security.RevokedSessionRegistry;
+import com.twelvenexus.oneplan.gateway.security.VerifiedTokenCache;
+
 import io.jsonwebtoken.ExpiredJwtException;
-import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
-import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 
 @Component
 @Slf4j
+@RequiredArgsConstructor
 public class JwtAuthenticationFilter implements WebFilter {
 
-    @Value("${jwt.secret}")
-    private String jwtSecret;
-
-    private static final Set<String> PUBLIC_PATHS = Set.of(
-        "/api/v1/auth/login",
-        "/api/v1/auth/signup",
-        "/api/v1/auth/refresh",
-        "/api/v1/auth/forgot-password",
-        "/api/v1/auth/reset-password",
-        "/api/v1/plans",  // Public plan listing
-        "/api/v1/webhooks/razorpay",  // Payment webhooks
-        "/api/v1/webhooks/phonepe",
-        "/api/v1/storyboards/shared",  // Public shared storyboards
-        "/actuator/health",
-        "/actuator/info",
-        "/swagger-ui",
-        "/v3/api-docs",
-        "/api-docs",
-        "/api/docs"
-    );
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final RouteMatcher routeMatcher;
+    private final InternalIdentityCodec identityCodec;
+    private final InternalAuthProperties internalAuthProperties;
+    private final RevokedSessionRegistry revokedSessionRegistry;
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // Only the gateway may assert an identity to downstream services
+        if (exchange.getRequest().getHeaders().containsKey(InternalIdentity.HEADER)) {
+            exchange = exchange.mutate()
+                .request(requestBuilder -> requestBuilder
+                    .headers(headers -> headers.remove(InternalIdentity.HEADER)))
+                .build();
+        }
+
         String path = exchange.getRequest().getPath().value();
+        RouteMatch routeMatch = routeMatcher.match(path);
+        exchange.getAttributes().put(RouteMatch.EXCHANGE_ATTRIBUTE, routeMatch);
 
         // Check if the path is public
-        if (isPublicPath(path)) {
+        if (routeMatch.isPublic()) {
             return chain.filter(exchange);
         }
 
@@ -66,15 +68,15 @@ public class JwtAuthenticationFilter implements WebFilter {
         }
 
         try {
-            Claims claims = validateToken(token);
-
-            // Extract user information from claims
-            String userId = claims.get("userId", String.class);
-            String email = claims.getSubject();
-            String tenantId = claims.get("tenantId", String.class);
+            AuthenticatedUser user = verifiedTokenCache.resolve(token);
+            if (revokedSessionRegistry.isRevoked(user.sessionId())) {
+                return onError(exchange, "Session revoked", HttpStatus.UNAUTHORIZED);
+            }
 
-            @SuppressWarnings("unchecked")
-            List<String> roles = claims.get("roles", List.class);
+            String userId = user.userId();
+            String email = user.email();
+            String tenantId = user.tenantId();
+            List<String> roles = user.roles();
 
             // Create authentication object
             List<SimpleGrantedAuthority> authorities = roles.stream()
@@ -84,9 +86,14 @@ public class JwtAuthenticationFilter implements WebFilter {
             UsernamePasswordAuthenticationToken authentication =
                 new UsernamePasswordAuthenticationToken(email, null, authorities);
 
+            // Signed identity lets downstream services skip JWT verification
+            String identityHeader = identityCodec.encode(new InternalIdentity(
+                userId, tenantId, email, roles, identityExpiry(user)));
+
             // Add user info to headers for downstream services
             ServerWebExchange.Builder exchangeBuilder = exchange.mutate();
             exchangeBuilder.request(requestBuilder -> {
+                requestBuilder.header(InternalIdentity.HEADER, identityHeader);
                 requestBuilder.header("X-User-Id", userId);
                 requestBuilder.header("X-User-Email", email);
                 requestBuilder.header("X-User-Roles", String.join(",", roles));
@@ -120,8 +127,11 @@ public class JwtAuthenticationFilter implements WebFilter {
         }
     }
 
-    private boolean isPublicPath(String path) {
-        return PUBLIC_PATHS.stream().anyMatch(path::startsWith);
+    private long identityExpiry(AuthenticatedUser user) {
+        long headerExpiry = Instant.now().plus(internalAuthProperties.getTtl()).getEpochSecond();
+        return user.expiresAt() == null
+            ? headerExpiry
+            : Math.min(headerExpiry, user.expiresAt().getEpochSecond());
     }
 
     private String extractToken(ServerWebExchange exchange) {
@@ -132,14 +142,6 @@ public class JwtAuthenticationFilter implements WebFilter {
         return null;
     }
 
-    private Claims validateToken(String token) {
-        return Jwts.parser()
-            .setSigningKey(Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8)))
-            .build()
-            .parseClaimsJws(token)
-            .getBody();
-    }
-
     private Mono<Void> onError(ServerWebExchange exchange, String err, HttpStatus httpStatus) {
         exchange.getResponse().setStatusCode(httpStatus);
         exchange.getResponse().getHeaders().add("Content-Type", "application/json");
@@ -0,0 +1,106 @@
+package com.twelvenexus.oneplan.gateway.loadbalancer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.ReactiveDiscoveryClient;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Discovery client backed by a JSON file of the form
+ * {@code {"task-service": ["http://10.0.0.5:8085", "http://10.0.0.6:8085"]}}, for environments
+ * without Consul. The file is re-read whenever its modification time changes, so replicas can be
+ * added or removed without restarting the gateway. A file that fails to parse keeps the previous
+ * snapshot.
+ */
+@Slf4j
+public class FileServiceInstanceRegistry implements ReactiveDiscoveryClient, DisposableBean {
+
+    private static final TypeReference<Map<String, List<String>>> FILE_FORMAT = new TypeReference<>() {
+    };
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final Disposable watcher;
+    private volatile Map<String, List<ServiceInstance>> instances = Map.of();
+    private volatile FileTime lastModified;
+
+    public FileServiceInstanceRegistry(Path path, Duration refreshInterval, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        reloadIfChanged();
+        this.watcher = Flux.interval(refreshInterval, refreshInterval, Schedulers.boundedElastic())
+            .subscribe(tick -> reloadIfChanged());
+    }
+
+    @Override
+    public String description() {
+        return "File service instance registry (" + path + ")";
+    }
+
+    @Override
+    public Flux<ServiceInstance> getInstances(String serviceId) {
+        return Flux.fromIterable(instances.getOrDefault(serviceId, List.of()));
+    }
+
+    @Override
+    public Flux<String> getServices() {
+        return Flux.fromIterable(instances.keySet());
+    }
+
+    @Override
+    public void destroy() {
+        watcher.dispose();
+    }
+
+    void reloadIfChanged() {
+        try {
+            FileTime modified = Files.getLastModifiedTime(path);
+            if (modified.equals(lastModified)) {
+                return;
+            }
+            Map<String, List<String>> uris = objectMapper.readValue(path.toFile(), FILE_FORMAT);
+            instances = toInstances(uris);
+            lastModified = modified;
+            log.info("Loaded {} services from {}", instances.size(), path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load service instances from {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static Map<String, List<ServiceInstance>> toInstances(Map<String, List<String>> uris) {
+        Map<String, List<ServiceInstance>> result = new LinkedHashMap<>();
+        uris.forEach((serviceId, serviceUris) -> {
+            List<ServiceInstance> serviceInstances = new ArrayList<>();
+            for (String value : serviceUris) {
+                URI uri = URI.create(value);
+                serviceInstances.add(new DefaultServiceInstance(
+                    serviceId + "-" + uri.getHost() + "-" + uri.getPort(),
+                    serviceId,
+                    uri.getHost(),
+                    uri.getPort(),
+                    "https".equals(uri.getScheme())));
+            }
+            result.put(serviceId, List.copyOf(serviceInstances));
+        });
+        return Map.copyOf(result);
+    }
+}
@@ -0,0 +1,226 @@
+package com.twelvenexus.oneplan.gateway.loadbalancer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.http.HttpStatus;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends each request to the healthy instance with the fewest requests in flight, breaking ties
+ * randomly. An instance whose call fails to connect or answers 502/503 is drained: it receives no
+ * new requests for the drain duration, unless every instance of the service is drained.
+ *
+ * <p>One balancer exists per service. It is also registered as a {@link LoadBalancerLifecycle},
+ * which is how the gateway reports request start and completion back to it. The gateway reports
+ * no completion for a call that is cancelled, by the circuit breaker's time limiter or a client
+ * that disconnects, so every started call also leaves a lease in the exchange attributes, which
+ * {@link OutstandingRequestsFilter} releases once the exchange ends however it ends.
+ */
+@Slf4j
+public class LeastOutstandingRequestsLoadBalancer implements ReactorServiceInstanceLoadBalancer,
+    LoadBalancerLifecycle<RequestDataContext, ResponseData, ServiceInstance> {
+
+    private static final String LEASES_ATTRIBUTE = LeastOutstandingRequestsLoadBalancer.class.getName() + ".leases";
+
+    private final ObjectProvider<ServiceInstanceListSupplier> supplierProvider;
+    private final String serviceId;
+    private final long drainNanos;
+    private final Map<String, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+    private final Map<String, Long> drainedUntil = new ConcurrentHashMap<>();
+
+    public LeastOutstandingRequestsLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> supplierProvider,
+                                                String serviceId,
+                                                Duration drainDuration) {
+        this.supplierProvider = supplierProvider;
+        this.serviceId = serviceId;
+        this.drainNanos = drainDuration.toNanos();
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = supplierProvider.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next().map(this::select);
+    }
+
+    @Override
+    public void onStart(Request<RequestDataContext> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<RequestDataContext> request, Response<ServiceInstance> lbResponse) {
+        if (!lbResponse.hasServer()) {
+            return;
+        }
+        AtomicInteger counter = counter(lbResponse.getServer());
+        counter.incrementAndGet();
+        Map<String, Object> attributes = attributes(request);
+        if (attributes != null) {
+            leases(attributes).add(new Lease(lbResponse, counter));
+        }
+    }
+
+    /**
+     * Releases the calls of an exchange that are still counted as in flight. Safe to call after
+     * they completed normally.
+     */
+    @SuppressWarnings("unchecked")
+    static void releaseAll(Map<String, Object> attributes) {
+        Queue<Lease> leases = (Queue<Lease>) attributes.get(LEASES_ATTRIBUTE);
+        if (leases == null) {
+            return;
+        }
+        for (Lease lease = leases.poll(); lease != null; lease = leases.poll()) {
+            lease.release();
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completionContext) {
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (lbResponse == null || !lbResponse.hasServer()) {
+            return;
+        }
+        ServiceInstance instance = lbResponse.getServer();
+        if (completionContext.status() == CompletionContext.Status.DISCARD) {
+            return;
+        }
+        release(completionContext.getLoadBalancerRequest(), lbResponse, instance);
+
+        if (isInstanceFailure(completionContext)) {
+            drainedUntil.put(key(instance), System.nanoTime() + drainNanos);
+            log.warn("Draining {} instance {}:{} for {} ms", serviceId, instance.getHost(), instance.getPort(),
+                drainNanos / 1_000_000);
+        }
+    }
+
+    Response<ServiceInstance> select(List<ServiceInstance> instances) {
+        if (instances.isEmpty()) {
+            log.warn("No instances available for {}", serviceId);
+            return new EmptyResponse();
+        }
+
+        List<ServiceInstance> candidates = available(instances);
+        List<ServiceInstance> least = new ArrayList<>();
+        int fewest = Integer.MAX_VALUE;
+        for (ServiceInstance instance : candidates) {
+            int inFlight = counter(instance).get();
+            if (inFlight < fewest) {
+                fewest = inFlight;
+                least.clear();
+            }
+            if (inFlight == fewest) {
+                least.add(instance);
+            }
+        }
+        return new DefaultResponse(least.get(ThreadLocalRandom.current().nextInt(least.size())));
+    }
+
+    private List<ServiceInstance> available(List<ServiceInstance> instances) {
+        long now = System.nanoTime();
+        List<ServiceInstance> available = new ArrayList<>(instances.size());
+        for (ServiceInstance instance : instances) {
+            Long until = drainedUntil.get(key(instance));
+            if (until == null || until - now <= 0) {
+                available.add(instance);
+            }
+        }
+        // Better to try a drained instance than to fail every request
+        return available.isEmpty() ? instances : available;
+    }
+
+    private static boolean isInstanceFailure(
+            CompletionContext<ResponseData, ServiceInstance, RequestDataContext> completionContext) {
+        if (completionContext.status() == CompletionContext.Status.FAILED) {
+            return true;
+        }
+        ResponseData response = completionContext.getClientResponse();
+        if (response == null || response.getHttpStatus() == null) {
+            return false;
+        }
+        int status = response.getHttpStatus().value();
+        return status == HttpStatus.BAD_GATEWAY.value() || status == HttpStatus.SERVICE_UNAVAILABLE.value();
+    }
+
+    int outstanding(ServiceInstance instance) {
+        return counter(instance).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void release(Request<RequestDataContext> request, Response<ServiceInstance> lbResponse,
+                         ServiceInstance instance) {
+        Map<String, Object> attributes = attributes(request);
+        Queue<Lease> leases = attributes != null ? (Queue<Lease>) attributes.get(LEASES_ATTRIBUTE) : null;
+        if (leases == null) {
+            counter(instance).decrementAndGet();
+            return;
+        }
+        for (Lease lease : leases) {
+            if (lease.lbResponse() == lbResponse) {
+                leases.remove(lease);
+                lease.release();
+                return;
+            }
+        }
+        // Already released with its exchange
+    }
+
+    private static Map<String, Object> attributes(Request<RequestDataContext> request) {
+        if (request == null || request.getContext() == null || request.getContext().getClientRequest() == null) {
+            return null;
+        }
+        return request.getContext().getClientRequest().getAttributes();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Queue<Lease> leases(Map<String, Object> attributes) {
+        return (Queue<Lease>) attributes.computeIfAbsent(LEASES_ATTRIBUTE, key -> new ConcurrentLinkedQueue<Lease>());
+    }
+
+    private AtomicInteger counter(ServiceInstance instance) {
+        return outstanding.computeIfAbsent(key(instance), k -> new AtomicInteger());
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    /**
+     * One started call, counted in its instance's outstanding requests until released once.
+     */
+    private record Lease(Response<ServiceInstance> lbResponse, AtomicInteger counter, AtomicBoolean released) {
+
+        Lease(Response<ServiceInstance> lbResponse, AtomicInteger counter) {
+            this(lbResponse, counter, new AtomicBoolean());
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                counter.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.twelvenexus.oneplan.gateway.loadbalancer;
+
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+import com.twelvenexus.oneplan.gateway.config.LoadBalancingProperties;
+
+/**
+ * Per-service load balancer configuration, instantiated in each service's child context by
+ * Spring Cloud LoadBalancer. Deliberately not a {@code @Configuration} so component scanning does
+ * not pick it up in the main context.
+ */
+public class LoadBalancerClientConfig {
+
+    @Bean
+    public ServiceInstanceListSupplier serviceInstanceListSupplier(ConfigurableApplicationContext context) {
+        return ServiceInstanceListSupplier.builder()
+            .withDiscoveryClient()
+            .withHealthChecks()
+            .build(context);
+    }
+
+    /**
+     * Declared with its concrete type so the gateway also finds it as a {@code LoadBalancerLifecycle}.
+     */
+    @Bean
+    public LeastOutstandingRequestsLoadBalancer reactorServiceInstanceLoadBalancer(Environment environment,
+                                                                                   LoadBalancerClientFactory clientFactory,
+                                                                                   LoadBalancingProperties properties) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        return new LeastOutstandingRequestsLoadBalancer(
+            clientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+            serviceId,
+            properties.getDrainDuration());
+    }
+}
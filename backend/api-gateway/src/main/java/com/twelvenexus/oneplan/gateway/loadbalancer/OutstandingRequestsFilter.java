@@ -0,0 +1,30 @@
+package com.twelvenexus.oneplan.gateway.loadbalancer;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Wraps the load balancer filter so the calls an exchange started stop counting as outstanding
+ * when it ends, including when it is cancelled, which the gateway does not report to
+ * {@link LeastOutstandingRequestsLoadBalancer} itself.
+ */
+@Component
+public class OutstandingRequestsFilter implements GlobalFilter, Ordered {
+
+    @Override
+    public int getOrder() {
+        return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER - 1;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        return chain.filter(exchange)
+            .doFinally(signal -> LeastOutstandingRequestsLoadBalancer.releaseAll(exchange.getAttributes()));
+    }
+}
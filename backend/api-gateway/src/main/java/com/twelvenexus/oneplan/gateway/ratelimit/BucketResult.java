@@ -0,0 +1,7 @@
+package com.twelvenexus.oneplan.gateway.ratelimit;
+
+/**
+ * Outcome of taking tokens from a bucket.
+ */
+public record BucketResult(boolean allowed, long tokensRemaining) {
+}
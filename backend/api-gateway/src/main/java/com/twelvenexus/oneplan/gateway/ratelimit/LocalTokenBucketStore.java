@@ -0,0 +1,55 @@
+package com.twelvenexus.oneplan.gateway.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties;
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties.Quota;
+
+/**
+ * In-memory token buckets used while Redis is unavailable. Limits are enforced per gateway
+ * instance only, which is an acceptable degradation compared to not limiting at all.
+ */
+@Component
+public class LocalTokenBucketStore {
+
+    private final Cache<String, Bucket> buckets;
+
+    public LocalTokenBucketStore(RateLimitProperties properties) {
+        this.buckets = Caffeine.newBuilder()
+            .maximumSize(properties.getLocalMaxBuckets())
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build();
+    }
+
+    public BucketResult tryConsume(String bucket, Quota quota) {
+        return buckets.get(bucket, key -> new Bucket(quota.getBurstCapacity(), System.nanoTime()))
+            .tryConsume(quota, System.nanoTime());
+    }
+
+    private static final class Bucket {
+
+        private double tokens;
+        private long lastRefillNanos;
+
+        private Bucket(double tokens, long lastRefillNanos) {
+            this.tokens = tokens;
+            this.lastRefillNanos = lastRefillNanos;
+        }
+
+        synchronized BucketResult tryConsume(Quota quota, long nowNanos) {
+            double elapsedSeconds = (nowNanos - lastRefillNanos) / 1_000_000_000.0;
+            tokens = Math.min(quota.getBurstCapacity(), tokens + elapsedSeconds * quota.getReplenishRate());
+            lastRefillNanos = nowNanos;
+
+            boolean allowed = tokens >= quota.getRequestedTokens();
+            if (allowed) {
+                tokens -= quota.getRequestedTokens();
+            }
+            return new BucketResult(allowed, (long) tokens);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.twelvenexus.oneplan.gateway.ratelimit;
+
+/**
+ * Identifies who a request is charged to. The key travels through the gateway's
+ * {@code RequestRateLimiter} filter as a single string, so it is encoded as
+ * {@code <tenant>|<principal>}.
+ */
+public record RateLimitKey(String tenantId, String principal) {
+
+    private static final char SEPARATOR = '|';
+    private static final String NO_TENANT = "-";
+
+    public static RateLimitKey forUser(String tenantId, String userId) {
+        return new RateLimitKey(tenantId, "user:" + userId);
+    }
+
+    public static RateLimitKey forAddress(String address) {
+        return new RateLimitKey(null, "ip:" + address);
+    }
+
+    public static RateLimitKey parse(String encoded) {
+        int separator = encoded.indexOf(SEPARATOR);
+        if (separator < 0) {
+            return new RateLimitKey(null, encoded);
+        }
+        String tenant = encoded.substring(0, separator);
+        return new RateLimitKey(NO_TENANT.equals(tenant) ? null : tenant, encoded.substring(separator + 1));
+    }
+
+    public boolean hasTenant() {
+        return tenantId != null;
+    }
+
+    public String encode() {
+        return (tenantId != null ? tenantId : NO_TENANT) + SEPARATOR + principal;
+    }
+}
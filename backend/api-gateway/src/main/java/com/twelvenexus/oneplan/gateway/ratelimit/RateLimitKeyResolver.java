@@ -0,0 +1,43 @@
+package com.twelvenexus.oneplan.gateway.ratelimit;
+
+import java.net.InetSocketAddress;
+
+import org.springframework.cloud.gateway.filter.ratelimit.KeyResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import com.twelvenexus.oneplan.gateway.routing.RouteMatch;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Charges authenticated requests to the tenant and user the authentication filter extracted from
+ * the token, and anonymous requests to the client address. Identity headers on public paths are
+ * client-supplied and therefore ignored.
+ */
+@Component
+public class RateLimitKeyResolver implements KeyResolver {
+
+    private static final String UNKNOWN_ADDRESS = "unknown";
+
+    @Override
+    public Mono<String> resolve(ServerWebExchange exchange) {
+        RouteMatch routeMatch = exchange.getAttribute(RouteMatch.EXCHANGE_ATTRIBUTE);
+        HttpHeaders headers = exchange.getRequest().getHeaders();
+        String userId = headers.getFirst("X-User-Id");
+
+        RateLimitKey key = routeMatch != null && !routeMatch.isPublic() && userId != null
+            ? RateLimitKey.forUser(headers.getFirst("X-Tenant-Id"), userId)
+            : RateLimitKey.forAddress(remoteAddress(exchange));
+        return Mono.just(key.encode());
+    }
+
+    private String remoteAddress(ServerWebExchange exchange) {
+        InetSocketAddress address = exchange.getRequest().getRemoteAddress();
+        if (address == null || address.getAddress() == null) {
+            return UNKNOWN_ADDRESS;
+        }
+        return address.getAddress().getHostAddress();
+    }
+}
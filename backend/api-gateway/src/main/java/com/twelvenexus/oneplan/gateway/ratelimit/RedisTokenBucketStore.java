@@ -0,0 +1,50 @@
+package com.twelvenexus.oneplan.gateway.ratelimit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties.Quota;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Token buckets shared by all gateway instances. Refill and consumption happen atomically in a
+ * Lua script that uses the Redis server clock, so instance clock skew does not matter.
+ */
+@Component
+public class RedisTokenBucketStore {
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final RedisScript<List<Long>> SCRIPT =
+        (RedisScript) RedisScript.of(new ClassPathResource("scripts/token_bucket.lua"), List.class);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+
+    public RedisTokenBucketStore(ReactiveStringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    public Mono<BucketResult> tryConsume(String bucket, Quota quota) {
+        List<String> keys = List.of(
+            "rate_limit.{" + bucket + "}.tokens",
+            "rate_limit.{" + bucket + "}.timestamp"
+        );
+        List<String> args = List.of(
+            Integer.toString(quota.getReplenishRate()),
+            Integer.toString(quota.getBurstCapacity()),
+            Integer.toString(quota.getRequestedTokens())
+        );
+
+        return redisTemplate.execute(SCRIPT, keys, args)
+            .reduce(new ArrayList<Long>(), (results, values) -> {
+                results.addAll(values);
+                return results;
+            })
+            .map(results -> new BucketResult(results.get(0) == 1L, results.get(1)));
+    }
+}
@@ -0,0 +1,89 @@
+package com.twelvenexus.oneplan.gateway.ratelimit;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cloud.gateway.filter.ratelimit.AbstractRateLimiter;
+import org.springframework.cloud.gateway.support.ConfigurationService;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties;
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties.Quota;
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties.RouteQuota;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Token-bucket rate limiter applying a per-user and a per-tenant quota for every route. Buckets
+ * live in Redis so limits hold across gateway instances; when Redis is slow or unavailable the
+ * limiter switches to {@link LocalTokenBucketStore} for {@code gateway.rate-limit.fallback-cooldown}
+ * before trying Redis again.
+ */
+@Slf4j
+@Primary
+@Component
+public class TenantRateLimiter extends AbstractRateLimiter<RouteQuota> {
+
+    private static final String CONFIGURATION_PROPERTY_NAME = "tenant-rate-limiter";
+    private static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    private static final String REPLENISH_RATE_HEADER = "X-RateLimit-Replenish-Rate";
+    private static final String BURST_CAPACITY_HEADER = "X-RateLimit-Burst-Capacity";
+
+    private final RateLimitProperties properties;
+    private final RedisTokenBucketStore redisStore;
+    private final LocalTokenBucketStore localStore;
+    private final AtomicLong redisRetryAtMillis = new AtomicLong();
+
+    public TenantRateLimiter(RateLimitProperties properties,
+                             RedisTokenBucketStore redisStore,
+                             LocalTokenBucketStore localStore,
+                             ConfigurationService configurationService) {
+        super(RouteQuota.class, CONFIGURATION_PROPERTY_NAME, configurationService);
+        this.properties = properties;
+        this.redisStore = redisStore;
+        this.localStore = localStore;
+    }
+
+    @Override
+    public Mono<Response> isAllowed(String routeId, String id) {
+        RouteQuota quota = properties.quotaFor(routeId);
+        RateLimitKey key = RateLimitKey.parse(id);
+
+        return consume(routeId + ":" + key.principal(), quota.getUser())
+            .flatMap(user -> {
+                if (!user.allowed() || !key.hasTenant()) {
+                    return Mono.just(response(user, quota.getUser()));
+                }
+                return consume(routeId + ":tenant:" + key.tenantId(), quota.getTenant())
+                    .map(tenant -> tenant.allowed()
+                        ? response(user, quota.getUser())
+                        : response(tenant, quota.getTenant()));
+            });
+    }
+
+    private Mono<BucketResult> consume(String bucket, Quota quota) {
+        if (System.currentTimeMillis() < redisRetryAtMillis.get()) {
+            return Mono.fromSupplier(() -> localStore.tryConsume(bucket, quota));
+        }
+        return redisStore.tryConsume(bucket, quota)
+            .timeout(properties.getRedisTimeout())
+            .doOnSuccess(result -> redisRetryAtMillis.set(0))
+            .onErrorResume(e -> {
+                if (redisRetryAtMillis.getAndSet(
+                        System.currentTimeMillis() + properties.getFallbackCooldown().toMillis()) == 0) {
+                    log.warn("Redis rate limiting unavailable, using local buckets: {}", e.getMessage());
+                }
+                return Mono.fromSupplier(() -> localStore.tryConsume(bucket, quota));
+            });
+    }
+
+    private Response response(BucketResult result, Quota quota) {
+        return new Response(result.allowed(), Map.of(
+            REMAINING_HEADER, Long.toString(result.tokensRemaining()),
+            REPLENISH_RATE_HEADER, Integer.toString(quota.getReplenishRate()),
+            BURST_CAPACITY_HEADER, Integer.toString(quota.getBurstCapacity())
+        ));
+    }
+}
@@ -0,0 +1,16 @@
+package com.twelvenexus.oneplan.gateway.resilience;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Raised when a downstream service already has its maximum number of in-flight requests. Routes
+ * with a breaker answer it from the fallback; on routes without one the status below applies.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BulkheadFullException extends RuntimeException {
+
+    public BulkheadFullException(String serviceId) {
+        super("Bulkhead '" + serviceId + "' is full");
+    }
+}
@@ -0,0 +1,52 @@
+package com.twelvenexus.oneplan.gateway.resilience;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caps the number of in-flight requests per downstream service. Routes sharing a bulkhead name
+ * share its permits; a full bulkhead fails fast with {@link BulkheadFullException} instead of
+ * queueing on the Netty connection pool.
+ */
+@Component
+public class BulkheadGatewayFilterFactory extends AbstractGatewayFilterFactory<BulkheadGatewayFilterFactory.Config> {
+
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+    public BulkheadGatewayFilterFactory() {
+        super(Config.class);
+    }
+
+    @Override
+    public List<String> shortcutFieldOrder() {
+        return List.of("name", "maxConcurrentCalls");
+    }
+
+    @Override
+    public GatewayFilter apply(Config config) {
+        Semaphore permits = bulkheads.computeIfAbsent(config.getName(),
+            name -> new Semaphore(config.getMaxConcurrentCalls()));
+
+        return (exchange, chain) -> {
+            if (!permits.tryAcquire()) {
+                return Mono.error(new BulkheadFullException(config.getName()));
+            }
+            return chain.filter(exchange).doFinally(signal -> permits.release());
+        };
+    }
+
+    @Data
+    public static class Config {
+        private String name;
+        private int maxConcurrentCalls = 200;
+    }
+}
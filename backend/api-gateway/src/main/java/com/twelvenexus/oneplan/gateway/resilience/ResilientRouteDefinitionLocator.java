@@ -0,0 +1,122 @@
+package com.twelvenexus.oneplan.gateway.resilience;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.config.PropertiesRouteDefinitionLocator;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+import org.springframework.cloud.gateway.support.NameUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+
+import com.twelvenexus.oneplan.gateway.config.ResilienceProperties;
+import com.twelvenexus.oneplan.gateway.config.ResilienceProperties.Policy;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Replaces the default {@link PropertiesRouteDefinitionLocator} and prepends, to every configured route, a
+ * {@code CircuitBreaker} (with a fast 503 fallback), a {@code Bulkhead} and a {@code Retry} for
+ * idempotent methods, so no route in {@code application.yml} has to list them itself. Routes share
+ * their service's breaker and bulkhead unless they have a route policy of their own. A policy without
+ * a timeout is for long-lived responses such as event streams: the route gets no breaker, whose time
+ * limiter would cut them off, and the gateway's global response timeout is turned off for it.
+ */
+public class ResilientRouteDefinitionLocator extends PropertiesRouteDefinitionLocator {
+
+    private static final String FALLBACK_PATH = "/fallback/";
+
+    private static final String RESPONSE_TIMEOUT_METADATA = "response-timeout";
+    /** A negative response timeout disables the global one for the route. */
+    private static final long NO_RESPONSE_TIMEOUT = -1;
+    private static final String FAILURE_STATUS_CODES = "502,503,504";
+
+    private final ResilienceProperties resilienceProperties;
+
+    public ResilientRouteDefinitionLocator(GatewayProperties gatewayProperties,
+                                           ResilienceProperties resilienceProperties) {
+        super(gatewayProperties);
+        this.resilienceProperties = resilienceProperties;
+    }
+
+    @Override
+    public Flux<RouteDefinition> getRouteDefinitions() {
+        return super.getRouteDefinitions().map(this::withResilience);
+    }
+
+    public static String serviceId(RouteDefinition route) {
+        URI uri = route.getUri();
+        return ResilienceProperties.serviceId(route.getId(),
+            uri != null ? uri.getScheme() : null,
+            uri != null ? uri.getHost() : null);
+    }
+
+    private RouteDefinition withResilience(RouteDefinition source) {
+        String serviceId = serviceId(source);
+        String name = resilienceProperties.resilienceName(source.getId(), serviceId);
+        Policy policy = resilienceProperties.policyFor(name);
+
+        RouteDefinition route = new RouteDefinition();
+        route.setId(source.getId());
+        route.setUri(source.getUri());
+        route.setOrder(source.getOrder());
+        route.setPredicates(source.getPredicates());
+
+        List<FilterDefinition> filters = new ArrayList<>();
+        boolean timeLimited = !policy.getTimeout().isZero();
+        if (timeLimited) {
+            filters.add(circuitBreaker(name, serviceId));
+        }
+        filters.add(bulkhead(name, policy));
+        if (policy.getRetries() > 0) {
+            filters.add(retry(policy));
+        }
+        filters.addAll(source.getFilters());
+        route.setFilters(filters);
+
+        Map<String, Object> metadata = new LinkedHashMap<>(source.getMetadata());
+        metadata.putIfAbsent(RESPONSE_TIMEOUT_METADATA,
+            timeLimited ? policy.getTimeout().toMillis() : NO_RESPONSE_TIMEOUT);
+        route.setMetadata(metadata);
+        return route;
+    }
+
+    private FilterDefinition circuitBreaker(String name, String serviceId) {
+        FilterDefinition filter = new FilterDefinition();
+        filter.setName("CircuitBreaker");
+        filter.addArg("name", name);
+        filter.addArg("fallbackUri", "forward:" + FALLBACK_PATH + serviceId);
+        filter.addArg("statusCodes", FAILURE_STATUS_CODES);
+        return filter;
+    }
+
+    private FilterDefinition bulkhead(String name, Policy policy) {
+        FilterDefinition filter = new FilterDefinition();
+        filter.setName(NameUtils.normalizeFilterFactoryName(BulkheadGatewayFilterFactory.class));
+        filter.addArg("name", name);
+        filter.addArg("maxConcurrentCalls", policy.getMaxConcurrentCalls().toString());
+        return filter;
+    }
+
+    private FilterDefinition retry(Policy policy) {
+        FilterDefinition filter = new FilterDefinition();
+        filter.setName("Retry");
+        filter.addArg("retries", policy.getRetries().toString());
+        filter.addArg("methods", String.join(",",
+            resilienceProperties.getRetryMethods().stream().map(HttpMethod::name).toList()));
+        filter.addArg("statuses", String.join(",",
+            resilienceProperties.getRetryStatuses().stream().map(HttpStatus::name).toList()));
+        // Only the statuses above; the default would also retry every other 5xx
+        filter.addArg("series", "");
+        filter.addArg("backoff.firstBackoff", resilienceProperties.getFirstBackoff().toMillis() + "ms");
+        filter.addArg("backoff.maxBackoff", resilienceProperties.getMaxBackoff().toMillis() + "ms");
+        filter.addArg("backoff.factor", "2");
+        filter.addArg("backoff.basedOnPreviousValue", "false");
+        return filter;
+    }
+}
@@ -0,0 +1,19 @@
+package com.twelvenexus.oneplan.gateway.routing;
+
+/**
+ * Result of classifying a request path: whether it bypasses authentication and which gateway
+ * route (if any) serves it.
+ */
+public record RouteMatch(boolean publicPath, String routeId) {
+
+    /**
+     * Exchange attribute under which the authentication filter stores the match for later filters.
+     */
+    public static final String EXCHANGE_ATTRIBUTE = RouteMatch.class.getName();
+
+    static final RouteMatch UNMATCHED = new RouteMatch(false, null);
+
+    public boolean isPublic() {
+        return publicPath;
+    }
+}
@@ -0,0 +1,145 @@
+package com.twelvenexus.oneplan.gateway.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Precompiled character trie over public path prefixes and route path patterns. A single walk
+ * over the request path decides whether it is public and which route serves it, so the cost per
+ * request depends on the path length rather than on the number of configured routes.
+ *
+ * <p>Public prefixes keep plain {@code startsWith} semantics ({@code /swagger-ui} also covers
+ * {@code /swagger-ui.html}). Route patterns match on segment boundaries: {@code /api/v1/tasks/**}
+ * covers {@code /api/v1/tasks} and {@code /api/v1/tasks/42} but not {@code /api/v1/tasksets}.
+ * Patterns with wildcards before the trailing {@code /**} are matched on their literal prefix,
+ * which is enough for classification; the gateway's own route predicates stay authoritative.
+ * Like the gateway, the first declared route wins when several patterns match.
+ */
+public final class RouteMatcher {
+
+    private final Node root;
+
+    private RouteMatcher(Node root) {
+        this.root = root;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public RouteMatch match(String path) {
+        Node node = root;
+        boolean publicPath = node.publicPrefix;
+        String routeId = null;
+        int routeOrder = Integer.MAX_VALUE;
+        int length = path.length();
+
+        for (int i = 0; i <= length; i++) {
+            if (node.routeId != null && node.routeOrder < routeOrder && isSegmentBoundary(path, i)) {
+                routeId = node.routeId;
+                routeOrder = node.routeOrder;
+            }
+            if (node.publicPrefix) {
+                publicPath = true;
+            }
+            if (i == length) {
+                break;
+            }
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+        }
+
+        if (!publicPath && routeId == null) {
+            return RouteMatch.UNMATCHED;
+        }
+        return new RouteMatch(publicPath, routeId);
+    }
+
+    private static boolean isSegmentBoundary(String path, int i) {
+        return i == path.length() || path.charAt(i) == '/' || (i > 0 && path.charAt(i - 1) == '/');
+    }
+
+    public static final class Builder {
+
+        private final Node root = new Node();
+        private int nextRouteOrder;
+
+        private Builder() {
+        }
+
+        public Builder publicPath(String prefix) {
+            insert(prefix).publicPrefix = true;
+            return this;
+        }
+
+        public Builder route(String routeId, String pattern) {
+            Node node = insert(literalPrefix(pattern));
+            if (node.routeId == null) {
+                node.routeId = routeId;
+                node.routeOrder = nextRouteOrder;
+            }
+            nextRouteOrder++;
+            return this;
+        }
+
+        public RouteMatcher build() {
+            return new RouteMatcher(root);
+        }
+
+        private Node insert(String prefix) {
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.childOrCreate(prefix.charAt(i));
+            }
+            return node;
+        }
+
+        static String literalPrefix(String pattern) {
+            List<String> literal = new ArrayList<>();
+            for (String segment : pattern.split("/")) {
+                if (segment.contains("*") || segment.contains("{")) {
+                    break;
+                }
+                if (!segment.isEmpty()) {
+                    literal.add(segment);
+                }
+            }
+            return "/" + String.join("/", literal);
+        }
+    }
+
+    private static final class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private boolean publicPrefix;
+        private String routeId;
+        private int routeOrder;
+
+        Node child(char c) {
+            char[] k = keys;
+            for (int i = 0; i < k.length; i++) {
+                if (k[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node childOrCreate(char c) {
+            Node existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+            Node created = new Node();
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[keys.length - 1] = c;
+            children[children.length - 1] = created;
+            return created;
+        }
+    }
+}
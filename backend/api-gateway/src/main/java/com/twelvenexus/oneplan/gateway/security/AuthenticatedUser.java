@@ -0,0 +1,18 @@
+package com.twelvenexus.oneplan.gateway.security;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Identity extracted from a verified access token. Instances are immutable so they can be
+ * shared between requests through {@link VerifiedTokenCache}.
+ */
+public record AuthenticatedUser(
+    String userId,
+    String email,
+    String tenantId,
+    List<String> roles,
+    Instant expiresAt,
+    String sessionId
+) {
+}
@@ -0,0 +1,63 @@
+package com.twelvenexus.oneplan.gateway.security;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Immutable Bloom filter over UUIDs. Lookups cost a fixed number of bit probes regardless of
+ * how many elements were added, and a negative answer is always exact.
+ */
+final class BloomFilter {
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    private BloomFilter(int bitCount, int hashCount) {
+        this.bits = new long[(bitCount + 63) >>> 6];
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+    }
+
+    static BloomFilter of(Collection<UUID> elements, int expectedElements, double falsePositiveRate) {
+        int n = Math.max(expectedElements, Math.max(elements.size(), 1));
+        int bitCount = (int) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+
+        BloomFilter filter = new BloomFilter(bitCount, hashCount);
+        elements.forEach(filter::add);
+        return filter;
+    }
+
+    boolean mightContain(UUID element) {
+        long h1 = mix(element.getMostSignificantBits());
+        long h2 = mix(element.getLeastSignificantBits() ^ h1);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(UUID element) {
+        long h1 = mix(element.getMostSignificantBits());
+        long h2 = mix(element.getLeastSignificantBits() ^ h1);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = index(h1 + i * h2);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private int index(long hash) {
+        return (int) Long.remainderUnsigned(hash, bitCount);
+    }
+
+    /** Stafford variant 13 of the MurmurHash3 finalizer. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
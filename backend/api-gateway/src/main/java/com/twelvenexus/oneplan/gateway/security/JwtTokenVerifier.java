@@ -0,0 +1,48 @@
+package com.twelvenexus.oneplan.gateway.security;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import javax.crypto.SecretKey;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Performs the full signature check of an access token. The signing key and the parser are
+ * derived once at startup instead of on every request.
+ */
+@Component
+public class JwtTokenVerifier {
+
+    private final JwtParser parser;
+
+    public JwtTokenVerifier(@Value("${jwt.secret}") String jwtSecret) {
+        SecretKey key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser().verifyWith(key).build();
+    }
+
+    public AuthenticatedUser verify(String token) {
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+
+        @SuppressWarnings("unchecked")
+        List<String> roles = claims.get("roles", List.class);
+        Date expiration = claims.getExpiration();
+
+        return new AuthenticatedUser(
+            claims.get("userId", String.class),
+            claims.getSubject(),
+            claims.get("tenantId", String.class),
+            roles != null ? List.copyOf(roles) : List.of(),
+            expiration != null ? expiration.toInstant() : null,
+            claims.get("sid", String.class)
+        );
+    }
+}
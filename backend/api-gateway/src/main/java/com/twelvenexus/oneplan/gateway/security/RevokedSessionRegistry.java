@@ -0,0 +1,135 @@
+package com.twelvenexus.oneplan.gateway.security;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.loadbalancer.reactive.ReactorLoadBalancerExchangeFilterFunction;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import com.twelvenexus.oneplan.common.auth.InternalAuthProperties;
+import com.twelvenexus.oneplan.common.auth.InternalIdentity;
+import com.twelvenexus.oneplan.common.auth.InternalIdentityCodec;
+import com.twelvenexus.oneplan.gateway.config.GatewayAuthProperties;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sessions (refresh-token families) revoked in the identity service, polled periodically so
+ * access tokens of revoked sessions are rejected without a call per request. Lookups go through
+ * a Bloom filter first and only consult the exact set on a possible hit. If the identity service
+ * cannot be reached the last known set stays in effect. The endpoint is internal; polls carry a
+ * signed service identity.
+ */
+@Slf4j
+@Component
+public class RevokedSessionRegistry implements DisposableBean {
+
+    /** Re-read a little before the last poll so revocations committed in between are not missed. */
+    private static final Duration POLL_OVERLAP = Duration.ofSeconds(5);
+    private static final String SERVICE_NAME = "api-gateway";
+
+    private final GatewayAuthProperties.SessionRevocation properties;
+    private final WebClient webClient;
+    private final InternalIdentityCodec identityCodec;
+    private final Duration identityTtl;
+    private final Map<UUID, Instant> revokedUntil = new ConcurrentHashMap<>();
+    private final Disposable poller;
+    private volatile BloomFilter filter;
+    private volatile Instant since;
+
+    public RevokedSessionRegistry(GatewayAuthProperties authProperties,
+                                  WebClient.Builder webClientBuilder,
+                                  ReactorLoadBalancerExchangeFilterFunction loadBalancerFunction,
+                                  InternalIdentityCodec identityCodec,
+                                  InternalAuthProperties internalAuthProperties) {
+        this.properties = authProperties.getSessionRevocation();
+        this.webClient = webClientBuilder.filter(loadBalancerFunction).build();
+        this.identityCodec = identityCodec;
+        this.identityTtl = internalAuthProperties.getTtl();
+        this.since = Instant.now().minus(properties.getRetention());
+        this.filter = BloomFilter.of(List.of(), properties.getExpectedRevocations(),
+            properties.getFalsePositiveRate());
+        this.poller = properties.isEnabled()
+            ? Flux.interval(Duration.ZERO, properties.getPollInterval())
+                .concatMap(tick -> poll().onErrorResume(e -> {
+                    log.warn("Could not refresh revoked sessions: {}", e.getMessage());
+                    return Mono.empty();
+                }))
+                .subscribe()
+            : null;
+    }
+
+    public boolean isRevoked(String sessionId) {
+        if (sessionId == null) {
+            return false;
+        }
+        UUID id;
+        try {
+            id = UUID.fromString(sessionId);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return filter.mightContain(id) && revokedUntil.containsKey(id);
+    }
+
+    @Override
+    public void destroy() {
+        if (poller != null) {
+            poller.dispose();
+        }
+    }
+
+    Mono<Void> poll() {
+        String uri = UriComponentsBuilder.fromUriString(properties.getUri())
+            .queryParam("since", since.minus(POLL_OVERLAP))
+            .toUriString();
+
+        return webClient.get()
+            .uri(uri)
+            .header(InternalIdentity.HEADER, serviceIdentity())
+            .retrieve()
+            .bodyToMono(RevokedSessions.class)
+            .doOnNext(this::apply)
+            .then();
+    }
+
+    private String serviceIdentity() {
+        return identityCodec.encode(new InternalIdentity(null, null, SERVICE_NAME,
+            List.of(InternalIdentity.SERVICE_ROLE), Instant.now().plus(identityTtl).getEpochSecond()));
+    }
+
+    void apply(RevokedSessions revoked) {
+        Instant now = Instant.now();
+        Instant until = now.plus(properties.getRetention());
+        boolean changed = false;
+
+        for (UUID id : revoked.sessionIds()) {
+            changed |= revokedUntil.put(id, until) == null;
+        }
+        changed |= revokedUntil.values().removeIf(expiry -> expiry.isBefore(now));
+
+        if (changed) {
+            filter = BloomFilter.of(revokedUntil.keySet(), properties.getExpectedRevocations(),
+                properties.getFalsePositiveRate());
+        }
+        if (revoked.asOf() != null) {
+            since = revoked.asOf();
+        }
+    }
+
+    record RevokedSessions(List<UUID> sessionIds, Instant asOf) {
+        RevokedSessions {
+            sessionIds = sessionIds == null ? List.of() : sessionIds;
+        }
+    }
+}
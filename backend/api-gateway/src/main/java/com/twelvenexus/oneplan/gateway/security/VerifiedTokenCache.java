@@ -0,0 +1,120 @@
+package com.twelvenexus.oneplan.gateway.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Bounded cache of verified tokens keyed by the SHA-256 digest of the raw token, so clients
+ * re-sending the same bearer token skip the signature check. Entries expire at the token's
+ * {@code exp} claim (capped by {@code jwt.cache.max-ttl}) and never outlive the token itself.
+ */
+@Component
+public class VerifiedTokenCache implements MeterBinder {
+
+    static final String CACHE_NAME = "gateway.jwt.claims";
+
+    private final JwtTokenVerifier verifier;
+    private final Duration maxTtl;
+    private final Clock clock;
+    private final Cache<String, AuthenticatedUser> cache;
+
+    @Autowired
+    public VerifiedTokenCache(JwtTokenVerifier verifier,
+                              @Value("${jwt.cache.maximum-size:10000}") long maximumSize,
+                              @Value("${jwt.cache.max-ttl:5m}") Duration maxTtl) {
+        this(verifier, maximumSize, maxTtl, Clock.systemUTC(), Ticker.systemTicker());
+    }
+
+    /**
+     * The clock is compared with the tokens' {@code exp} claims; the ticker drives expiry of the
+     * entries.
+     */
+    VerifiedTokenCache(JwtTokenVerifier verifier, long maximumSize, Duration maxTtl, Clock clock,
+                       Ticker ticker) {
+        this.verifier = verifier;
+        this.maxTtl = maxTtl;
+        this.clock = clock;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfter(new TokenExpiry())
+            .ticker(ticker)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * Returns the identity for the token, verifying it only on a cache miss. Verification
+     * failures are propagated and never cached.
+     */
+    public AuthenticatedUser resolve(String token) {
+        String key = digest(token);
+        AuthenticatedUser user = cache.getIfPresent(key);
+        if (user == null) {
+            user = verifier.verify(token);
+            if (ttlNanos(user) > 0) {
+                cache.put(key, user);
+            }
+        }
+        return user;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    private long ttlNanos(AuthenticatedUser user) {
+        if (user.expiresAt() == null) {
+            return maxTtl.toNanos();
+        }
+        Duration untilExpiry = Duration.between(clock.instant(), user.expiresAt());
+        return Math.max(0, Math.min(untilExpiry.toNanos(), maxTtl.toNanos()));
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            byte[] hash = sha256.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private class TokenExpiry implements Expiry<String, AuthenticatedUser> {
+
+        @Override
+        public long expireAfterCreate(String key, AuthenticatedUser user, long currentTime) {
+            return ttlNanos(user);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, AuthenticatedUser user, long currentTime,
+                                      long currentDuration) {
+            return ttlNanos(user);
+        }
+
+        @Override
+        public long expireAfterRead(String key, AuthenticatedUser user, long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+-- Token bucket: KEYS = {tokens_key, timestamp_key}, ARGV = {replenish_rate, burst_capacity, requested}
+local tokens_key = KEYS[1]
+local timestamp_key = KEYS[2]
+
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) + tonumber(time[2]) / 1000000
+
+local ttl = math.floor(capacity / rate * 2) + 1
+
+local last_tokens = tonumber(redis.call('GET', tokens_key)) or capacity
+local last_refreshed = tonumber(redis.call('GET', timestamp_key)) or now
+
+local elapsed = math.max(0, now - last_refreshed)
+local filled = math.min(capacity, last_tokens + elapsed * rate)
+
+local allowed = 0
+if filled >= requested then
+  filled = filled - requested
+  allowed = 1
+end
+
+redis.call('SETEX', tokens_key, ttl, filled)
+redis.call('SETEX', timestamp_key, ttl, string.format('%.6f', now))
+
+return { allowed, math.floor(filled) }
@@ -0,0 +1,220 @@
+package com.twelvenexus.oneplan.gateway.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twelvenexus.oneplan.gateway.config.ResponseCacheProperties;
+import com.twelvenexus.oneplan.gateway.config.ResponseCacheProperties.Rule;
+import com.twelvenexus.oneplan.gateway.routing.RouteMatch;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+class ResponseCacheFilterTests {
+
+    private static final String SPRING_SECURITY_DEFAULT = "no-cache, no-store, max-age=0, must-revalidate";
+
+    private final ResponseCacheProperties properties = new ResponseCacheProperties();
+    private final ResponseCacheFilter cacheFilter;
+    private final ResponseCaptureFilter captureFilter;
+    private final Route route = Route.async()
+        .id("analytics-service")
+        .uri("lb://analytics-service")
+        .predicate(exchange -> true)
+        .build();
+    private final List<ServerHttpRequest> downstreamRequests = new ArrayList<>();
+
+    ResponseCacheFilterTests() {
+        Rule dashboards = new Rule();
+        dashboards.setPath("/api/v1/dashboards/*");
+        properties.setRules(List.of(dashboards));
+        ResponseCacheStore store = new ResponseCacheStore(properties, null, new ObjectMapper());
+        ResponseCacheMetrics metrics = new ResponseCacheMetrics(new SimpleMeterRegistry());
+        cacheFilter = new ResponseCacheFilter(properties, store, metrics);
+        captureFilter = new ResponseCaptureFilter(properties, store, metrics);
+    }
+
+    @Test
+    void runsAfterRouteFiltersButCapturesAheadOfTheResponseWriter() {
+        // Route filters, RequestRateLimiter among them, are ordered by position starting at 1
+        assertThat(cacheFilter.getOrder()).isGreaterThan(RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER);
+        assertThat(captureFilter.getOrder()).isLessThan(NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER);
+    }
+
+    @Test
+    void responsesOptingInAreServedFromTheCache() {
+        Downstream downstream = (request, response) ->
+            ok(response, "max-age=60", null, "{\"id\":1}");
+
+        MockServerWebExchange miss = get("/api/v1/dashboards/1", "user-1");
+        MockServerWebExchange hit = get("/api/v1/dashboards/1", "user-1");
+        send(miss, downstream);
+        send(hit, downstream);
+
+        assertThat(downstreamRequests).hasSize(1);
+        assertThat(miss.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("MISS");
+        assertThat(hit.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("HIT");
+        assertThat(hit.getResponse().getBodyAsString().block()).isEqualTo("{\"id\":1}");
+        assertThat(hit.getResponse().getHeaders().getETag())
+            .isEqualTo(miss.getResponse().getHeaders().getETag())
+            .isNotNull();
+    }
+
+    @Test
+    void springSecurityDefaultsAreNeverStored() {
+        Downstream downstream = (request, response) ->
+            ok(response, SPRING_SECURITY_DEFAULT, "\"v1\"", "{\"id\":1}");
+
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+
+        assertThat(downstreamRequests).hasSize(2);
+        assertThat(downstreamRequests.get(1).getHeaders().getIfNoneMatch()).isEmpty();
+    }
+
+    @Test
+    void noCacheResponsesAreRevalidatedWithTheirETag() {
+        Downstream downstream = (request, response) -> {
+            if (request.getHeaders().getIfNoneMatch().contains("\"v1\"")) {
+                response.setStatusCode(HttpStatus.NOT_MODIFIED);
+                return response.writeWith(Mono.empty());
+            }
+            return ok(response, "no-cache", "\"v1\"", "{\"id\":1}");
+        };
+
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+        MockServerWebExchange revalidated = get("/api/v1/dashboards/1", "user-1");
+        send(revalidated, downstream);
+
+        assertThat(downstreamRequests).hasSize(2);
+        assertThat(downstreamRequests.get(1).getHeaders().getIfNoneMatch()).containsExactly("\"v1\"");
+        // The client itself holds no copy, so it gets the body even though downstream said 304
+        assertThat(revalidated.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(revalidated.getResponse().getHeaders().getFirst("X-Cache")).isEqualTo("REVALIDATED");
+        assertThat(revalidated.getResponse().getBodyAsString().block()).isEqualTo("{\"id\":1}");
+
+        MockServerWebExchange conditional = MockServerWebExchange.from(
+            request("/api/v1/dashboards/1", "user-1").ifNoneMatch("\"v1\""));
+        conditional.getAttributes().putAll(attributes());
+        send(conditional, downstream);
+        assertThat(conditional.getResponse().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+    }
+
+    @Test
+    void noCacheResponsesWithoutAnETagAreNotStored() {
+        Downstream downstream = (request, response) -> ok(response, "no-cache", null, "{\"id\":1}");
+
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+
+        assertThat(downstreamRequests).hasSize(2);
+    }
+
+    @Test
+    void entriesArePrivateToTheUser() {
+        Downstream downstream = (request, response) -> ok(response, "max-age=60", null, "{\"id\":1}");
+
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+        send(get("/api/v1/dashboards/1", "user-2"), downstream);
+
+        assertThat(downstreamRequests).hasSize(2);
+    }
+
+    @Test
+    void successfulWritesEvictTheTenantsEntriesOfTheRoute() {
+        Downstream downstream = (request, response) -> {
+            if (request.getMethod() == HttpMethod.PUT) {
+                response.setStatusCode(HttpStatus.OK);
+                return response.setComplete();
+            }
+            return ok(response, "max-age=60", null, "{\"id\":1}");
+        };
+
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+        MockServerWebExchange write = MockServerWebExchange.from(
+            MockServerHttpRequest.put("/api/v1/dashboards/1/widgets/layout")
+                .header("X-Tenant-Id", "tenant-1")
+                .header("X-User-Id", "user-2"));
+        write.getAttributes().putAll(attributes());
+        send(write, downstream);
+        send(get("/api/v1/dashboards/1", "user-1"), downstream);
+
+        assertThat(downstreamRequests).hasSize(3);
+    }
+
+    @Test
+    void pathsWithoutARuleAreLeftAlone() {
+        Downstream downstream = (request, response) -> ok(response, "max-age=60", null, "[]");
+
+        MockServerWebExchange list = get("/api/v1/dashboards", "user-1");
+        send(list, downstream);
+        send(get("/api/v1/dashboards", "user-1"), downstream);
+
+        assertThat(downstreamRequests).hasSize(2);
+        assertThat(list.getResponse().getHeaders().containsKey("X-Cache")).isFalse();
+    }
+
+    /**
+     * Runs both filters the way the gateway orders them: downstream answers through the response
+     * the capture filter installed, as NettyWriteResponseFilter does, to the request the cache
+     * filter passed on.
+     */
+    private void send(MockServerWebExchange exchange, Downstream downstream) {
+        captureFilter.filter(exchange, captured ->
+            cacheFilter.filter(captured, routed -> {
+                downstreamRequests.add(routed.getRequest());
+                return downstream.respond(routed.getRequest(), captured.getResponse());
+            })).block();
+    }
+
+    private MockServerWebExchange get(String path, String userId) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request(path, userId));
+        exchange.getAttributes().putAll(attributes());
+        return exchange;
+    }
+
+    private static MockServerHttpRequest.BaseBuilder<?> request(String path, String userId) {
+        return MockServerHttpRequest.get(path)
+            .header("X-Tenant-Id", "tenant-1")
+            .header("X-User-Id", userId);
+    }
+
+    private Map<String, Object> attributes() {
+        return Map.of(
+            ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR, route,
+            RouteMatch.EXCHANGE_ATTRIBUTE, new RouteMatch(false, route.getId()));
+    }
+
+    private static Mono<Void> ok(ServerHttpResponse response, String cacheControl, String etag, String body) {
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().set(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (etag != null) {
+            response.getHeaders().setETag(etag);
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(bytes)));
+    }
+
+    @FunctionalInterface
+    private interface Downstream {
+        Mono<Void> respond(ServerHttpRequest request, ServerHttpResponse response);
+    }
+}
@@ -0,0 +1,51 @@
+package com.twelvenexus.oneplan.gateway.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.twelvenexus.oneplan.gateway.resilience.BulkheadFullException;
+
+class FallbackControllerTests {
+
+    private final FallbackController controller = new FallbackController();
+
+    @Test
+    void fullBulkheadIsReportedAsOverload() {
+        ResponseEntity<Map<String, Object>> response =
+            fallback(new BulkheadFullException("analytics-service"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(response.getBody())
+            .containsEntry("error", "Service is overloaded")
+            .containsEntry("status", 503)
+            .containsEntry("service", "analytics-service");
+    }
+
+    @Test
+    void timeoutsAndOpenBreakersAreReportedAsUnavailable() {
+        assertThat(fallback(new TimeoutException()).getBody())
+            .containsEntry("error", "Service temporarily unavailable");
+
+        ResponseEntity<Map<String, Object>> open = fallback(null);
+        assertThat(open.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(open.getBody()).containsEntry("error", "Service temporarily unavailable");
+    }
+
+    private ResponseEntity<Map<String, Object>> fallback(Throwable cause) {
+        MockServerWebExchange exchange =
+            MockServerWebExchange.from(MockServerHttpRequest.get("/fallback/analytics-service"));
+        if (cause != null) {
+            exchange.getAttributes().put(ServerWebExchangeUtils.CIRCUITBREAKER_EXECUTION_EXCEPTION_ATTR, cause);
+        }
+        return controller.fallback("analytics-service", exchange).block();
+    }
+}
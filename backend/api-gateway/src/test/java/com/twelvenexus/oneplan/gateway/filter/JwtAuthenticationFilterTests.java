@@ -0,0 +1,168 @@
+package com.twelvenexus.oneplan.gateway.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import com.twelvenexus.oneplan.common.auth.InternalAuthProperties;
+import com.twelvenexus.oneplan.common.auth.InternalIdentity;
+import com.twelvenexus.oneplan.common.auth.InternalIdentityCodec;
+import com.twelvenexus.oneplan.gateway.routing.RouteMatcher;
+import com.twelvenexus.oneplan.gateway.security.JwtTokenVerifier;
+import com.twelvenexus.oneplan.gateway.security.RevokedSessionRegistry;
+import com.twelvenexus.oneplan.gateway.security.VerifiedTokenCache;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import reactor.core.publisher.Mono;
+
+class JwtAuthenticationFilterTests {
+
+    private static final String JWT_SECRET = "test-secret-that-is-long-enough-for-hmac-sha-256";
+    private static final String SESSION_ID = "3f1c2a7e-1d7b-4a54-9f0a-2b8e6c5d4e3f";
+
+    private final InternalIdentityCodec identityCodec = new InternalIdentityCodec("internal-secret");
+    private final RevokedSessionRegistry revokedSessions = mock(RevokedSessionRegistry.class);
+    private final List<ServerHttpRequest> forwarded = new ArrayList<>();
+    private final JwtAuthenticationFilter filter;
+
+    JwtAuthenticationFilterTests() {
+        RouteMatcher routeMatcher = RouteMatcher.builder()
+            .publicPath("/api/v1/auth")
+            .route("analytics-service", "/api/v1/metrics/**")
+            .build();
+        VerifiedTokenCache tokenCache =
+            new VerifiedTokenCache(new JwtTokenVerifier(JWT_SECRET), 100, Duration.ofMinutes(5));
+        filter = new JwtAuthenticationFilter(tokenCache, routeMatcher, identityCodec,
+            new InternalAuthProperties(), revokedSessions);
+    }
+
+    @Test
+    void verifiedTokenIsForwardedAsASignedIdentity() {
+        Instant expiresAt = Instant.now().plus(Duration.ofHours(1));
+
+        MockServerWebExchange exchange = send(token(expiresAt, "ROLE_USER"));
+
+        assertThat(forwarded).hasSize(1);
+        HttpHeaders headers = forwarded.get(0).getHeaders();
+        InternalIdentity identity = identityCodec.decode(headers.getFirst(InternalIdentity.HEADER));
+        assertThat(identity.userId()).isEqualTo("user-1");
+        assertThat(identity.tenantId()).isEqualTo("tenant-1");
+        assertThat(identity.email()).isEqualTo("user@example.com");
+        assertThat(identity.roles()).containsExactly("ROLE_USER");
+        // The header only has to cover this request, not the token's lifetime
+        assertThat(identity.expiresAtEpochSecond())
+            .isLessThanOrEqualTo(Instant.now().plusSeconds(60).getEpochSecond());
+        assertThat(headers.getFirst("X-User-Id")).isEqualTo("user-1");
+        assertThat(headers.getFirst("X-Tenant-Id")).isEqualTo("tenant-1");
+        assertThat(exchange.getResponse().getStatusCode()).isNull();
+    }
+
+    @Test
+    void forwardedIdentityNeverOutlivesTheToken() {
+        Instant expiresAt = Instant.now().plusSeconds(20);
+
+        send(token(expiresAt, "ROLE_USER"));
+
+        InternalIdentity identity =
+            identityCodec.decode(forwarded.get(0).getHeaders().getFirst(InternalIdentity.HEADER));
+        assertThat(identity.expiresAtEpochSecond()).isEqualTo(expiresAt.getEpochSecond());
+    }
+
+    @Test
+    void tamperedTokenIsRejectedEvenWhileTheGenuineOneIsCached() {
+        String token = token(Instant.now().plus(Duration.ofHours(1)), "ROLE_USER");
+        send(token);
+        String forgedPayload = token(Instant.now().plus(Duration.ofHours(1)), "ROLE_ADMIN").split("\\.")[1];
+        String[] parts = token.split("\\.");
+
+        MockServerWebExchange exchange = send(parts[0] + "." + forgedPayload + "." + parts[2]);
+
+        assertRejected(exchange, "Invalid token signature");
+        assertThat(forwarded).hasSize(1);
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        MockServerWebExchange exchange = send(token(Instant.now().minusSeconds(10), "ROLE_USER"));
+
+        assertRejected(exchange, "Token expired");
+        assertThat(forwarded).isEmpty();
+    }
+
+    @Test
+    void tokenOfARevokedSessionIsRejected() {
+        when(revokedSessions.isRevoked(SESSION_ID)).thenReturn(true);
+
+        MockServerWebExchange exchange = send(token(Instant.now().plus(Duration.ofHours(1)), "ROLE_USER"));
+
+        assertRejected(exchange, "Session revoked");
+        assertThat(forwarded).isEmpty();
+    }
+
+    @Test
+    void missingTokenIsRejected() {
+        MockServerWebExchange exchange = send(null);
+
+        assertRejected(exchange, "Missing authorization token");
+    }
+
+    @Test
+    void identityHeadersFromClientsAreDroppedOnPublicPaths() {
+        MockServerHttpRequest request = MockServerHttpRequest.post("/api/v1/auth/login")
+            .header(InternalIdentity.HEADER, "v1.forged")
+            .build();
+
+        filter(MockServerWebExchange.from(request));
+
+        assertThat(forwarded).hasSize(1);
+        assertThat(forwarded.get(0).getHeaders().containsKey(InternalIdentity.HEADER)).isFalse();
+    }
+
+    private MockServerWebExchange send(String token) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/api/v1/metrics/entity/42");
+        if (token != null) {
+            request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        }
+        return filter(MockServerWebExchange.from(request.build()));
+    }
+
+    private MockServerWebExchange filter(MockServerWebExchange exchange) {
+        filter.filter(exchange, forwardedExchange -> {
+            forwarded.add(forwardedExchange.getRequest());
+            return Mono.empty();
+        }).block();
+        return exchange;
+    }
+
+    private static void assertRejected(MockServerWebExchange exchange, String error) {
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(exchange.getResponse().getBodyAsString().block()).contains("\"error\": \"" + error + "\"");
+    }
+
+    private static String token(Instant expiresAt, String role) {
+        return Jwts.builder()
+            .subject("user@example.com")
+            .claim("userId", "user-1")
+            .claim("tenantId", "tenant-1")
+            .claim("roles", List.of(role))
+            .claim("sid", SESSION_ID)
+            .expiration(Date.from(expiresAt))
+            .signWith(Keys.hmacShaKeyFor(JWT_SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+    }
+}
@@ -0,0 +1,99 @@
+package com.twelvenexus.oneplan.gateway.loadbalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cloud.client.ServiceInstance;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class FileServiceInstanceRegistryTests {
+
+    private static final Instant LOADED_AT = Instant.parse("2025-03-12T09:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private FileServiceInstanceRegistry registry;
+
+    @AfterEach
+    void tearDown() {
+        if (registry != null) {
+            registry.destroy();
+        }
+    }
+
+    @Test
+    void loadsInstancesPerService() throws IOException {
+        Path file = write("""
+            {"task-service": ["http://10.0.0.5:8085", "https://10.0.0.6:8443"], "project-service": []}
+            """, LOADED_AT);
+        registry = new FileServiceInstanceRegistry(file, Duration.ofHours(1), new ObjectMapper());
+
+        assertThat(registry.getServices().collectList().block())
+            .containsExactlyInAnyOrder("task-service", "project-service");
+        assertThat(registry.getInstances("task-service").collectList().block())
+            .extracting(ServiceInstance::getHost, ServiceInstance::getPort, ServiceInstance::isSecure)
+            .containsExactly(
+                tuple("10.0.0.5", 8085, false),
+                tuple("10.0.0.6", 8443, true));
+        assertThat(registry.getInstances("unknown-service").collectList().block()).isEmpty();
+    }
+
+    @Test
+    void reloadsOnlyWhenTheFileChanges() throws IOException {
+        Path file = write("{\"task-service\": [\"http://10.0.0.5:8085\"]}", LOADED_AT);
+        registry = new FileServiceInstanceRegistry(file, Duration.ofHours(1), new ObjectMapper());
+
+        // Same modification time: taken as unchanged
+        write("{\"task-service\": [\"http://10.0.0.7:8085\"]}", LOADED_AT);
+        registry.reloadIfChanged();
+        assertThat(hosts()).containsExactly("10.0.0.5");
+
+        write("{\"task-service\": [\"http://10.0.0.7:8085\", \"http://10.0.0.8:8085\"]}",
+            LOADED_AT.plusSeconds(5));
+        registry.reloadIfChanged();
+        assertThat(hosts()).containsExactly("10.0.0.7", "10.0.0.8");
+    }
+
+    @Test
+    void keepsThePreviousInstancesWhenTheFileIsBrokenOrGone() throws IOException {
+        Path file = write("{\"task-service\": [\"http://10.0.0.5:8085\"]}", LOADED_AT);
+        registry = new FileServiceInstanceRegistry(file, Duration.ofHours(1), new ObjectMapper());
+
+        write("{\"task-service\": [\"http://10.0.0.7", LOADED_AT.plusSeconds(5));
+        registry.reloadIfChanged();
+        assertThat(hosts()).containsExactly("10.0.0.5");
+
+        Files.delete(file);
+        registry.reloadIfChanged();
+        assertThat(hosts()).containsExactly("10.0.0.5");
+
+        // Fixed again with the same time as the broken version: still picked up
+        write("{\"task-service\": [\"http://10.0.0.7:8085\"]}", LOADED_AT.plusSeconds(5));
+        registry.reloadIfChanged();
+        assertThat(hosts()).containsExactly("10.0.0.7");
+    }
+
+    private List<String> hosts() {
+        return registry.getInstances("task-service").map(ServiceInstance::getHost).collectList().block();
+    }
+
+    private Path write(String json, Instant modified) throws IOException {
+        Path file = directory.resolve("instances.json");
+        Files.writeString(file, json);
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+        return file;
+    }
+}
@@ -0,0 +1,147 @@
+package com.twelvenexus.oneplan.gateway.loadbalancer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.client.loadbalancer.ResponseData;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.util.LinkedMultiValueMap;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+class LeastOutstandingRequestsLoadBalancerTests {
+
+    private final ServiceInstance first = instance("10.0.0.1");
+    private final ServiceInstance second = instance("10.0.0.2");
+    private final List<ServiceInstance> instances = List.of(first, second);
+    private final LeastOutstandingRequestsLoadBalancer balancer =
+        new LeastOutstandingRequestsLoadBalancer(null, "task-service", Duration.ofSeconds(30));
+
+    @Test
+    void picksTheInstanceWithFewestCallsInFlight() {
+        start(new ConcurrentHashMap<>(), first);
+        start(new ConcurrentHashMap<>(), first);
+        start(new ConcurrentHashMap<>(), second);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(balancer.select(instances).getServer()).isEqualTo(second);
+        }
+    }
+
+    @Test
+    void tiesAreBrokenAcrossInstances() {
+        Set<ServiceInstance> chosen = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            chosen.add(balancer.select(instances).getServer());
+        }
+        assertThat(chosen).containsExactlyInAnyOrder(first, second);
+    }
+
+    @Test
+    void completedCallsStopCounting() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        Call call = start(attributes, first);
+        assertThat(balancer.outstanding(first)).isEqualTo(1);
+
+        complete(call, CompletionContext.Status.SUCCESS, HttpStatus.OK);
+        assertThat(balancer.outstanding(first)).isZero();
+
+        // Ending the exchange afterwards releases nothing twice
+        LeastOutstandingRequestsLoadBalancer.releaseAll(attributes);
+        assertThat(balancer.outstanding(first)).isZero();
+    }
+
+    @Test
+    void cancelledExchangesStopCountingWithoutACompletion() {
+        OutstandingRequestsFilter filter = new OutstandingRequestsFilter();
+        for (int i = 0; i < 100; i++) {
+            MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/tasks"));
+            // Like a time limiter giving up on a call that never answers
+            Disposable call = filter.filter(exchange, routed -> {
+                start(routed.getAttributes(), first);
+                return Mono.never();
+            }).subscribe();
+            call.dispose();
+        }
+
+        assertThat(balancer.outstanding(first)).isZero();
+        Set<ServiceInstance> chosen = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            chosen.add(balancer.select(instances).getServer());
+        }
+        assertThat(chosen).contains(first);
+    }
+
+    @Test
+    void retriedCallsAreEachReleasedOnce() {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        Call failed = start(attributes, first);
+        complete(failed, CompletionContext.Status.SUCCESS, HttpStatus.BAD_GATEWAY);
+        start(attributes, second);
+        assertThat(balancer.outstanding(second)).isEqualTo(1);
+
+        LeastOutstandingRequestsLoadBalancer.releaseAll(attributes);
+
+        assertThat(balancer.outstanding(first)).isZero();
+        assertThat(balancer.outstanding(second)).isZero();
+    }
+
+    @Test
+    void failingInstancesAreDrainedUnlessAllAre() {
+        complete(start(new ConcurrentHashMap<>(), first), CompletionContext.Status.FAILED, null);
+        for (int i = 0; i < 20; i++) {
+            assertThat(balancer.select(instances).getServer()).isEqualTo(second);
+        }
+
+        complete(start(new ConcurrentHashMap<>(), second), CompletionContext.Status.SUCCESS,
+            HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(balancer.select(instances).hasServer()).isTrue();
+        assertThat(balancer.select(List.of()).hasServer()).isFalse();
+    }
+
+    private Call start(Map<String, Object> attributes, ServiceInstance instance) {
+        RequestData requestData = new RequestData(HttpMethod.GET, URI.create("http://task-service/api/v1/tasks"),
+            new HttpHeaders(), new LinkedMultiValueMap<>(), attributes);
+        Request<RequestDataContext> request = new DefaultRequest<>(new RequestDataContext(requestData));
+        Response<ServiceInstance> response = new DefaultResponse(instance);
+        balancer.onStartRequest(request, response);
+        return new Call(request, response);
+    }
+
+    private void complete(Call call, CompletionContext.Status status, HttpStatus httpStatus) {
+        ResponseData responseData = httpStatus != null
+            ? new ResponseData(httpStatus, new HttpHeaders(), new LinkedMultiValueMap<>(),
+                call.request().getContext().getClientRequest())
+            : null;
+        balancer.onComplete(new CompletionContext<>(status, null, call.request(), call.response(), responseData));
+    }
+
+    private static ServiceInstance instance(String host) {
+        return new DefaultServiceInstance("task-service-" + host, "task-service", host, 8085, false);
+    }
+
+    private record Call(Request<RequestDataContext> request, Response<ServiceInstance> response) {
+    }
+}
@@ -0,0 +1,94 @@
+package com.twelvenexus.oneplan.gateway.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties;
+import com.twelvenexus.oneplan.gateway.config.RateLimitProperties.Quota;
+
+import redis.embedded.RedisServer;
+
+class TenantRateLimiterTests {
+
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private TenantRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setUser(new Quota(1, 3, 1));
+        properties.setTenant(new Quota(1, 5, 1));
+        properties.setRedisTimeout(Duration.ofSeconds(1));
+
+        rateLimiter = new TenantRateLimiter(properties,
+            new RedisTokenBucketStore(new ReactiveStringRedisTemplate(connectionFactory)),
+            new LocalTokenBucketStore(properties),
+            null);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionFactory.destroy();
+        if (redisServer.isActive()) {
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    void userIsLimitedToBurstCapacity() {
+        String key = RateLimitKey.forUser("tenant-1", "user-1").encode();
+
+        assertThat(allowed("task-service", key)).isTrue();
+        assertThat(allowed("task-service", key)).isTrue();
+        assertThat(allowed("task-service", key)).isTrue();
+        assertThat(allowed("task-service", key)).isFalse();
+
+        // Buckets are per route
+        assertThat(allowed("project-service", key)).isTrue();
+    }
+
+    @Test
+    void tenantQuotaIsSharedByItsUsers() {
+        for (int user = 0; user < 5; user++) {
+            assertThat(allowed("task-service", RateLimitKey.forUser("tenant-1", "user-" + user).encode())).isTrue();
+        }
+        assertThat(allowed("task-service", RateLimitKey.forUser("tenant-1", "user-5").encode())).isFalse();
+        assertThat(allowed("task-service", RateLimitKey.forUser("tenant-2", "user-5").encode())).isTrue();
+    }
+
+    @Test
+    void fallsBackToLocalBucketsWhenRedisIsDown() throws IOException {
+        redisServer.stop();
+        String key = RateLimitKey.forAddress("10.0.0.1").encode();
+
+        assertThat(allowed("identity-service-auth", key)).isTrue();
+        assertThat(allowed("identity-service-auth", key)).isTrue();
+        assertThat(allowed("identity-service-auth", key)).isTrue();
+        assertThat(allowed("identity-service-auth", key)).isFalse();
+    }
+
+    private boolean allowed(String routeId, String key) {
+        return rateLimiter.isAllowed(routeId, key).block().isAllowed();
+    }
+}
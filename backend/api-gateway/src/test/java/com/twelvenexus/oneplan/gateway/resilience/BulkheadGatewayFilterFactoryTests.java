@@ -0,0 +1,74 @@
+package com.twelvenexus.oneplan.gateway.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class BulkheadGatewayFilterFactoryTests {
+
+    private final BulkheadGatewayFilterFactory factory = new BulkheadGatewayFilterFactory();
+
+    @Test
+    void rejectsCallsBeyondTheLimitUntilOneFinishes() {
+        GatewayFilter filter = factory.apply(config("task-service", 2));
+        Sinks.Empty<Void> first = Sinks.empty();
+        Sinks.Empty<Void> second = Sinks.empty();
+
+        filter(filter, first.asMono()).subscribe();
+        filter(filter, second.asMono()).subscribe();
+        assertThatThrownBy(() -> filter(filter, Mono.empty()).block())
+            .isInstanceOf(BulkheadFullException.class)
+            .hasMessageContaining("task-service");
+
+        first.tryEmitEmpty();
+        filter(filter, Mono.empty()).block();
+    }
+
+    @Test
+    void failedAndCancelledCallsReleaseTheirPermit() {
+        GatewayFilter filter = factory.apply(config("task-service", 1));
+
+        assertThatThrownBy(() -> filter(filter, Mono.error(new IllegalStateException("boom"))).block())
+            .isInstanceOf(IllegalStateException.class);
+
+        // A client disconnect or time limiter cancels the downstream call
+        Disposable pending = filter(filter, Mono.never()).subscribe();
+        pending.dispose();
+
+        filter(filter, Mono.empty()).block();
+    }
+
+    @Test
+    void routesOfOneServiceShareItsPermits() {
+        GatewayFilter events = factory.apply(config("analytics-service", 1));
+        GatewayFilter reports = factory.apply(config("analytics-service", 1));
+        GatewayFilter tasks = factory.apply(config("task-service", 1));
+
+        filter(events, Mono.never()).subscribe();
+
+        assertThatThrownBy(() -> filter(reports, Mono.empty()).block())
+            .isInstanceOf(BulkheadFullException.class);
+        filter(tasks, Mono.empty()).block();
+        assertThat(factory.shortcutFieldOrder()).containsExactly("name", "maxConcurrentCalls");
+    }
+
+    private static Mono<Void> filter(GatewayFilter filter, Mono<Void> downstream) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/tasks"));
+        return filter.filter(exchange, filtered -> downstream);
+    }
+
+    private static BulkheadGatewayFilterFactory.Config config(String name, int maxConcurrentCalls) {
+        BulkheadGatewayFilterFactory.Config config = new BulkheadGatewayFilterFactory.Config();
+        config.setName(name);
+        config.setMaxConcurrentCalls(maxConcurrentCalls);
+        return config;
+    }
+}
@@ -0,0 +1,134 @@
+package com.twelvenexus.oneplan.gateway.resilience;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.config.GatewayProperties;
+import org.springframework.cloud.gateway.filter.FilterDefinition;
+import org.springframework.cloud.gateway.route.RouteDefinition;
+
+import com.twelvenexus.oneplan.gateway.config.ResilienceProperties;
+import com.twelvenexus.oneplan.gateway.config.ResilienceProperties.Policy;
+
+class ResilientRouteDefinitionLocatorTests {
+
+    @Test
+    void everyRouteGetsBreakerBulkheadAndRetryAheadOfItsOwnFilters() {
+        RouteDefinition route = locate("analytics-service-events=lb://analytics-service,Path=/api/v1/events/**");
+
+        assertThat(route.getFilters()).extracting(FilterDefinition::getName)
+            .containsExactly("CircuitBreaker", "Bulkhead", "Retry", "RewritePath");
+        FilterDefinition breaker = route.getFilters().get(0);
+        assertThat(breaker.getArgs())
+            .containsEntry("name", "analytics-service")
+            .containsEntry("fallbackUri", "forward:/fallback/analytics-service")
+            .containsEntry("statusCodes", "502,503,504");
+        // Rejections of the bulkhead surface through the breaker, so they reach the fallback too
+        assertThat(route.getFilters().get(1).getArgs())
+            .containsEntry("name", "analytics-service")
+            .containsEntry("maxConcurrentCalls", "50");
+        assertThat(route.getFilters().get(2).getArgs())
+            .containsEntry("retries", "2")
+            .containsEntry("methods", "GET,HEAD,OPTIONS")
+            .containsEntry("statuses", "BAD_GATEWAY,SERVICE_UNAVAILABLE,GATEWAY_TIMEOUT")
+            .containsEntry("series", "");
+        assertThat(route.getMetadata()).containsEntry("response-timeout", 25_000L);
+    }
+
+    @Test
+    void servicesWithoutRetriesGetNoRetryFilter() {
+        RouteDefinition route = locate("identity-service-auth=lb://identity-service,Path=/api/v1/auth/**");
+
+        assertThat(route.getFilters()).extracting(FilterDefinition::getName)
+            .containsExactly("CircuitBreaker", "Bulkhead", "RewritePath");
+        assertThat(route.getFilters().get(1).getArgs()).containsEntry("maxConcurrentCalls", "200");
+        assertThat(route.getMetadata()).containsEntry("response-timeout", 5_000L);
+    }
+
+    @Test
+    void routesWithAPolicyOfTheirOwnGetTheirOwnBreakerAndBulkhead() {
+        RouteDefinition route = locate("analytics-service-reports=lb://analytics-service,Path=/api/v1/reports/**");
+
+        assertThat(route.getFilters()).extracting(FilterDefinition::getName)
+            .containsExactly("CircuitBreaker", "Bulkhead", "RewritePath");
+        assertThat(route.getFilters().get(0).getArgs())
+            .containsEntry("name", "analytics-service-reports")
+            .containsEntry("fallbackUri", "forward:/fallback/analytics-service");
+        assertThat(route.getFilters().get(1).getArgs())
+            .containsEntry("name", "analytics-service-reports")
+            .containsEntry("maxConcurrentCalls", "20");
+        assertThat(route.getMetadata()).containsEntry("response-timeout", 600_000L);
+    }
+
+    @Test
+    void routesWithoutATimeoutGetNoBreakerAndNoResponseTimeout() {
+        RouteDefinition route = locate("analytics-service-stream=lb://analytics-service,Path=/api/v1/metrics/stream");
+
+        assertThat(route.getFilters()).extracting(FilterDefinition::getName)
+            .containsExactly("Bulkhead", "RewritePath");
+        assertThat(route.getFilters().get(0).getArgs())
+            .containsEntry("name", "analytics-service-stream")
+            .containsEntry("maxConcurrentCalls", "500");
+        assertThat(route.getMetadata()).containsEntry("response-timeout", -1L);
+    }
+
+    @Test
+    void routePoliciesFallBackToTheirServicePolicy() {
+        ResilienceProperties resilienceProperties = resilienceProperties();
+
+        Policy reports = resilienceProperties.policyFor("analytics-service-reports");
+        assertThat(reports.getTimeout()).isEqualTo(Duration.ofMinutes(10));
+        assertThat(reports.getMaxConcurrentCalls()).isEqualTo(20);
+        assertThat(reports.getFailureRateThreshold()).isEqualTo(50f);
+        // The service keeps its own limits
+        assertThat(resilienceProperties.policyFor("analytics-service").getTimeout()).isEqualTo(Duration.ofSeconds(25));
+        assertThat(resilienceProperties.resilienceName("analytics-service-events", "analytics-service"))
+            .isEqualTo("analytics-service");
+    }
+
+    @Test
+    void serviceIdFallsBackToTheRouteIdWithoutLoadBalancing() {
+        assertThat(ResilienceProperties.serviceId("analytics-service-events", "http", "localhost"))
+            .isEqualTo("analytics-service");
+        assertThat(ResilienceProperties.serviceId("legacy", "http", "localhost")).isEqualTo("legacy");
+        assertThat(ResilienceProperties.serviceId("reports", "lb", "analytics-service"))
+            .isEqualTo("analytics-service");
+    }
+
+    private static RouteDefinition locate(String text) {
+        RouteDefinition source = new RouteDefinition(text);
+        FilterDefinition rewrite = new FilterDefinition("RewritePath=/api/v1/(?<segment>.*), /api/v1/${segment}");
+        source.setFilters(List.of(rewrite));
+        GatewayProperties gatewayProperties = new GatewayProperties();
+        gatewayProperties.setRoutes(List.of(source));
+
+        return new ResilientRouteDefinitionLocator(gatewayProperties, resilienceProperties())
+            .getRouteDefinitions().single().block();
+    }
+
+    private static ResilienceProperties resilienceProperties() {
+        Policy analytics = new Policy();
+        analytics.setTimeout(Duration.ofSeconds(25));
+        analytics.setMaxConcurrentCalls(50);
+        Policy identity = new Policy();
+        identity.setTimeout(Duration.ofSeconds(5));
+        identity.setRetries(0);
+        Policy reports = new Policy();
+        reports.setTimeout(Duration.ofMinutes(10));
+        reports.setRetries(0);
+        reports.setMaxConcurrentCalls(20);
+        Policy stream = new Policy();
+        stream.setTimeout(Duration.ZERO);
+        stream.setRetries(0);
+        stream.setMaxConcurrentCalls(500);
+        ResilienceProperties resilienceProperties = new ResilienceProperties();
+        resilienceProperties.getServices().put("analytics-service", analytics);
+        resilienceProperties.getServices().put("identity-service", identity);
+        resilienceProperties.getRoutes().put("analytics-service-reports", reports);
+        resilienceProperties.getRoutes().put("analytics-service-stream", stream);
+        return resilienceProperties;
+    }
+}
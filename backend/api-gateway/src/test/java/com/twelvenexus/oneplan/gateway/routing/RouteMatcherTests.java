@@ -0,0 +1,80 @@
+package com.twelvenexus.oneplan.gateway.routing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class RouteMatcherTests {
+
+    private final RouteMatcher matcher = RouteMatcher.builder()
+        .publicPath("/api/v1/auth/login")
+        .publicPath("/api/v1/plans")
+        .publicPath("/api/v1/webhooks/razorpay")
+        .publicPath("/swagger-ui")
+        .route("identity-service-auth", "/api/v1/auth/**")
+        .route("task-service", "/api/v1/tasks/**")
+        .route("integration-service", "/api/v1/integrations/**")
+        .route("integration-service", "/api/v1/webhooks/**")
+        .route("project-tasks", "/api/v1/projects/{projectId}/tasks/**")
+        .route("subscription-service", "/api/v1/plans/**")
+        .route("subscription-service", "/api/v1/webhooks/razorpay/**")
+        .build();
+
+    @Test
+    void publicPrefixesMatchLikeStartsWith() {
+        assertThat(matcher.match("/swagger-ui")).isEqualTo(new RouteMatch(true, null));
+        assertThat(matcher.match("/swagger-ui.html")).isEqualTo(new RouteMatch(true, null));
+        assertThat(matcher.match("/swagger-ui/index.html")).isEqualTo(new RouteMatch(true, null));
+        assertThat(matcher.match("/swagger")).isEqualTo(RouteMatch.UNMATCHED);
+    }
+
+    @Test
+    void publicPathsStillResolveTheirRoute() {
+        assertThat(matcher.match("/api/v1/auth/login"))
+            .isEqualTo(new RouteMatch(true, "identity-service-auth"));
+        assertThat(matcher.match("/api/v1/auth/me"))
+            .isEqualTo(new RouteMatch(false, "identity-service-auth"));
+        assertThat(matcher.match("/api/v1/plans/basic"))
+            .isEqualTo(new RouteMatch(true, "subscription-service"));
+    }
+
+    @Test
+    void routePatternsMatchWholeSegments() {
+        assertThat(matcher.match("/api/v1/tasks").routeId()).isEqualTo("task-service");
+        assertThat(matcher.match("/api/v1/tasks/").routeId()).isEqualTo("task-service");
+        assertThat(matcher.match("/api/v1/tasks/42/comments").routeId()).isEqualTo("task-service");
+        assertThat(matcher.match("/api/v1/tasksets")).isEqualTo(RouteMatch.UNMATCHED);
+        assertThat(matcher.match("/api/v1/task")).isEqualTo(RouteMatch.UNMATCHED);
+    }
+
+    @Test
+    void firstDeclaredRouteWinsOverLongerLaterOnes() {
+        // Declared after /api/v1/webhooks/**, so the gateway would never pick it either
+        assertThat(matcher.match("/api/v1/webhooks/razorpay/events"))
+            .isEqualTo(new RouteMatch(true, "integration-service"));
+
+        RouteMatcher specificFirst = RouteMatcher.builder()
+            .route("subscription-service", "/api/v1/webhooks/razorpay/**")
+            .route("integration-service", "/api/v1/webhooks/**")
+            .build();
+        assertThat(specificFirst.match("/api/v1/webhooks/razorpay/events").routeId())
+            .isEqualTo("subscription-service");
+        assertThat(specificFirst.match("/api/v1/webhooks/github").routeId())
+            .isEqualTo("integration-service");
+    }
+
+    @Test
+    void patternsWithVariablesMatchOnTheirLiteralPrefix() {
+        assertThat(RouteMatcher.Builder.literalPrefix("/api/v1/projects/{projectId}/tasks/**"))
+            .isEqualTo("/api/v1/projects");
+        assertThat(RouteMatcher.Builder.literalPrefix("/api/v1/tasks/**")).isEqualTo("/api/v1/tasks");
+        assertThat(matcher.match("/api/v1/projects/7/tasks").routeId()).isEqualTo("project-tasks");
+    }
+
+    @Test
+    void unknownPathsAreUnmatched() {
+        assertThat(matcher.match("/")).isEqualTo(RouteMatch.UNMATCHED);
+        assertThat(matcher.match("/api/v2/tasks")).isEqualTo(RouteMatch.UNMATCHED);
+        assertThat(matcher.match("")).isEqualTo(RouteMatch.UNMATCHED);
+    }
+}
@@ -0,0 +1,186 @@
+package com.twelvenexus.oneplan.gateway.security;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+
+class VerifiedTokenCacheTests {
+
+    static final String SECRET = "test-secret-that-is-long-enough-for-hmac-sha-256";
+
+    private final TestTime time = new TestTime(Instant.now());
+    private final CountingVerifier verifier = new CountingVerifier();
+    private final VerifiedTokenCache cache =
+        new VerifiedTokenCache(verifier, 100, Duration.ofMinutes(5), time, time);
+
+    @Test
+    void tokenIsVerifiedOnceWhileCached() {
+        String token = token(time.instant().plus(Duration.ofHours(1)));
+
+        AuthenticatedUser first = cache.resolve(token);
+        time.advance(Duration.ofMinutes(4));
+        AuthenticatedUser second = cache.resolve(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.userId()).isEqualTo("user-1");
+        assertThat(first.roles()).containsExactly("ROLE_USER");
+        assertThat(verifier.calls).isEqualTo(1);
+    }
+
+    @Test
+    void entriesOfLongLivedTokensExpireAfterTheMaxTtl() {
+        String token = token(time.instant().plus(Duration.ofHours(1)));
+        cache.resolve(token);
+
+        time.advance(Duration.ofMinutes(5).plusSeconds(1));
+        cache.resolve(token);
+
+        assertThat(verifier.calls).isEqualTo(2);
+    }
+
+    @Test
+    void entriesExpireWithTheirToken() {
+        String token = token(time.instant().plusSeconds(30));
+        cache.resolve(token);
+        time.advance(Duration.ofSeconds(28));
+        cache.resolve(token);
+        assertThat(verifier.calls).isEqualTo(1);
+
+        // Past exp the token goes back to the verifier, which rejects it once real time catches up
+        time.advance(Duration.ofSeconds(3));
+        cache.resolve(token);
+
+        assertThat(verifier.calls).isEqualTo(2);
+    }
+
+    @Test
+    void tokensWithoutExpiryAreCachedForTheMaxTtl() {
+        String token = token(null);
+        cache.resolve(token);
+        time.advance(Duration.ofMinutes(4));
+        cache.resolve(token);
+        assertThat(verifier.calls).isEqualTo(1);
+
+        time.advance(Duration.ofMinutes(2));
+        cache.resolve(token);
+
+        assertThat(verifier.calls).isEqualTo(2);
+    }
+
+    @Test
+    void expiredTokensAreRejectedEveryTime() {
+        String token = token(Instant.now().minusSeconds(10));
+
+        assertThatThrownBy(() -> cache.resolve(token)).isInstanceOf(ExpiredJwtException.class);
+        assertThatThrownBy(() -> cache.resolve(token)).isInstanceOf(ExpiredJwtException.class);
+
+        assertThat(verifier.calls).isEqualTo(2);
+    }
+
+    @Test
+    void tamperedTokenIsNotServedTheCachedIdentity() {
+        String token = token(time.instant().plus(Duration.ofHours(1)));
+        cache.resolve(token);
+
+        String tampered = tamper(token);
+
+        assertThatThrownBy(() -> cache.resolve(tampered)).isInstanceOf(SignatureException.class);
+        assertThatThrownBy(() -> cache.resolve(tampered)).isInstanceOf(SignatureException.class);
+        // The genuine token is still served from the cache
+        assertThat(cache.resolve(token).userId()).isEqualTo("user-1");
+        assertThat(verifier.calls).isEqualTo(3);
+    }
+
+    static String token(Instant expiresAt) {
+        JwtBuilder builder = Jwts.builder()
+            .subject("user@example.com")
+            .claim("userId", "user-1")
+            .claim("tenantId", "tenant-1")
+            .claim("roles", List.of("ROLE_USER"))
+            .claim("sid", "3f1c2a7e-1d7b-4a54-9f0a-2b8e6c5d4e3f")
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)));
+        if (expiresAt != null) {
+            builder.expiration(Date.from(expiresAt));
+        }
+        return builder.compact();
+    }
+
+    /** Swaps in a payload granting more, keeping the original header and signature. */
+    static String tamper(String token) {
+        String forged = Jwts.builder()
+            .subject("user@example.com")
+            .claim("userId", "user-1")
+            .claim("roles", List.of("ROLE_ADMIN"))
+            .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+            .compact();
+        String[] parts = token.split("\\.");
+        return parts[0] + "." + forged.split("\\.")[1] + "." + parts[2];
+    }
+
+    private static class CountingVerifier extends JwtTokenVerifier {
+
+        private int calls;
+
+        CountingVerifier() {
+            super(SECRET);
+        }
+
+        @Override
+        public AuthenticatedUser verify(String token) {
+            calls++;
+            return super.verify(token);
+        }
+    }
+
+    /** Wall clock and cache ticker that only move when told to. */
+    private static final class TestTime extends Clock implements Ticker {
+
+        private Instant now;
+
+        TestTime(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public long read() {
+            return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
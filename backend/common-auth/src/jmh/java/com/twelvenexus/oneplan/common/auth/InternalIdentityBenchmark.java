@@ -0,0 +1,72 @@
+package com.twelvenexus.oneplan.common.auth;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.SecretKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-request authentication cost in a downstream service: re-parsing the bearer JWT versus
+ * verifying the gateway identity header. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InternalIdentityBenchmark {
+
+  private static final String SECRET =
+      "a-very-long-and-secure-secret-key-that-is-at-least-32-bytes-long";
+
+  private JwtParser jwtParser;
+  private String jwt;
+  private InternalIdentityCodec codec;
+  private String header;
+
+  @Setup
+  public void setUp() {
+    SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8));
+    jwtParser = Jwts.parser().verifyWith(key).build();
+    jwt =
+        Jwts.builder()
+            .subject("user@example.com")
+            .claim("userId", "2f1c7a52-0d43-4d1e-9a53-6f0d2b7c1e11")
+            .claim("tenantId", "7b0e9d1c-5a44-4c3f-8f21-1d9e6a2b3c44")
+            .claim("roles", List.of("ROLE_USER", "ROLE_ADMIN"))
+            .issuedAt(new Date())
+            .expiration(new Date(System.currentTimeMillis() + 3_600_000))
+            .signWith(key)
+            .compact();
+
+    codec = new InternalIdentityCodec(SECRET);
+    header =
+        codec.encode(
+            new InternalIdentity(
+                "2f1c7a52-0d43-4d1e-9a53-6f0d2b7c1e11",
+                "7b0e9d1c-5a44-4c3f-8f21-1d9e6a2b3c44",
+                "user@example.com",
+                List.of("ROLE_USER", "ROLE_ADMIN"),
+                System.currentTimeMillis() / 1000 + 3_600));
+  }
+
+  @Benchmark
+  public Claims jwtParse() {
+    return jwtParser.parseSignedClaims(jwt).getPayload();
+  }
+
+  @Benchmark
+  public InternalIdentity identityHeader() {
+    return codec.decode(header);
+  }
+}
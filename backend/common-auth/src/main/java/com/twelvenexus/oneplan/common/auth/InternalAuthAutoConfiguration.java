@@ -0,0 +1,50 @@
+package com.twelvenexus.oneplan.common.auth;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.web.SecurityFilterChain;
+
+/**
+ * Provides the {@link InternalIdentityCodec} whenever {@code oneplan.internal-auth.secret} is set,
+ * and the {@link InternalIdentityFilter} in servlet applications using Spring Security.
+ */
+@AutoConfiguration
+@EnableConfigurationProperties(InternalAuthProperties.class)
+@ConditionalOnProperty(prefix = "oneplan.internal-auth", name = "secret")
+public class InternalAuthAutoConfiguration {
+
+  @Bean
+  @ConditionalOnMissingBean
+  public InternalIdentityCodec internalIdentityCodec(InternalAuthProperties properties) {
+    return new InternalIdentityCodec(properties.getSecret());
+  }
+
+  @Configuration(proxyBeanMethods = false)
+  @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+  @ConditionalOnClass(SecurityFilterChain.class)
+  static class ServletFilterConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public InternalIdentityFilter internalIdentityFilter(InternalIdentityCodec codec) {
+      return new InternalIdentityFilter(codec);
+    }
+
+    /** The filter belongs in the security filter chain only, not in the servlet filter chain. */
+    @Bean
+    public FilterRegistrationBean<InternalIdentityFilter> internalIdentityFilterRegistration(
+        InternalIdentityFilter filter) {
+      FilterRegistrationBean<InternalIdentityFilter> registration =
+          new FilterRegistrationBean<>(filter);
+      registration.setEnabled(false);
+      return registration;
+    }
+  }
+}
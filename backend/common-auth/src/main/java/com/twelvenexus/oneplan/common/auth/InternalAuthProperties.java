@@ -0,0 +1,30 @@
+package com.twelvenexus.oneplan.common.auth;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "oneplan.internal-auth")
+public class InternalAuthProperties {
+
+  /** Secret shared by the gateway and all services. */
+  private String secret;
+
+  /** Lifetime of a signed identity header; only needs to cover one request. */
+  private Duration ttl = Duration.ofSeconds(60);
+
+  public String getSecret() {
+    return secret;
+  }
+
+  public void setSecret(String secret) {
+    this.secret = secret;
+  }
+
+  public Duration getTtl() {
+    return ttl;
+  }
+
+  public void setTtl(Duration ttl) {
+    this.ttl = ttl;
+  }
+}
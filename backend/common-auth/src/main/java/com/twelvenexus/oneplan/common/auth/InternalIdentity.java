@@ -0,0 +1,26 @@
+package com.twelvenexus.oneplan.common.auth;
+
+import java.util.List;
+
+/**
+ * Identity of the calling user as asserted by the API gateway.
+ *
+ * @param userId user id from the access token
+ * @param tenantId tenant id, or {@code null} for users outside a tenant
+ * @param email the token subject
+ * @param roles granted roles
+ * @param expiresAtEpochSecond instant after which the assertion must be rejected
+ */
+public record InternalIdentity(
+    String userId, String tenantId, String email, List<String> roles, long expiresAtEpochSecond) {
+
+  /** Header carrying the signed identity from the gateway to downstream services. */
+  public static final String HEADER = "X-Internal-Identity";
+
+  /** Role of identities the gateway asserts for its own calls rather than on behalf of a user. */
+  public static final String SERVICE_ROLE = "ROLE_SERVICE";
+
+  public InternalIdentity {
+    roles = roles == null ? List.of() : List.copyOf(roles);
+  }
+}
@@ -0,0 +1,144 @@
+package com.twelvenexus.oneplan.common.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs and verifies {@link InternalIdentity} headers.
+ *
+ * <p>Wire format: {@code v1.<user>.<tenant>.<email>.<roles>.<exp>.<signature>} where the text
+ * fields are unpadded base64url, roles are comma separated before encoding, {@code exp} is epoch
+ * seconds and the signature is HMAC-SHA256 over everything before the last dot. Verification is a
+ * split, one HMAC and a few base64 decodes, with no JSON involved.
+ */
+public class InternalIdentityCodec {
+
+  private static final String VERSION = "v1";
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int FIELD_COUNT = 7;
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private final SecretKeySpec key;
+  private final Clock clock;
+  private final ThreadLocal<Mac> macs;
+
+  public InternalIdentityCodec(String secret) {
+    this(secret, Clock.systemUTC());
+  }
+
+  public InternalIdentityCodec(String secret, Clock clock) {
+    if (secret == null || secret.isBlank()) {
+      throw new IllegalArgumentException("Internal auth secret must not be empty");
+    }
+    this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    this.clock = clock;
+    this.macs = ThreadLocal.withInitial(this::newMac);
+  }
+
+  public String encode(InternalIdentity identity) {
+    String payload =
+        String.join(
+            ".",
+            VERSION,
+            text(identity.userId()),
+            text(identity.tenantId()),
+            text(identity.email()),
+            text(String.join(",", identity.roles())),
+            Long.toString(identity.expiresAtEpochSecond()));
+    return payload + "." + ENCODER.encodeToString(sign(payload));
+  }
+
+  public InternalIdentity decode(String header) {
+    if (header == null || header.isEmpty()) {
+      throw new InvalidIdentityException("Missing identity header");
+    }
+    int signatureStart = header.lastIndexOf('.');
+    if (signatureStart < 0) {
+      throw new InvalidIdentityException("Malformed identity header");
+    }
+
+    String payload = header.substring(0, signatureStart);
+    byte[] signature = decodeBase64(header.substring(signatureStart + 1));
+    if (!MessageDigest.isEqual(sign(payload), signature)) {
+      throw new InvalidIdentityException("Invalid identity signature");
+    }
+
+    String[] fields = payload.split("\\.", -1);
+    if (fields.length != FIELD_COUNT - 1 || !VERSION.equals(fields[0])) {
+      throw new InvalidIdentityException("Unsupported identity header");
+    }
+
+    long expiresAt = parseExpiry(fields[5]);
+    if (clock.instant().getEpochSecond() >= expiresAt) {
+      throw new InvalidIdentityException("Identity header expired");
+    }
+
+    String roles = fromText(fields[4]);
+    return new InternalIdentity(
+        fromText(fields[1]),
+        fromText(fields[2]),
+        fromText(fields[3]),
+        roles == null || roles.isEmpty() ? List.of() : split(roles),
+        expiresAt);
+  }
+
+  private byte[] sign(String payload) {
+    Mac mac = macs.get();
+    return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private Mac newMac() {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Could not initialise " + ALGORITHM, e);
+    }
+  }
+
+  /** Null is encoded as an empty field, so empty strings do not round-trip. */
+  private static String text(String value) {
+    return value == null ? "" : ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String fromText(String field) {
+    return field.isEmpty() ? null : new String(decodeBase64(field), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] decodeBase64(String value) {
+    try {
+      return DECODER.decode(value);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidIdentityException("Malformed identity header");
+    }
+  }
+
+  private static long parseExpiry(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      throw new InvalidIdentityException("Malformed identity expiry");
+    }
+  }
+
+  private static List<String> split(String roles) {
+    List<String> result = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i <= roles.length(); i++) {
+      if (i == roles.length() || roles.charAt(i) == ',') {
+        result.add(roles.substring(start, i));
+        start = i + 1;
+      }
+    }
+    return result;
+  }
+}
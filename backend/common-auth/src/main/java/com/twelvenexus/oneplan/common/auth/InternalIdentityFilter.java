@@ -0,0 +1,63 @@
+package com.twelvenexus.oneplan.common.auth;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Authenticates requests from the signed {@link InternalIdentity#HEADER} set by the API gateway.
+ * Requests without a valid header continue unauthenticated and are left to the service's
+ * authorization rules.
+ */
+public class InternalIdentityFilter extends OncePerRequestFilter {
+
+  /** Request attribute holding the verified {@link InternalIdentity}. */
+  public static final String IDENTITY_ATTRIBUTE = InternalIdentity.class.getName();
+
+  private static final Logger log = LoggerFactory.getLogger(InternalIdentityFilter.class);
+
+  private final InternalIdentityCodec codec;
+
+  public InternalIdentityFilter(InternalIdentityCodec codec) {
+    this.codec = codec;
+  }
+
+  public static InternalIdentity currentIdentity(HttpServletRequest request) {
+    return (InternalIdentity) request.getAttribute(IDENTITY_ATTRIBUTE);
+  }
+
+  @Override
+  protected void doFilterInternal(
+      HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String header = request.getHeader(InternalIdentity.HEADER);
+
+    if (header != null) {
+      try {
+        InternalIdentity identity = codec.decode(header);
+        List<SimpleGrantedAuthority> authorities =
+            identity.roles().stream().map(SimpleGrantedAuthority::new).toList();
+
+        UsernamePasswordAuthenticationToken authToken =
+            new UsernamePasswordAuthenticationToken(identity.email(), null, authorities);
+        authToken.setDetails(identity);
+
+        request.setAttribute(IDENTITY_ATTRIBUTE, identity);
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+      } catch (InvalidIdentityException e) {
+        log.warn("Rejected internal identity header: {}", e.getMessage());
+      }
+    }
+
+    filterChain.doFilter(request, response);
+  }
+}
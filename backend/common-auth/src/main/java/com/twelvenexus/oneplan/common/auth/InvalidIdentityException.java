@@ -0,0 +1,9 @@
+package com.twelvenexus.oneplan.common.auth;
+
+/** Thrown when an identity header is malformed, tampered with or expired. */
+public class InvalidIdentityException extends RuntimeException {
+
+  public InvalidIdentityException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,77 @@
+package com.twelvenexus.oneplan.common.auth;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class InternalIdentityCodecTests {
+
+  private static final String SECRET = "internal-auth-test-secret-that-is-long-enough";
+  private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+  private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+
+  private final InternalIdentityCodec codec = new InternalIdentityCodec(SECRET, CLOCK);
+
+  @Test
+  void roundTripsIdentity() {
+    InternalIdentity identity = identity("tenant-1", List.of("ROLE_USER", "ROLE_ADMIN"), 60);
+
+    assertThat(codec.decode(codec.encode(identity))).isEqualTo(identity);
+  }
+
+  @Test
+  void roundTripsMissingTenantAndRoles() {
+    InternalIdentity identity = identity(null, List.of(), 1);
+
+    assertThat(codec.decode(codec.encode(identity))).isEqualTo(identity);
+  }
+
+  @Test
+  void rejectsTamperedPayload() {
+    String[] parts = codec.encode(identity("tenant-1", List.of("ROLE_USER"), 60)).split("\\.");
+    parts[2] =
+        Base64.getUrlEncoder()
+            .withoutPadding()
+            .encodeToString("tenant-2".getBytes(StandardCharsets.UTF_8));
+
+    assertThatThrownBy(() -> codec.decode(String.join(".", parts)))
+        .isInstanceOf(InvalidIdentityException.class);
+  }
+
+  @Test
+  void rejectsHeaderSignedWithAnotherSecret() {
+    InternalIdentityCodec other = new InternalIdentityCodec("some-other-secret", CLOCK);
+    String header = other.encode(identity("tenant-1", List.of(), 60));
+
+    assertThatThrownBy(() -> codec.decode(header)).isInstanceOf(InvalidIdentityException.class);
+  }
+
+  @Test
+  void rejectsExpiredHeader() {
+    String header = codec.encode(identity("tenant-1", List.of(), 0));
+
+    assertThatThrownBy(() -> codec.decode(header))
+        .isInstanceOf(InvalidIdentityException.class)
+        .hasMessageContaining("expired");
+  }
+
+  @Test
+  void rejectsMalformedHeader() {
+    assertThatThrownBy(() -> codec.decode("not-a-header"))
+        .isInstanceOf(InvalidIdentityException.class);
+    assertThatThrownBy(() -> codec.decode("v1.a.b.c.d.e.!!!"))
+        .isInstanceOf(InvalidIdentityException.class);
+  }
+
+  private static InternalIdentity identity(String tenantId, List<String> roles, long ttlSeconds) {
+    return new InternalIdentity(
+        "user-1", tenantId, "jane.doe@example.com", roles, NOW.getEpochSecond() + ttlSeconds);
+  }
+}
@@ -0,0 +1,62 @@
+package com.twelvenexus.oneplan.identity.security;
+
+import com.twelvenexus.oneplan.identity.model.User;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Logins per second per core for each BCrypt cost, through the same authentication provider the
+ * login endpoint uses, with the user lookup stubbed out. Hashing is CPU bound, so the
+ * single-threaded score is the per-core ceiling; multiply by the cores available to the service to
+ * size for a login spike. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(1)
+public class LoginThroughputBenchmark {
+
+  private static final String EMAIL = "jane.doe@example.com";
+  private static final String PASSWORD = "correct horse battery staple";
+
+  @Param({"10", "11", "12"})
+  public int strength;
+
+  private DaoAuthenticationProvider provider;
+
+  @Setup
+  public void setUp() {
+    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+
+    User user = new User();
+    user.setId(UUID.randomUUID());
+    user.setEmail(EMAIL);
+    user.setPasswordHash(encoder.encode(PASSWORD));
+    user.setStatus(User.UserStatus.ACTIVE);
+    user.setRoles(Set.of("ROLE_USER"));
+    CustomUserDetails details = CustomUserDetails.build(user);
+
+    provider = new DaoAuthenticationProvider(encoder);
+    provider.setUserDetailsService(username -> details);
+  }
+
+  @Benchmark
+  public Authentication login() {
+    return provider.authenticate(
+        UsernamePasswordAuthenticationToken.unauthenticated(EMAIL, PASSWORD));
+  }
+}
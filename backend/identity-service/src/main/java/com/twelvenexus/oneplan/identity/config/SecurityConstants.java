@@ -14,4 +14,9 @@ public class SecurityConstants {
     "/api-docs.yaml",
     "/api-docs/**",
   };
+
+  /** Called by other services only; takes precedence over {@link #PUBLIC_ROUTES}. */
+  public static final String[] INTERNAL_ROUTES = {
+    "/auth/revoked-sessions",
+  };
 }
@@ -1,11 +1,18 @@
 package com.twelvenexus.oneplan.identity.config;
 
+import com.twelvenexus.oneplan.common.auth.InternalIdentity;
+import com.twelvenexus.oneplan.common.auth.InternalIdentityFilter;
 import com.twelvenexus.oneplan.identity.security.JwtAuthenticationFilter;
+import com.twelvenexus.oneplan.identity.security.TimedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.LocalDateTime;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -15,6 +22,7 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 @Configuration
@@ -24,6 +32,29 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 public class WebSecurityConfig {
 
   private final JwtAuthenticationFilter jwtAuthenticationFilter;
+  private final InternalIdentityFilter internalIdentityFilter;
+
+  /**
+   * Internal endpoints only accept the service identity the gateway signs with the shared internal
+   * auth secret; user tokens are not looked at.
+   */
+  @Bean
+  @Order(1)
+  public SecurityFilterChain internalSecurityFilterChain(HttpSecurity http) throws Exception {
+    http.securityMatcher(SecurityConstants.INTERNAL_ROUTES)
+        .csrf(csrf -> csrf.disable())
+        .sessionManagement(
+            session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+        .authorizeHttpRequests(
+            authorize -> authorize.anyRequest().hasAuthority(InternalIdentity.SERVICE_ROLE))
+        .exceptionHandling(
+            exceptions ->
+                exceptions.authenticationEntryPoint(
+                    new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
+        .addFilterBefore(internalIdentityFilter, UsernamePasswordAuthenticationFilter.class);
+
+    return http.build();
+  }
 
   @Bean
   public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
@@ -82,8 +113,14 @@ public class WebSecurityConfig {
     return authConfig.getAuthenticationManager();
   }
 
+  /**
+   * Raising {@code app.security.bcrypt-strength} takes effect for existing users on their next
+   * login, when {@link
+   * com.twelvenexus.oneplan.identity.security.CustomUserDetailsService#updatePassword} rehashes.
+   */
   @Bean
-  public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+  public PasswordEncoder passwordEncoder(
+      @Value("${app.security.bcrypt-strength:10}") int strength, MeterRegistry meterRegistry) {
+    return new TimedPasswordEncoder(new BCryptPasswordEncoder(strength), meterRegistry, strength);
   }
 }
@@ -3,14 +3,19 @@ package com.twelvenexus.oneplan.identity.controller;
 import com.twelvenexus.oneplan.identity.dto.AuthResponse;
 import com.twelvenexus.oneplan.identity.dto.LoginRequest;
 import com.twelvenexus.oneplan.identity.dto.RefreshTokenRequest;
+import com.twelvenexus.oneplan.identity.dto.RevokedSessionsResponse;
 import com.twelvenexus.oneplan.identity.dto.SignupRequest;
 import com.twelvenexus.oneplan.identity.service.AuthService;
+import com.twelvenexus.oneplan.identity.service.RefreshTokenService;
 import jakarta.validation.Valid;
+import java.time.Instant;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -19,6 +24,7 @@ import org.springframework.web.bind.annotation.RestController;
 public class AuthController {
 
   private final AuthService authService;
+  private final RefreshTokenService refreshTokenService;
 
   @PostMapping("/login")
   public ResponseEntity<AuthResponse> login(@Valid @RequestBody LoginRequest loginRequest) {
@@ -35,4 +41,24 @@ public class AuthController {
       @Valid @RequestBody RefreshTokenRequest refreshTokenRequest) {
     return ResponseEntity.ok(authService.refreshToken(refreshTokenRequest.getRefreshToken()));
   }
+
+  @PostMapping("/logout")
+  public ResponseEntity<Void> logout(@Valid @RequestBody RefreshTokenRequest refreshTokenRequest) {
+    authService.logout(refreshTokenRequest.getRefreshToken());
+    return ResponseEntity.noContent().build();
+  }
+
+  /**
+   * Polled by the gateway to reject access tokens of revoked sessions. Internal only, see {@link
+   * com.twelvenexus.oneplan.identity.config.SecurityConstants#INTERNAL_ROUTES}.
+   */
+  @GetMapping("/revoked-sessions")
+  public ResponseEntity<RevokedSessionsResponse> revokedSessions(@RequestParam Instant since) {
+    Instant asOf = Instant.now();
+    return ResponseEntity.ok(
+        RevokedSessionsResponse.builder()
+            .sessionIds(refreshTokenService.revokedSessionsSince(since))
+            .asOf(asOf)
+            .build());
+  }
 }
@@ -62,6 +62,13 @@ public class UserController {
     return ResponseEntity.noContent().build();
   }
 
+  @DeleteMapping("/{id}/sessions")
+  @PreAuthorize("hasRole('ADMIN') or @securityExpressions.isCurrentUser(#id)")
+  public ResponseEntity<Void> revokeSessions(@PathVariable UUID id) {
+    userService.revokeSessions(id);
+    return ResponseEntity.noContent().build();
+  }
+
   @GetMapping("/{id}/preferences")
   @PreAuthorize("hasRole('ADMIN') or @securityExpressions.isCurrentUser(#id)")
   public ResponseEntity<UserPreferences> getUserPreferences(@PathVariable UUID id) {
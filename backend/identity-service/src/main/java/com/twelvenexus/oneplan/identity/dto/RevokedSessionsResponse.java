@@ -0,0 +1,19 @@
+package com.twelvenexus.oneplan.identity.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RevokedSessionsResponse {
+  private List<UUID> sessionIds;
+  // Pass back as "since" on the next poll
+  private Instant asOf;
+}
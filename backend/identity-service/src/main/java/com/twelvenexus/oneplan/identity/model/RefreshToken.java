@@ -0,0 +1,64 @@
+package com.twelvenexus.oneplan.identity.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One issued refresh token. Every login starts a new family; each rotation issues a child in the
+ * same family and marks the parent rotated. Presenting a rotated token again is treated as replay
+ * and revokes the whole family. Times are in UTC.
+ */
+@Entity
+@Table(name = "refresh_tokens")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshToken {
+  @Id
+  @GeneratedValue(strategy = GenerationType.UUID)
+  @Column(name = "jti", columnDefinition = "BINARY(16)")
+  private UUID jti;
+
+  @Column(name = "family_id", columnDefinition = "BINARY(16)", nullable = false)
+  private UUID familyId;
+
+  @Column(name = "parent_jti", columnDefinition = "BINARY(16)")
+  private UUID parentJti;
+
+  @Column(name = "user_id", columnDefinition = "BINARY(16)", nullable = false)
+  private UUID userId;
+
+  @Column(name = "expires_at", nullable = false)
+  private LocalDateTime expiresAt;
+
+  @Column(name = "created_at", nullable = false, updatable = false)
+  private LocalDateTime createdAt;
+
+  @Column(name = "rotated_at")
+  private LocalDateTime rotatedAt;
+
+  @Column(name = "revoked_at")
+  private LocalDateTime revokedAt;
+
+  @PrePersist
+  protected void onCreate() {
+    createdAt = LocalDateTime.now(ZoneOffset.UTC);
+  }
+
+  public boolean isActive(LocalDateTime now) {
+    return rotatedAt == null && revokedAt == null && expiresAt.isAfter(now);
+  }
+}
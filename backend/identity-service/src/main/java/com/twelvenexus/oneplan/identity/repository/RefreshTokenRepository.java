@@ -0,0 +1,49 @@
+package com.twelvenexus.oneplan.identity.repository;
+
+import com.twelvenexus.oneplan.identity.model.RefreshToken;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, UUID> {
+
+  /** Compare-and-set on the parent token; returns 0 if it was already rotated or revoked. */
+  @Modifying
+  @Query(
+      "update RefreshToken t set t.rotatedAt = :now "
+          + "where t.jti = :jti and t.rotatedAt is null and t.revokedAt is null")
+  int markRotated(@Param("jti") UUID jti, @Param("now") LocalDateTime now);
+
+  @Modifying
+  @Query(
+      "update RefreshToken t set t.revokedAt = :now "
+          + "where t.familyId = :familyId and t.revokedAt is null")
+  int revokeFamily(@Param("familyId") UUID familyId, @Param("now") LocalDateTime now);
+
+  @Query(
+      "select distinct t.familyId from RefreshToken t "
+          + "where t.userId = :userId and t.revokedAt is null and t.expiresAt > :now")
+  List<UUID> findActiveFamilies(@Param("userId") UUID userId, @Param("now") LocalDateTime now);
+
+  @Modifying
+  @Query(
+      "update RefreshToken t set t.revokedAt = :now "
+          + "where t.userId = :userId and t.revokedAt is null and t.expiresAt > :now")
+  int revokeAllForUser(@Param("userId") UUID userId, @Param("now") LocalDateTime now);
+
+  @Query("select distinct t.familyId from RefreshToken t where t.revokedAt > :since")
+  List<UUID> findFamiliesRevokedSince(@Param("since") LocalDateTime since);
+
+  /** Deletes at most {@code batchSize} expired tokens in its own transaction. */
+  @Transactional
+  @Modifying
+  @Query(
+      value = "DELETE FROM refresh_tokens WHERE expires_at < :cutoff LIMIT :batchSize",
+      nativeQuery = true)
+  int deleteExpired(@Param("cutoff") LocalDateTime cutoff, @Param("batchSize") int batchSize);
+}
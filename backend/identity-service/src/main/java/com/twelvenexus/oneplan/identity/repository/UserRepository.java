@@ -1,12 +1,34 @@
 package com.twelvenexus.oneplan.identity.repository;
 
 import com.twelvenexus.oneplan.identity.model.User;
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface UserRepository extends JpaRepository<User, UUID> {
   Optional<User> findByEmail(String email);
 
   Boolean existsByEmail(String email);
+
+  @Modifying
+  @Query(
+      "update User u set u.lastLogin = :lastLogin "
+          + "where u.id = :id and (u.lastLogin is null or u.lastLogin < :lastLogin)")
+  int updateLastLogin(@Param("id") UUID id, @Param("lastLogin") LocalDateTime lastLogin);
+
+  /** Writes only the hash, so a user loaded earlier in the request need not be read again. */
+  @Transactional
+  @Modifying
+  @Query(
+      "update User u set u.passwordHash = :passwordHash, u.updatedAt = :updatedAt "
+          + "where u.id = :id")
+  int updatePasswordHash(
+      @Param("id") UUID id,
+      @Param("passwordHash") String passwordHash,
+      @Param("updatedAt") LocalDateTime updatedAt);
 }
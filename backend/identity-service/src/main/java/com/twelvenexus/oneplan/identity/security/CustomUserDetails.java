@@ -15,6 +15,8 @@ public class CustomUserDetails implements UserDetails {
   private String password;
   private boolean active;
   private Collection<? extends GrantedAuthority> authorities;
+  // The entity this was loaded from; only set on the login path
+  private User user;
 
   public static CustomUserDetails build(User user) {
     List<GrantedAuthority> authorities =
@@ -22,12 +24,15 @@ public class CustomUserDetails implements UserDetails {
             .map(role -> new SimpleGrantedAuthority(role))
             .collect(Collectors.toList());
 
-    return new CustomUserDetails(
-        user.getId(),
-        user.getEmail(),
-        user.getPasswordHash(),
-        user.getStatus() == User.UserStatus.ACTIVE,
-        authorities);
+    CustomUserDetails details =
+        new CustomUserDetails(
+            user.getId(),
+            user.getEmail(),
+            user.getPasswordHash(),
+            user.getStatus() == User.UserStatus.ACTIVE,
+            authorities);
+    details.user = user;
+    return details;
   }
 
   public CustomUserDetails(
@@ -52,6 +57,11 @@ public class CustomUserDetails implements UserDetails {
     return id;
   }
 
+  /** The loaded user entity, or {@code null} for details served from {@link UserDetailsCache}. */
+  public User getUser() {
+    return user;
+  }
+
   @Override
   public String getPassword() {
     return password;
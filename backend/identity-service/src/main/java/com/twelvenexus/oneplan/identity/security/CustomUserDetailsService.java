@@ -2,15 +2,19 @@ package com.twelvenexus.oneplan.identity.security;
 
 import com.twelvenexus.oneplan.identity.model.User;
 import com.twelvenexus.oneplan.identity.repository.UserRepository;
+import java.time.LocalDateTime;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
   private final UserRepository userRepository;
 
@@ -24,4 +28,28 @@ public class CustomUserDetailsService implements UserDetailsService {
 
     return CustomUserDetails.build(user);
   }
+
+  /**
+   * Called by the authentication provider after a successful login when the stored hash was
+   * produced with a lower cost than the configured encoder, so hashes are upgraded as users log in.
+   * The user was loaded by {@link #loadUserByUsername} moments before; only the hash is written.
+   */
+  @Override
+  public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+    User user =
+        userDetails instanceof CustomUserDetails details && details.getUser() != null
+            ? details.getUser()
+            : userRepository
+                .findByEmail(userDetails.getUsername())
+                .orElseThrow(
+                    () ->
+                        new UsernameNotFoundException(
+                            "User not found with email: " + userDetails.getUsername()));
+    LocalDateTime now = LocalDateTime.now();
+    userRepository.updatePasswordHash(user.getId(), newPassword, now);
+    user.setPasswordHash(newPassword);
+    user.setUpdatedAt(now);
+    log.debug("Rehashed password for user {}", user.getId());
+    return CustomUserDetails.build(user);
+  }
 }
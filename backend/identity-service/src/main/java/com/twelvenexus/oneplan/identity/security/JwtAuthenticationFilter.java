@@ -9,8 +9,6 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
@@ -21,7 +19,7 @@ import org.springframework.web.filter.OncePerRequestFilter;
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
   private final JwtTokenProvider tokenProvider;
-  private final UserDetailsService userDetailsService;
+  private final UserDetailsCache userDetailsCache;
 
   @Override
   protected void doFilterInternal(
@@ -33,10 +31,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     try {
       String jwt = getJwtFromRequest(request);
 
-      if (StringUtils.hasText(jwt) && tokenProvider.validateToken(jwt)) {
-        String email = tokenProvider.getEmailFromToken(jwt);
+      String email = StringUtils.hasText(jwt) ? tokenProvider.getEmailFromValidToken(jwt) : null;
 
-        UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+      if (email != null) {
+        CustomUserDetails userDetails = userDetailsCache.get(email);
         UsernamePasswordAuthenticationToken authentication =
             new UsernamePasswordAuthenticationToken(
                 userDetails, null, userDetails.getAuthorities());
@@ -3,6 +3,7 @@ package com.twelvenexus.oneplan.identity.security;
 import com.twelvenexus.oneplan.identity.config.JwtConfig;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
@@ -13,6 +14,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 import javax.crypto.SecretKey;
 import lombok.RequiredArgsConstructor;
@@ -26,13 +28,18 @@ import org.springframework.stereotype.Component;
 @Slf4j
 public class JwtTokenProvider {
 
+  /** Refresh-token family id, carried by both access and refresh tokens. */
+  public static final String SESSION_ID_CLAIM = "sid";
+
   private final JwtConfig jwtConfig;
   private SecretKey key;
+  private JwtParser parser;
 
   @PostConstruct
   public void init() {
     // Create a SecretKey using the secret from configuration
     this.key = Keys.hmacShaKeyFor(jwtConfig.getSecret().getBytes(StandardCharsets.UTF_8));
+    this.parser = Jwts.parser().verifyWith(key).build();
   }
 
   public String generateToken(Authentication authentication) {
@@ -45,6 +52,13 @@ public class JwtTokenProvider {
     return createToken(claims, email);
   }
 
+  /** Access token bound to a refresh-token family, so revoking the family revokes it too. */
+  public String generateToken(String email, UUID sessionId) {
+    Map<String, Object> claims = new HashMap<>();
+    claims.put(SESSION_ID_CLAIM, sessionId.toString());
+    return createToken(claims, email);
+  }
+
   private String createToken(Map<String, Object> claims, String subject) {
     Date now = new Date();
     Date expiryDate = new Date(now.getTime() + jwtConfig.getTokenValidityInSeconds() * 1000);
@@ -58,13 +72,12 @@ public class JwtTokenProvider {
         .compact();
   }
 
-  public String generateRefreshToken(String email) {
-    Date now = new Date();
-    Date expiryDate = new Date(now.getTime() + jwtConfig.getRefreshTokenValidityInSeconds() * 1000);
-
+  public String generateRefreshToken(String email, UUID jti, UUID familyId, Date expiryDate) {
     return Jwts.builder()
+        .id(jti.toString())
         .subject(email)
-        .issuedAt(now)
+        .claim(SESSION_ID_CLAIM, familyId.toString())
+        .issuedAt(new Date())
         .expiration(expiryDate)
         .signWith(key)
         .compact();
@@ -85,7 +98,7 @@ public class JwtTokenProvider {
 
   private Claims getAllClaimsFromToken(String token) {
     try {
-      return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
+      return parser.parseSignedClaims(token).getPayload();
     } catch (Exception e) {
       log.error("Could not parse JWT token", e);
       throw e;
@@ -93,9 +106,27 @@ public class JwtTokenProvider {
   }
 
   public boolean validateToken(String token) {
+    return getEmailFromValidToken(token) != null;
+  }
+
+  /**
+   * Validates the token and returns its subject in a single parse.
+   *
+   * @return the email, or {@code null} if the token is invalid or expired
+   */
+  public String getEmailFromValidToken(String token) {
+    Claims claims = getValidClaims(token);
+    return claims != null ? claims.getSubject() : null;
+  }
+
+  /**
+   * Validates the token and returns all of its claims.
+   *
+   * @return the claims, or {@code null} if the token is invalid or expired
+   */
+  public Claims getValidClaims(String token) {
     try {
-      Jwts.parser().verifyWith(key).build().parseSignedClaims(token);
-      return true;
+      return parser.parseSignedClaims(token).getPayload();
     } catch (SignatureException e) {
       log.error("Invalid JWT signature: {}", e.getMessage());
     } catch (MalformedJwtException e) {
@@ -107,6 +138,6 @@ public class JwtTokenProvider {
     } catch (IllegalArgumentException e) {
       log.error("JWT claims string is empty: {}", e.getMessage());
     }
-    return false;
+    return null;
   }
 }
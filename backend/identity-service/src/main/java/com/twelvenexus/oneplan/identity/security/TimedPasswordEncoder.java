@@ -0,0 +1,45 @@
+package com.twelvenexus.oneplan.identity.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * Records how long hashing and verification take, so the effect of the configured BCrypt cost on
+ * login latency is visible as {@code identity.password.hashing}.
+ */
+public class TimedPasswordEncoder implements PasswordEncoder {
+
+  private final PasswordEncoder delegate;
+  private final Timer encodeTimer;
+  private final Timer matchesTimer;
+
+  public TimedPasswordEncoder(PasswordEncoder delegate, MeterRegistry registry, int strength) {
+    this.delegate = delegate;
+    this.encodeTimer = timer(registry, "encode", strength);
+    this.matchesTimer = timer(registry, "matches", strength);
+  }
+
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return encodeTimer.record(() -> delegate.encode(rawPassword));
+  }
+
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    Boolean matches = matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword));
+    return Boolean.TRUE.equals(matches);
+  }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    return delegate.upgradeEncoding(encodedPassword);
+  }
+
+  private static Timer timer(MeterRegistry registry, String operation, int strength) {
+    return Timer.builder("identity.password.hashing")
+        .tag("operation", operation)
+        .tag("strength", String.valueOf(strength))
+        .register(registry);
+  }
+}
@@ -0,0 +1,82 @@
+package com.twelvenexus.oneplan.identity.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Short-lived cache of {@link CustomUserDetails} used to authenticate bearer-token requests
+ * without a database round trip. Cached entries carry no password hash; login still goes through
+ * {@link CustomUserDetailsService} directly. Callers that change a user's status, roles or
+ * credentials must {@link #evict(String) evict} the entry.
+ */
+@Component
+public class UserDetailsCache implements MeterBinder {
+
+  static final String CACHE_NAME = "identity.user.details";
+
+  private final UserDetailsService userDetailsService;
+  private final Cache<String, CustomUserDetails> cache;
+
+  public UserDetailsCache(
+      UserDetailsService userDetailsService,
+      @Value("${app.user-details-cache.maximum-size:10000}") long maximumSize,
+      @Value("${app.user-details-cache.ttl:30s}") Duration ttl) {
+    this.userDetailsService = userDetailsService;
+    this.cache =
+        Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(ttl).recordStats().build();
+  }
+
+  /**
+   * Returns the user details for the email, loading them on a miss.
+   *
+   * @throws org.springframework.security.core.userdetails.UsernameNotFoundException if the user
+   *     does not exist; misses are not cached
+   */
+  public CustomUserDetails get(String email) {
+    return cache.get(email, this::load);
+  }
+
+  /**
+   * Evicts the user's entry. Inside a transaction the entry is evicted once the transaction
+   * commits: a request running before then could only cache the pre-update row again, and a
+   * rolled-back change leaves the entry, which is still current, in place.
+   */
+  public void evict(String email) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              cache.invalidate(email);
+            }
+          });
+      return;
+    }
+    cache.invalidate(email);
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+  }
+
+  private CustomUserDetails load(String email) {
+    UserDetails loaded = userDetailsService.loadUserByUsername(email);
+    return new CustomUserDetails(
+        ((CustomUserDetails) loaded).getId(),
+        loaded.getUsername(),
+        null,
+        loaded.isEnabled(),
+        loaded.getAuthorities());
+  }
+}
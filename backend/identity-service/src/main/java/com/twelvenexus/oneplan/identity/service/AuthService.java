@@ -29,6 +29,8 @@ public class AuthService {
   private final PasswordEncoder passwordEncoder;
   private final JwtTokenProvider tokenProvider;
   private final JwtConfig jwtConfig;
+  private final RefreshTokenService refreshTokenService;
+  private final LastLoginRecorder lastLoginRecorder;
 
   public AuthResponse login(LoginRequest loginRequest) {
     Authentication authentication =
@@ -39,20 +41,22 @@ public class AuthService {
     SecurityContextHolder.getContext().setAuthentication(authentication);
     CustomUserDetails userDetails = (CustomUserDetails) authentication.getPrincipal();
 
-    // Update last login time
+    // The provider already loaded the user; last login is written asynchronously in batches
     User user =
-        userRepository
-            .findByEmail(userDetails.getUsername())
-            .orElseThrow(() -> new RuntimeException("User not found"));
-    user.setLastLogin(LocalDateTime.now());
-    userRepository.save(user);
+        userDetails.getUser() != null
+            ? userDetails.getUser()
+            : userRepository
+                .findByEmail(userDetails.getUsername())
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    lastLoginRecorder.record(user.getId(), LocalDateTime.now());
 
-    String accessToken = tokenProvider.generateToken(authentication);
-    String refreshToken = tokenProvider.generateRefreshToken(userDetails.getUsername());
+    RefreshTokenService.IssuedToken refreshToken =
+        refreshTokenService.issue(user.getId(), user.getEmail());
+    String accessToken = tokenProvider.generateToken(user.getEmail(), refreshToken.sessionId());
 
     return AuthResponse.builder()
         .accessToken(accessToken)
-        .refreshToken(refreshToken)
+        .refreshToken(refreshToken.token())
         .expiresIn(jwtConfig.getTokenValidityInSeconds())
         .user(mapUserToDto(user))
         .build();
@@ -78,37 +82,40 @@ public class AuthService {
     user = userRepository.save(user);
 
     // Generate tokens
-    String accessToken = tokenProvider.generateToken(user.getEmail());
-    String refreshToken = tokenProvider.generateRefreshToken(user.getEmail());
+    RefreshTokenService.IssuedToken refreshToken =
+        refreshTokenService.issue(user.getId(), user.getEmail());
+    String accessToken = tokenProvider.generateToken(user.getEmail(), refreshToken.sessionId());
 
     return AuthResponse.builder()
         .accessToken(accessToken)
-        .refreshToken(refreshToken)
+        .refreshToken(refreshToken.token())
         .expiresIn(jwtConfig.getTokenValidityInSeconds())
         .user(mapUserToDto(user))
         .build();
   }
 
   public AuthResponse refreshToken(String refreshToken) {
-    if (!tokenProvider.validateToken(refreshToken)) {
-      throw new RuntimeException("Invalid refresh token");
-    }
+    RefreshTokenService.IssuedToken rotated = refreshTokenService.rotate(refreshToken);
 
-    String email = tokenProvider.getEmailFromToken(refreshToken);
     User user =
-        userRepository.findByEmail(email).orElseThrow(() -> new RuntimeException("User not found"));
+        userRepository
+            .findById(rotated.userId())
+            .orElseThrow(() -> new RuntimeException("User not found"));
 
-    String accessToken = tokenProvider.generateToken(email);
-    String newRefreshToken = tokenProvider.generateRefreshToken(email);
+    String accessToken = tokenProvider.generateToken(user.getEmail(), rotated.sessionId());
 
     return AuthResponse.builder()
         .accessToken(accessToken)
-        .refreshToken(newRefreshToken)
+        .refreshToken(rotated.token())
         .expiresIn(jwtConfig.getTokenValidityInSeconds())
         .user(mapUserToDto(user))
         .build();
   }
 
+  public void logout(String refreshToken) {
+    refreshTokenService.revoke(refreshToken);
+  }
+
   private UserDto mapUserToDto(User user) {
     return UserDto.builder()
         .id(user.getId())
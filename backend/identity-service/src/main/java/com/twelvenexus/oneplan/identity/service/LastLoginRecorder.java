@@ -0,0 +1,75 @@
+package com.twelvenexus.oneplan.identity.service;
+
+import com.twelvenexus.oneplan.identity.repository.UserRepository;
+import jakarta.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Coalesces last-login updates and writes them every few seconds in one transaction per batch,
+ * keeping the write off the login request. Repeated logins by the same user between flushes
+ * collapse into a single row update. Updates still pending when the process dies are lost, which
+ * is acceptable for an informational timestamp.
+ */
+@Slf4j
+@Component
+public class LastLoginRecorder {
+
+  private final UserRepository userRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final int batchSize;
+  private final Map<UUID, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+  public LastLoginRecorder(
+      UserRepository userRepository,
+      TransactionTemplate transactionTemplate,
+      @Value("${app.last-login.batch-size:500}") int batchSize) {
+    this.userRepository = userRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.batchSize = batchSize;
+  }
+
+  public void record(UUID userId, LocalDateTime loginTime) {
+    pending.merge(userId, loginTime, (a, b) -> a.isAfter(b) ? a : b);
+  }
+
+  @Scheduled(fixedDelayString = "${app.last-login.flush-interval:PT5S}")
+  public void flush() {
+    Map<UUID, LocalDateTime> batch = new LinkedHashMap<>();
+    for (UUID userId : pending.keySet()) {
+      LocalDateTime loginTime = pending.remove(userId);
+      if (loginTime != null) {
+        batch.put(userId, loginTime);
+      }
+      if (batch.size() == batchSize) {
+        write(batch);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      write(batch);
+    }
+  }
+
+  @PreDestroy
+  public void flushOnShutdown() {
+    flush();
+  }
+
+  private void write(Map<UUID, LocalDateTime> batch) {
+    try {
+      transactionTemplate.executeWithoutResult(
+          status -> batch.forEach(userRepository::updateLastLogin));
+    } catch (RuntimeException e) {
+      log.warn("Could not write {} last-login updates: {}", batch.size(), e.getMessage());
+    }
+  }
+}
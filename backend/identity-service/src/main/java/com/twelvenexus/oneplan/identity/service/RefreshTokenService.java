@@ -0,0 +1,212 @@
+package com.twelvenexus.oneplan.identity.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.twelvenexus.oneplan.identity.config.JwtConfig;
+import com.twelvenexus.oneplan.identity.model.RefreshToken;
+import com.twelvenexus.oneplan.identity.repository.RefreshTokenRepository;
+import com.twelvenexus.oneplan.identity.security.JwtTokenProvider;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Server-side state for refresh tokens: issue, rotate with replay detection, and revoke.
+ *
+ * <p>Token records are kept in a bounded in-memory cache so rotations and replays of recently
+ * issued tokens are decided without a read; the {@code refresh_tokens} table stays authoritative
+ * and every rotation is a compare-and-set there, so concurrent or cross-instance replays still
+ * lose. Revocations are published by family id through {@link #revokedSessionsSince} for the
+ * gateway, which checks access tokens against them in memory. All times are stored in UTC.
+ */
+@Slf4j
+@Service
+public class RefreshTokenService implements MeterBinder {
+
+  static final String CACHE_NAME = "identity.refresh.tokens";
+
+  private final RefreshTokenRepository refreshTokenRepository;
+  private final JwtTokenProvider tokenProvider;
+  private final JwtConfig jwtConfig;
+  private final int sweepBatchSize;
+  private final Cache<UUID, RefreshToken> tokens;
+  private final Clock clock = Clock.systemUTC();
+
+  public RefreshTokenService(
+      RefreshTokenRepository refreshTokenRepository,
+      JwtTokenProvider tokenProvider,
+      JwtConfig jwtConfig,
+      @Value("${app.refresh-tokens.cache-maximum-size:100000}") long cacheMaximumSize,
+      @Value("${app.refresh-tokens.sweep-batch-size:1000}") int sweepBatchSize) {
+    this.refreshTokenRepository = refreshTokenRepository;
+    this.tokenProvider = tokenProvider;
+    this.jwtConfig = jwtConfig;
+    this.sweepBatchSize = sweepBatchSize;
+    this.tokens =
+        Caffeine.newBuilder()
+            .maximumSize(cacheMaximumSize)
+            .expireAfterWrite(Duration.ofSeconds(jwtConfig.getRefreshTokenValidityInSeconds()))
+            .recordStats()
+            .build();
+  }
+
+  /** A freshly issued refresh token and the session (family) it belongs to. */
+  public record IssuedToken(String token, UUID userId, UUID sessionId) {}
+
+  /** Starts a new session for the user. */
+  @Transactional
+  public IssuedToken issue(UUID userId, String email) {
+    return issue(userId, email, UUID.randomUUID(), null);
+  }
+
+  /**
+   * Exchanges a refresh token for a new one in the same family.
+   *
+   * @throws BadCredentialsException if the token is invalid, expired, revoked, or was already
+   *     rotated; in the last case the whole family is revoked
+   */
+  @Transactional(noRollbackFor = BadCredentialsException.class)
+  public IssuedToken rotate(String refreshToken) {
+    Claims claims = tokenProvider.getValidClaims(refreshToken);
+    UUID jti = claims != null ? parseId(claims.getId()) : null;
+    if (jti == null) {
+      throw new BadCredentialsException("Invalid refresh token");
+    }
+
+    RefreshToken current = find(jti);
+    LocalDateTime now = LocalDateTime.now(clock);
+
+    if (current == null || current.getRevokedAt() != null || !current.getExpiresAt().isAfter(now)) {
+      throw new BadCredentialsException("Invalid refresh token");
+    }
+    if (current.getRotatedAt() != null || refreshTokenRepository.markRotated(jti, now) == 0) {
+      log.warn("Refresh token replay detected, revoking session {}", current.getFamilyId());
+      revokeSession(current.getFamilyId());
+      throw new BadCredentialsException("Invalid refresh token");
+    }
+
+    current.setRotatedAt(now);
+    tokens.put(jti, current);
+    return issue(current.getUserId(), claims.getSubject(), current.getFamilyId(), jti);
+  }
+
+  /** Revokes the session the refresh token belongs to. Unknown or invalid tokens are ignored. */
+  @Transactional
+  public void revoke(String refreshToken) {
+    Claims claims = tokenProvider.getValidClaims(refreshToken);
+    UUID sessionId =
+        claims != null
+            ? parseId(claims.get(JwtTokenProvider.SESSION_ID_CLAIM, String.class))
+            : null;
+    if (sessionId != null) {
+      revokeSession(sessionId);
+    }
+  }
+
+  @Transactional
+  public void revokeSession(UUID familyId) {
+    refreshTokenRepository.revokeFamily(familyId, LocalDateTime.now(clock));
+    evict(Set.of(familyId));
+  }
+
+  /** Logout everywhere: one update for all of the user's sessions. */
+  @Transactional
+  public void revokeAll(UUID userId) {
+    LocalDateTime now = LocalDateTime.now(clock);
+    Set<UUID> families = new HashSet<>(refreshTokenRepository.findActiveFamilies(userId, now));
+    if (families.isEmpty()) {
+      return;
+    }
+    refreshTokenRepository.revokeAllForUser(userId, now);
+    evict(families);
+  }
+
+  /** Ids of sessions revoked after the given time, for the gateway's revocation filter. */
+  @Transactional(readOnly = true)
+  public List<UUID> revokedSessionsSince(Instant since) {
+    return refreshTokenRepository.findFamiliesRevokedSince(
+        LocalDateTime.ofInstant(since, ZoneOffset.UTC));
+  }
+
+  /** Deletes expired tokens in bounded batches so the sweep never holds long locks. */
+  @Scheduled(
+      fixedDelayString = "${app.refresh-tokens.sweep-interval:PT1H}",
+      initialDelayString = "${app.refresh-tokens.sweep-interval:PT1H}")
+  public void sweepExpired() {
+    LocalDateTime cutoff = LocalDateTime.now(clock);
+    int total = 0;
+    int deleted;
+    do {
+      deleted = refreshTokenRepository.deleteExpired(cutoff, sweepBatchSize);
+      total += deleted;
+    } while (deleted == sweepBatchSize);
+
+    if (total > 0) {
+      log.info("Deleted {} expired refresh tokens", total);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    CaffeineCacheMetrics.monitor(registry, tokens, CACHE_NAME);
+  }
+
+  private IssuedToken issue(UUID userId, String email, UUID familyId, UUID parentJti) {
+    LocalDateTime expiresAt =
+        LocalDateTime.now(clock).plusSeconds(jwtConfig.getRefreshTokenValidityInSeconds());
+
+    RefreshToken record =
+        refreshTokenRepository.save(
+            RefreshToken.builder()
+                .familyId(familyId)
+                .parentJti(parentJti)
+                .userId(userId)
+                .expiresAt(expiresAt)
+                .build());
+    tokens.put(record.getJti(), record);
+
+    Date expiry = Date.from(expiresAt.toInstant(ZoneOffset.UTC));
+    return new IssuedToken(
+        tokenProvider.generateRefreshToken(email, record.getJti(), familyId, expiry),
+        userId,
+        familyId);
+  }
+
+  private RefreshToken find(UUID jti) {
+    RefreshToken cached = tokens.getIfPresent(jti);
+    return cached != null ? cached : refreshTokenRepository.findById(jti).orElse(null);
+  }
+
+  /** Token ids are only trusted as far as their signature; a malformed one is just invalid. */
+  private static UUID parseId(String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return UUID.fromString(value);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private void evict(Set<UUID> families) {
+    tokens.asMap().values().removeIf(token -> families.contains(token.getFamilyId()));
+  }
+}
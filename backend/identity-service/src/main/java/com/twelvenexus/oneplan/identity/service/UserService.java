@@ -5,6 +5,7 @@ import com.twelvenexus.oneplan.identity.model.User;
 import com.twelvenexus.oneplan.identity.model.UserPreferences;
 import com.twelvenexus.oneplan.identity.repository.UserPreferencesRepository;
 import com.twelvenexus.oneplan.identity.repository.UserRepository;
+import com.twelvenexus.oneplan.identity.security.UserDetailsCache;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -20,6 +21,8 @@ public class UserService {
   private final UserRepository userRepository;
   private final UserPreferencesRepository userPreferencesRepository;
   private final PasswordEncoder passwordEncoder;
+  private final UserDetailsCache userDetailsCache;
+  private final RefreshTokenService refreshTokenService;
 
   public List<UserDto> getAllUsers() {
     return userRepository.findAll().stream().map(this::mapUserToDto).collect(Collectors.toList());
@@ -52,7 +55,9 @@ public class UserService {
     user.setLastName(userDto.getLastName());
     user.setAvatar(userDto.getAvatar());
 
-    return mapUserToDto(userRepository.save(user));
+    User saved = userRepository.save(user);
+    userDetailsCache.evict(saved.getEmail());
+    return mapUserToDto(saved);
   }
 
   @Transactional
@@ -68,14 +73,27 @@ public class UserService {
 
     user.setPasswordHash(passwordEncoder.encode(newPassword));
     userRepository.save(user);
+    userDetailsCache.evict(user.getEmail());
+    refreshTokenService.revokeAll(id);
   }
 
   @Transactional
   public void deleteUser(UUID id) {
+    User user =
+        userRepository
+            .findById(id)
+            .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
+    userRepository.delete(user);
+    userDetailsCache.evict(user.getEmail());
+    refreshTokenService.revokeAll(id);
+  }
+
+  /** Logs the user out everywhere. */
+  public void revokeSessions(UUID id) {
     if (!userRepository.existsById(id)) {
       throw new RuntimeException("User not found with id: " + id);
     }
-    userRepository.deleteById(id);
+    refreshTokenService.revokeAll(id);
   }
 
   @Transactional
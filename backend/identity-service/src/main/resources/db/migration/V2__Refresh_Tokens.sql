@@ -0,0 +1,17 @@
+CREATE TABLE refresh_tokens
+(
+    jti         BINARY(16) NOT NULL,
+    family_id   BINARY(16) NOT NULL,
+    parent_jti  BINARY(16) NULL,
+    user_id     BINARY(16) NOT NULL,
+    expires_at  TIMESTAMP  NOT NULL,
+    created_at  TIMESTAMP  NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    rotated_at  TIMESTAMP  NULL,
+    revoked_at  TIMESTAMP  NULL,
+    CONSTRAINT pk_refresh_tokens PRIMARY KEY (jti)
+);
+
+CREATE INDEX idx_refresh_tokens_family ON refresh_tokens (family_id);
+CREATE INDEX idx_refresh_tokens_user ON refresh_tokens (user_id);
+CREATE INDEX idx_refresh_tokens_revoked_at ON refresh_tokens (revoked_at);
+CREATE INDEX idx_refresh_tokens_expires_at ON refresh_tokens (expires_at);
@@ -0,0 +1,134 @@
+package com.twelvenexus.oneplan.identity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.twelvenexus.oneplan.identity.repository.UserRepository;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class LastLoginRecorderTests {
+
+  private static final LocalDateTime T0 = LocalDateTime.of(2025, 3, 12, 9, 0);
+
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final RecordingTransactionManager transactions = new RecordingTransactionManager();
+  /** Each committed transaction's updates, in order. */
+  private final List<Map<UUID, LocalDateTime>> committed = new ArrayList<>();
+
+  private Map<UUID, LocalDateTime> current = new HashMap<>();
+  private Runnable duringWrite = () -> {};
+
+  LastLoginRecorderTests() {
+    when(userRepository.updateLastLogin(any(), any()))
+        .thenAnswer(
+            call -> {
+              duringWrite.run();
+              current.put(call.getArgument(0), call.getArgument(1));
+              return 1;
+            });
+  }
+
+  @Test
+  void repeatedLoginsCollapseIntoOneUpdateWithTheLatestTime() {
+    LastLoginRecorder recorder = recorder(500);
+    UUID user = UUID.randomUUID();
+
+    recorder.record(user, T0.plusSeconds(1));
+    recorder.record(user, T0.plusSeconds(3));
+    // Logins can be recorded out of order; the time never moves backwards
+    recorder.record(user, T0.plusSeconds(2));
+    recorder.flush();
+
+    assertThat(committed).containsExactly(Map.of(user, T0.plusSeconds(3)));
+  }
+
+  @Test
+  void flushWritesOneTransactionPerBatch() {
+    LastLoginRecorder recorder = recorder(2);
+    List<UUID> users = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      users.add(UUID.randomUUID());
+      recorder.record(users.get(i), T0.plusSeconds(i));
+    }
+
+    recorder.flush();
+
+    assertThat(committed).extracting(Map::size).containsExactly(2, 2, 1);
+    assertThat(committed.stream().flatMap(batch -> batch.keySet().stream()))
+        .containsExactlyInAnyOrderElementsOf(users);
+
+    recorder.flush();
+    assertThat(committed).hasSize(3);
+  }
+
+  @Test
+  void loginRecordedDuringAFlushIsWrittenByTheNext() {
+    LastLoginRecorder recorder = recorder(500);
+    UUID user = UUID.randomUUID();
+    recorder.record(user, T0);
+    duringWrite =
+        () -> {
+          duringWrite = () -> {};
+          recorder.record(user, T0.plusSeconds(1));
+        };
+
+    recorder.flush();
+    recorder.flush();
+
+    assertThat(committed)
+        .containsExactly(Map.of(user, T0), Map.of(user, T0.plusSeconds(1)));
+  }
+
+  @Test
+  void failedBatchIsDroppedWithoutFailingTheFlush() {
+    LastLoginRecorder recorder = recorder(500);
+    recorder.record(UUID.randomUUID(), T0);
+    duringWrite =
+        () -> {
+          throw new IllegalStateException("Database down");
+        };
+
+    recorder.flush();
+
+    assertThat(transactions.rollbacks).isEqualTo(1);
+    assertThat(committed).isEmpty();
+  }
+
+  private LastLoginRecorder recorder(int batchSize) {
+    return new LastLoginRecorder(userRepository, new TransactionTemplate(transactions), batchSize);
+  }
+
+  private final class RecordingTransactionManager implements PlatformTransactionManager {
+
+    int rollbacks;
+
+    @Override
+    public TransactionStatus getTransaction(TransactionDefinition definition) {
+      current = new HashMap<>();
+      return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public void commit(TransactionStatus status) {
+      committed.add(current);
+    }
+
+    @Override
+    public void rollback(TransactionStatus status) {
+      rollbacks++;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package com.twelvenexus.oneplan.identity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.twelvenexus.oneplan.identity.config.JwtConfig;
+import com.twelvenexus.oneplan.identity.model.RefreshToken;
+import com.twelvenexus.oneplan.identity.repository.RefreshTokenRepository;
+import com.twelvenexus.oneplan.identity.security.JwtTokenProvider;
+import com.twelvenexus.oneplan.identity.service.RefreshTokenService.IssuedToken;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+
+class RefreshTokenServiceTests {
+
+  private static final String SECRET = "a-test-secret-that-is-long-enough-for-hmac-sha-256";
+  private static final String EMAIL = "ada@example.com";
+  private static final UUID USER = UUID.randomUUID();
+
+  /** The refresh_tokens table, shared by every service instance of a test. */
+  private final Map<UUID, RefreshToken> table = new LinkedHashMap<>();
+
+  private final RefreshTokenRepository repository = inMemoryRepository(table);
+  private final JwtTokenProvider tokenProvider;
+  private final RefreshTokenService service;
+
+  RefreshTokenServiceTests() {
+    JwtConfig config = new JwtConfig();
+    config.setSecret(SECRET);
+    tokenProvider = new JwtTokenProvider(config);
+    tokenProvider.init();
+    service = newService(config);
+  }
+
+  @Test
+  void rotationIssuesAChildInTheSameSession() {
+    IssuedToken first = service.issue(USER, EMAIL);
+    IssuedToken second = service.rotate(first.token());
+
+    assertThat(second.sessionId()).isEqualTo(first.sessionId());
+    assertThat(second.userId()).isEqualTo(USER);
+    assertThat(second.token()).isNotEqualTo(first.token());
+
+    RefreshToken parent = table.get(jti(first));
+    RefreshToken child = table.get(jti(second));
+    assertThat(parent.getRotatedAt()).isNotNull();
+    assertThat(child.getParentJti()).isEqualTo(parent.getJti());
+    assertThat(child.getFamilyId()).isEqualTo(first.sessionId());
+    assertThat(child.getRotatedAt()).isNull();
+
+    assertThat(service.rotate(second.token()).sessionId()).isEqualTo(first.sessionId());
+  }
+
+  @Test
+  void reusingARotatedTokenRevokesTheWholeSession() {
+    IssuedToken first = service.issue(USER, EMAIL);
+    IssuedToken second = service.rotate(first.token());
+    IssuedToken otherSession = service.issue(USER, EMAIL);
+
+    assertThatThrownBy(() -> service.rotate(first.token()))
+        .isInstanceOf(BadCredentialsException.class);
+
+    // The newer token dies with its family, whoever holds it
+    assertThatThrownBy(() -> service.rotate(second.token()))
+        .isInstanceOf(BadCredentialsException.class);
+    assertThat(table.get(jti(first)).getRevokedAt()).isNotNull();
+    assertThat(table.get(jti(second)).getRevokedAt()).isNotNull();
+    assertThat(service.revokedSessionsSince(Instant.now().minusSeconds(5)))
+        .containsExactly(first.sessionId());
+    assertThat(service.revokedSessionsSince(Instant.now().plusSeconds(5))).isEmpty();
+
+    // Other sessions of the user are left alone
+    assertThat(service.rotate(otherSession.token()).sessionId())
+        .isEqualTo(otherSession.sessionId());
+  }
+
+  @Test
+  void replayIsCaughtByTheTableWhenAnotherInstanceRotated() {
+    RefreshTokenService otherInstance = newService(new JwtConfig());
+    IssuedToken first = service.issue(USER, EMAIL);
+
+    otherInstance.rotate(first.token());
+
+    // This instance still caches the token as unrotated; the compare-and-set decides
+    assertThatThrownBy(() -> service.rotate(first.token()))
+        .isInstanceOf(BadCredentialsException.class);
+    assertThat(table.values()).allSatisfy(token -> assertThat(token.getRevokedAt()).isNotNull());
+  }
+
+  @Test
+  void tokensWithoutAValidIdAreInvalidCredentials() {
+    String malformedId = sign(Jwts.builder().id("not-a-uuid").subject(EMAIL));
+    String accessToken = tokenProvider.generateToken(EMAIL, UUID.randomUUID());
+
+    assertThatThrownBy(() -> service.rotate(malformedId))
+        .isInstanceOf(BadCredentialsException.class);
+    assertThatThrownBy(() -> service.rotate(accessToken))
+        .isInstanceOf(BadCredentialsException.class);
+    assertThatThrownBy(() -> service.rotate("garbage"))
+        .isInstanceOf(BadCredentialsException.class);
+  }
+
+  @Test
+  void logoutIgnoresTokensWithoutAValidSession() {
+    service.revoke(sign(Jwts.builder().subject(EMAIL).claim("sid", "not-a-uuid")));
+    service.revoke("garbage");
+
+    verify(repository, never()).revokeFamily(any(), any());
+  }
+
+  private RefreshTokenService newService(JwtConfig config) {
+    config.setSecret(SECRET);
+    return new RefreshTokenService(repository, tokenProvider, config, 1000, 100);
+  }
+
+  private UUID jti(IssuedToken issued) {
+    return UUID.fromString(tokenProvider.getValidClaims(issued.token()).getId());
+  }
+
+  private static String sign(JwtBuilder builder) {
+    return builder
+        .expiration(Date.from(Instant.now().plusSeconds(60)))
+        .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+        .compact();
+  }
+
+  /** Just enough of the table's semantics; rows are copied so the service's cache is separate. */
+  private static RefreshTokenRepository inMemoryRepository(Map<UUID, RefreshToken> table) {
+    RefreshTokenRepository repository = mock(RefreshTokenRepository.class);
+    when(repository.save(any(RefreshToken.class)))
+        .thenAnswer(
+            call -> {
+              RefreshToken token = call.getArgument(0);
+              if (token.getJti() == null) {
+                token.setJti(UUID.randomUUID());
+              }
+              table.put(token.getJti(), copy(token));
+              return token;
+            });
+    when(repository.findById(any()))
+        .thenAnswer(
+            call ->
+                Optional.ofNullable(table.get(call.<UUID>getArgument(0)))
+                    .map(RefreshTokenServiceTests::copy));
+    when(repository.markRotated(any(), any()))
+        .thenAnswer(
+            call -> {
+              RefreshToken token = table.get(call.<UUID>getArgument(0));
+              if (token == null || token.getRotatedAt() != null || token.getRevokedAt() != null) {
+                return 0;
+              }
+              token.setRotatedAt(call.getArgument(1));
+              return 1;
+            });
+    when(repository.revokeFamily(any(), any()))
+        .thenAnswer(
+            call -> {
+              int updated = 0;
+              for (RefreshToken token : table.values()) {
+                if (token.getFamilyId().equals(call.getArgument(0))
+                    && token.getRevokedAt() == null) {
+                  token.setRevokedAt(call.getArgument(1));
+                  updated++;
+                }
+              }
+              return updated;
+            });
+    when(repository.findFamiliesRevokedSince(any()))
+        .thenAnswer(
+            call -> {
+              LocalDateTime since = call.getArgument(0);
+              return table.values().stream()
+                  .filter(token -> token.getRevokedAt() != null)
+                  .filter(token -> token.getRevokedAt().isAfter(since))
+                  .map(RefreshToken::getFamilyId)
+                  .distinct()
+                  .toList();
+            });
+    return repository;
+  }
+
+  private static RefreshToken copy(RefreshToken token) {
+    return new RefreshToken(
+        token.getJti(),
+        token.getFamilyId(),
+        token.getParentJti(),
+        token.getUserId(),
+        token.getExpiresAt(),
+        token.getCreatedAt(),
+        token.getRotatedAt(),
+        token.getRevokedAt());
+  }
+}
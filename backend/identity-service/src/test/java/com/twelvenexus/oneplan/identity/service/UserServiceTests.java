@@ -0,0 +1,245 @@
+package com.twelvenexus.oneplan.identity.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.twelvenexus.oneplan.identity.dto.UserDto;
+import com.twelvenexus.oneplan.identity.model.User;
+import com.twelvenexus.oneplan.identity.repository.UserPreferencesRepository;
+import com.twelvenexus.oneplan.identity.repository.UserRepository;
+import com.twelvenexus.oneplan.identity.security.CustomUserDetails;
+import com.twelvenexus.oneplan.identity.security.CustomUserDetailsService;
+import com.twelvenexus.oneplan.identity.security.UserDetailsCache;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class UserServiceTests {
+
+  private static final String EMAIL = "ada@example.com";
+
+  /** The users table as committed. */
+  private final Map<UUID, User> committed = new HashMap<>();
+  /** Writes of the open transaction; an empty value is a delete. */
+  private final Map<UUID, Optional<User>> pending = new HashMap<>();
+
+  private final UserRepository userRepository = inMemoryRepository();
+  private final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+  private final RefreshTokenService refreshTokenService = mock(RefreshTokenService.class);
+  private final TransactionTemplate transactions =
+      new TransactionTemplate(new InMemoryTransactionManager());
+  private final UserDetailsCache userDetailsCache =
+      new UserDetailsCache(
+          new CustomUserDetailsService(userRepository), 100, Duration.ofMinutes(5));
+  private final UserService userService =
+      new UserService(
+          userRepository,
+          mock(UserPreferencesRepository.class),
+          passwordEncoder,
+          userDetailsCache,
+          refreshTokenService);
+
+  private final UUID userId = UUID.randomUUID();
+  private final UserDto renamed = UserDto.builder().firstName("Augusta").build();
+  /** Database reads of the user by email, which is how the cache loads. */
+  private int loads;
+
+  UserServiceTests() {
+    User user = new User();
+    user.setId(userId);
+    user.setFirstName("Ada");
+    user.setLastName("Lovelace");
+    user.setEmail(EMAIL);
+    user.setPasswordHash("old-hash");
+    user.setStatus(User.UserStatus.ACTIVE);
+    user.setRoles(new HashSet<>(Set.of("ROLE_USER")));
+    committed.put(userId, user);
+  }
+
+  @Test
+  void updateEvictsTheCachedDetailsOnlyOnceCommitted() {
+    CustomUserDetails cached = userDetailsCache.get(EMAIL);
+
+    inTransaction(
+        status -> {
+          userService.updateUser(userId, renamed);
+          // Until the commit other requests may only see the committed row
+          assertThat(userDetailsCache.get(EMAIL)).isSameAs(cached);
+        });
+
+    assertThat(userDetailsCache.get(EMAIL)).isNotSameAs(cached);
+    assertThat(loads).isEqualTo(2);
+  }
+
+  @Test
+  void passwordChangeEvictsTheCachedDetailsOnceCommitted() {
+    when(passwordEncoder.matches("old", "old-hash")).thenReturn(true);
+    when(passwordEncoder.encode("new")).thenReturn("new-hash");
+    CustomUserDetails cached = userDetailsCache.get(EMAIL);
+
+    inTransaction(
+        status -> {
+          userService.changePassword(userId, "old", "new");
+          assertThat(userDetailsCache.get(EMAIL)).isSameAs(cached);
+        });
+
+    assertThat(committed.get(userId).getPasswordHash()).isEqualTo("new-hash");
+    assertThat(userDetailsCache.get(EMAIL)).isNotSameAs(cached);
+    // Cached details never carry the hash
+    assertThat(userDetailsCache.get(EMAIL).getPassword()).isNull();
+    verify(refreshTokenService).revokeAll(userId);
+  }
+
+  @Test
+  void deletedUserIsNoLongerServedOnceCommitted() {
+    CustomUserDetails cached = userDetailsCache.get(EMAIL);
+
+    inTransaction(
+        status -> {
+          userService.deleteUser(userId);
+          assertThat(userDetailsCache.get(EMAIL)).isSameAs(cached);
+        });
+
+    assertThatThrownBy(() -> userDetailsCache.get(EMAIL))
+        .isInstanceOf(UsernameNotFoundException.class);
+  }
+
+  @Test
+  void rolledBackChangeLeavesTheCachedDetailsInPlace() {
+    CustomUserDetails cached = userDetailsCache.get(EMAIL);
+
+    inTransaction(
+        status -> {
+          userService.deleteUser(userId);
+          status.setRollbackOnly();
+        });
+    assertThatThrownBy(
+            () ->
+                inTransaction(
+                    status -> {
+                      userService.updateUser(userId, renamed);
+                      throw new IllegalStateException("Rolled back");
+                    }))
+        .isInstanceOf(IllegalStateException.class);
+
+    assertThat(committed).containsKey(userId);
+    assertThat(userDetailsCache.get(EMAIL)).isSameAs(cached);
+    // Neither evicted nor loaded again while the changes were pending
+    assertThat(loads).isEqualTo(1);
+  }
+
+  @Test
+  void evictionOutsideATransactionIsImmediate() {
+    CustomUserDetails cached = userDetailsCache.get(EMAIL);
+
+    userDetailsCache.evict(EMAIL);
+
+    assertThat(userDetailsCache.get(EMAIL)).isNotSameAs(cached);
+  }
+
+  private void inTransaction(Consumer<TransactionStatus> work) {
+    transactions.executeWithoutResult(work);
+  }
+
+  private UserRepository inMemoryRepository() {
+    UserRepository repository = mock(UserRepository.class);
+    when(repository.findById(any()))
+        .thenAnswer(call -> current(call.getArgument(0)).map(UserServiceTests::copy));
+    when(repository.findByEmail(any()))
+        .thenAnswer(
+            call -> {
+              loads++;
+              return committed.keySet().stream()
+                  .map(this::current)
+                  .flatMap(Optional::stream)
+                  .filter(user -> user.getEmail().equals(call.getArgument(0)))
+                  .findFirst()
+                  .map(UserServiceTests::copy);
+            });
+    when(repository.save(any(User.class)))
+        .thenAnswer(
+            call -> {
+              User user = call.getArgument(0);
+              pending.put(user.getId(), Optional.of(copy(user)));
+              return user;
+            });
+    doAnswer(
+            call -> {
+              pending.put(call.<User>getArgument(0).getId(), Optional.empty());
+              return null;
+            })
+        .when(repository)
+        .delete(any(User.class));
+    return repository;
+  }
+
+  /** The user as seen inside the open transaction, if any. */
+  private Optional<User> current(UUID id) {
+    if (pending.containsKey(id)) {
+      return pending.get(id);
+    }
+    return Optional.ofNullable(committed.get(id));
+  }
+
+  private static User copy(User user) {
+    User copy = new User();
+    copy.setId(user.getId());
+    copy.setFirstName(user.getFirstName());
+    copy.setLastName(user.getLastName());
+    copy.setEmail(user.getEmail());
+    copy.setPasswordHash(user.getPasswordHash());
+    copy.setStatus(user.getStatus());
+    copy.setRoles(new HashSet<>(user.getRoles()));
+    return copy;
+  }
+
+  /** Applies the pending writes on commit and drops them on rollback, running synchronizations. */
+  private final class InMemoryTransactionManager extends AbstractPlatformTransactionManager {
+
+    @Override
+    protected Object doGetTransaction() {
+      return new Object();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+      pending.clear();
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+      pending.forEach(
+          (id, user) -> {
+            if (user.isPresent()) {
+              committed.put(id, user.get());
+            } else {
+              committed.remove(id);
+            }
+          });
+      pending.clear();
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status) {
+      pending.clear();
+    }
+  }
+}
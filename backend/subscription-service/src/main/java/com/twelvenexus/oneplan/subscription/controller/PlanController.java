@@ -6,10 +6,12 @@ import com.twelvenexus.oneplan.subscription.service.PlanService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import java.time.Duration;
 import java.util.List;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,6 +22,10 @@ import org.springframework.web.bind.annotation.*;
 @Tag(name = "Plans", description = "Subscription plan management")
 public class PlanController {
 
+  // The same for every caller and rarely changed, so clients and the gateway may reuse them
+  private static final CacheControl PLAN_CACHE_CONTROL =
+      CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic();
+
   private final PlanService planService;
 
   @PostMapping
@@ -59,28 +65,32 @@ public class PlanController {
   @Operation(summary = "Get all active plans")
   public ResponseEntity<List<PlanDto>> getAllPlans() {
     List<Plan> plans = planService.getAllActivePlans();
-    return ResponseEntity.ok(plans.stream().map(this::toDto).collect(Collectors.toList()));
+    return ResponseEntity.ok()
+        .cacheControl(PLAN_CACHE_CONTROL)
+        .body(plans.stream().map(this::toDto).collect(Collectors.toList()));
   }
 
   @GetMapping("/popular")
   @Operation(summary = "Get popular plans")
   public ResponseEntity<List<PlanDto>> getPopularPlans() {
     List<Plan> plans = planService.getPopularPlans();
-    return ResponseEntity.ok(plans.stream().map(this::toDto).collect(Collectors.toList()));
+    return ResponseEntity.ok()
+        .cacheControl(PLAN_CACHE_CONTROL)
+        .body(plans.stream().map(this::toDto).collect(Collectors.toList()));
   }
 
   @GetMapping("/{planId}")
   @Operation(summary = "Get plan by ID")
   public ResponseEntity<PlanDto> getPlan(@PathVariable UUID planId) {
     Plan plan = planService.getPlan(planId);
-    return ResponseEntity.ok(toDto(plan));
+    return ResponseEntity.ok().cacheControl(PLAN_CACHE_CONTROL).body(toDto(plan));
   }
 
   @GetMapping("/code/{code}")
   @Operation(summary = "Get plan by code")
   public ResponseEntity<PlanDto> getPlanByCode(@PathVariable String code) {
     Plan plan = planService.getPlanByCode(code);
-    return ResponseEntity.ok(toDto(plan));
+    return ResponseEntity.ok().cacheControl(PLAN_CACHE_CONTROL).body(toDto(plan));
   }
 
   @PutMapping("/{planId}/activate")
@@ -1,28 +0,0 @@
-package com.twelvenexus.oneplan.tenant.security;
-
-import java.io.IOException;
-
-import org.springframework.stereotype.Component;
-import org.springframework.web.filter.OncePerRequestFilter;
-
-import jakarta.servlet.FilterChain;
-import jakarta.servlet.ServletException;
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
-
-@Component
-public class JwtAuthenticationFilter extends OncePerRequestFilter {
-
-    @Override
-    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
-            throws ServletException, IOException {
-        
-        //TODO: In a real implementation:
-        // 1. Extract the JWT from the Authorization header
-        // 2. Validate the JWT
-        // 3. Set the authentication in the SecurityContext
-        
-        // For now, we're just passing the request through
-        filterChain.doFilter(request, response);
-    }
-}
\ No newline at end of file